@@ -0,0 +1,300 @@
+package application;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a script of client commands against a task manager with several commands in flight.
+ * <p>
+ * The script has one command per line in the syntax of the interactive <code>Client</code>; blank
+ * lines and lines starting with <code>#</code> are skipped. Commands are run by a fixed number of
+ * lanes sharing one stub, each lane running its commands in script order. Writes to the same task
+ * id always go to the same lane, so they run in script order; other commands go to the lanes in
+ * turn. Reads by user, like <code>GET_ASSIGNED_TASKS</code>, see every earlier write, since any of
+ * them may have assigned a task to or away from the user: a read waits for the writes before it in
+ * the script, and a write waits for the reads before it, while consecutive writes to different
+ * tasks, and consecutive reads, still run at the same time. The reader waits when a lane's queue is
+ * full, so a long script is never held in memory.
+ * <p>
+ * Failed commands are reported with their line number as they happen, and a summary with the
+ * throughput and latency percentiles is printed at the end.
+ */
+public class BatchRunner {
+
+    /**
+     * Number of commands queued per lane before the reader waits.
+     */
+    private static final int QUEUE_CAPACITY = 1024;
+
+    /**
+     * Marks the end of the script in a lane's queue.
+     */
+    private static final Command END = new Command(0, null, null, new Command[0]);
+
+    /**
+     * Task manager the commands run on, shared by all lanes.
+     */
+    private final TasksManager tasksManager;
+
+    /**
+     * Number of lanes, and so of commands in flight.
+     */
+    private final int concurrency;
+
+    /**
+     * Whether the output of every command is printed, not only failures.
+     */
+    private final boolean verbose;
+
+    /**
+     * Number of commands that threw an exception.
+     */
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * Constructs a runner.
+     * @param tasksManager The task manager to run the commands on, shared by all lanes.
+     * @param concurrency  The number of commands in flight.
+     * @param verbose      Whether to print the output of every command, not only failures.
+     */
+    public BatchRunner(TasksManager tasksManager, int concurrency, boolean verbose) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+        }
+        this.tasksManager = tasksManager;
+        this.concurrency = concurrency;
+        this.verbose = verbose;
+    }
+
+    /**
+     * Runs a script and prints the summary.
+     * @param script The path of the script.
+     * @return The number of failed commands.
+     * @throws IOException If the script cannot be read.
+     * @throws InterruptedException If the thread is interrupted while waiting for the lanes.
+     */
+    public int run(Path script) throws IOException, InterruptedException {
+        Lane[] lanes = new Lane[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            lanes[i] = new Lane(i);
+            lanes[i].start();
+        }
+        // The last write and the last read given to each lane; earlier ones of the lane are done
+        // once they are.
+        Command[] lastWrites = new Command[concurrency];
+        Command[] lastReads = new Command[concurrency];
+        long start = System.nanoTime();
+        int lineNumber = 0;
+        int nextLane = 0;
+        try (BufferedReader reader = Files.newBufferedReader(script, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                String[] words = trimmed.split("\\s+");
+                String key = orderingKey(words);
+                Command command;
+                int lane;
+                if (key != null && key.startsWith("#")) {
+                    lane = Math.floorMod(key.hashCode(), concurrency);
+                    command = new Command(lineNumber, trimmed, words, lastReads);
+                    lastWrites[lane] = command;
+                } else if (key != null) {
+                    lane = nextLane++ % concurrency;
+                    command = new Command(lineNumber, trimmed, words, lastWrites);
+                    lastReads[lane] = command;
+                } else {
+                    lane = nextLane++ % concurrency;
+                    command = new Command(lineNumber, trimmed, words, new Command[0]);
+                }
+                lanes[lane].queue.put(command);
+            }
+        } finally {
+            for (Lane lane : lanes) {
+                lane.queue.put(END);
+            }
+            for (Lane lane : lanes) {
+                lane.join();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long[] latencies = new long[0];
+        for (Lane lane : lanes) {
+            int offset = latencies.length;
+            latencies = Arrays.copyOf(latencies, offset + lane.count);
+            System.arraycopy(lane.latencies, 0, latencies, offset, lane.count);
+        }
+        printSummary(latencies, elapsed);
+        return failures.get();
+    }
+
+    /**
+     * Gets the key that orders a command after earlier commands: a task id for writes, which run after
+     * earlier writes to the same task and after all earlier reads, or a user for reads, which run after
+     * all earlier writes.
+     * @param words The words of the command.
+     * @return The task id prefixed with <code>#</code> for writes to a task, the user prefixed with
+     *         <code>@</code> for reads, or null if the command can run in any order.
+     */
+    static String orderingKey(String[] words) {
+        if (words.length < 2) {
+            return null;
+        }
+        switch (words[0].toUpperCase()) {
+            case "ASSIGN":
+            case "UPDATE_STATUS":
+                return "#" + words[1];
+            case "GET_ASSIGNED_TASKS":
+            case "QUERY":
+                return "@" + words[1];
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Prints the number of commands, the throughput and the latency percentiles.
+     * @param latencies The latency of every command, in nanoseconds.
+     * @param elapsed   The time to run the script, in nanoseconds.
+     */
+    private void printSummary(long[] latencies, long elapsed) {
+        Arrays.sort(latencies);
+        double seconds = elapsed / 1e9;
+        System.out.printf("%d commands, %d failed, in %.2f s with concurrency %d: %.1f commands/s%n",
+                latencies.length, failures.get(), seconds, concurrency, latencies.length / seconds);
+        if (latencies.length > 0) {
+            System.out.printf("latency ms: p50 %.2f, p90 %.2f, p99 %.2f, max %.2f%n",
+                    percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+                    latencies[latencies.length - 1] / 1e6);
+        }
+    }
+
+    /**
+     * Gets a percentile of sorted latencies.
+     * @param sorted  The latencies in nanoseconds, in ascending order.
+     * @param percent The percentile.
+     * @return The latency at the percentile, in milliseconds.
+     */
+    private static double percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(sorted.length * percent / 100.0) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * A line of the script.
+     */
+    private static final class Command {
+
+        final int lineNumber;
+
+        final String line;
+
+        final String[] words;
+
+        /**
+         * Earlier commands on other lanes that must be done before this one runs.
+         */
+        final Command[] after;
+
+        /**
+         * Released once the command has run.
+         */
+        final CountDownLatch done = new CountDownLatch(1);
+
+        /**
+         * Constructs a command.
+         * @param lineNumber The line number in the script.
+         * @param line       The line.
+         * @param words      The words of the line.
+         * @param after      The last commands given to each lane that this one must wait for, copied since
+         *                   the reader replaces them; null entries are skipped.
+         */
+        Command(int lineNumber, String line, String[] words, Command[] after) {
+            this.lineNumber = lineNumber;
+            this.line = line;
+            this.words = words;
+            this.after = after.clone();
+        }
+
+        /**
+         * Waits until the earlier commands this one depends on are done, then drops them, so that
+         * commands that have run do not keep the script in memory.
+         * @throws InterruptedException If the thread is interrupted while waiting.
+         */
+        void awaitEarlier() throws InterruptedException {
+            for (int i = 0; i < after.length; i++) {
+                if (after[i] != null) {
+                    after[i].done.await();
+                    after[i] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Thread running the commands of one lane in order and recording their latencies.
+     */
+    private final class Lane extends Thread {
+
+        final BlockingQueue<Command> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        long[] latencies = new long[256];
+
+        int count;
+
+        Lane(int index) {
+            super("batch-lane-" + index);
+        }
+
+        @Override
+        public void run() {
+            try {
+                Command command;
+                while ((command = queue.take()) != END) {
+                    command.awaitEarlier();
+                    try {
+                        execute(command);
+                    } finally {
+                        command.done.countDown();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void execute(Command command) {
+            long start = System.nanoTime();
+            String output = null;
+            Exception failure = null;
+            try {
+                output = Client.execute(tasksManager, command.words);
+            } catch (Exception e) {
+                failure = e;
+            }
+            long latency = System.nanoTime() - start;
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latency;
+            if (failure != null) {
+                failures.incrementAndGet();
+                System.out.println("line " + command.lineNumber + ": " + command.line + " failed: " + failure);
+            } else if (verbose) {
+                System.out.println("line " + command.lineNumber + ": " + output);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package application;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Per-item outcome of a bulk operation on tasks.
+ * <p>
+ * Items are numbered in the order of the request. A failed item carries the message of the
+ * exception that would have been thrown by the single-task operation; the other items of the
+ * same request are still applied.
+ */
+public class BulkResult implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L; // UID for serialization
+
+    /**
+     * Error message of each item, or null for items that succeeded.
+     */
+    private final String[] errors;
+
+    /**
+     * Constructs a result from the error messages of the items.
+     *
+     * @param errors The error message of each item, or null for items that succeeded.
+     */
+    public BulkResult(String[] errors) {
+        this.errors = errors;
+    }
+
+    /**
+     * Gets the number of items of the request.
+     *
+     * @return The number of items.
+     */
+    public int size() {
+        return errors.length;
+    }
+
+    /**
+     * Tells whether an item succeeded.
+     *
+     * @param index The position of the item in the request.
+     * @return True if the item succeeded.
+     */
+    public boolean isSuccess(int index) {
+        return errors[index] == null;
+    }
+
+    /**
+     * Gets the error message of an item.
+     *
+     * @param index The position of the item in the request.
+     * @return The error message, or null if the item succeeded.
+     */
+    public String getError(int index) {
+        return errors[index];
+    }
+
+    /**
+     * Gets the number of items that failed.
+     *
+     * @return The number of failed items.
+     */
+    public int getFailureCount() {
+        int failures = 0;
+        for (String error : errors) {
+            if (error != null) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Checks that a bulk request gives one value for each item.
+     *
+     * @param items  The number of items.
+     * @param values The number of values.
+     * @throws IllegalArgumentException If the numbers differ.
+     */
+    static void requireSameSize(int items, int values) {
+        if (items != values) {
+            throw new IllegalArgumentException("Expected " + items + " values but got " + values);
+        }
+    }
+
+    /**
+     * Returns a string representation of the result.
+     *
+     * @return A string representation of the result.
+     */
+    @Override
+    public String toString() {
+        return "BulkResult{" +
+                "size=" + errors.length +
+                ", failures=" + getFailureCount() +
+                '}';
+    }
+}
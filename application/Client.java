@@ -1,7 +1,10 @@
 package application;
 
+import remote.RemoteObjectException;
 import remote.StubFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Scanner;
 
 /**
@@ -9,13 +12,33 @@ import java.util.Scanner;
  * It can be used to create, assign, update status and list tasks assigned to the give user.
  * It can be run with the server address as argument to interact with the remote Task Manager.
  * If no argument is provided, it will run the default sample behaviour of the application.
+ * <p>
+ * With <code>--batch</code>, it runs a script of commands instead, several at a time, and prints
+ * throughput and latency statistics at the end; see <code>BatchRunner</code>.
  */
 public class Client {
 
+    /**
+     * Number of tasks in a page of a query, unless the command gives a limit.
+     */
+    private static final int DEFAULT_PAGE_SIZE = 50;
+
+    /**
+     * Number of commands a batch runs at once, unless the command line gives a concurrency.
+     */
+    private static final int DEFAULT_CONCURRENCY = 8;
+
+    private static final String COMMAND_LINE_USAGE = "Usage: Client <host:port>\n"
+            + "       Client <host:port> --batch <script> [--concurrency <n>] [--verbose]";
+
+    private static final String USAGE = "Usage: CREATE <title> <description>\nASSIGN <taskId> <assignee>"
+            + "\nUPDATE_STATUS <taskId> <status>\nGET_ASSIGNED_TASKS <username>"
+            + "\nQUERY <username> <status|ANY> [cursor] [limit]";
+
     /**
      * Main method to run the client application.
      * @param args  Server address to connect to.
-     * Usage Client <host:port>
+     * Usage Client <host:port> [--batch script [--concurrency n] [--verbose]]
      * Commands:
      * CREATE title description
      *  - To create a new task with title and description.
@@ -36,13 +59,21 @@ public class Client {
      *  - To get the list of tasks assigned to the given user.
      *  - Example: GET_ASSIGNED_TASKS Assignee1
      *  - Output: Assigned tasks: [Task 1]
+     *QUERY username status|ANY [cursor] [limit]
+     *  - To get one page of the tasks of the given user with the given status, 50 tasks by default.
+     *  - Example: QUERY Assignee1 OPEN
+     *  - Output: TaskPage{tasks=[Task 1], nextCursor=-1}
+     *  - Pass the cursor of the output to get the next page.
      *QUIT
      *  - To quit the application.
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException, InterruptedException {
 
-        if(args.length != 1) {
-            System.out.println("Usage: Client <host:port>");
+        if (args.length > 1) {
+            runBatch(args);
+        }
+        else if(args.length != 1) {
+            System.out.println(COMMAND_LINE_USAGE);
         }
         else {
             Scanner scanner = new Scanner((System.in));
@@ -53,32 +84,104 @@ public class Client {
                 System.out.println("> ");
                 input = scanner.nextLine();
                 String[] command = input.split(" ");
+                if (command[0].equalsIgnoreCase("QUIT")) {
+                    System.out.println("Quitting...");
+                    return;
+                }
                 try {
-                    switch (command[0].toUpperCase()) {
-                        case "CREATE":
-                            int taskId = tasksManager.createTask(command[1], command[2]);
-                            System.out.println("Task with "+ taskId + " created.");
-                            break;
-                        case "ASSIGN":
-                            tasksManager.assignTask(Integer.parseInt(command[1]), command[2]);
-                            break;
-                        case "UPDATE_STATUS":
-                            tasksManager.updateStatus(Integer.parseInt(command[1]), TaskStatus.getStatus(command[2]));
-                            break;
-                        case "GET_ASSIGNED_TASKS":
-                            System.out.println("Assigned tasks: " + tasksManager.getAssignedTasks(command[1]));
-                            break;
-                        case "QUIT":
-                            System.out.println("Quitting...");
-                            return;
-                        default:
-                            System.out.println("Usage: CREATE <title> <description>\n<ASSIGN <taskId> <assignee>" +
-                                    "\nUPDATE_STATUS <taskId> <status>\nGET_ASSIGNED_TASKS <username>");
-                    }
+                    System.out.println(execute(tasksManager, command));
                 } catch (Exception e) {
                     System.out.println("Exception while executing command: " + input + " "+ e.getMessage());
                 }
             }
         }
     }
+
+    /**
+     * Runs a script of commands given with <code>--batch</code>, and exits with status 1 if any command failed.
+     * @param args The server address followed by the batch options.
+     * @throws IOException If the script cannot be read.
+     * @throws InterruptedException If the thread is interrupted while the script runs.
+     */
+    private static void runBatch(String[] args) throws IOException, InterruptedException {
+        Path script = null;
+        int concurrency = DEFAULT_CONCURRENCY;
+        boolean verbose = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--batch":
+                    script = i + 1 < args.length ? Path.of(args[++i]) : null;
+                    break;
+                case "--concurrency":
+                    concurrency = i + 1 < args.length ? Integer.parseInt(args[++i]) : 0;
+                    break;
+                case "--verbose":
+                    verbose = true;
+                    break;
+                default:
+                    script = null;
+                    i = args.length;
+            }
+        }
+        if (script == null || concurrency <= 0) {
+            System.out.println(COMMAND_LINE_USAGE);
+            return;
+        }
+        TasksManager tasksManager = StubFactory.create(TasksManager.class, args[0]);
+        int failures = new BatchRunner(tasksManager, concurrency, verbose).run(script);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs one command.
+     * @param tasksManager The task manager to run the command on.
+     * @param command      The words of the command.
+     * @return The output of the command.
+     * @throws IllegalArgumentException If the command is unknown or its arguments are invalid.
+     * @throws RemoteObjectException If the remote call fails.
+     * @throws TaskNotFoundException If the command refers to a task that does not exist.
+     */
+    static String execute(TasksManager tasksManager, String[] command)
+            throws RemoteObjectException, TaskNotFoundException {
+        requireArguments(command, 1);
+        switch (command[0].toUpperCase()) {
+            case "CREATE":
+                requireArguments(command, 2);
+                int taskId = tasksManager.createTask(command[1], command[2]);
+                return "Task with " + taskId + " created.";
+            case "ASSIGN":
+                requireArguments(command, 2);
+                tasksManager.assignTask(Integer.parseInt(command[1]), command[2]);
+                return "Task " + command[1] + " assigned to " + command[2];
+            case "UPDATE_STATUS":
+                requireArguments(command, 2);
+                TaskStatus newStatus = TaskStatus.getStatus(command[2]);
+                tasksManager.updateStatus(Integer.parseInt(command[1]), newStatus);
+                return "Task " + command[1] + " status updated to " + newStatus;
+            case "GET_ASSIGNED_TASKS":
+                return "Assigned tasks: " + tasksManager.getAssignedTasks(command[1]);
+            case "QUERY":
+                requireArguments(command, 2);
+                TaskStatus status = command[2].equalsIgnoreCase("ANY") ? null : TaskStatus.getStatus(command[2]);
+                int cursor = command.length > 3 ? Integer.parseInt(command[3]) : TaskPage.FIRST;
+                int limit = command.length > 4 ? Integer.parseInt(command[4]) : DEFAULT_PAGE_SIZE;
+                return String.valueOf(tasksManager.queryTasks(command[1], status, cursor, limit));
+            default:
+                throw new IllegalArgumentException("Unknown command " + command[0] + "\n" + USAGE);
+        }
+    }
+
+    /**
+     * Checks that a command has at least the given number of arguments.
+     * @param command   The words of the command.
+     * @param arguments The number of arguments.
+     * @throws IllegalArgumentException If the command has fewer arguments.
+     */
+    private static void requireArguments(String[] command, int arguments) {
+        if (command.length <= arguments) {
+            throw new IllegalArgumentException(USAGE);
+        }
+    }
 }
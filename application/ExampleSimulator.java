@@ -133,6 +133,8 @@ public class ExampleSimulator {
         try {
             TasksManager tasksManager = new TasksManagerExecutor();
             Service<TasksManager> service = new Service<>(TasksManager.class, tasksManager, port);
+            // TasksManagerExecutor is thread-safe, so calls need not be serialized.
+            service.setSerializeCalls(false);
             service.start();
             return service;
         } catch (RemoteObjectException e) {
@@ -0,0 +1,244 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * Concurrent map from task id to task, keyed by primitive <code>int</code>.
+ * <p>
+ * A boxed map spends an <code>Integer</code> and an entry node on every task, which at millions
+ * of tasks is a large share of the heap. This map instead keeps the ids and tasks of each entry in
+ * two parallel arrays with open addressing and linear probing, so an entry costs one array slot of
+ * each kind. The map is split into stripes by id hash, each with its own table and lock, so writers
+ * to different stripes do not contend and a resize only copies one stripe.
+ * <p>
+ * Reads are optimistic: they probe the table without locking and only fall back to the read lock
+ * if a writer changed the stripe meanwhile. Entries are never removed, so a probe always ends at
+ * an empty slot.
+ */
+public class IntTaskMap {
+
+    /**
+     * Number of stripes; a power of two.
+     */
+    private static final int STRIPES = 64;
+
+    /**
+     * Number of high hash bits left after selecting the stripe.
+     */
+    private static final int STRIPE_SHIFT = Integer.numberOfLeadingZeros(STRIPES - 1);
+
+    /**
+     * Initial number of slots of each stripe; a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Stripes of the map, selected by the high bits of the id hash.
+     */
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * Constructs an empty map.
+     */
+    public IntTaskMap() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Gets the task with the given id.
+     *
+     * @param id The id of the task.
+     * @return The task, or null if there is none.
+     */
+    public Task get(int id) {
+        int hash = mix(id);
+        Stripe stripe = stripes[hash >>> STRIPE_SHIFT];
+        StampedLock lock = stripe.lock;
+        long stamp = lock.tryOptimisticRead();
+        Task task = stripe.table.find(id, hash);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                task = stripe.table.find(id, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return task;
+    }
+
+    /**
+     * Maps an id to a task, replacing any task with the same id.
+     *
+     * @param id   The id of the task.
+     * @param task The task.
+     * @return The replaced task, or null if there was none.
+     */
+    public Task put(int id, Task task) {
+        int hash = mix(id);
+        Stripe stripe = stripes[hash >>> STRIPE_SHIFT];
+        long stamp = stripe.lock.writeLock();
+        try {
+            return stripe.put(id, hash, task);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Gets the number of tasks in the map.
+     *
+     * @return The number of tasks.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            try {
+                size += stripe.size;
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Passes every task to the given consumer. Each stripe is copied under its lock and the
+     * consumer runs without holding it, so it may use the map and lock tasks.
+     *
+     * @param consumer Receives the tasks.
+     */
+    public void forEach(Consumer<Task> consumer) {
+        for (Stripe stripe : stripes) {
+            List<Task> copy;
+            long stamp = stripe.lock.readLock();
+            try {
+                copy = new ArrayList<>(stripe.size);
+                for (Task task : stripe.table.values) {
+                    if (task != null) {
+                        copy.add(task);
+                    }
+                }
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+            copy.forEach(consumer);
+        }
+    }
+
+    /**
+     * Spreads the bits of an id, so that consecutive ids land in different stripes and slots.
+     *
+     * @param id The id.
+     * @return The hash of the id.
+     */
+    private static int mix(int id) {
+        int hash = id * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Part of the map with its own table and lock.
+     */
+    private static final class Stripe {
+
+        final StampedLock lock = new StampedLock();
+
+        /**
+         * Current table. It is replaced as a whole on resize, so optimistic readers see either
+         * the old or the new arrays, never a mix.
+         */
+        Table table = new Table(INITIAL_CAPACITY);
+
+        int size;
+
+        /**
+         * Inserts or replaces an entry. The caller must hold the write lock.
+         */
+        Task put(int id, int hash, Task task) {
+            Table current = table;
+            int slot = current.slotOf(id, hash);
+            Task previous = current.values[slot];
+            if (previous != null) {
+                current.values[slot] = task;
+                return previous;
+            }
+            // Keep at least a quarter of the slots empty so that probes stay short.
+            if ((size + 1) * 4 > current.keys.length * 3) {
+                current = current.grow();
+                table = current;
+                slot = current.slotOf(id, hash);
+            }
+            current.keys[slot] = id;
+            current.values[slot] = task;
+            size++;
+            return null;
+        }
+    }
+
+    /**
+     * Open-addressing table; a slot is empty while its value is null.
+     */
+    private static final class Table {
+
+        final int[] keys;
+
+        final Task[] values;
+
+        Table(int capacity) {
+            keys = new int[capacity];
+            values = new Task[capacity];
+        }
+
+        /**
+         * Finds the task with the given id. Safe to run concurrently with a writer, in which
+         * case the result is discarded by the caller.
+         */
+        Task find(int id, int hash) {
+            int mask = keys.length - 1;
+            for (int probe = 0, slot = hash & mask; probe <= mask; probe++, slot = (slot + 1) & mask) {
+                Task task = values[slot];
+                if (task == null) {
+                    return null;
+                }
+                if (keys[slot] == id) {
+                    return task;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Finds the slot holding the given id, or the empty slot where it belongs.
+         */
+        int slotOf(int id, int hash) {
+            int mask = keys.length - 1;
+            int slot = hash & mask;
+            while (values[slot] != null && keys[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Copies the entries into a table twice the size.
+         */
+        Table grow() {
+            Table grown = new Table(keys.length * 2);
+            for (int i = 0; i < keys.length; i++) {
+                if (values[i] != null) {
+                    int slot = grown.slotOf(keys[i], mix(keys[i]));
+                    grown.keys[slot] = keys[i];
+                    grown.values[slot] = values[i];
+                }
+            }
+            return grown;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package application;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Append-only region of interned strings held in direct memory.
+ * <p>
+ * Each distinct string is stored once as its UTF-8 bytes preceded by their count, and is named by
+ * a <code>long</code> reference: the chunk number plus one in the high half and the offset in the
+ * chunk in the low half, so that 0 can stand for null. Equal strings get the same reference, so
+ * references can be compared instead of strings. The table finding the reference of a string is
+ * an open-addressing table in direct memory as well, so the region adds no objects to the heap
+ * however many strings it holds.
+ * <p>
+ * Interning is serialized by the region's lock. Reading a string by reference takes no lock; the
+ * caller must have obtained the reference in a way that orders it after the interning, such as
+ * under the lock that guarded storing it.
+ */
+public class OffHeapStrings {
+
+    /**
+     * Size of a chunk of string data, in bytes. Longer strings get a chunk of their own.
+     */
+    private static final int CHUNK_SIZE = 8 << 20;
+
+    /**
+     * Size of a table slot: the reference and the hash of the string.
+     */
+    private static final int SLOT_BYTES = Long.BYTES + Integer.BYTES;
+
+    /**
+     * Initial number of table slots; a power of two.
+     */
+    private static final int INITIAL_SLOTS = 1 << 12;
+
+    /**
+     * Chunks of string data, replaced by a longer copy when a chunk is added.
+     */
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+
+    /**
+     * Position of the next string in the last chunk.
+     */
+    private int position = CHUNK_SIZE;
+
+    /**
+     * Table from string hash to reference.
+     */
+    private ByteBuffer table = ByteBuffer.allocateDirect(INITIAL_SLOTS * SLOT_BYTES);
+
+    /**
+     * Number of table slots.
+     */
+    private int slots = INITIAL_SLOTS;
+
+    /**
+     * Number of distinct strings.
+     */
+    private int count;
+
+    /**
+     * Gets the reference of a string, storing the string if it is not in the region yet.
+     *
+     * @param value The string, or null.
+     * @return The reference of the string, or 0 for null.
+     */
+    public synchronized long intern(String value) {
+        if (value == null) {
+            return 0;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int hash = Arrays.hashCode(bytes);
+        int slot = probe(bytes, hash);
+        long reference = table.getLong(slot * SLOT_BYTES);
+        if (reference != 0) {
+            return reference;
+        }
+        reference = append(bytes);
+        table.putLong(slot * SLOT_BYTES, reference);
+        table.putInt(slot * SLOT_BYTES + Long.BYTES, hash);
+        // Keep the table at most half full so that probes stay short.
+        if (++count * 2 > slots) {
+            grow();
+        }
+        return reference;
+    }
+
+    /**
+     * Gets the reference of a string without storing it.
+     *
+     * @param value The string, or null.
+     * @return The reference of the string, or 0 if it is null or not in the region.
+     */
+    public synchronized long find(String value) {
+        if (value == null) {
+            return 0;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return table.getLong(probe(bytes, Arrays.hashCode(bytes)) * SLOT_BYTES);
+    }
+
+    /**
+     * Reads back a string.
+     *
+     * @param reference The reference of the string, or 0.
+     * @return The string, or null for reference 0.
+     */
+    public String get(long reference) {
+        if (reference == 0) {
+            return null;
+        }
+        ByteBuffer chunk = chunks[(int) (reference >>> 32) - 1];
+        int offset = (int) reference;
+        byte[] bytes = new byte[chunk.getInt(offset)];
+        chunk.get(offset + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the direct memory held by the region.
+     *
+     * @return The capacity of the chunks and the table, in bytes.
+     */
+    public synchronized long capacity() {
+        long capacity = table.capacity();
+        for (ByteBuffer chunk : chunks) {
+            capacity += chunk.capacity();
+        }
+        return capacity;
+    }
+
+    /**
+     * Finds the table slot of a string, or the empty slot where it belongs.
+     *
+     * @param bytes The UTF-8 bytes of the string.
+     * @param hash  The hash of the bytes.
+     * @return The slot.
+     */
+    private int probe(byte[] bytes, int hash) {
+        int mask = slots - 1;
+        int slot = hash & mask;
+        while (true) {
+            long reference = table.getLong(slot * SLOT_BYTES);
+            if (reference == 0
+                    || (table.getInt(slot * SLOT_BYTES + Long.BYTES) == hash && matches(reference, bytes))) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Checks whether the string at a reference has the given bytes.
+     *
+     * @param reference The reference of the stored string.
+     * @param bytes     The bytes to compare with.
+     * @return True if the bytes are equal.
+     */
+    private boolean matches(long reference, byte[] bytes) {
+        ByteBuffer chunk = chunks[(int) (reference >>> 32) - 1];
+        int offset = (int) reference;
+        if (chunk.getInt(offset) != bytes.length) {
+            return false;
+        }
+        offset += Integer.BYTES;
+        for (int i = 0; i < bytes.length; i++) {
+            if (chunk.get(offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies a string into the region.
+     *
+     * @param bytes The UTF-8 bytes of the string.
+     * @return The reference of the copy.
+     */
+    private long append(byte[] bytes) {
+        int size = Integer.BYTES + bytes.length;
+        if (position + size > CHUNK_SIZE) {
+            addChunk(Math.max(CHUNK_SIZE, size));
+        }
+        ByteBuffer chunk = chunks[chunks.length - 1];
+        int offset = position;
+        chunk.putInt(offset, bytes.length);
+        chunk.put(offset + Integer.BYTES, bytes);
+        position += size;
+        if (chunk.capacity() > CHUNK_SIZE) {
+            // A chunk holding one long string is full.
+            position = CHUNK_SIZE;
+        }
+        return ((long) chunks.length << 32) | offset;
+    }
+
+    /**
+     * Starts a new chunk.
+     *
+     * @param capacity The size of the chunk, in bytes.
+     */
+    private void addChunk(int capacity) {
+        ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+        grown[chunks.length] = ByteBuffer.allocateDirect(capacity);
+        chunks = grown;
+        position = 0;
+    }
+
+    /**
+     * Doubles the table.
+     */
+    private void grow() {
+        int grownSlots = slots * 2;
+        ByteBuffer grown = ByteBuffer.allocateDirect(grownSlots * SLOT_BYTES);
+        int mask = grownSlots - 1;
+        for (int i = 0; i < slots; i++) {
+            long reference = table.getLong(i * SLOT_BYTES);
+            if (reference == 0) {
+                continue;
+            }
+            int hash = table.getInt(i * SLOT_BYTES + Long.BYTES);
+            int slot = hash & mask;
+            while (grown.getLong(slot * SLOT_BYTES) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            grown.putLong(slot * SLOT_BYTES, reference);
+            grown.putInt(slot * SLOT_BYTES + Long.BYTES, hash);
+        }
+        table = grown;
+        slots = grownSlots;
+    }
+}
@@ -0,0 +1,489 @@
+package application;
+
+import remote.RemoteObjectException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Task Manager implementation keeping its tasks outside the Java heap.
+ * <p>
+ * Each task is a fixed-size record in direct memory, addressed by its id, holding its status and
+ * references into an <code>OffHeapStrings</code> region for its title, description and assignee.
+ * The heap only holds the chunk buffers, so heap size and garbage collection work stay flat as the
+ * number of tasks grows; <code>Task</code> objects are only built for the tasks in a response.
+ * The process needs enough direct memory for the records and strings, see
+ * <code>-XX:MaxDirectMemorySize</code>.
+ * <p>
+ * Records are guarded by striped locks. Assignees are interned, and the ids of assigned tasks are
+ * indexed by the reference of their assignee, and by it and their status, like
+ * <code>TasksManagerExecutor</code> indexes them by assignee. A query thus only reads the records
+ * it returns, at the cost of the heap holding the ids of assigned tasks; unassigned tasks cost no
+ * heap. Titles and descriptions are likewise kept in a <code>TaskSearchIndex</code> for
+ * <code>searchTasks</code>, whose posting lists hold a few bytes per word of each task.
+ */
+public class OffHeapTasksManager implements TasksManager {
+
+    /**
+     * Size of a task record, in bytes.
+     */
+    private static final int RECORD_BYTES = 32;
+
+    /**
+     * Offset of the flag telling that the record holds a task.
+     */
+    private static final int PRESENT = 0;
+
+    /**
+     * Offset of the status ordinal.
+     */
+    private static final int STATUS = 1;
+
+    /**
+     * Offset of the assignee reference.
+     */
+    private static final int ASSIGNEE = 8;
+
+    /**
+     * Offset of the title reference.
+     */
+    private static final int TITLE = 16;
+
+    /**
+     * Offset of the description reference.
+     */
+    private static final int DESCRIPTION = 24;
+
+    /**
+     * Number of bits of a task id selecting its record within a chunk.
+     */
+    private static final int CHUNK_BITS = 16;
+
+    /**
+     * Number of records in a chunk.
+     */
+    private static final int RECORDS_PER_CHUNK = 1 << CHUNK_BITS;
+
+    /**
+     * Number of locks guarding the records; a power of two.
+     */
+    private static final int LOCK_STRIPES = 256;
+
+    /**
+     * Chunks of task records, allocated when the first of their ids is generated.
+     */
+    private final AtomicReferenceArray<ByteBuffer> records =
+            new AtomicReferenceArray<>((Integer.MAX_VALUE >>> CHUNK_BITS) + 1);
+
+    /**
+     * Locks guarding the records, selected by task id.
+     */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /**
+     * Interned titles, descriptions and assignees.
+     */
+    private final OffHeapStrings strings = new OffHeapStrings();
+
+    /**
+     * Index from the reference of an assignee, and from it and a status, to the ids of the
+     * matching tasks. Keys are built by <code>indexKey</code>.
+     */
+    private final ConcurrentHashMap<Long, ConcurrentSkipListSet<Integer>> assigneeIndex = new ConcurrentHashMap<>();
+
+    /**
+     * Full-text index over the titles and descriptions of the tasks.
+     */
+    private final TaskSearchIndex searchIndex = new TaskSearchIndex();
+
+    /**
+     * Incrementer to generate the task id.
+     */
+    private final AtomicInteger taskIdIncrementer = new AtomicInteger();
+
+    /**
+     * Feed receiving every change to the tasks.
+     */
+    private final TaskChangeFeed changes = new TaskChangeFeed();
+
+    /**
+     * Constructs an empty store.
+     */
+    public OffHeapTasksManager() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public int createTask(String title, String description) throws RemoteObjectException {
+        long titleReference = strings.intern(title);
+        long descriptionReference = strings.intern(description);
+        int id = taskIdIncrementer.incrementAndGet();
+        ByteBuffer chunk = chunkOf(id);
+        int offset = offsetOf(id);
+        synchronized (lockOf(id)) {
+            chunk.putLong(offset + TITLE, titleReference);
+            chunk.putLong(offset + DESCRIPTION, descriptionReference);
+            chunk.putLong(offset + ASSIGNEE, 0);
+            chunk.put(offset + STATUS, (byte) TaskStatus.OPEN.ordinal());
+            chunk.put(offset + PRESENT, (byte) 1);
+            changes.publish(read(id, chunk, offset), null, null);
+        }
+        searchIndex.add(id, title, description);
+        return id;
+    }
+
+    @Override
+    public void assignTask(int id, String assignee) throws RemoteObjectException, TaskNotFoundException {
+        long assigneeReference = strings.intern(assignee);
+        ByteBuffer chunk = existingChunkOf(id);
+        int offset = offsetOf(id);
+        synchronized (lockOf(id)) {
+            checkPresent(chunk, offset);
+            long previous = chunk.getLong(offset + ASSIGNEE);
+            TaskStatus status = TaskStatus.values()[chunk.get(offset + STATUS)];
+            chunk.putLong(offset + ASSIGNEE, assigneeReference);
+            // Moving the id between index entries under the lock leaves it indexed under the
+            // final assignee only when the task is assigned concurrently.
+            unindex(previous, status, id);
+            index(assigneeReference, status, id);
+            Task task = read(id, chunk, offset);
+            changes.publish(task, strings.get(previous), task.getStatus());
+        }
+    }
+
+    @Override
+    public void updateStatus(int id, TaskStatus status) throws RemoteObjectException, TaskNotFoundException {
+        ByteBuffer chunk = existingChunkOf(id);
+        int offset = offsetOf(id);
+        synchronized (lockOf(id)) {
+            checkPresent(chunk, offset);
+            TaskStatus previous = TaskStatus.values()[chunk.get(offset + STATUS)];
+            chunk.put(offset + STATUS, (byte) status.ordinal());
+            long assigneeReference = chunk.getLong(offset + ASSIGNEE);
+            if (assigneeReference != 0 && previous != status) {
+                removeFromIndex(indexKey(assigneeReference, previous), id);
+                addToIndex(indexKey(assigneeReference, status), id);
+            }
+            Task task = read(id, chunk, offset);
+            changes.publish(task, task.getAssignee(), previous);
+        }
+    }
+
+    @Override
+    public List<Task> getAssignedTasks(String assignee) throws RemoteObjectException {
+        List<Task> assigned = new ArrayList<>();
+        scan(assignee, null, 0, Integer.MAX_VALUE, assigned);
+        return assigned;
+    }
+
+    @Override
+    public TaskPage queryTasks(String assignee, TaskStatus status, int cursor, int limit) throws RemoteObjectException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The page limit must be positive");
+        }
+        if (cursor == TaskPage.END) {
+            return new TaskPage(List.of(), TaskPage.END);
+        }
+        List<Task> page = new ArrayList<>();
+        // Looking for one task more than the limit tells whether another page follows.
+        scan(assignee, status, cursor, limit + 1, page);
+        if (page.size() <= limit) {
+            return new TaskPage(page, TaskPage.END);
+        }
+        page.remove(limit);
+        return new TaskPage(page, page.get(limit - 1).getId());
+    }
+
+    @Override
+    public int[] createTasks(List<String> titles, List<String> descriptions) throws RemoteObjectException {
+        BulkResult.requireSameSize(titles.size(), descriptions.size());
+        int[] ids = new int[titles.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = createTask(titles.get(i), descriptions.get(i));
+        }
+        return ids;
+    }
+
+    @Override
+    public BulkResult assignTasks(int[] ids, List<String> assignees) throws RemoteObjectException {
+        BulkResult.requireSameSize(ids.length, assignees.size());
+        String[] errors = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            try {
+                assignTask(ids[i], assignees.get(i));
+            } catch (TaskNotFoundException e) {
+                errors[i] = e.getMessage();
+            }
+        }
+        return new BulkResult(errors);
+    }
+
+    @Override
+    public BulkResult updateStatuses(int[] ids, List<TaskStatus> statuses) throws RemoteObjectException {
+        BulkResult.requireSameSize(ids.length, statuses.size());
+        String[] errors = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            try {
+                updateStatus(ids[i], statuses.get(i));
+            } catch (TaskNotFoundException e) {
+                errors[i] = e.getMessage();
+            }
+        }
+        return new BulkResult(errors);
+    }
+
+    @Override
+    public List<Task> getTasks(int[] ids) throws RemoteObjectException {
+        List<Task> found = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            ByteBuffer chunk = id > 0 ? records.get(id >>> CHUNK_BITS) : null;
+            Task task = null;
+            if (chunk != null) {
+                int offset = offsetOf(id);
+                synchronized (lockOf(id)) {
+                    if (chunk.get(offset + PRESENT) != 0) {
+                        task = read(id, chunk, offset);
+                    }
+                }
+            }
+            found.add(task);
+        }
+        return found;
+    }
+
+    @Override
+    public TaskChangeBatch pollChanges(String assignee, TaskStatus status, long afterSequence, long maxWaitMillis)
+            throws RemoteObjectException {
+        try {
+            return changes.poll(assignee, status, afterSequence, maxWaitMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteObjectException("Interrupted while waiting for task changes.", e);
+        }
+    }
+
+    @Override
+    public List<Task> searchTasks(String query, int limit) throws RemoteObjectException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The search limit must be positive");
+        }
+        return getTasks(searchIndex.search(query, limit));
+    }
+
+    /**
+     * Gets the direct memory held by the records and strings.
+     *
+     * @return The direct memory in use, in bytes.
+     */
+    public long offHeapBytes() {
+        long bytes = strings.capacity();
+        int chunks = (taskIdIncrementer.get() >>> CHUNK_BITS) + 1;
+        for (int i = 0; i < chunks; i++) {
+            if (records.get(i) != null) {
+                bytes += records.get(i).capacity();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Collects the tasks of an assignee after a cursor, in id order. The ids come from the index,
+     * and each record is checked again under its lock, since the task may have been reassigned or
+     * updated after the index was read.
+     *
+     * @param assignee The assignee of the tasks.
+     * @param status   The status of the tasks, or null for any status.
+     * @param cursor   The id after which to start.
+     * @param limit    The largest number of tasks to collect.
+     * @param found    Receives the tasks.
+     */
+    private void scan(String assignee, TaskStatus status, int cursor, int limit, List<Task> found) {
+        long assigneeReference = strings.find(assignee);
+        ConcurrentSkipListSet<Integer> ids =
+                assigneeReference == 0 ? null : assigneeIndex.get(indexKey(assigneeReference, status));
+        if (ids == null) {
+            return;
+        }
+        for (int id : ids.tailSet(Math.max(cursor, 0), false)) {
+            if (found.size() >= limit) {
+                return;
+            }
+            ByteBuffer chunk = records.get(id >>> CHUNK_BITS);
+            int offset = offsetOf(id);
+            synchronized (lockOf(id)) {
+                if (matches(chunk, offset, assigneeReference, status)) {
+                    found.add(read(id, chunk, offset));
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a task id to the index entries of an assignee. The caller must hold the lock of the id.
+     *
+     * @param assigneeReference The reference of the assignee, or 0 for unassigned tasks.
+     * @param status            The status of the task.
+     * @param id                The id of the task.
+     */
+    private void index(long assigneeReference, TaskStatus status, int id) {
+        if (assigneeReference != 0) {
+            addToIndex(indexKey(assigneeReference, null), id);
+            addToIndex(indexKey(assigneeReference, status), id);
+        }
+    }
+
+    /**
+     * Removes a task id from the index entries of an assignee. The caller must hold the lock of the id.
+     *
+     * @param assigneeReference The reference of the assignee, or 0 for unassigned tasks.
+     * @param status            The status of the task.
+     * @param id                The id of the task.
+     */
+    private void unindex(long assigneeReference, TaskStatus status, int id) {
+        if (assigneeReference != 0) {
+            removeFromIndex(indexKey(assigneeReference, null), id);
+            removeFromIndex(indexKey(assigneeReference, status), id);
+        }
+    }
+
+    /**
+     * Adds a task id to an index entry.
+     *
+     * @param key The key of the entry.
+     * @param id  The id of the task.
+     */
+    private void addToIndex(long key, int id) {
+        assigneeIndex.compute(key, (k, ids) -> {
+            ConcurrentSkipListSet<Integer> indexed = ids == null ? new ConcurrentSkipListSet<>() : ids;
+            indexed.add(id);
+            return indexed;
+        });
+    }
+
+    /**
+     * Removes a task id from an index entry, dropping the entry once it is empty.
+     *
+     * @param key The key of the entry.
+     * @param id  The id of the task.
+     */
+    private void removeFromIndex(long key, int id) {
+        assigneeIndex.computeIfPresent(key, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    /**
+     * Gets the key of an index entry. String references leave their two top bits clear, which
+     * leaves room for the status.
+     *
+     * @param assigneeReference The reference of the assignee.
+     * @param status            The status, or null for tasks of any status.
+     * @return The key.
+     */
+    private static long indexKey(long assigneeReference, TaskStatus status) {
+        return (assigneeReference << 2) | (status == null ? 3 : status.ordinal());
+    }
+
+    /**
+     * Checks whether a record holds a task of the given assignee and status.
+     *
+     * @param chunk             The chunk holding the record.
+     * @param offset            The offset of the record.
+     * @param assigneeReference The reference of the assignee.
+     * @param status            The status, or null for any status.
+     * @return True if the record matches.
+     */
+    private static boolean matches(ByteBuffer chunk, int offset, long assigneeReference, TaskStatus status) {
+        return chunk.get(offset + PRESENT) != 0
+                && chunk.getLong(offset + ASSIGNEE) == assigneeReference
+                && (status == null || chunk.get(offset + STATUS) == status.ordinal());
+    }
+
+    /**
+     * Builds a task from its record. The caller must hold the lock of the record.
+     *
+     * @param id     The id of the task.
+     * @param chunk  The chunk holding the record.
+     * @param offset The offset of the record.
+     * @return The task.
+     */
+    private Task read(int id, ByteBuffer chunk, int offset) {
+        return new Task(id,
+                strings.get(chunk.getLong(offset + TITLE)),
+                strings.get(chunk.getLong(offset + DESCRIPTION)),
+                TaskStatus.values()[chunk.get(offset + STATUS)],
+                strings.get(chunk.getLong(offset + ASSIGNEE)));
+    }
+
+    /**
+     * Gets the chunk holding the record of an id, allocating it if needed.
+     *
+     * @param id The task id.
+     * @return The chunk.
+     */
+    private ByteBuffer chunkOf(int id) {
+        int index = id >>> CHUNK_BITS;
+        ByteBuffer chunk = records.get(index);
+        if (chunk == null) {
+            records.compareAndSet(index, null, ByteBuffer.allocateDirect(RECORDS_PER_CHUNK * RECORD_BYTES));
+            chunk = records.get(index);
+        }
+        return chunk;
+    }
+
+    /**
+     * Gets the chunk holding the record of an existing task.
+     *
+     * @param id The task id.
+     * @return The chunk.
+     * @throws TaskNotFoundException If no task can have the id.
+     */
+    private ByteBuffer existingChunkOf(int id) throws TaskNotFoundException {
+        ByteBuffer chunk = id > 0 ? records.get(id >>> CHUNK_BITS) : null;
+        if (chunk == null) {
+            throw new TaskNotFoundException("Task not found");
+        }
+        return chunk;
+    }
+
+    /**
+     * Checks that a record holds a task. The caller must hold the lock of the record.
+     *
+     * @param chunk  The chunk holding the record.
+     * @param offset The offset of the record.
+     * @throws TaskNotFoundException If the record is empty.
+     */
+    private static void checkPresent(ByteBuffer chunk, int offset) throws TaskNotFoundException {
+        if (chunk.get(offset + PRESENT) == 0) {
+            throw new TaskNotFoundException("Task not found");
+        }
+    }
+
+    /**
+     * Gets the offset of the record of an id in its chunk.
+     *
+     * @param id The task id.
+     * @return The offset, in bytes.
+     */
+    private static int offsetOf(int id) {
+        return (id & (RECORDS_PER_CHUNK - 1)) * RECORD_BYTES;
+    }
+
+    /**
+     * Gets the lock guarding the record of an id.
+     *
+     * @param id The task id.
+     * @return The lock.
+     */
+    private Object lockOf(int id) {
+        return locks[id & (LOCK_STRIPES - 1)];
+    }
+}
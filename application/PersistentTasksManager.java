@@ -0,0 +1,416 @@
+package application;
+
+import remote.RemoteObjectException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Task Manager implementation that keeps its state across restarts.
+ * <p>
+ * Tasks are served from an in-memory <code>TasksManagerExecutor</code>. Every mutation is
+ * applied to it and appended to a <code>TaskLog</code> in the same order, and a call only
+ * returns once its log record is on disk. Concurrent calls share fsyncs through the log's
+ * group commit, so durability does not limit writes to one fsync per call.
+ * <p>
+ * The log is split into numbered generations. A snapshot switches appends to a new generation,
+ * writes all tasks to a <code>TaskSnapshot</code> while calls keep running, and then deletes
+ * the generations it covers. Because every log record sets complete field values, replaying
+ * the newer generations over a snapshot taken during concurrent updates yields the current
+ * state. On construction the latest snapshot is loaded and only the newer generations are
+ * replayed, so restart time follows the live data size rather than the total history.
+ */
+public class PersistentTasksManager implements TasksManager, Closeable {
+
+    /**
+     * Default interval between periodic snapshots, in seconds.
+     */
+    public static final long DEFAULT_SNAPSHOT_INTERVAL_SECONDS = 300;
+
+    /**
+     * Name of the snapshot file in the data directory.
+     */
+    private static final String SNAPSHOT_FILE = "tasks.snapshot";
+
+    /**
+     * Prefix of log file names; the generation number and suffix follow.
+     */
+    private static final String LOG_PREFIX = "tasks-";
+
+    /**
+     * Suffix of log file names.
+     */
+    private static final String LOG_SUFFIX = ".log";
+
+    /**
+     * Directory holding the snapshot and the log generations.
+     */
+    private final Path directory;
+
+    /**
+     * In-memory state, rebuilt from the snapshot and log on startup.
+     */
+    private final TasksManagerExecutor executor;
+
+    /**
+     * Lock ordering mutations, so that the log records them in the order they were applied.
+     * It also guards switching to a new log generation.
+     */
+    private final Object sequencer = new Object();
+
+    /**
+     * Lock allowing only one snapshot at a time.
+     */
+    private final Object snapshotLock = new Object();
+
+    /**
+     * Write-ahead log of the current generation.
+     */
+    private TaskLog log;
+
+    /**
+     * Number of the current log generation.
+     */
+    private long generation;
+
+    /**
+     * Scheduler taking periodic snapshots, or null if they are disabled.
+     */
+    private final ScheduledExecutorService snapshotScheduler;
+
+    /**
+     * Constructs a task manager persisting to the given directory, taking a snapshot every
+     * <code>DEFAULT_SNAPSHOT_INTERVAL_SECONDS</code>.
+     *
+     * @param directory The data directory, created if it does not exist.
+     * @throws IOException If the persisted state cannot be read or the log cannot be opened.
+     */
+    public PersistentTasksManager(Path directory) throws IOException {
+        this(directory, DEFAULT_SNAPSHOT_INTERVAL_SECONDS);
+    }
+
+    /**
+     * Constructs a task manager persisting to the given directory, recovering the state it
+     * already holds.
+     *
+     * @param directory               The data directory, created if it does not exist.
+     * @param snapshotIntervalSeconds The interval between periodic snapshots, or 0 to take
+     *                                snapshots only when <code>snapshot</code> is called.
+     * @throws IOException If the persisted state cannot be read or the log cannot be opened.
+     */
+    public PersistentTasksManager(Path directory, long snapshotIntervalSeconds) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        executor = new TasksManagerExecutor();
+
+        long firstGeneration = 0;
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshotFile)) {
+            TaskSnapshot.Header header = TaskSnapshot.load(snapshotFile, task -> executor.restoreTask(
+                    task.getId(), task.getTitle(), task.getDescription(), task.getStatus(), task.getAssignee()));
+            executor.reserveIds(header.getMaxId());
+            firstGeneration = header.getGeneration();
+        }
+
+        long current = firstGeneration;
+        long validBytes = 0;
+        for (var entry : logGenerations().entrySet()) {
+            if (entry.getKey() < firstGeneration) {
+                // Left over from a snapshot that finished before its cleanup did.
+                Files.delete(entry.getValue());
+                continue;
+            }
+            try {
+                validBytes = TaskLog.replay(entry.getValue(), this::replay);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            current = entry.getKey();
+        }
+        generation = current;
+        log = new TaskLog(logFile(current), validBytes);
+
+        if (snapshotIntervalSeconds > 0) {
+            snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "task-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotScheduler.scheduleWithFixedDelay(this::periodicSnapshot,
+                    snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            snapshotScheduler = null;
+        }
+    }
+
+    @Override
+    public int createTask(String title, String description) throws RemoteObjectException {
+        int id;
+        TaskLog target;
+        long sequence;
+        synchronized (sequencer) {
+            id = executor.createTask(title, description);
+            target = log;
+            sequence = append(target, TaskMutation.create(id, title, description));
+        }
+        awaitDurable(target, sequence);
+        return id;
+    }
+
+    @Override
+    public void assignTask(int id, String assignee) throws RemoteObjectException, TaskNotFoundException {
+        TaskLog target;
+        long sequence;
+        synchronized (sequencer) {
+            executor.assignTask(id, assignee);
+            target = log;
+            sequence = append(target, TaskMutation.assign(id, assignee));
+        }
+        awaitDurable(target, sequence);
+    }
+
+    @Override
+    public void updateStatus(int id, TaskStatus status) throws RemoteObjectException, TaskNotFoundException {
+        TaskLog target;
+        long sequence;
+        synchronized (sequencer) {
+            executor.updateStatus(id, status);
+            target = log;
+            sequence = append(target, TaskMutation.updateStatus(id, status));
+        }
+        awaitDurable(target, sequence);
+    }
+
+    @Override
+    public List<Task> getAssignedTasks(String assignee) throws RemoteObjectException {
+        return executor.getAssignedTasks(assignee);
+    }
+
+    @Override
+    public TaskPage queryTasks(String assignee, TaskStatus status, int cursor, int limit) throws RemoteObjectException {
+        return executor.queryTasks(assignee, status, cursor, limit);
+    }
+
+    @Override
+    public int[] createTasks(List<String> titles, List<String> descriptions) throws RemoteObjectException {
+        BulkResult.requireSameSize(titles.size(), descriptions.size());
+        int[] ids = new int[titles.size()];
+        TaskLog target;
+        long sequence = 0;
+        synchronized (sequencer) {
+            target = log;
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = executor.createTask(titles.get(i), descriptions.get(i));
+                sequence = append(target, TaskMutation.create(ids[i], titles.get(i), descriptions.get(i)));
+            }
+        }
+        // The whole batch becomes durable with the fsync covering its last record.
+        awaitDurable(target, sequence);
+        return ids;
+    }
+
+    @Override
+    public BulkResult assignTasks(int[] ids, List<String> assignees) throws RemoteObjectException {
+        BulkResult.requireSameSize(ids.length, assignees.size());
+        String[] errors = new String[ids.length];
+        TaskLog target;
+        long sequence = 0;
+        synchronized (sequencer) {
+            target = log;
+            for (int i = 0; i < ids.length; i++) {
+                try {
+                    executor.assignTask(ids[i], assignees.get(i));
+                    sequence = append(target, TaskMutation.assign(ids[i], assignees.get(i)));
+                } catch (TaskNotFoundException e) {
+                    errors[i] = e.getMessage();
+                }
+            }
+        }
+        awaitDurable(target, sequence);
+        return new BulkResult(errors);
+    }
+
+    @Override
+    public BulkResult updateStatuses(int[] ids, List<TaskStatus> statuses) throws RemoteObjectException {
+        BulkResult.requireSameSize(ids.length, statuses.size());
+        String[] errors = new String[ids.length];
+        TaskLog target;
+        long sequence = 0;
+        synchronized (sequencer) {
+            target = log;
+            for (int i = 0; i < ids.length; i++) {
+                try {
+                    executor.updateStatus(ids[i], statuses.get(i));
+                    sequence = append(target, TaskMutation.updateStatus(ids[i], statuses.get(i)));
+                } catch (TaskNotFoundException e) {
+                    errors[i] = e.getMessage();
+                }
+            }
+        }
+        awaitDurable(target, sequence);
+        return new BulkResult(errors);
+    }
+
+    @Override
+    public List<Task> getTasks(int[] ids) throws RemoteObjectException {
+        return executor.getTasks(ids);
+    }
+
+    @Override
+    public TaskChangeBatch pollChanges(String assignee, TaskStatus status, long afterSequence, long maxWaitMillis)
+            throws RemoteObjectException {
+        return executor.pollChanges(assignee, status, afterSequence, maxWaitMillis);
+    }
+
+    @Override
+    public List<Task> searchTasks(String query, int limit) throws RemoteObjectException {
+        return executor.searchTasks(query, limit);
+    }
+
+    /**
+     * Writes a snapshot of all tasks and deletes the log generations it covers.
+     * <p>
+     * Calls are only held up while the log switches to a new generation; the tasks are
+     * written while calls continue.
+     *
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            TaskLog previous;
+            long covered;
+            synchronized (sequencer) {
+                covered = generation + 1;
+                TaskLog next = new TaskLog(logFile(covered), 0);
+                previous = log;
+                log = next;
+                generation = covered;
+            }
+            // Waiters on the previous generation are released once it is flushed.
+            previous.close();
+
+            TaskSnapshot.write(directory.resolve(SNAPSHOT_FILE), covered, executor::forEachTask, executor::maxId);
+            for (var entry : logGenerations().headMap(covered).entrySet()) {
+                Files.deleteIfExists(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Stops periodic snapshots, then flushes and closes the log.
+     *
+     * @throws IOException If the log cannot be flushed or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdown();
+        }
+        synchronized (snapshotLock) {
+            synchronized (sequencer) {
+                log.close();
+            }
+        }
+    }
+
+    /**
+     * Takes a scheduled snapshot if anything was logged since the previous one.
+     */
+    private void periodicSnapshot() {
+        try {
+            TaskLog current;
+            synchronized (sequencer) {
+                current = log;
+            }
+            if (current.getAppendedSequence() > 0) {
+                snapshot();
+            }
+        } catch (IOException e) {
+            System.out.println("Error taking task snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lists the log files in the data directory by generation.
+     *
+     * @return The log files, ordered by generation.
+     * @throws IOException If the directory cannot be listed.
+     */
+    private TreeMap<Long, Path> logGenerations() throws IOException {
+        TreeMap<Long, Path> generations = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, LOG_PREFIX + "*" + LOG_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    generations.put(Long.parseLong(name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    // Not a log generation.
+                }
+            }
+        }
+        return generations;
+    }
+
+    /**
+     * Gets the log file of a generation.
+     *
+     * @param generation The generation.
+     * @return The log file.
+     */
+    private Path logFile(long generation) {
+        return directory.resolve(LOG_PREFIX + generation + LOG_SUFFIX);
+    }
+
+    /**
+     * Applies a mutation read back from the log.
+     *
+     * @param mutation The mutation to apply.
+     */
+    private void replay(TaskMutation mutation) {
+        try {
+            mutation.applyTo(executor);
+        } catch (TaskNotFoundException e) {
+            throw new UncheckedIOException(new IOException("Log refers to unknown task " + mutation.getId(), e));
+        }
+    }
+
+    /**
+     * Appends a mutation to a log.
+     *
+     * @param target   The log to append to.
+     * @param mutation The mutation to append.
+     * @return The sequence number of the log record.
+     * @throws RemoteObjectException If the log cannot be written.
+     */
+    private static long append(TaskLog target, TaskMutation mutation) throws RemoteObjectException {
+        try {
+            return target.append(mutation);
+        } catch (IOException e) {
+            throw new RemoteObjectException("Unable to log task mutation.", e);
+        }
+    }
+
+    /**
+     * Waits until a log record is durable.
+     *
+     * @param target   The log holding the record.
+     * @param sequence The sequence number of the log record.
+     * @throws RemoteObjectException If the record cannot be made durable.
+     */
+    private static void awaitDurable(TaskLog target, long sequence) throws RemoteObjectException {
+        try {
+            target.awaitDurable(sequence);
+        } catch (IOException e) {
+            throw new RemoteObjectException("Unable to persist task mutation.", e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package application;
+
+import remote.RemoteObjectException;
+import remote.StubFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client-side view of a replicated task server.
+ * <p>
+ * Writes go to the primary, while reads are spread round-robin over all replicas, so read
+ * capacity grows with the number of backups. Reads from a backup may lag behind the primary
+ * by the mutations that have not been replicated yet.
+ */
+public class ReplicaSetClient implements TasksManager {
+
+    /**
+     * Stub of the primary.
+     */
+    private final TasksManager primary;
+
+    /**
+     * Stubs of all replicas, including the primary.
+     */
+    private final List<TasksManager> readers;
+
+    /**
+     * Counter choosing the replica for the next read.
+     */
+    private final AtomicInteger nextReader = new AtomicInteger();
+
+    /**
+     * Constructs a client for a replica set.
+     *
+     * @param primaryAddress  The address of the primary's <code>TasksManager</code> service.
+     * @param backupAddresses The addresses of the backups' <code>TasksManager</code> services.
+     */
+    public ReplicaSetClient(String primaryAddress, List<String> backupAddresses) {
+        primary = StubFactory.create(TasksManager.class, primaryAddress);
+        readers = new ArrayList<>();
+        readers.add(primary);
+        for (String address : backupAddresses) {
+            readers.add(StubFactory.create(TasksManager.class, address));
+        }
+    }
+
+    @Override
+    public int createTask(String title, String description) throws RemoteObjectException {
+        return primary.createTask(title, description);
+    }
+
+    @Override
+    public void assignTask(int id, String assignee) throws RemoteObjectException, TaskNotFoundException {
+        primary.assignTask(id, assignee);
+    }
+
+    @Override
+    public void updateStatus(int id, TaskStatus status) throws RemoteObjectException, TaskNotFoundException {
+        primary.updateStatus(id, status);
+    }
+
+    @Override
+    public List<Task> getAssignedTasks(String assignee) throws RemoteObjectException {
+        return reader().getAssignedTasks(assignee);
+    }
+
+    @Override
+    public TaskPage queryTasks(String assignee, TaskStatus status, int cursor, int limit) throws RemoteObjectException {
+        return reader().queryTasks(assignee, status, cursor, limit);
+    }
+
+    @Override
+    public int[] createTasks(List<String> titles, List<String> descriptions) throws RemoteObjectException {
+        return primary.createTasks(titles, descriptions);
+    }
+
+    @Override
+    public BulkResult assignTasks(int[] ids, List<String> assignees) throws RemoteObjectException {
+        return primary.assignTasks(ids, assignees);
+    }
+
+    @Override
+    public BulkResult updateStatuses(int[] ids, List<TaskStatus> statuses) throws RemoteObjectException {
+        return primary.updateStatuses(ids, statuses);
+    }
+
+    @Override
+    public List<Task> getTasks(int[] ids) throws RemoteObjectException {
+        return reader().getTasks(ids);
+    }
+
+    @Override
+    public TaskChangeBatch pollChanges(String assignee, TaskStatus status, long afterSequence, long maxWaitMillis)
+            throws RemoteObjectException {
+        // Sequence numbers are per replica, so a subscriber has to stay on one of them.
+        return primary.pollChanges(assignee, status, afterSequence, maxWaitMillis);
+    }
+
+    @Override
+    public List<Task> searchTasks(String query, int limit) throws RemoteObjectException {
+        return reader().searchTasks(query, limit);
+    }
+
+    /**
+     * Chooses the replica serving the next read.
+     *
+     * @return The stub of the replica.
+     */
+    private TasksManager reader() {
+        return readers.get(Math.floorMod(nextReader.getAndIncrement(), readers.size()));
+    }
+}
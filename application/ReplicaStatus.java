@@ -0,0 +1,83 @@
+package application;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Role, epoch and sequence number of a replica, as reported to its peers through
+ * <code>TasksReplica.status</code>.
+ */
+public class ReplicaStatus implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L; // UID for serialization
+
+    /**
+     * Role of the replica.
+     */
+    private final ReplicatedTasksManager.Role role;
+
+    /**
+     * Epoch of the replica while it is primary, otherwise that of the primary it follows.
+     */
+    private final long epoch;
+
+    /**
+     * Sequence number of the last mutation applied by the replica.
+     */
+    private final long sequence;
+
+    /**
+     * Constructs a status.
+     *
+     * @param role     The role of the replica.
+     * @param epoch    The epoch of the replica while it is primary, otherwise that of the primary it follows.
+     * @param sequence The sequence number of the last mutation applied by the replica.
+     */
+    public ReplicaStatus(ReplicatedTasksManager.Role role, long epoch, long sequence) {
+        this.role = role;
+        this.epoch = epoch;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Gets the role of the replica.
+     *
+     * @return The role.
+     */
+    public ReplicatedTasksManager.Role getRole() {
+        return role;
+    }
+
+    /**
+     * Gets the epoch of the replica while it is primary, otherwise that of the primary it follows.
+     *
+     * @return The epoch.
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Gets the sequence number of the last mutation applied by the replica.
+     *
+     * @return The sequence number.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns a string representation of the status.
+     *
+     * @return A string representation of the status.
+     */
+    @Override
+    public String toString() {
+        return "ReplicaStatus{" +
+                "role=" + role +
+                ", epoch=" + epoch +
+                ", sequence=" + sequence +
+                '}';
+    }
+}
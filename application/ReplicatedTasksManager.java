@@ -0,0 +1,758 @@
+package application;
+
+import remote.Log;
+import remote.RemoteObjectException;
+import remote.StubFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Task Manager implementation taking part in primary-backup replication.
+ * <p>
+ * A primary applies each mutation locally, numbers it and queues it for every backup. One
+ * thread per backup sends the queued mutations in batches through a <code>TasksReplica</code>
+ * stub, so replication uses the same remote library as the clients. In <code>ASYNC</code> mode
+ * a write returns once it is applied locally; in <code>SEMI_SYNC</code> mode it also waits until
+ * at least one backup has applied it, falling back to asynchronous behaviour after a timeout.
+ * <p>
+ * A backup serves reads from its copy and rejects writes until it is promoted. Clients can
+ * therefore spread reads over all replicas, for example through <code>ReplicaSetClient</code>.
+ * Backups that fall behind the mutations still queued for them, such as a restarted backup,
+ * receive a full state transfer first.
+ * <p>
+ * Epochs start from the clock. A replica started as primary first asks its peers for their
+ * status: if one of them is primary, it joins as a backup; otherwise it takes an epoch above
+ * every epoch its peers have seen, and transfers its whole state to every backup. A restarted
+ * primary has lost its mutations, so backups holding more of them must not take its new ones
+ * for duplicates; the transfer makes them all equal to the primary again.
+ * <p>
+ * Each link keeps at most <code>maxQueued</code> mutations for its backup; a backup further
+ * behind receives the whole state instead once it is reachable again. Links also ask their
+ * backups for their status when idle or after a failed call, and transfer the state to a backup
+ * that restarted since. A primary learning of a higher
+ * epoch, such as an old primary returning after a backup was promoted in its absence, steps
+ * down to backup: it rejects writes from then on, fails the semi-synchronous writes still
+ * waiting, and receives the state of the new primary.
+ */
+public class ReplicatedTasksManager implements TasksManager, TasksReplica {
+
+    /**
+     * Replication modes of a primary.
+     */
+    public enum Mode {
+        /** Writes return once applied on the primary. */
+        ASYNC,
+        /** Writes also wait until at least one backup has applied them. */
+        SEMI_SYNC
+    }
+
+    /**
+     * Roles of a replica.
+     */
+    public enum Role {
+        PRIMARY,
+        BACKUP
+    }
+
+    /**
+     * Log of the replica and its replication links.
+     */
+    private static final Log LOG = Log.get(ReplicatedTasksManager.class);
+
+    /**
+     * Maximum number of mutations sent in one call to a backup.
+     */
+    private static final int MAX_BATCH = 1000;
+
+    /**
+     * Default maximum number of mutations queued for one backup.
+     */
+    public static final int DEFAULT_MAX_QUEUED = 100_000;
+
+    /**
+     * Maximum delay between retries of a failed call to a backup, in milliseconds.
+     */
+    private static final long MAX_RETRY_DELAY_MILLIS = 2000;
+
+    /**
+     * Time after which an idle link asks its backup for its status, in milliseconds.
+     */
+    private static final long HEARTBEAT_MILLIS = 500;
+
+    /**
+     * Replication mode used while this replica is primary.
+     */
+    private final Mode mode;
+
+    /**
+     * How long a semi-synchronous write waits for a backup, in milliseconds.
+     */
+    private final long ackTimeoutMillis;
+
+    /**
+     * Maximum number of mutations queued for one backup.
+     */
+    private final int maxQueued;
+
+    /**
+     * Addresses of the <code>TasksReplica</code> services of the other replicas.
+     */
+    private final List<String> peers;
+
+    /**
+     * Lock ordering mutations and guarding the replication state below.
+     */
+    private final Object sequencer = new Object();
+
+    /**
+     * Replicated state. It is replaced as a whole by a state transfer.
+     */
+    private volatile TasksManagerExecutor executor;
+
+    /**
+     * Feed of changes, kept across state transfers so that its sequence numbers keep growing.
+     */
+    private final TaskChangeFeed changes = new TaskChangeFeed();
+
+    /**
+     * Current role of this replica.
+     */
+    private volatile Role role;
+
+    /**
+     * Epoch of the primary this replica follows, or its own epoch while it is primary.
+     */
+    private long epoch;
+
+    /**
+     * Sequence number of the last mutation applied to the state.
+     */
+    private long sequence;
+
+    /**
+     * Monitor on which semi-synchronous writers wait for acknowledgements.
+     */
+    private final Object acknowledgements = new Object();
+
+    /**
+     * Links to the backups while this replica is primary.
+     */
+    private final List<ReplicationLink> links = new ArrayList<>();
+
+    /**
+     * Constructs a replica.
+     *
+     * @param role             The initial role of the replica.
+     * @param peers            Addresses of the <code>TasksReplica</code> services of the other
+     *                         replicas, which become backups while this replica is primary.
+     * @param mode             The replication mode used while this replica is primary.
+     * @param ackTimeoutMillis How long a semi-synchronous write waits for a backup.
+     */
+    public ReplicatedTasksManager(Role role, List<String> peers, Mode mode, long ackTimeoutMillis) {
+        this(role, peers, mode, ackTimeoutMillis, DEFAULT_MAX_QUEUED);
+    }
+
+    /**
+     * Constructs a replica keeping a given number of mutations for each backup.
+     *
+     * @param role             The initial role of the replica.
+     * @param peers            Addresses of the <code>TasksReplica</code> services of the other
+     *                         replicas, which become backups while this replica is primary.
+     * @param mode             The replication mode used while this replica is primary.
+     * @param ackTimeoutMillis How long a semi-synchronous write waits for a backup.
+     * @param maxQueued        The maximum number of mutations queued for one backup, beyond
+     *                         which the backup receives the whole state instead.
+     */
+    public ReplicatedTasksManager(Role role, List<String> peers, Mode mode, long ackTimeoutMillis, int maxQueued) {
+        this.maxQueued = maxQueued;
+        this.role = role;
+        this.peers = List.copyOf(peers);
+        this.mode = mode;
+        this.ackTimeoutMillis = ackTimeoutMillis;
+        executor = new TasksManagerExecutor(id -> true, changes);
+        if (role == Role.PRIMARY) {
+            synchronized (sequencer) {
+                claimPrimary();
+            }
+        }
+    }
+
+    @Override
+    public int createTask(String title, String description) throws RemoteObjectException {
+        int id;
+        long published;
+        synchronized (sequencer) {
+            checkPrimary();
+            id = executor.createTask(title, description);
+            published = publish(TaskMutation.create(id, title, description));
+        }
+        awaitBackup(published);
+        return id;
+    }
+
+    @Override
+    public void assignTask(int id, String assignee) throws RemoteObjectException, TaskNotFoundException {
+        long published;
+        synchronized (sequencer) {
+            checkPrimary();
+            executor.assignTask(id, assignee);
+            published = publish(TaskMutation.assign(id, assignee));
+        }
+        awaitBackup(published);
+    }
+
+    @Override
+    public void updateStatus(int id, TaskStatus status) throws RemoteObjectException, TaskNotFoundException {
+        long published;
+        synchronized (sequencer) {
+            checkPrimary();
+            executor.updateStatus(id, status);
+            published = publish(TaskMutation.updateStatus(id, status));
+        }
+        awaitBackup(published);
+    }
+
+    @Override
+    public List<Task> getAssignedTasks(String assignee) throws RemoteObjectException {
+        return executor.getAssignedTasks(assignee);
+    }
+
+    @Override
+    public TaskPage queryTasks(String assignee, TaskStatus status, int cursor, int limit) throws RemoteObjectException {
+        return executor.queryTasks(assignee, status, cursor, limit);
+    }
+
+    @Override
+    public int[] createTasks(List<String> titles, List<String> descriptions) throws RemoteObjectException {
+        BulkResult.requireSameSize(titles.size(), descriptions.size());
+        int[] ids = new int[titles.size()];
+        long published = 0;
+        synchronized (sequencer) {
+            checkPrimary();
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = executor.createTask(titles.get(i), descriptions.get(i));
+                published = publish(TaskMutation.create(ids[i], titles.get(i), descriptions.get(i)));
+            }
+        }
+        // Backups apply mutations in order, so acknowledging the last one covers the batch.
+        awaitBackup(published);
+        return ids;
+    }
+
+    @Override
+    public BulkResult assignTasks(int[] ids, List<String> assignees) throws RemoteObjectException {
+        BulkResult.requireSameSize(ids.length, assignees.size());
+        String[] errors = new String[ids.length];
+        long published = 0;
+        synchronized (sequencer) {
+            checkPrimary();
+            for (int i = 0; i < ids.length; i++) {
+                try {
+                    executor.assignTask(ids[i], assignees.get(i));
+                    published = publish(TaskMutation.assign(ids[i], assignees.get(i)));
+                } catch (TaskNotFoundException e) {
+                    errors[i] = e.getMessage();
+                }
+            }
+        }
+        awaitBackup(published);
+        return new BulkResult(errors);
+    }
+
+    @Override
+    public BulkResult updateStatuses(int[] ids, List<TaskStatus> statuses) throws RemoteObjectException {
+        BulkResult.requireSameSize(ids.length, statuses.size());
+        String[] errors = new String[ids.length];
+        long published = 0;
+        synchronized (sequencer) {
+            checkPrimary();
+            for (int i = 0; i < ids.length; i++) {
+                try {
+                    executor.updateStatus(ids[i], statuses.get(i));
+                    published = publish(TaskMutation.updateStatus(ids[i], statuses.get(i)));
+                } catch (TaskNotFoundException e) {
+                    errors[i] = e.getMessage();
+                }
+            }
+        }
+        awaitBackup(published);
+        return new BulkResult(errors);
+    }
+
+    @Override
+    public List<Task> getTasks(int[] ids) throws RemoteObjectException {
+        return executor.getTasks(ids);
+    }
+
+    @Override
+    public TaskChangeBatch pollChanges(String assignee, TaskStatus status, long afterSequence, long maxWaitMillis)
+            throws RemoteObjectException {
+        return executor.pollChanges(assignee, status, afterSequence, maxWaitMillis);
+    }
+
+    @Override
+    public List<Task> searchTasks(String query, int limit) throws RemoteObjectException {
+        return executor.searchTasks(query, limit);
+    }
+
+    @Override
+    public long replicate(long epoch, long firstSequence, List<TaskMutation> mutations) throws RemoteObjectException {
+        synchronized (sequencer) {
+            checkFollows(epoch);
+            if (epoch > this.epoch || firstSequence > sequence + 1) {
+                // Mutations of a new primary or after a gap cannot be applied without a state transfer.
+                return -1;
+            }
+            long next = firstSequence;
+            for (TaskMutation mutation : mutations) {
+                if (next == sequence + 1) {
+                    try {
+                        mutation.applyTo(executor);
+                    } catch (TaskNotFoundException e) {
+                        throw new RemoteObjectException("Replicated mutation refers to unknown task " + mutation.getId(), e);
+                    }
+                    sequence = next;
+                }
+                next++;
+            }
+            return sequence;
+        }
+    }
+
+    @Override
+    public void install(long epoch, long sequence, int maxId, List<Task> tasks) throws RemoteObjectException {
+        TasksManagerExecutor installed = new TasksManagerExecutor(id -> true, changes);
+        for (Task task : tasks) {
+            installed.restoreTask(task.getId(), task.getTitle(), task.getDescription(), task.getStatus(), task.getAssignee());
+        }
+        installed.reserveIds(maxId);
+        synchronized (sequencer) {
+            checkFollows(epoch);
+            this.epoch = epoch;
+            this.sequence = sequence;
+            this.executor = installed;
+        }
+        // Subscribers cannot tell which of their tasks the transfer changed, so they start over.
+        changes.discardHistory();
+    }
+
+    @Override
+    public long promote() throws RemoteObjectException {
+        synchronized (sequencer) {
+            if (role == Role.PRIMARY) {
+                return epoch;
+            }
+            epoch = nextEpoch(epoch);
+            role = Role.PRIMARY;
+            // Peers may have applied a different set of mutations from the old primary.
+            startLinks(true);
+            return epoch;
+        }
+    }
+
+    @Override
+    public ReplicaStatus status() {
+        synchronized (sequencer) {
+            return new ReplicaStatus(role, epoch, sequence);
+        }
+    }
+
+    /**
+     * Steps down to backup after learning of a newer primary, so that this replica rejects
+     * writes and receives the state of the new primary. Its epoch stays the old one, which makes
+     * it accept the state transfer of the new primary rather than its mutations.
+     *
+     * @param newer The epoch learned of.
+     */
+    private void stepDown(long newer) {
+        synchronized (sequencer) {
+            if (role != Role.PRIMARY || newer <= epoch) {
+                return;
+            }
+            LOG.info("Stepping down: epoch {} replaces {}.", newer, epoch);
+            role = Role.BACKUP;
+            close();
+        }
+        synchronized (acknowledgements) {
+            acknowledgements.notifyAll();
+        }
+    }
+
+    /**
+     * Stops replicating to the backups.
+     */
+    public void close() {
+        synchronized (sequencer) {
+            for (ReplicationLink link : links) {
+                link.interrupt();
+            }
+            links.clear();
+        }
+    }
+
+    /**
+     * Starts this replica as primary, unless a peer already is primary, in which case this replica
+     * becomes its backup and receives its state. The caller must hold the sequencer.
+     */
+    private void claimPrimary() {
+        long highest = 0;
+        for (String peer : peers) {
+            ReplicaStatus status;
+            try {
+                status = StubFactory.create(TasksReplica.class, peer).status();
+            } catch (RemoteObjectException e) {
+                // An unreachable peer followed an older epoch, started before this one.
+                continue;
+            }
+            if (status.getRole() == Role.PRIMARY) {
+                role = Role.BACKUP;
+                return;
+            }
+            highest = Math.max(highest, status.getEpoch());
+        }
+        epoch = nextEpoch(highest);
+        // Backups may hold mutations of an earlier run under the same sequence numbers.
+        startLinks(true);
+    }
+
+    /**
+     * Gets an epoch for a new primary: the current time, or one more than the given epoch if the
+     * clock is behind it.
+     *
+     * @param previous The highest epoch known.
+     * @return The new epoch.
+     */
+    private static long nextEpoch(long previous) {
+        return Math.max(previous + 1, System.currentTimeMillis());
+    }
+
+    /**
+     * Makes sure this replica accepts writes.
+     *
+     * @throws RemoteObjectException If this replica is a backup.
+     */
+    private void checkPrimary() throws RemoteObjectException {
+        if (role != Role.PRIMARY) {
+            throw new RemoteObjectException("Replica is a read-only backup; send writes to the primary.");
+        }
+    }
+
+    /**
+     * Makes sure a replication call comes from the current primary. The caller must hold the sequencer.
+     *
+     * @param epoch The epoch of the calling primary.
+     * @throws RemoteObjectException If the caller is stale or this replica is itself primary.
+     */
+    private void checkFollows(long epoch) throws RemoteObjectException {
+        if (role == Role.PRIMARY) {
+            throw new RemoteObjectException("Replica is primary and does not accept replication.");
+        }
+        if (epoch < this.epoch) {
+            throw new RemoteObjectException("Stale primary epoch " + epoch + ", current epoch is " + this.epoch + ".");
+        }
+    }
+
+    /**
+     * Numbers a mutation that was just applied and queues it for every backup.
+     * The caller must hold the sequencer.
+     *
+     * @param mutation The mutation.
+     * @return The sequence number of the mutation.
+     */
+    private long publish(TaskMutation mutation) {
+        long published = ++sequence;
+        for (ReplicationLink link : links) {
+            link.enqueue(published, mutation);
+        }
+        return published;
+    }
+
+    /**
+     * In semi-synchronous mode, waits until a backup has applied the given mutation or the
+     * timeout has passed.
+     *
+     * @param published The sequence number of the mutation.
+     * @throws RemoteObjectException If this replica stepped down before a backup applied the mutation.
+     */
+    private void awaitBackup(long published) throws RemoteObjectException {
+        if (mode != Mode.SEMI_SYNC) {
+            return;
+        }
+        List<ReplicationLink> current;
+        synchronized (sequencer) {
+            current = List.copyOf(links);
+        }
+        if (current.isEmpty()) {
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ackTimeoutMillis);
+        synchronized (acknowledgements) {
+            while (!acknowledged(current, published)) {
+                if (role != Role.PRIMARY) {
+                    throw new RemoteObjectException("Primary was deposed by a newer epoch; the write is lost.");
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(acknowledgements, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether any of the links has been acknowledged up to the given sequence number.
+     *
+     * @param current   The links to check.
+     * @param published The sequence number.
+     * @return True if a backup has applied the mutation.
+     */
+    private static boolean acknowledged(List<ReplicationLink> current, long published) {
+        for (ReplicationLink link : current) {
+            if (link.acknowledged >= published) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Starts one replication link per peer. The caller must hold the sequencer, or be the constructor.
+     *
+     * @param transferState Whether every backup first receives the full state.
+     */
+    private void startLinks(boolean transferState) {
+        for (String peer : peers) {
+            ReplicationLink link = new ReplicationLink(peer, transferState, sequence);
+            links.add(link);
+            link.start();
+        }
+    }
+
+    /**
+     * A copy of the state taken for a transfer.
+     */
+    private static class StateCopy {
+        final long sequence;
+        final int maxId;
+        final List<Task> tasks;
+
+        StateCopy(long sequence, int maxId, List<Task> tasks) {
+            this.sequence = sequence;
+            this.maxId = maxId;
+            this.tasks = tasks;
+        }
+    }
+
+    /**
+     * A mutation queued for a backup.
+     */
+    private static class Entry {
+        final long sequence;
+        final TaskMutation mutation;
+
+        Entry(long sequence, TaskMutation mutation) {
+            this.sequence = sequence;
+            this.mutation = mutation;
+        }
+    }
+
+    /**
+     * Thread sending the queued mutations to one backup, in order, until they are acknowledged.
+     */
+    private class ReplicationLink extends Thread {
+
+        /**
+         * Address of the backup's <code>TasksReplica</code> service.
+         */
+        private final String address;
+
+        /**
+         * Stub of the backup.
+         */
+        private final TasksReplica replica;
+
+        /**
+         * Mutations not yet acknowledged by the backup, in sequence order.
+         */
+        private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Sequence number of the last mutation the backup has applied.
+         */
+        volatile long acknowledged;
+
+        /**
+         * Sequence number after which the queue holds every mutation: the last one acknowledged,
+         * or the last one reflected by the state being transferred. Only the link writes it.
+         */
+        private volatile long queuedAfter;
+
+        /**
+         * Whether the backup needs a full state transfer before the next batch.
+         */
+        private volatile boolean transferState;
+
+        ReplicationLink(String address, boolean transferState, long queuedAfter) {
+            super("replication-" + address);
+            setDaemon(true);
+            this.address = address;
+            this.replica = StubFactory.create(TasksReplica.class, address);
+            this.transferState = transferState;
+            this.queuedAfter = queuedAfter;
+        }
+
+        /**
+         * Queues a mutation for the backup. Called with the sequencer held, so mutations are
+         * queued in sequence order. Once the backup is <code>maxQueued</code> mutations behind,
+         * the queue is dropped and the backup receives the whole state instead.
+         */
+        void enqueue(long published, TaskMutation mutation) {
+            if (published - queuedAfter > maxQueued) {
+                // The state taken for the transfer reflects this mutation and every dropped one.
+                transferState = true;
+                queue.clear();
+            } else {
+                queue.add(new Entry(published, mutation));
+            }
+            LockSupport.unpark(this);
+        }
+
+        @Override
+        public void run() {
+            long retryDelay = 50;
+            long lastContact = System.nanoTime();
+            boolean failed = false;
+            while (!isInterrupted()) {
+                boolean transferring = false;
+                try {
+                    if (failed || System.nanoTime() - lastContact > TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_MILLIS)) {
+                        ReplicaStatus status = replica.status();
+                        lastContact = System.nanoTime();
+                        failed = false;
+                        // A backup that saw a newer epoch follows a primary that replaced this one.
+                        stepDown(status.getEpoch());
+                        if (isInterrupted()) {
+                            return;
+                        }
+                        long current;
+                        synchronized (sequencer) {
+                            current = epoch;
+                        }
+                        if (status.getEpoch() < current || status.getSequence() < acknowledged) {
+                            // The backup restarted, or never received the state of this epoch.
+                            transferState = true;
+                        }
+                    }
+
+                    if (transferState) {
+                        transferring = true;
+                        long current;
+                        StateCopy copy = copyState();
+                        synchronized (sequencer) {
+                            current = epoch;
+                        }
+                        replica.install(current, copy.sequence, copy.maxId, copy.tasks);
+                        acknowledge(copy.sequence);
+                        transferring = false;
+                        lastContact = System.nanoTime();
+                    }
+
+                    List<TaskMutation> batch = new ArrayList<>();
+                    long first = -1;
+                    for (Entry entry : queue) {
+                        if (batch.size() == MAX_BATCH) {
+                            break;
+                        }
+                        if (entry.sequence <= acknowledged) {
+                            continue;
+                        }
+                        if (first < 0) {
+                            first = entry.sequence;
+                        } else if (entry.sequence != first + batch.size()) {
+                            // The queue was dropped while it was read; the transfer covers the rest.
+                            break;
+                        }
+                        batch.add(entry.mutation);
+                    }
+                    if (batch.isEmpty()) {
+                        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+                        continue;
+                    }
+
+                    long current;
+                    synchronized (sequencer) {
+                        current = epoch;
+                    }
+                    long applied = replica.replicate(current, first, batch);
+                    if (applied < first - 1 || applied > first + batch.size() - 1) {
+                        // The backup misses mutations, or holds some this primary never made.
+                        transferState = true;
+                    } else {
+                        acknowledge(applied);
+                    }
+                    lastContact = System.nanoTime();
+                    retryDelay = 50;
+                } catch (Exception e) {
+                    LOG.warn("Replication to {} failed: {}", address, e.getMessage());
+                    if (transferring) {
+                        transferState = true;
+                    }
+                    failed = true;
+                    try {
+                        Thread.sleep(retryDelay);
+                    } catch (InterruptedException interrupted) {
+                        return;
+                    }
+                    retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MILLIS);
+                }
+            }
+        }
+
+        /**
+         * Collects a copy of the state for a transfer to the backup, together with the sequence
+         * number of the last mutation it reflects. Mutations published while the copy is taken
+         * are still queued for the backup, so replaying them over the copy yields the current state.
+         *
+         * @return The copy.
+         */
+        private StateCopy copyState() {
+            long copied;
+            TasksManagerExecutor source;
+            synchronized (sequencer) {
+                copied = sequence;
+                source = executor;
+                transferState = false;
+                queuedAfter = copied;
+            }
+            List<Task> tasks = new ArrayList<>();
+            source.forEachTask(tasks::add);
+            return new StateCopy(copied, source.maxId(), tasks);
+        }
+
+        /**
+         * Records that the backup has applied all mutations up to the given sequence number,
+         * drops them from the queue and wakes semi-synchronous writers.
+         */
+        private void acknowledge(long applied) {
+            acknowledged = Math.max(acknowledged, applied);
+            queuedAfter = Math.max(queuedAfter, acknowledged);
+            Entry head;
+            while ((head = queue.peek()) != null && head.sequence <= acknowledged) {
+                queue.poll();
+            }
+            synchronized (acknowledgements) {
+                acknowledgements.notifyAll();
+            }
+        }
+    }
+}
@@ -3,30 +3,161 @@ package application;
 import remote.RemoteObjectException;
 import remote.Service;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Application to start the service on the provided port.
  * It will start the service on port 8888 by default, if no port argument is passed.
- * it accepts only 1 command line argument as port number.
- * Sever port
+ * It accepts the port number and, optionally, the path of a data directory as command line arguments.
+ * When a data directory is given, tasks are persisted to it and recovered from it on restart.
+ * Sever port [data-dir]
+ * <p>
+ * Alternatively, the server can take part in primary-backup replication:
+ * Server port --role primary|backup --replication-port port --peers host:port,... [--semi-sync]
+ * Every replica exports its <code>TasksReplica</code> service on the replication port, and the peers
+ * are the replication addresses of the other replicas. Backups serve reads and can be promoted by
+ * calling <code>promote</code> on their <code>TasksReplica</code> service. A replica started as primary
+ * while one of its peers is primary starts as a backup instead.
+ * <p>
+ * A server can also act as one shard of a sharded task store used through <code>ShardedTasksManager</code>:
+ * Server port --shards host:port,... --shard index
+ * The shard list must be the same on all shards and clients; the index selects this server's entry.
+ * <p>
+ * To hold more tasks than the heap comfortably does, the tasks can be kept in direct memory:
+ * Server port --off-heap
  */
 public class Server {
 
+    /**
+     * Time a semi-synchronous write waits for a backup before returning, in milliseconds.
+     */
+    private static final long ACK_TIMEOUT_MILLIS = 1000;
+
     /**
      * Main method to start the service with the TaskManagerExecutor instance.
-     * @param args Port number to start the service.
+     * @param args Port number to start the service, and optionally the data directory to persist tasks to,
+     *             or the replication options.
      * @throws RemoteObjectException If any exception occurs while starting the service.
+     * @throws IOException If the persisted tasks cannot be read or the log cannot be opened.
      */
-    public static void main(String[] args) throws RemoteObjectException {
-        if (args.length > 1) {
-            System.out.println("usage: Server <port>");
+    public static void main(String[] args) throws RemoteObjectException, IOException {
+        if (args.length > 1 && args[1].startsWith("--")) {
+            startWithOptions(args);
+            return;
+        }
+        if (args.length > 2) {
+            usage();
             return;
         }
         int port = args.length == 0 ? 8888 : Integer.parseInt(args[0]);
-        TasksManager tasksManager = new TasksManagerExecutor();
+        TasksManager tasksManager = args.length == 2 ? new PersistentTasksManager(Path.of(args[1])) : new TasksManagerExecutor();
         Service<TasksManager> service = new Service<>(TasksManager.class, tasksManager, port);
+        // Both task managers are thread-safe, so calls need not be serialized. Concurrent calls
+        // also let the persistent task manager share fsyncs between writers.
+        service.setSerializeCalls(false);
+        // TaskNotFoundException is an expected error; clients only need its class and message.
+        service.setStacklessDeclaredExceptions(true);
         service.start();
         System.out.println("Server started. Listening on port " + port);
     }
 
+    /**
+     * Starts a replica of a replicated task server, or a shard of a sharded task store.
+     * @param args The port number followed by the replication or sharding options.
+     * @throws RemoteObjectException If any exception occurs while starting the services.
+     */
+    private static void startWithOptions(String[] args) throws RemoteObjectException {
+        int port = Integer.parseInt(args[0]);
+        ReplicatedTasksManager.Role role = null;
+        int replicationPort = -1;
+        List<String> peers = List.of();
+        ReplicatedTasksManager.Mode mode = ReplicatedTasksManager.Mode.ASYNC;
+        List<String> shards = null;
+        int shard = -1;
+        boolean offHeap = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--role":
+                    role = ReplicatedTasksManager.Role.valueOf(args[++i].toUpperCase());
+                    break;
+                case "--replication-port":
+                    replicationPort = Integer.parseInt(args[++i]);
+                    break;
+                case "--peers":
+                    peers = Arrays.asList(args[++i].split(","));
+                    break;
+                case "--semi-sync":
+                    mode = ReplicatedTasksManager.Mode.SEMI_SYNC;
+                    break;
+                case "--shards":
+                    shards = Arrays.asList(args[++i].split(","));
+                    break;
+                case "--shard":
+                    shard = Integer.parseInt(args[++i]);
+                    break;
+                case "--off-heap":
+                    offHeap = true;
+                    break;
+                default:
+                    usage();
+                    return;
+            }
+        }
+        if (offHeap) {
+            if (role != null || shards != null) {
+                usage();
+                return;
+            }
+            Service<TasksManager> service = new Service<>(TasksManager.class, new OffHeapTasksManager(), port);
+            service.setSerializeCalls(false);
+            service.setStacklessDeclaredExceptions(true);
+            service.start();
+            System.out.println("Server started with off-heap tasks. Listening on port " + port);
+            return;
+        }
+        if (shards != null) {
+            if (role != null || shard < 0 || shard >= shards.size()) {
+                usage();
+                return;
+            }
+            ShardRing ring = new ShardRing(shards);
+            Service<TasksManager> service = new Service<>(TasksManager.class, new TasksManagerExecutor(ring.ownership(shard)), port);
+            service.setSerializeCalls(false);
+            service.setStacklessDeclaredExceptions(true);
+            service.start();
+            System.out.println("Server started as shard " + shard + " of " + shards.size() + ". Listening on port " + port);
+            return;
+        }
+        if (role == null || replicationPort < 0) {
+            usage();
+            return;
+        }
+
+        ReplicatedTasksManager replica = new ReplicatedTasksManager(role, peers, mode, ACK_TIMEOUT_MILLIS);
+        Service<TasksReplica> replicationService = new Service<>(TasksReplica.class, replica, replicationPort);
+        replicationService.setSerializeCalls(false);
+        replicationService.start();
+        Service<TasksManager> service = new Service<>(TasksManager.class, replica, port);
+        service.setSerializeCalls(false);
+        service.setStacklessDeclaredExceptions(true);
+        service.start();
+        System.out.println("Server started as " + replica.status().getRole() + ". Listening on port " + port
+                + ", replication on port " + replicationPort);
+    }
+
+    /**
+     * Prints the command line usage.
+     */
+    private static void usage() {
+        System.out.println("usage: Server <port> [data-dir]\n"
+                + "       Server <port> --role primary|backup --replication-port <port> "
+                + "[--peers <host:port>,...] [--semi-sync]\n"
+                + "       Server <port> --shards <host:port>,... --shard <index>\n"
+                + "       Server <port> --off-heap");
+    }
+
 
 }
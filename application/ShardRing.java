@@ -0,0 +1,141 @@
+package application;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Consistent-hash ring mapping task ids to shards.
+ * <p>
+ * Every shard is placed on the ring at a number of pseudo-random points derived from its
+ * address, and a task id belongs to the shard owning the first point at or after the hash of
+ * the id, which spreads ids evenly whatever the number of shards. Clients and shard servers
+ * must build the ring from the same addresses in the same order.
+ * <p>
+ * The shard set is fixed for the life of the data: nothing moves tasks between shards, so a
+ * ring with a shard added or removed would route some existing ids to shards that do not hold
+ * them, and let shards generate ids that already exist elsewhere.
+ */
+public class ShardRing {
+
+    /**
+     * Number of points each shard occupies on the ring.
+     */
+    private static final int POINTS_PER_SHARD = 128;
+
+    /**
+     * Addresses of the shards, by shard index.
+     */
+    private final List<String> shards;
+
+    /**
+     * Hashes of the ring points, in ascending order.
+     */
+    private final int[] points;
+
+    /**
+     * Shard index owning each ring point.
+     */
+    private final int[] owners;
+
+    /**
+     * Constructs a ring over the given shards.
+     *
+     * @param shards The addresses of the shards.
+     */
+    public ShardRing(List<String> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("A shard ring needs at least one shard.");
+        }
+        this.shards = List.copyOf(shards);
+        long[] placed = new long[shards.size() * POINTS_PER_SHARD];
+        for (int shard = 0; shard < shards.size(); shard++) {
+            for (int point = 0; point < POINTS_PER_SHARD; point++) {
+                int hash = hash(shards.get(shard) + "#" + point);
+                // Sort by hash, then shard index, packed in one long.
+                placed[shard * POINTS_PER_SHARD + point] = ((long) hash << 32) | shard;
+            }
+        }
+        Arrays.sort(placed);
+        points = new int[placed.length];
+        owners = new int[placed.length];
+        for (int i = 0; i < placed.length; i++) {
+            points[i] = (int) (placed[i] >> 32);
+            owners[i] = (int) placed[i];
+        }
+    }
+
+    /**
+     * Gets the number of shards.
+     *
+     * @return The number of shards.
+     */
+    public int size() {
+        return shards.size();
+    }
+
+    /**
+     * Gets the address of a shard.
+     *
+     * @param shard The shard index.
+     * @return The address of the shard.
+     */
+    public String address(int shard) {
+        return shards.get(shard);
+    }
+
+    /**
+     * Finds the shard owning a task id.
+     *
+     * @param id The task id.
+     * @return The index of the owning shard.
+     */
+    public int shardFor(int id) {
+        int index = Arrays.binarySearch(points, mix(id));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * Gets a predicate selecting the ids owned by a shard, for shard-aware id generation.
+     *
+     * @param shard The shard index.
+     * @return The predicate.
+     */
+    public IntPredicate ownership(int shard) {
+        return id -> shardFor(id) == shard;
+    }
+
+    /**
+     * Hashes a string with FNV-1a over its UTF-8 bytes followed by a final mix.
+     *
+     * @param value The string.
+     * @return The hash.
+     */
+    private static int hash(String value) {
+        int hash = 0x811c9dc5;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x01000193;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Spreads the bits of an int, so that consecutive ids land on unrelated ring positions.
+     *
+     * @param value The value.
+     * @return The mixed value.
+     */
+    private static int mix(int value) {
+        value ^= value >>> 16;
+        value *= 0x85ebca6b;
+        value ^= value >>> 13;
+        value *= 0xc2b2ae35;
+        value ^= value >>> 16;
+        return value;
+    }
+}
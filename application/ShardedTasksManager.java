@@ -0,0 +1,481 @@
+package application;
+
+import remote.RemoteObjectException;
+import remote.StubFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Client-side stub spreading tasks over several task servers.
+ * <p>
+ * Calls about an existing task are routed to the shard that owns its id on a
+ * <code>ShardRing</code>. New tasks are created on the shards in turn; each shard server runs a
+ * <code>TasksManagerExecutor</code> that only generates ids it owns on the same ring, so ids
+ * stay globally unique and route back to the shard that created them.
+ * Queries ask all shards in parallel and merge the results by id, and bulk operations send
+ * each shard one call with its share of the items.
+ * <p>
+ * Each shard numbers its changes independently, so <code>pollChanges</code> follows a vector of
+ * per-shard sequence numbers. The sequence number it returns is a cursor naming such a vector,
+ * which this stub keeps for the latest <code>MAX_CURSORS</code> polls; a cursor it no longer
+ * knows, for example one from another stub, is reported as a gap, like a sequence number
+ * outside a shard's feed.
+ */
+public class ShardedTasksManager implements TasksManager {
+
+    /**
+     * Number of change feed cursors remembered.
+     */
+    static final int MAX_CURSORS = 4096;
+
+    /**
+     * Ring mapping task ids to shards.
+     */
+    private final ShardRing ring;
+
+    /**
+     * Stubs of the shards, by shard index.
+     */
+    private final List<TasksManager> shards;
+
+    /**
+     * Counter choosing the shard for the next created task.
+     */
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    /**
+     * Threads used to query the shards in parallel.
+     */
+    private final ExecutorService fanOut;
+
+    /**
+     * Counter naming the next change feed cursor, started from the clock so that cursors of
+     * another stub are unlikely to be known.
+     */
+    private final AtomicLong nextCursor = new AtomicLong(System.currentTimeMillis() << 20);
+
+    /**
+     * Per-shard sequence numbers of the latest change feed cursors, oldest first, guarded by itself.
+     */
+    private final LinkedHashMap<Long, long[]> cursors = new LinkedHashMap<>();
+
+    /**
+     * Constructs a sharding stub over the given shard servers.
+     *
+     * @param shardAddresses The addresses of the shards, in the order used by the shard servers.
+     */
+    public ShardedTasksManager(List<String> shardAddresses) {
+        ring = new ShardRing(shardAddresses);
+        shards = new ArrayList<>();
+        for (String address : shardAddresses) {
+            shards.add(StubFactory.create(TasksManager.class, address));
+        }
+        fanOut = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "shard-fan-out");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public int createTask(String title, String description) throws RemoteObjectException {
+        int shard = Math.floorMod(nextShard.getAndIncrement(), shards.size());
+        return shards.get(shard).createTask(title, description);
+    }
+
+    @Override
+    public void assignTask(int id, String assignee) throws RemoteObjectException, TaskNotFoundException {
+        shardFor(id).assignTask(id, assignee);
+    }
+
+    @Override
+    public void updateStatus(int id, TaskStatus status) throws RemoteObjectException, TaskNotFoundException {
+        shardFor(id).updateStatus(id, status);
+    }
+
+    @Override
+    public List<Task> getAssignedTasks(String assignee) throws RemoteObjectException {
+        List<Future<List<Task>>> replies = new ArrayList<>(shards.size());
+        for (TasksManager shard : shards) {
+            replies.add(fanOut.submit(() -> shard.getAssignedTasks(assignee)));
+        }
+        List<Task> merged = new ArrayList<>();
+        for (Future<List<Task>> reply : replies) {
+            merged.addAll(await(reply));
+        }
+        merged.sort(Comparator.comparingInt(Task::getId));
+        return merged;
+    }
+
+    @Override
+    public TaskPage queryTasks(String assignee, TaskStatus status, int cursor, int limit) throws RemoteObjectException {
+        // Task ids are global, so every shard can continue from the same cursor. The page is the
+        // first tasks of the merged shard pages, and more tasks follow if any shard had more.
+        List<Future<TaskPage>> replies = new ArrayList<>(shards.size());
+        for (TasksManager shard : shards) {
+            replies.add(fanOut.submit(() -> shard.queryTasks(assignee, status, cursor, limit)));
+        }
+        List<Task> merged = new ArrayList<>();
+        boolean more = false;
+        for (Future<TaskPage> reply : replies) {
+            TaskPage page = await(reply);
+            merged.addAll(page.getTasks());
+            more |= page.hasMore();
+        }
+        merged.sort(Comparator.comparingInt(Task::getId));
+        if (merged.size() > limit) {
+            merged = new ArrayList<>(merged.subList(0, limit));
+            more = true;
+        }
+        return new TaskPage(merged, more && !merged.isEmpty() ? merged.get(merged.size() - 1).getId() : TaskPage.END);
+    }
+
+    @Override
+    public int[] createTasks(List<String> titles, List<String> descriptions) throws RemoteObjectException {
+        BulkResult.requireSameSize(titles.size(), descriptions.size());
+        int first = nextShard.getAndAdd(titles.size());
+        List<int[]> partitions = partition(titles.size(), i -> Math.floorMod(first + i, shards.size()));
+        List<int[]> parts = scatter(partitions, (shard, positions) ->
+                shard.createTasks(select(titles, positions), select(descriptions, positions)));
+        int[] ids = new int[titles.size()];
+        for (int shard = 0; shard < partitions.size(); shard++) {
+            int[] positions = partitions.get(shard);
+            for (int k = 0; k < positions.length; k++) {
+                ids[positions[k]] = parts.get(shard)[k];
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public BulkResult assignTasks(int[] ids, List<String> assignees) throws RemoteObjectException {
+        BulkResult.requireSameSize(ids.length, assignees.size());
+        List<int[]> partitions = partition(ids.length, i -> ring.shardFor(ids[i]));
+        return merge(ids.length, partitions, scatter(partitions, (shard, positions) ->
+                shard.assignTasks(select(ids, positions), select(assignees, positions))));
+    }
+
+    @Override
+    public BulkResult updateStatuses(int[] ids, List<TaskStatus> statuses) throws RemoteObjectException {
+        BulkResult.requireSameSize(ids.length, statuses.size());
+        List<int[]> partitions = partition(ids.length, i -> ring.shardFor(ids[i]));
+        return merge(ids.length, partitions, scatter(partitions, (shard, positions) ->
+                shard.updateStatuses(select(ids, positions), select(statuses, positions))));
+    }
+
+    @Override
+    public List<Task> getTasks(int[] ids) throws RemoteObjectException {
+        List<int[]> partitions = partition(ids.length, i -> ring.shardFor(ids[i]));
+        List<List<Task>> parts = scatter(partitions, (shard, positions) -> shard.getTasks(select(ids, positions)));
+        Task[] found = new Task[ids.length];
+        for (int shard = 0; shard < partitions.size(); shard++) {
+            int[] positions = partitions.get(shard);
+            for (int k = 0; k < positions.length; k++) {
+                found[positions[k]] = parts.get(shard).get(k);
+            }
+        }
+        return new ArrayList<>(Arrays.asList(found));
+    }
+
+    /**
+     * Polls every shard in parallel from its own sequence number, and returns the changes of the
+     * shards that answer first with changes, along with those of any other shard that has answered
+     * by then. The shards still waiting keep their sequence numbers, so their changes come with a
+     * later poll.
+     */
+    @Override
+    public TaskChangeBatch pollChanges(String assignee, TaskStatus status, long afterSequence, long maxWaitMillis)
+            throws RemoteObjectException {
+        long[] after;
+        if (afterSequence == TaskChangeBatch.NOW) {
+            after = currentSequences(assignee, status);
+        } else {
+            after = cursorVector(afterSequence);
+            if (after == null) {
+                // Start the subscriber over from the current sequence number of every shard.
+                return new TaskChangeBatch(List.of(), cursorOf(currentSequences(assignee, status)), true);
+            }
+        }
+        List<TaskChange> merged = new ArrayList<>();
+        boolean[] gap = new boolean[1];
+        long cursor = pollShards(assignee, status, after, maxWaitMillis, merged, gap);
+        return new TaskChangeBatch(gap[0] ? List.of() : merged, cursor, gap[0]);
+    }
+
+    @Override
+    public List<Task> searchTasks(String query, int limit) throws RemoteObjectException {
+        List<Future<List<Task>>> replies = new ArrayList<>(shards.size());
+        for (TasksManager shard : shards) {
+            replies.add(fanOut.submit(() -> shard.searchTasks(query, limit)));
+        }
+        List<Task> merged = new ArrayList<>();
+        for (Future<List<Task>> reply : replies) {
+            merged.addAll(await(reply));
+        }
+        // Scores only depend on the task and the query, so the shards' rankings can be merged.
+        merged.sort(Comparator.comparingLong((Task task) -> TaskSearchIndex.score(query, task))
+                .thenComparingInt(Task::getId).reversed());
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    /**
+     * Gets the current sequence number of every shard, so that shards still waiting in a later poll
+     * have a sequence number to keep.
+     *
+     * @param assignee The assignee to watch, or null for any assignee.
+     * @param status   The status to watch, or null for any status.
+     * @return The sequence number of each shard.
+     * @throws RemoteObjectException If a shard call failed.
+     */
+    private long[] currentSequences(String assignee, TaskStatus status) throws RemoteObjectException {
+        List<Future<TaskChangeBatch>> replies = new ArrayList<>(shards.size());
+        for (TasksManager shard : shards) {
+            replies.add(fanOut.submit(() -> shard.pollChanges(assignee, status, TaskChangeBatch.NOW, 0)));
+        }
+        long[] sequences = new long[shards.size()];
+        for (int shard = 0; shard < shards.size(); shard++) {
+            sequences[shard] = await(replies.get(shard)).getLastSequence();
+        }
+        return sequences;
+    }
+
+    /**
+     * Polls every shard in parallel until one returns changes or reports a gap, or all time out.
+     *
+     * @param assignee The assignee to watch, or null for any assignee.
+     * @param status   The status to watch, or null for any status.
+     * @param after    The sequence number of each shard.
+     * @param maxWait  How long to wait for a matching change, in milliseconds.
+     * @param merged   Receives the changes of the shards that answered, shard by shard.
+     * @param gap      Set to true if a shard lost changes after its sequence number.
+     * @return The cursor naming the sequence numbers reached.
+     * @throws RemoteObjectException If a shard call failed.
+     */
+    private long pollShards(String assignee, TaskStatus status, long[] after, long maxWait, List<TaskChange> merged,
+                            boolean[] gap) throws RemoteObjectException {
+        CompletionService<TaskChangeBatch> completion = new ExecutorCompletionService<>(fanOut);
+        List<Future<TaskChangeBatch>> replies = new ArrayList<>(shards.size());
+        for (int shard = 0; shard < shards.size(); shard++) {
+            TasksManager stub = shards.get(shard);
+            long sequence = after[shard];
+            replies.add(completion.submit(() -> stub.pollChanges(assignee, status, sequence, maxWait)));
+        }
+        for (int answered = 0; answered < shards.size(); answered++) {
+            TaskChangeBatch batch;
+            try {
+                batch = completion.take().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RemoteObjectException("Interrupted while waiting for a shard.", e);
+            } catch (ExecutionException e) {
+                // Reported with the shard's reply below.
+                continue;
+            }
+            if (!batch.getChanges().isEmpty() || batch.isGap()) {
+                break;
+            }
+        }
+
+        // Shards still waiting keep their sequence numbers; their calls end by themselves.
+        long[] reached = new long[shards.size()];
+        for (int shard = 0; shard < shards.size(); shard++) {
+            Future<TaskChangeBatch> reply = replies.get(shard);
+            if (!reply.isDone()) {
+                reached[shard] = after[shard];
+                continue;
+            }
+            TaskChangeBatch batch = await(reply);
+            merged.addAll(batch.getChanges());
+            gap[0] |= batch.isGap();
+            reached[shard] = batch.getLastSequence();
+        }
+        return cursorOf(reached);
+    }
+
+    /**
+     * Remembers the sequence numbers reached in each shard.
+     *
+     * @param sequences The sequence number of each shard.
+     * @return The cursor naming them.
+     */
+    private long cursorOf(long[] sequences) {
+        long cursor = nextCursor.incrementAndGet();
+        synchronized (cursors) {
+            cursors.put(cursor, sequences);
+            if (cursors.size() > MAX_CURSORS) {
+                cursors.remove(cursors.keySet().iterator().next());
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * Gets the sequence numbers of each shard named by a cursor.
+     *
+     * @param cursor The cursor.
+     * @return The sequence numbers, or null if the cursor is not known.
+     */
+    private long[] cursorVector(long cursor) {
+        synchronized (cursors) {
+            return cursors.get(cursor);
+        }
+    }
+
+    /**
+     * Stops the threads used for parallel queries.
+     */
+    public void close() {
+        fanOut.shutdown();
+    }
+
+    /**
+     * Gets the stub of the shard owning a task id.
+     *
+     * @param id The task id.
+     * @return The stub of the shard.
+     */
+    private TasksManager shardFor(int id) {
+        return shards.get(ring.shardFor(id));
+    }
+
+    /**
+     * Splits the positions of the items of a bulk request by shard.
+     *
+     * @param items   The number of items.
+     * @param shardOf Gives the shard of the item at a position.
+     * @return The positions of the items of each shard, in request order.
+     */
+    private List<int[]> partition(int items, IntUnaryOperator shardOf) {
+        int[] shardOfItem = new int[items];
+        int[] counts = new int[shards.size()];
+        for (int i = 0; i < items; i++) {
+            shardOfItem[i] = shardOf.applyAsInt(i);
+            counts[shardOfItem[i]]++;
+        }
+        List<int[]> partitions = new ArrayList<>(shards.size());
+        for (int count : counts) {
+            partitions.add(new int[count]);
+        }
+        int[] filled = new int[shards.size()];
+        for (int i = 0; i < items; i++) {
+            int shard = shardOfItem[i];
+            partitions.get(shard)[filled[shard]++] = i;
+        }
+        return partitions;
+    }
+
+    /**
+     * Sends each shard with items its share of a bulk request, in parallel.
+     *
+     * @param partitions The positions of the items of each shard.
+     * @param call       Makes the call to a shard for the items at the given positions.
+     * @return The result of each shard, or null for shards without items.
+     * @throws RemoteObjectException If a shard call failed.
+     */
+    private <R> List<R> scatter(List<int[]> partitions, ShardCall<R> call) throws RemoteObjectException {
+        List<Future<R>> replies = new ArrayList<>(shards.size());
+        for (int shard = 0; shard < shards.size(); shard++) {
+            TasksManager stub = shards.get(shard);
+            int[] positions = partitions.get(shard);
+            replies.add(positions.length == 0 ? null : fanOut.submit(() -> call.apply(stub, positions)));
+        }
+        List<R> results = new ArrayList<>(replies.size());
+        for (Future<R> reply : replies) {
+            results.add(reply == null ? null : await(reply));
+        }
+        return results;
+    }
+
+    /**
+     * Combines the results of the shards into the result of a bulk request.
+     *
+     * @param items      The number of items of the request.
+     * @param partitions The positions of the items of each shard.
+     * @param parts      The result of each shard.
+     * @return The result of the request.
+     */
+    private static BulkResult merge(int items, List<int[]> partitions, List<BulkResult> parts) {
+        String[] errors = new String[items];
+        for (int shard = 0; shard < partitions.size(); shard++) {
+            int[] positions = partitions.get(shard);
+            for (int k = 0; k < positions.length; k++) {
+                errors[positions[k]] = parts.get(shard).getError(k);
+            }
+        }
+        return new BulkResult(errors);
+    }
+
+    /**
+     * Picks the values at the given positions.
+     *
+     * @param values    The values of all items.
+     * @param positions The positions to pick.
+     * @return The picked values.
+     */
+    private static <T> List<T> select(List<T> values, int[] positions) {
+        List<T> selected = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            selected.add(values.get(position));
+        }
+        return selected;
+    }
+
+    /**
+     * Picks the ids at the given positions.
+     *
+     * @param ids       The ids of all items.
+     * @param positions The positions to pick.
+     * @return The picked ids.
+     */
+    private static int[] select(int[] ids, int[] positions) {
+        int[] selected = new int[positions.length];
+        for (int k = 0; k < positions.length; k++) {
+            selected[k] = ids[positions[k]];
+        }
+        return selected;
+    }
+
+    /**
+     * Call to a shard for part of a bulk request.
+     *
+     * @param <R> The result of the call.
+     */
+    private interface ShardCall<R> {
+        R apply(TasksManager shard, int[] positions) throws RemoteObjectException;
+    }
+
+    /**
+     * Waits for the reply of a shard, unwrapping its failure.
+     *
+     * @param reply The pending reply.
+     * @return The result of the shard.
+     * @throws RemoteObjectException If the shard call failed.
+     */
+    private static <R> R await(Future<R> reply) throws RemoteObjectException {
+        try {
+            return reply.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteObjectException("Interrupted while waiting for a shard.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RemoteObjectException) {
+                throw (RemoteObjectException) e.getCause();
+            }
+            throw new RemoteObjectException("Shard call failed.", e.getCause());
+        }
+    }
+}
@@ -1,15 +1,31 @@
 package application;
 
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.Serial;
-import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Task class to represent the task object.
+ * <p>
+ * Tasks are the bulk of most replies, so they use a compact wire form instead of default
+ * serialization: no field metadata, the status as its ordinal, and title and description as
+ * UTF-8 with a variable-length size. The assignee is interned before it is written. The object
+ * stream sends a string instance it has already sent as a short back-reference, so interning
+ * turns the stream's handle table into a dictionary of assignees, and each distinct assignee
+ * goes out in full only once per stream.
  */
-public class Task implements Serializable {
+public class Task implements Externalizable {
 
     @Serial
-    private static final long serialVersionUID = 1L; // UID for serialization
+    private static final long serialVersionUID = 2L; // UID for serialization
+
+    /**
+     * Wire value of a missing status.
+     */
+    private static final int NO_STATUS = -1;
     /**
      * ID of the task.
      */
@@ -52,6 +68,12 @@ public class Task implements Serializable {
         this.assignee = assignee;
     }
 
+    /**
+     * Constructs an empty task, to be filled in by <code>readExternal</code>.
+     */
+    public Task() {
+    }
+
     /**
      * Gets the id of the task.
      *
@@ -142,6 +164,91 @@ public class Task implements Serializable {
         this.assignee = assignee;
     }
 
+    /**
+     * Writes the task in its compact wire form.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If the stream cannot be written.
+     */
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeInt(id);
+        writeString(out, title);
+        writeString(out, description);
+        out.writeByte(status == null ? NO_STATUS : status.ordinal());
+        out.writeObject(assignee == null ? null : assignee.intern());
+    }
+
+    /**
+     * Reads a task written by <code>writeExternal</code>.
+     *
+     * @param in The stream to read from.
+     * @throws IOException If the stream cannot be read or holds an unknown status.
+     * @throws ClassNotFoundException If a string cannot be read back.
+     */
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        id = in.readInt();
+        title = readString(in);
+        description = readString(in);
+        int ordinal = in.readByte();
+        if (ordinal < NO_STATUS || ordinal >= TaskStatus.values().length) {
+            throw new IOException("Unknown task status " + ordinal);
+        }
+        status = ordinal == NO_STATUS ? null : TaskStatus.values()[ordinal];
+        assignee = (String) in.readObject();
+    }
+
+    /**
+     * Writes a nullable string as its UTF-8 bytes, preceded by the number of bytes plus one in
+     * seven-bit groups, with 0 marking null. Short strings thus take a single byte of overhead.
+     *
+     * @param out   The stream to write to.
+     * @param value The string to write.
+     * @throws IOException If the stream cannot be written.
+     */
+    private static void writeString(ObjectOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeByte(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int size = bytes.length + 1;
+        while ((size & ~0x7F) != 0) {
+            out.writeByte((size & 0x7F) | 0x80);
+            size >>>= 7;
+        }
+        out.writeByte(size);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by <code>writeString</code>.
+     *
+     * @param in The stream to read from.
+     * @return The string, or null.
+     * @throws IOException If the stream cannot be read or holds an invalid size.
+     */
+    private static String readString(ObjectInput in) throws IOException {
+        int size = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (shift > 28) {
+                throw new IOException("Invalid string size");
+            }
+            int group = in.readUnsignedByte();
+            size |= (group & 0x7F) << shift;
+            if ((group & 0x80) == 0) {
+                break;
+            }
+        }
+        if (size == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[size - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
     /**
      * Returns a string representation of the task.
      *
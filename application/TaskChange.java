@@ -0,0 +1,116 @@
+package application;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * A change to a task, as delivered by a change feed.
+ * <p>
+ * The change carries the whole task after the change together with the assignee and status it
+ * had before, so subscribers also learn about tasks that leave their assignee or status.
+ */
+public class TaskChange implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L; // UID for serialization
+
+    /**
+     * Sequence number of the change in its feed.
+     */
+    private final long sequence;
+
+    /**
+     * Copy of the task after the change.
+     */
+    private final Task task;
+
+    /**
+     * Assignee of the task before the change, or null.
+     */
+    private final String previousAssignee;
+
+    /**
+     * Status of the task before the change, or null for a created task.
+     */
+    private final TaskStatus previousStatus;
+
+    /**
+     * Constructs a change.
+     *
+     * @param sequence         The sequence number of the change.
+     * @param task             A copy of the task after the change.
+     * @param previousAssignee The assignee before the change, or null.
+     * @param previousStatus   The status before the change, or null for a created task.
+     */
+    public TaskChange(long sequence, Task task, String previousAssignee, TaskStatus previousStatus) {
+        this.sequence = sequence;
+        this.task = task;
+        this.previousAssignee = previousAssignee;
+        this.previousStatus = previousStatus;
+    }
+
+    /**
+     * Gets the sequence number of the change.
+     *
+     * @return The sequence number.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the task after the change.
+     *
+     * @return A copy of the task.
+     */
+    public Task getTask() {
+        return task;
+    }
+
+    /**
+     * Gets the assignee of the task before the change.
+     *
+     * @return The previous assignee, or null.
+     */
+    public String getPreviousAssignee() {
+        return previousAssignee;
+    }
+
+    /**
+     * Gets the status of the task before the change.
+     *
+     * @return The previous status, or null for a created task.
+     */
+    public TaskStatus getPreviousStatus() {
+        return previousStatus;
+    }
+
+    /**
+     * Checks whether the change concerns the given assignee and status, before or after the change.
+     *
+     * @param assignee The assignee, or null for any assignee.
+     * @param status   The status, or null for any status.
+     * @return True if the change matches.
+     */
+    boolean matches(String assignee, TaskStatus status) {
+        boolean assigneeMatches = assignee == null
+                || assignee.equals(task.getAssignee()) || assignee.equals(previousAssignee);
+        boolean statusMatches = status == null || status == task.getStatus() || status == previousStatus;
+        return assigneeMatches && statusMatches;
+    }
+
+    /**
+     * Returns a string representation of the change.
+     *
+     * @return A string representation of the change.
+     */
+    @Override
+    public String toString() {
+        return "TaskChange{" +
+                "sequence=" + sequence +
+                ", task=" + task +
+                ", previousAssignee='" + previousAssignee + '\'' +
+                ", previousStatus=" + previousStatus +
+                '}';
+    }
+}
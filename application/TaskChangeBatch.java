@@ -0,0 +1,96 @@
+package application;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Result of polling a change feed: the matching changes after the requested sequence number,
+ * and the sequence number to poll after next.
+ * <p>
+ * A subscriber first polls with <code>NOW</code> to learn the current sequence number, then reads
+ * the current state, for example through <code>queryTasks</code>, and then keeps polling after
+ * the returned sequence numbers. Changes made while the state was read are delivered again,
+ * which is harmless because each change carries the whole task. When the feed no longer holds
+ * all changes after the requested sequence number, the batch reports a gap and the subscriber
+ * has to read the state again.
+ */
+public class TaskChangeBatch implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L; // UID for serialization
+
+    /**
+     * Sequence number to poll after to receive only changes made from now on.
+     */
+    public static final long NOW = -1;
+
+    /**
+     * Matching changes, in sequence order.
+     */
+    private final List<TaskChange> changes;
+
+    /**
+     * Sequence number up to which the feed was read.
+     */
+    private final long lastSequence;
+
+    /**
+     * Whether changes after the requested sequence number were lost.
+     */
+    private final boolean gap;
+
+    /**
+     * Constructs a batch.
+     *
+     * @param changes      The matching changes, in sequence order.
+     * @param lastSequence The sequence number up to which the feed was read.
+     * @param gap          Whether changes after the requested sequence number were lost.
+     */
+    public TaskChangeBatch(List<TaskChange> changes, long lastSequence, boolean gap) {
+        this.changes = changes;
+        this.lastSequence = lastSequence;
+        this.gap = gap;
+    }
+
+    /**
+     * Gets the matching changes.
+     *
+     * @return The changes, in sequence order.
+     */
+    public List<TaskChange> getChanges() {
+        return changes;
+    }
+
+    /**
+     * Gets the sequence number to poll after next.
+     *
+     * @return The sequence number up to which the feed was read.
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Tells whether changes were lost, in which case the subscriber has to read the state again.
+     *
+     * @return True if changes were lost.
+     */
+    public boolean isGap() {
+        return gap;
+    }
+
+    /**
+     * Returns a string representation of the batch.
+     *
+     * @return A string representation of the batch.
+     */
+    @Override
+    public String toString() {
+        return "TaskChangeBatch{" +
+                "changes=" + changes +
+                ", lastSequence=" + lastSequence +
+                ", gap=" + gap +
+                '}';
+    }
+}
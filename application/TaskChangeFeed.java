@@ -0,0 +1,281 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded history of task changes that subscribers poll.
+ * <p>
+ * Every change gets the next sequence number and is kept in a ring buffer until newer changes
+ * overwrite it. A poll returns the changes after a given sequence number that match its filter,
+ * waiting until one arrives or the poll times out. Subscribers therefore hold one call open
+ * instead of repeatedly fetching all their tasks, and an idle subscriber costs one waiting
+ * thread rather than a stream of empty replies.
+ * <p>
+ * The feed takes no lock. A writer claims a sequence number from an atomic counter and stores the
+ * change in its slot; a reader knows from the sequence number of the change in a slot whether the
+ * slot is not written yet, holds the change it expects, or was already overwritten, in which case
+ * the reader has missed changes. Waiting subscribers are registered under the assignee they watch,
+ * and a writer only wakes those whose filter the change matches.
+ * <p>
+ * Sequence numbers start from the clock, so a subscriber that continues against a restarted
+ * server finds its sequence number outside the feed and sees a gap.
+ */
+public class TaskChangeFeed {
+
+    /**
+     * Default number of changes kept.
+     */
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    /**
+     * Maximum number of changes returned by one poll.
+     */
+    static final int MAX_CHANGES_PER_POLL = 1000;
+
+    /**
+     * Ring buffer of the latest changes, indexed by sequence number.
+     */
+    private final AtomicReferenceArray<TaskChange> changes;
+
+    /**
+     * Sequence number of the latest change claimed by a writer, which may still be storing it.
+     */
+    private final AtomicLong latest;
+
+    /**
+     * Sequence number at or after which subscribers must have read, since the history before it was
+     * discarded.
+     */
+    private final AtomicLong horizon;
+
+    /**
+     * Subscribers waiting for changes of a given assignee, by assignee.
+     */
+    private final ConcurrentHashMap<String, Set<Waiter>> waiters = new ConcurrentHashMap<>();
+
+    /**
+     * Subscribers waiting for changes of any assignee.
+     */
+    private final Set<Waiter> anyAssigneeWaiters = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructs a feed keeping <code>DEFAULT_CAPACITY</code> changes.
+     */
+    public TaskChangeFeed() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a feed keeping the given number of changes.
+     *
+     * @param capacity The number of changes kept.
+     */
+    public TaskChangeFeed(int capacity) {
+        changes = new AtomicReferenceArray<>(capacity);
+        long start = System.currentTimeMillis() << 20;
+        latest = new AtomicLong(start);
+        horizon = new AtomicLong(start);
+    }
+
+    /**
+     * Records a change.
+     *
+     * @param task             The task after the change, which is not changed afterwards.
+     * @param previousAssignee The assignee before the change, or null.
+     * @param previousStatus   The status before the change, or null for a created task.
+     */
+    void publish(Task task, String previousAssignee, TaskStatus previousStatus) {
+        long sequence = latest.incrementAndGet();
+        TaskChange change = new TaskChange(sequence, task, previousAssignee, previousStatus);
+        changes.set(slot(sequence), change);
+        wake(anyAssigneeWaiters, change);
+        if (task.getAssignee() != null) {
+            wake(waiters.get(task.getAssignee()), change);
+        }
+        if (previousAssignee != null && !previousAssignee.equals(task.getAssignee())) {
+            wake(waiters.get(previousAssignee), change);
+        }
+    }
+
+    /**
+     * Forgets all changes, so that every subscriber sees a gap. This is used when the state is
+     * replaced as a whole.
+     */
+    void discardHistory() {
+        // Skipping a sequence number puts even up-to-date subscribers before the horizon. The slot
+        // gets a change without a task, so that readers after it do not wait for it.
+        long sequence = latest.incrementAndGet();
+        changes.set(slot(sequence), new TaskChange(sequence, null, null, null));
+        horizon.accumulateAndGet(sequence, Math::max);
+        wake(anyAssigneeWaiters, null);
+        for (Set<Waiter> waiting : waiters.values()) {
+            wake(waiting, null);
+        }
+    }
+
+    /**
+     * Gets the changes after a sequence number that match a filter, waiting for one if there are none.
+     *
+     * @param assignee      The assignee to watch, or null for any assignee.
+     * @param status        The status to watch, or null for any status.
+     * @param afterSequence The sequence number of the last change seen, or <code>TaskChangeBatch.NOW</code>.
+     * @param maxWaitMillis How long to wait for a matching change, in milliseconds.
+     * @return The matching changes, possibly none if the poll timed out.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    TaskChangeBatch poll(String assignee, TaskStatus status, long afterSequence, long maxWaitMillis)
+            throws InterruptedException {
+        long cursor = afterSequence == TaskChangeBatch.NOW ? latest.get() : afterSequence;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+        List<TaskChange> matched = new ArrayList<>();
+        Waiter waiter = null;
+        try {
+            while (true) {
+                cursor = scan(assignee, status, cursor, matched);
+                if (cursor < 0) {
+                    return new TaskChangeBatch(List.of(), latest.get(), true);
+                }
+                long remaining = deadline - System.nanoTime();
+                if (!matched.isEmpty() || remaining <= 0) {
+                    return new TaskChangeBatch(matched, cursor, false);
+                }
+                if (waiter == null) {
+                    // Register, then scan again, so that a change published meanwhile is not missed.
+                    waiter = register(assignee, status);
+                    continue;
+                }
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            if (waiter != null) {
+                unregister(waiter);
+            }
+        }
+    }
+
+    /**
+     * Reads the changes after a sequence number that are written, adding those that match a filter.
+     *
+     * @param assignee The assignee to watch, or null for any assignee.
+     * @param status   The status to watch, or null for any status.
+     * @param cursor   The sequence number of the last change read.
+     * @param matched  Receives the matching changes, up to <code>MAX_CHANGES_PER_POLL</code> in all.
+     * @return The sequence number of the last change read, or -1 if changes after the cursor were lost.
+     */
+    private long scan(String assignee, TaskStatus status, long cursor, List<TaskChange> matched) {
+        long claimed = latest.get();
+        if (cursor < horizon.get() || cursor > claimed) {
+            return -1;
+        }
+        while (cursor < claimed && matched.size() < MAX_CHANGES_PER_POLL) {
+            TaskChange change = changes.get(slot(cursor + 1));
+            if (change == null || change.getSequence() <= cursor) {
+                // The writer claimed the sequence number but has not stored the change yet; it is
+                // about to, and the changes after it are only read once it has.
+                Thread.onSpinWait();
+                Thread.yield();
+                continue;
+            }
+            if (change.getSequence() > cursor + 1) {
+                return -1;
+            }
+            cursor++;
+            if (change.getTask() != null && change.matches(assignee, status)) {
+                matched.add(change);
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * Registers the current thread to be woken up by changes matching a filter.
+     *
+     * @param assignee The assignee watched, or null for any assignee.
+     * @param status   The status watched, or null for any status.
+     * @return The registration.
+     */
+    private Waiter register(String assignee, TaskStatus status) {
+        Waiter waiter = new Waiter(Thread.currentThread(), assignee, status);
+        if (assignee == null) {
+            anyAssigneeWaiters.add(waiter);
+        } else {
+            waiters.compute(assignee, (key, waiting) -> {
+                Set<Waiter> registered = waiting == null ? ConcurrentHashMap.newKeySet() : waiting;
+                registered.add(waiter);
+                return registered;
+            });
+        }
+        return waiter;
+    }
+
+    /**
+     * Removes a registration, dropping the set of its assignee once it is empty.
+     *
+     * @param waiter The registration.
+     */
+    private void unregister(Waiter waiter) {
+        if (waiter.assignee == null) {
+            anyAssigneeWaiters.remove(waiter);
+        } else {
+            waiters.computeIfPresent(waiter.assignee, (key, waiting) -> {
+                waiting.remove(waiter);
+                return waiting.isEmpty() ? null : waiting;
+            });
+        }
+    }
+
+    /**
+     * Wakes up the waiting subscribers whose filter a change matches.
+     *
+     * @param waiting The subscribers, or null if there are none.
+     * @param change  The change, or null to wake up all of them.
+     */
+    private static void wake(Set<Waiter> waiting, TaskChange change) {
+        if (waiting == null || waiting.isEmpty()) {
+            return;
+        }
+        for (Waiter waiter : waiting) {
+            if (change == null || change.matches(waiter.assignee, waiter.status)) {
+                LockSupport.unpark(waiter.thread);
+            }
+        }
+    }
+
+    /**
+     * Gets the position of a sequence number in the ring buffer.
+     *
+     * @param sequence The sequence number.
+     * @return The position in the ring buffer.
+     */
+    private int slot(long sequence) {
+        return (int) Math.floorMod(sequence, (long) changes.length());
+    }
+
+    /**
+     * A subscriber waiting in <code>poll</code>, and its filter.
+     */
+    private static final class Waiter {
+
+        private final Thread thread;
+
+        private final String assignee;
+
+        private final TaskStatus status;
+
+        Waiter(Thread thread, String assignee, TaskStatus status) {
+            this.thread = thread;
+            this.assignee = assignee;
+            this.status = status;
+        }
+    }
+}
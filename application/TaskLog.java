@@ -0,0 +1,238 @@
+package application;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of task mutations with group commit.
+ * <p>
+ * Each record is framed as its payload length, a CRC32 of the payload and the payload itself,
+ * so that a record torn by a crash is detected and dropped on recovery.
+ * <p>
+ * Appending only encodes the record into an in-memory buffer. A writer then waits in
+ * <code>awaitDurable</code> until its record is on disk. The first waiter becomes the leader:
+ * it writes everything buffered so far and forces the file once, while writers arriving
+ * meanwhile queue up behind it and are usually covered by the next single force. Concurrent
+ * writers therefore share fsyncs instead of paying for one each.
+ */
+public class TaskLog implements Closeable {
+
+    /**
+     * Upper bound on the size of a single record, used to reject corrupted length fields.
+     */
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Channel of the log file, positioned at its end.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Records appended but not yet handed to a leader for writing.
+     */
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    /**
+     * Sequence number of the last appended record.
+     */
+    private long appendedSequence;
+
+    /**
+     * Sequence number of the last record known to be on disk.
+     */
+    private long durableSequence;
+
+    /**
+     * Flag indicating whether a leader is currently writing and forcing a batch.
+     */
+    private boolean flushing;
+
+    /**
+     * The failure of a previous flush; once set, the log accepts no further writes.
+     */
+    private IOException failure;
+
+    /**
+     * Opens a log for appending after the given number of valid bytes, discarding anything
+     * beyond them, such as a record torn by a crash.
+     *
+     * @param file       The log file, created if it does not exist.
+     * @param validBytes The length of the valid prefix, as returned by <code>replay</code>.
+     * @throws IOException If the file cannot be opened.
+     */
+    public TaskLog(Path file, long validBytes) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() > validBytes) {
+            channel.truncate(validBytes);
+            channel.force(true);
+        }
+        channel.position(validBytes);
+    }
+
+    /**
+     * Reads every valid record of a log file in order.
+     *
+     * @param file     The log file; a missing file holds no records.
+     * @param consumer Receives each mutation.
+     * @return The length of the valid prefix of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    public static long replay(Path file, Consumer<TaskMutation> consumer) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        long valid = 0;
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+             DataInputStream in = new DataInputStream(stream)) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                int checksum;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if (length < 0 || length > MAX_RECORD_SIZE) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                consumer.accept(TaskMutation.readFrom(new DataInputStream(new ByteArrayInputStream(payload))));
+                valid += 8 + length;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Appends a mutation to the log. The mutation is not durable until
+     * <code>awaitDurable</code> returns for the returned sequence number.
+     *
+     * @param mutation The mutation to append.
+     * @return The sequence number of the record.
+     * @throws IOException If a previous flush failed.
+     */
+    public synchronized long append(TaskMutation mutation) throws IOException {
+        if (failure != null) {
+            throw new IOException("Log is unusable after a failed write", failure);
+        }
+        ByteArrayOutputStream record = new ByteArrayOutputStream(64);
+        mutation.writeTo(new DataOutputStream(record));
+        CRC32 crc = new CRC32();
+        crc.update(record.toByteArray());
+
+        DataOutputStream out = new DataOutputStream(pending);
+        out.writeInt(record.size());
+        out.writeInt((int) crc.getValue());
+        record.writeTo(out);
+        return ++appendedSequence;
+    }
+
+    /**
+     * Blocks until the record with the given sequence number is on disk, taking part in
+     * a group commit as either the leader or a follower.
+     *
+     * @param sequence The sequence number returned by <code>append</code>.
+     * @throws IOException If the record could not be made durable.
+     */
+    public void awaitDurable(long sequence) throws IOException {
+        byte[] batch;
+        long batchEnd;
+        synchronized (this) {
+            while (durableSequence < sequence && flushing && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the log", e);
+                }
+            }
+            if (failure != null) {
+                throw new IOException("Log is unusable after a failed write", failure);
+            }
+            if (durableSequence >= sequence) {
+                return;
+            }
+            // Become the leader for everything appended so far.
+            flushing = true;
+            batch = pending.toByteArray();
+            pending = new ByteArrayOutputStream(Math.max(32, batch.length));
+            batchEnd = appendedSequence;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(batch);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+                flushing = false;
+                notifyAll();
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            durableSequence = batchEnd;
+            flushing = false;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Gets the sequence number of the last appended record, which is also the number of
+     * records appended since the log was opened.
+     *
+     * @return The sequence number of the last appended record.
+     */
+    public synchronized long getAppendedSequence() {
+        return appendedSequence;
+    }
+
+    /**
+     * Flushes any buffered records and closes the log file.
+     *
+     * @throws IOException If the records cannot be written or the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            long last;
+            boolean failed;
+            synchronized (this) {
+                last = appendedSequence;
+                failed = failure != null;
+            }
+            if (!failed) {
+                awaitDurable(last);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package application;
+
+import remote.RemoteObjectException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serial;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A single change to the task state, as recorded in the write-ahead log.
+ * <p>
+ * Each mutation carries the full new value of the fields it changes, so replaying
+ * the mutations in order on an empty <code>TasksManagerExecutor</code> rebuilds the state.
+ */
+public class TaskMutation implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L; // UID for serialization
+
+    /**
+     * Kinds of mutations.
+     */
+    public enum Type {
+        CREATE,
+        ASSIGN,
+        UPDATE_STATUS
+    }
+
+    /**
+     * Kind of the mutation.
+     */
+    private final Type type;
+
+    /**
+     * ID of the task that is changed.
+     */
+    private final int id;
+
+    /**
+     * Title of a created task, or null for other mutations.
+     */
+    private final String title;
+
+    /**
+     * Description of a created task, or null for other mutations.
+     */
+    private final String description;
+
+    /**
+     * New assignee of an assigned task, or null for other mutations.
+     */
+    private final String assignee;
+
+    /**
+     * New status of an updated task, or null for other mutations.
+     */
+    private final TaskStatus status;
+
+    private TaskMutation(Type type, int id, String title, String description, String assignee, TaskStatus status) {
+        this.type = type;
+        this.id = id;
+        this.title = title;
+        this.description = description;
+        this.assignee = assignee;
+        this.status = status;
+    }
+
+    /**
+     * Creates a mutation recording the creation of a task.
+     *
+     * @param id          The id of the created task.
+     * @param title       The title of the task.
+     * @param description The description of the task.
+     * @return The mutation.
+     */
+    public static TaskMutation create(int id, String title, String description) {
+        return new TaskMutation(Type.CREATE, id, title, description, null, null);
+    }
+
+    /**
+     * Creates a mutation recording the assignment of a task.
+     *
+     * @param id       The id of the task.
+     * @param assignee The new assignee of the task.
+     * @return The mutation.
+     */
+    public static TaskMutation assign(int id, String assignee) {
+        return new TaskMutation(Type.ASSIGN, id, null, null, assignee, null);
+    }
+
+    /**
+     * Creates a mutation recording a status update of a task.
+     *
+     * @param id     The id of the task.
+     * @param status The new status of the task.
+     * @return The mutation.
+     */
+    public static TaskMutation updateStatus(int id, TaskStatus status) {
+        return new TaskMutation(Type.UPDATE_STATUS, id, null, null, null, status);
+    }
+
+    /**
+     * Gets the kind of the mutation.
+     *
+     * @return The kind of the mutation.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the id of the changed task.
+     *
+     * @return The id of the task.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Applies the mutation to the given executor.
+     *
+     * @param executor The executor to change.
+     * @throws TaskNotFoundException If the mutation changes a task that does not exist.
+     */
+    public void applyTo(TasksManagerExecutor executor) throws TaskNotFoundException {
+        try {
+            switch (type) {
+                case CREATE:
+                    executor.restoreTask(id, title, description, TaskStatus.OPEN, null);
+                    break;
+                case ASSIGN:
+                    executor.assignTask(id, assignee);
+                    break;
+                case UPDATE_STATUS:
+                    executor.updateStatus(id, status);
+                    break;
+            }
+        } catch (RemoteObjectException e) {
+            // The local executor never fails with a remote exception.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the mutation in its binary log form.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If the stream cannot be written.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(type.ordinal());
+        out.writeInt(id);
+        switch (type) {
+            case CREATE:
+                writeString(out, title);
+                writeString(out, description);
+                break;
+            case ASSIGN:
+                writeString(out, assignee);
+                break;
+            case UPDATE_STATUS:
+                writeString(out, status.name());
+                break;
+        }
+    }
+
+    /**
+     * Reads a mutation written by <code>writeTo</code>.
+     *
+     * @param in The stream to read from.
+     * @return The mutation.
+     * @throws IOException If the stream cannot be read or does not hold a valid mutation.
+     */
+    public static TaskMutation readFrom(DataInputStream in) throws IOException {
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= Type.values().length) {
+            throw new IOException("Unknown mutation type " + ordinal);
+        }
+        Type type = Type.values()[ordinal];
+        int id = in.readInt();
+        switch (type) {
+            case CREATE:
+                return create(id, readString(in), readString(in));
+            case ASSIGN:
+                return assign(id, readString(in));
+            default:
+                try {
+                    return updateStatus(id, TaskStatus.valueOf(readString(in)));
+                } catch (IllegalArgumentException | NullPointerException e) {
+                    throw new IOException("Invalid task status in mutation", e);
+                }
+        }
+    }
+
+    /**
+     * Writes a nullable string as a length-prefixed UTF-8 byte sequence, with -1 marking null.
+     *
+     * @param out   The stream to write to.
+     * @param value The string to write.
+     * @throws IOException If the stream cannot be written.
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by <code>writeString</code>.
+     *
+     * @param in The stream to read from.
+     * @return The string, or null.
+     * @throws IOException If the stream cannot be read.
+     */
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a string representation of the mutation.
+     *
+     * @return A string representation of the mutation.
+     */
+    @Override
+    public String toString() {
+        return "TaskMutation{" +
+                "type=" + type +
+                ", id=" + id +
+                ", title='" + title + '\'' +
+                ", description='" + description + '\'' +
+                ", assignee='" + assignee + '\'' +
+                ", status=" + status +
+                '}';
+    }
+}
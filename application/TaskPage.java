@@ -0,0 +1,89 @@
+package application;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * One page of the result of a task query, ordered by task id.
+ * <p>
+ * The cursor of the page is passed to the next query to continue after the last task of this
+ * page. Tasks created or changed between the queries are seen by later pages if their id comes
+ * after the cursor.
+ */
+public class TaskPage implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L; // UID for serialization
+
+    /**
+     * Cursor starting a query at the first matching task.
+     */
+    public static final int FIRST = 0;
+
+    /**
+     * Cursor returned by the last page of a query.
+     */
+    public static final int END = -1;
+
+    /**
+     * Tasks of the page.
+     */
+    private final List<Task> tasks;
+
+    /**
+     * Cursor of the next page, or <code>END</code>.
+     */
+    private final int nextCursor;
+
+    /**
+     * Constructs a page with the given tasks and cursor.
+     *
+     * @param tasks      The tasks of the page, ordered by id.
+     * @param nextCursor The cursor of the next page, or <code>END</code> if there is none.
+     */
+    public TaskPage(List<Task> tasks, int nextCursor) {
+        this.tasks = tasks;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Gets the tasks of the page.
+     *
+     * @return The tasks, ordered by id.
+     */
+    public List<Task> getTasks() {
+        return tasks;
+    }
+
+    /**
+     * Gets the cursor to pass to the query for the next page.
+     *
+     * @return The cursor of the next page, or <code>END</code> if this is the last page.
+     */
+    public int getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Tells whether more tasks may follow this page.
+     *
+     * @return True if there is a next page.
+     */
+    public boolean hasMore() {
+        return nextCursor != END;
+    }
+
+    /**
+     * Returns a string representation of the page.
+     *
+     * @return A string representation of the page.
+     */
+    @Override
+    public String toString() {
+        return "TaskPage{" +
+                "tasks=" + tasks +
+                ", nextCursor=" + nextCursor +
+                '}';
+    }
+}
@@ -0,0 +1,449 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Inverted index over the titles and descriptions of tasks.
+ * <p>
+ * Text is split into lower-case words of letters and digits. For each word the index keeps a
+ * posting list of the ids of the tasks containing it, each with a weight counting its occurrences,
+ * where an occurrence in the title counts twice. A search returns the tasks containing all words
+ * of the query, ranked by the sum of their weights and then by newest id, and only walks the
+ * posting lists of the query words. Posting lists are primitive arrays, and each task contributes
+ * at most <code>MAX_TERMS_PER_TASK</code> words of at most <code>MAX_TERM_LENGTH</code> characters,
+ * which bounds the memory of the index per task.
+ * <p>
+ * The index is updated incrementally and is safe for concurrent use. Each posting list is guarded
+ * by its own lock; searches take a consistent view of each list and work on it without locking.
+ * Removing a task leaves a tombstone in each of its lists, and a list is only rewritten once
+ * tombstones outnumber its live entries, so that updates do not copy the lists of common words.
+ */
+public class TaskSearchIndex {
+
+    /**
+     * Maximum number of distinct words indexed per task.
+     */
+    public static final int MAX_TERMS_PER_TASK = 64;
+
+    /**
+     * Words shorter than this are not indexed.
+     */
+    static final int MIN_TERM_LENGTH = 2;
+
+    /**
+     * Words longer than this are not indexed.
+     */
+    static final int MAX_TERM_LENGTH = 32;
+
+    /**
+     * Weight of an occurrence in the title; one in the description counts once.
+     */
+    private static final int TITLE_WEIGHT = 2;
+
+    /**
+     * Posting lists by word.
+     */
+    private final ConcurrentHashMap<String, Postings> postings = new ConcurrentHashMap<>();
+
+    /**
+     * Indexes a task.
+     *
+     * @param id          The id of the task.
+     * @param title       The title of the task.
+     * @param description The description of the task.
+     */
+    public void add(int id, String title, String description) {
+        for (Map.Entry<String, Integer> term : weights(title, description).entrySet()) {
+            Postings list = postings.get(term.getKey());
+            if (list != null && list.add(id, term.getValue())) {
+                continue;
+            }
+            // The list is new, or was emptied and dropped by a concurrent removal.
+            postings.compute(term.getKey(), (key, current) -> {
+                Postings added = current == null ? new Postings() : current;
+                added.add(id, term.getValue());
+                return added;
+            });
+        }
+    }
+
+    /**
+     * Removes a task indexed with the given text.
+     *
+     * @param id          The id of the task.
+     * @param title       The title the task was indexed with.
+     * @param description The description the task was indexed with.
+     */
+    public void remove(int id, String title, String description) {
+        for (String term : weights(title, description).keySet()) {
+            postings.computeIfPresent(term, (key, list) -> list.remove(id) ? null : list);
+        }
+    }
+
+    /**
+     * Finds the tasks containing all words of a query.
+     *
+     * @param query The query.
+     * @param limit The largest number of results.
+     * @return The ids of the best matches, best first.
+     */
+    public int[] search(String query, int limit) {
+        List<String> terms = terms(query);
+        if (terms.isEmpty()) {
+            return new int[0];
+        }
+        Postings.View[] views = new Postings.View[terms.size()];
+        for (int i = 0; i < views.length; i++) {
+            Postings list = postings.get(terms.get(i));
+            if (list == null) {
+                return new int[0];
+            }
+            views[i] = list.view();
+        }
+        // Walking the shortest list keeps the work proportional to the rarest word.
+        Arrays.sort(views, Comparator.comparingInt(view -> view.size));
+        Postings.View shortest = views[0];
+        int[] positions = new int[views.length];
+        for (int k = 1; k < views.length; k++) {
+            positions[k] = views[k].size;
+        }
+        PriorityQueue<Long> best = new PriorityQueue<>();
+        // Newest first, so that once the limit is reached older tasks only enter with a higher score.
+        candidates:
+        for (int i = shortest.size - 1; i >= 0; i--) {
+            int id = shortest.ids[i];
+            long score = shortest.weights[i];
+            if (score == Postings.TOMBSTONE) {
+                continue;
+            }
+            for (int k = 1; k < views.length; k++) {
+                Postings.View view = views[k];
+                int position = Arrays.binarySearch(view.ids, 0, positions[k], id);
+                if (position < 0) {
+                    positions[k] = -position - 1;
+                    continue candidates;
+                }
+                positions[k] = position;
+                if (view.weights[position] == Postings.TOMBSTONE) {
+                    continue candidates;
+                }
+                score += view.weights[position];
+            }
+            offer(best, score, id, limit);
+        }
+        return drain(best);
+    }
+
+    /**
+     * Scores a task against a query the way the index ranks it, so that results of several
+     * indexes can be merged.
+     *
+     * @param query The query.
+     * @param task  The task.
+     * @return The score, or 0 if the task does not contain all words of the query.
+     */
+    public static long score(String query, Task task) {
+        return score(terms(query), task.getTitle(), task.getDescription());
+    }
+
+    /**
+     * Scores a text against the words of a query.
+     *
+     * @param terms       The words of the query.
+     * @param title       The title of the task.
+     * @param description The description of the task.
+     * @return The score, or 0 if the text does not contain all words.
+     */
+    static long score(List<String> terms, String title, String description) {
+        if (terms.isEmpty()) {
+            return 0;
+        }
+        Map<String, Integer> weights = weights(title, description);
+        long score = 0;
+        for (String term : terms) {
+            Integer weight = weights.get(term);
+            if (weight == null) {
+                return 0;
+            }
+            score += weight;
+        }
+        return score;
+    }
+
+    /**
+     * Adds a match to the best matches so far, dropping the worst once there are more than the limit.
+     * Matches are ordered by score and then id, with the worst on top of the queue.
+     *
+     * @param best  The best matches so far.
+     * @param score The score of the match.
+     * @param id    The id of the matching task.
+     * @param limit The largest number of matches to keep.
+     */
+    private static void offer(PriorityQueue<Long> best, long score, int id, int limit) {
+        long match = (score << 32) | id;
+        if (best.size() < limit) {
+            best.add(match);
+        } else if (match > best.peek()) {
+            best.poll();
+            best.add(match);
+        }
+    }
+
+    /**
+     * Takes the ids of the best matches out of a queue filled by <code>offer</code>.
+     *
+     * @param best The best matches.
+     * @return The ids, best first.
+     */
+    private static int[] drain(PriorityQueue<Long> best) {
+        int[] ids = new int[best.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            ids[i] = (int) (long) best.poll();
+        }
+        return ids;
+    }
+
+    /**
+     * Gets the distinct indexable words of a text, in order of appearance.
+     *
+     * @param text The text, or null.
+     * @return The words.
+     */
+    static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        forEachTerm(text, term -> {
+            if (!terms.contains(term)) {
+                terms.add(term);
+            }
+        });
+        return terms;
+    }
+
+    /**
+     * Counts the weighted occurrences of the indexed words of a task.
+     *
+     * @param title       The title of the task.
+     * @param description The description of the task.
+     * @return The weight of each indexed word, capped to fit a posting.
+     */
+    private static Map<String, Integer> weights(String title, String description) {
+        Map<String, Integer> weights = new HashMap<>();
+        forEachTerm(title, term -> addWeight(weights, term, TITLE_WEIGHT));
+        forEachTerm(description, term -> addWeight(weights, term, 1));
+        return weights;
+    }
+
+    /**
+     * Adds to the weight of a word, unless the task already has the maximum number of words.
+     *
+     * @param weights The weights so far.
+     * @param term    The word.
+     * @param weight  The weight to add.
+     */
+    private static void addWeight(Map<String, Integer> weights, String term, int weight) {
+        if (weights.containsKey(term) || weights.size() < MAX_TERMS_PER_TASK) {
+            weights.merge(term, weight, (a, b) -> Math.min(Byte.MAX_VALUE, a + b));
+        }
+    }
+
+    /**
+     * Splits a text into lower-case words of letters and digits and passes the indexable ones on.
+     *
+     * @param text     The text, or null.
+     * @param consumer Receives the words.
+     */
+    private static void forEachTerm(String text, Consumer<String> consumer) {
+        if (text == null) {
+            return;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                int length = i - start;
+                if (length >= MIN_TERM_LENGTH && length <= MAX_TERM_LENGTH) {
+                    consumer.accept(text.substring(start, i).toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * Posting list of one word: task ids with their weights, sorted by id when viewed.
+     * <p>
+     * Entries are appended in place, and a removed entry is marked in place with the weight
+     * <code>TOMBSTONE</code>, which searches skip; a search holding a view may thus see a removal
+     * made after it took the view, as if the removal happened first. Sorting and compaction write
+     * new arrays, so a view taken under the lock stays sorted after the lock is released.
+     */
+    private static final class Postings {
+
+        /**
+         * Weight of a removed entry; the weight of a live entry is at least one.
+         */
+        static final byte TOMBSTONE = 0;
+
+        int[] ids = new int[4];
+
+        byte[] weights = new byte[4];
+
+        int size;
+
+        /**
+         * Number of entries that are not tombstones.
+         */
+        int live;
+
+        /**
+         * Length of the prefix of the list sorted by id, without duplicate ids; entries after it
+         * were appended out of order since the last sort.
+         */
+        int sorted;
+
+        /**
+         * Whether the list became empty and was dropped from the index.
+         */
+        boolean dropped;
+
+        /**
+         * Appends an id.
+         *
+         * @return False if the list was dropped from the index, in which case nothing is added.
+         */
+        synchronized boolean add(int id, int weight) {
+            if (dropped) {
+                return false;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            // Tasks restored from a snapshot arrive in any order, and an updated task comes back
+            // after the tombstone of its previous entry; sorting drops the tombstone.
+            if (sorted == size && (size == 0 || id > ids[size - 1])) {
+                sorted++;
+            }
+            ids[size] = id;
+            weights[size] = (byte) weight;
+            size++;
+            live++;
+            return true;
+        }
+
+        /**
+         * Removes an id by marking its entry as a tombstone, and compacts the list once tombstones
+         * outnumber live entries. A list left empty is marked as dropped, since the index drops it.
+         *
+         * @return True if the list is empty afterwards.
+         */
+        synchronized boolean remove(int id) {
+            int position = find(id);
+            if (position >= 0) {
+                weights[position] = TOMBSTONE;
+                live--;
+            }
+            dropped = live == 0;
+            if (!dropped && live < size - live) {
+                compact();
+            }
+            return dropped;
+        }
+
+        /**
+         * Finds the live entry of an id.
+         *
+         * @return The position of the entry, or -1 if there is none.
+         */
+        private int find(int id) {
+            int position = Arrays.binarySearch(ids, 0, sorted, id);
+            if (position >= 0 && weights[position] != TOMBSTONE) {
+                return position;
+            }
+            for (int i = size - 1; i >= sorted; i--) {
+                if (ids[i] == id && weights[i] != TOMBSTONE) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        synchronized View view() {
+            if (sorted < size) {
+                long[] packed = new long[size];
+                for (int i = 0; i < size; i++) {
+                    packed[i] = ((long) ids[i] << 8) | (weights[i] & 0xFF);
+                }
+                Arrays.sort(packed);
+                int[] sortedIds = new int[ids.length];
+                byte[] sortedWeights = new byte[ids.length];
+                int kept = 0;
+                for (int i = 0; i < size; i++) {
+                    if ((byte) packed[i] != TOMBSTONE) {
+                        sortedIds[kept] = (int) (packed[i] >>> 8);
+                        sortedWeights[kept] = (byte) packed[i];
+                        kept++;
+                    }
+                }
+                ids = sortedIds;
+                weights = sortedWeights;
+                size = kept;
+                sorted = kept;
+            }
+            return new View(ids, weights, size);
+        }
+
+        /**
+         * Rewrites the list without its tombstones, keeping the order of the live entries.
+         */
+        private void compact() {
+            int[] keptIds = new int[Math.max(4, live * 2)];
+            byte[] keptWeights = new byte[keptIds.length];
+            int kept = 0;
+            int keptSorted = 0;
+            for (int i = 0; i < size; i++) {
+                if (weights[i] != TOMBSTONE) {
+                    keptIds[kept] = ids[i];
+                    keptWeights[kept] = weights[i];
+                    kept++;
+                }
+                if (i == sorted - 1) {
+                    keptSorted = kept;
+                }
+            }
+            ids = keptIds;
+            weights = keptWeights;
+            size = kept;
+            sorted = keptSorted;
+        }
+
+        /**
+         * Immutable prefix of a posting list.
+         */
+        static final class View {
+
+            final int[] ids;
+
+            final byte[] weights;
+
+            final int size;
+
+            View(int[] ids, byte[] weights, int size) {
+                this.ids = ids;
+                this.weights = weights;
+                this.size = size;
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package application;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary snapshot of all tasks.
+ * <p>
+ * A snapshot starts with a header naming the first log generation that must be replayed on
+ * top of it. Each task follows as a fixed set of fields, and a footer holds the largest task
+ * id, the record count and a CRC32 of everything before it. Snapshots are written to a
+ * temporary file, forced and atomically renamed, so a crash never leaves a partial snapshot
+ * in place. Loading reads the file through memory-mapped windows rather than a stream.
+ */
+public class TaskSnapshot {
+
+    /**
+     * Magic number identifying snapshot files.
+     */
+    private static final int MAGIC = 0x54534e50;
+
+    /**
+     * Version of the snapshot format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the memory-mapped window used while loading.
+     */
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Writes the tasks produced by a scan to a snapshot file.
+     *
+     * @param file       The snapshot file to replace.
+     * @param generation The first log generation not covered by the snapshot.
+     * @param scan       Feeds every task to the given consumer.
+     * @param maxId      Supplies the largest task id once the scan has finished.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public static void write(Path file, long generation, Consumer<Consumer<Task>> scan,
+                             IntSupplier maxId) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CRC32 crc = new CRC32();
+            OutputStream buffered = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(buffered, crc));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(generation);
+
+            long[] count = new long[1];
+            IOException[] failure = new IOException[1];
+            scan.accept(task -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    out.writeByte(1);
+                    out.writeInt(task.getId());
+                    out.writeByte(task.getStatus().ordinal());
+                    TaskMutation.writeString(out, task.getTitle());
+                    TaskMutation.writeString(out, task.getDescription());
+                    TaskMutation.writeString(out, task.getAssignee());
+                    count[0]++;
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+
+            out.writeByte(0);
+            out.writeInt(maxId.getAsInt());
+            out.writeLong(count[0]);
+            out.flush();
+            // The checksum itself is written past the checked stream.
+            new DataOutputStream(buffered).writeInt((int) crc.getValue());
+            buffered.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a snapshot file.
+     *
+     * @param file     The snapshot file.
+     * @param consumer Receives every task of the snapshot.
+     * @return The header and footer of the snapshot.
+     * @throws IOException If the file cannot be read or is corrupted.
+     */
+    public static Header load(Path file, Consumer<Task> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedReader in = new MappedReader(channel);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a task snapshot: " + file);
+            }
+            long generation = in.readLong();
+            TaskStatus[] statuses = TaskStatus.values();
+            while (in.readByte() == 1) {
+                int id = in.readInt();
+                int status = in.readByte();
+                if (status < 0 || status >= statuses.length) {
+                    throw new IOException("Invalid task status in snapshot: " + file);
+                }
+                String title = in.readString();
+                String description = in.readString();
+                String assignee = in.readString();
+                consumer.accept(new Task(id, title, description, statuses[status], assignee));
+            }
+            int maxId = in.readInt();
+            long count = in.readLong();
+            int expected = (int) in.checksum();
+            if (in.readInt() != expected) {
+                throw new IOException("Corrupted task snapshot: " + file);
+            }
+            return new Header(generation, maxId, count);
+        }
+    }
+
+    /**
+     * Summary of a loaded snapshot.
+     */
+    public static class Header {
+
+        /**
+         * The first log generation not covered by the snapshot.
+         */
+        private final long generation;
+
+        /**
+         * The largest task id at the time of the snapshot.
+         */
+        private final int maxId;
+
+        /**
+         * The number of tasks in the snapshot.
+         */
+        private final long count;
+
+        Header(long generation, int maxId, long count) {
+            this.generation = generation;
+            this.maxId = maxId;
+            this.count = count;
+        }
+
+        /**
+         * Gets the first log generation not covered by the snapshot.
+         *
+         * @return The log generation.
+         */
+        public long getGeneration() {
+            return generation;
+        }
+
+        /**
+         * Gets the largest task id at the time of the snapshot.
+         *
+         * @return The largest task id.
+         */
+        public int getMaxId() {
+            return maxId;
+        }
+
+        /**
+         * Gets the number of tasks in the snapshot.
+         *
+         * @return The number of tasks.
+         */
+        public long getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Reads primitive values from a file through a sliding memory-mapped window, keeping a
+     * CRC32 of everything consumed so far.
+     */
+    private static class MappedReader {
+
+        private final FileChannel channel;
+        private final long size;
+        private final CRC32 crc = new CRC32();
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        /**
+         * Position in the window up to which the bytes were added to the checksum.
+         */
+        private int checksummed;
+
+        MappedReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            map(0);
+        }
+
+        /**
+         * Maps a window starting at the given file offset.
+         */
+        private void map(long start) throws IOException {
+            windowStart = start;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+            checksummed = 0;
+        }
+
+        /**
+         * Makes sure the next <code>length</code> bytes are inside the window.
+         */
+        private ByteBuffer require(int length) throws IOException {
+            if (window.remaining() < length) {
+                long position = windowStart + window.position();
+                if (size - position < length) {
+                    throw new IOException("Truncated task snapshot");
+                }
+                if (length > WINDOW_SIZE) {
+                    throw new IOException("Task snapshot record too large");
+                }
+                updateChecksum();
+                map(position);
+            }
+            return window;
+        }
+
+        /**
+         * Adds the bytes consumed since the last update to the checksum.
+         */
+        private void updateChecksum() {
+            ByteBuffer consumed = window.duplicate();
+            consumed.limit(window.position()).position(checksummed);
+            crc.update(consumed);
+            checksummed = window.position();
+        }
+
+        long checksum() {
+            updateChecksum();
+            return crc.getValue();
+        }
+
+        byte readByte() throws IOException {
+            return require(1).get();
+        }
+
+        int readInt() throws IOException {
+            return require(4).getInt();
+        }
+
+        long readLong() throws IOException {
+            return require(8).getLong();
+        }
+
+        String readString() throws IOException {
+            int length = readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            require(length).get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package application;
 
+import remote.RemoteInterface;
 import remote.RemoteObjectException;
 
 import java.util.List;
@@ -7,6 +8,7 @@ import java.util.List;
 /**
  * Interface to manage the tasks.
  */
+@RemoteInterface
 public interface TasksManager {
 
     int createTask(String title, String description) throws RemoteObjectException;
@@ -16,4 +18,81 @@ public interface TasksManager {
     void updateStatus(int id, TaskStatus status) throws RemoteObjectException, TaskNotFoundException;
 
     List<Task> getAssignedTasks(String assignee) throws RemoteObjectException;
+
+    /**
+     * Gets one page of the tasks of an assignee, optionally restricted to one status, in id order.
+     *
+     * @param assignee The assignee of the tasks.
+     * @param status   The status of the tasks, or null for tasks of any status.
+     * @param cursor   <code>TaskPage.FIRST</code> for the first page, or the cursor of the previous page.
+     * @param limit    The largest number of tasks in the page.
+     * @return The page of tasks.
+     * @throws RemoteObjectException If the call fails.
+     */
+    TaskPage queryTasks(String assignee, TaskStatus status, int cursor, int limit) throws RemoteObjectException;
+
+    /**
+     * Creates many tasks in one call.
+     *
+     * @param titles       The titles of the tasks.
+     * @param descriptions The descriptions of the tasks, one for each title.
+     * @return The ids of the created tasks, in the order of the titles.
+     * @throws RemoteObjectException If the call fails.
+     */
+    int[] createTasks(List<String> titles, List<String> descriptions) throws RemoteObjectException;
+
+    /**
+     * Assigns many tasks in one call. Tasks that do not exist are reported in the result.
+     *
+     * @param ids       The ids of the tasks.
+     * @param assignees The new assignees, one for each id.
+     * @return The outcome of each assignment.
+     * @throws RemoteObjectException If the call fails.
+     */
+    BulkResult assignTasks(int[] ids, List<String> assignees) throws RemoteObjectException;
+
+    /**
+     * Updates the status of many tasks in one call. Tasks that do not exist are reported in the result.
+     *
+     * @param ids      The ids of the tasks.
+     * @param statuses The new statuses, one for each id.
+     * @return The outcome of each update.
+     * @throws RemoteObjectException If the call fails.
+     */
+    BulkResult updateStatuses(int[] ids, List<TaskStatus> statuses) throws RemoteObjectException;
+
+    /**
+     * Gets many tasks by id in one call.
+     *
+     * @param ids The ids of the tasks.
+     * @return The tasks in the order of the ids, with null for ids of tasks that do not exist.
+     * @throws RemoteObjectException If the call fails.
+     */
+    List<Task> getTasks(int[] ids) throws RemoteObjectException;
+
+    /**
+     * Waits for changes to tasks of an assignee or with a status. The call returns as soon as
+     * matching changes exist after the given sequence number, or once the wait time has passed.
+     * A service exporting a task manager must not serialize calls, since the call blocks while waiting.
+     *
+     * @param assignee      The assignee to watch, or null for any assignee.
+     * @param status        The status to watch, or null for any status.
+     * @param afterSequence The last sequence number of the previous batch, or <code>TaskChangeBatch.NOW</code>.
+     * @param maxWaitMillis How long to wait for a matching change, in milliseconds.
+     * @return The matching changes, and the sequence number to poll after next.
+     * @throws RemoteObjectException If the call fails.
+     */
+    TaskChangeBatch pollChanges(String assignee, TaskStatus status, long afterSequence, long maxWaitMillis)
+            throws RemoteObjectException;
+
+    /**
+     * Finds the tasks whose title or description contains all words of a query. Words match
+     * case-insensitively; matches in the title rank above matches in the description.
+     *
+     * @param query The words to look for.
+     * @param limit The largest number of tasks to return.
+     * @return The best matching tasks, best first.
+     * @throws RemoteObjectException If the call fails.
+     */
+    List<Task> searchTasks(String query, int limit) throws RemoteObjectException;
 }
@@ -2,59 +2,451 @@ package application;
 
 import remote.RemoteObjectException;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
 
 /**
  * Task Manager implementation to manage the tasks.
+ * <p>
+ * The executor is safe for concurrent use, so it can be exported by a <code>Service</code>
+ * that does not serialize calls. Tasks are kept in a concurrent int-keyed map, and secondary indexes
+ * from assignee, and from assignee and status, to sorted task ids are maintained on every
+ * assignment and status update. Looking up the tasks of an assignee, or a page of those with
+ * a given status, only touches those tasks instead of scanning the whole store.
+ * <p>
+ * Every change is also published to a <code>TaskChangeFeed</code>, which clients long-poll
+ * through <code>pollChanges</code> instead of repeatedly fetching their tasks, and titles and
+ * descriptions are kept in a <code>TaskSearchIndex</code> for <code>searchTasks</code>.
+ * <p>
+ * Stored tasks are never changed: a write replaces the task with an updated copy, so reads take no
+ * lock. Writes to the same id are still serialized by a lock striped by id, because moving the id
+ * between index entries and publishing the change must happen in the order of the changes; with a
+ * compare-and-set of the task alone, two writers could apply their index moves or feed entries in
+ * the opposite order of their updates.
  */
 public class TasksManagerExecutor implements TasksManager {
 
+    /**
+     * Number of locks serializing the writes to each id; a power of two.
+     */
+    private static final int LOCK_STRIPES = 256;
+
     /**
      * Incrementer to generate the task id.
      */
-    private int taskIdIncrementer;
+    private final AtomicInteger taskIdIncrementer;
+
+    /**
+     * Map to store the tasks, keyed by primitive id to avoid boxing every id. The tasks in it are
+     * never changed, only replaced.
+     */
+    private final IntTaskMap tasks;
+
+    /**
+     * Locks serializing the writes to each id, selected by task id.
+     */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /**
+     * Index from assignee, and from assignee and status, to the ids of the matching tasks.
+     */
+    private final ConcurrentHashMap<IndexKey, ConcurrentSkipListSet<Integer>> assigneeIndex;
+
+    /**
+     * Predicate selecting the ids this executor may generate.
+     */
+    private final IntPredicate ownsId;
+
+    /**
+     * Feed receiving every change to the tasks.
+     */
+    private final TaskChangeFeed changes;
 
     /**
-     * Map to store the tasks.
+     * Full-text index over the titles and descriptions of the tasks.
      */
-    private HashMap<Integer, Task> tasks;
+    private final TaskSearchIndex searchIndex = new TaskSearchIndex();
 
     public TasksManagerExecutor() {
-        taskIdIncrementer = 0;
-        tasks = new HashMap<>();
+        this(id -> true);
+    }
+
+    /**
+     * Constructs an executor that only generates ids accepted by the given predicate. Shards of
+     * a sharded task store use disjoint predicates, so the ids they generate are globally unique.
+     *
+     * @param ownsId Predicate selecting the ids this executor may generate.
+     */
+    public TasksManagerExecutor(IntPredicate ownsId) {
+        this(ownsId, new TaskChangeFeed());
+    }
+
+    /**
+     * Constructs an executor publishing its changes to the given feed, which may outlive it.
+     *
+     * @param ownsId  Predicate selecting the ids this executor may generate.
+     * @param changes The feed receiving the changes.
+     */
+    TasksManagerExecutor(IntPredicate ownsId, TaskChangeFeed changes) {
+        taskIdIncrementer = new AtomicInteger();
+        tasks = new IntTaskMap();
+        assigneeIndex = new ConcurrentHashMap<>();
+        this.ownsId = ownsId;
+        this.changes = changes;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
     }
 
 
     @Override
     public int createTask(String title, String description) throws RemoteObjectException {
-        Task task = new Task(++taskIdIncrementer, title, description, TaskStatus.OPEN, null);
-        tasks.put(taskIdIncrementer, task);
-        return taskIdIncrementer;
+        int id;
+        do {
+            id = taskIdIncrementer.incrementAndGet();
+        } while (!ownsId.test(id));
+        Task task = new Task(id, title, description, TaskStatus.OPEN, null);
+        synchronized (lockOf(id)) {
+            tasks.put(id, task);
+            changes.publish(task, null, null);
+        }
+        searchIndex.add(id, title, description);
+        return id;
     }
 
     @Override
     public void assignTask(int id, String assignee) throws RemoteObjectException, TaskNotFoundException {
-        Task task = tasks.get(id);
-        if (task == null) {
-            throw new TaskNotFoundException("Task not found");
+        // Moving the id between index entries happens under the id's lock, so concurrent
+        // assignments of the same task leave it indexed under its final assignee only.
+        synchronized (lockOf(id)) {
+            Task task = getTask(id);
+            String previous = task.getAssignee();
+            Task updated = new Task(id, task.getTitle(), task.getDescription(), task.getStatus(), assignee);
+            unindex(previous, task.getStatus(), id);
+            tasks.put(id, updated);
+            index(assignee, task.getStatus(), id);
+            changes.publish(updated, previous, task.getStatus());
         }
-        task.setAssignee(assignee);
     }
 
     @Override
     public void updateStatus(int id, TaskStatus status) throws RemoteObjectException, TaskNotFoundException {
+        synchronized (lockOf(id)) {
+            Task task = getTask(id);
+            TaskStatus previous = task.getStatus();
+            Task updated = new Task(id, task.getTitle(), task.getDescription(), status, task.getAssignee());
+            if (task.getAssignee() != null) {
+                removeFromIndex(new IndexKey(task.getAssignee(), previous), id);
+            }
+            tasks.put(id, updated);
+            if (task.getAssignee() != null) {
+                addToIndex(new IndexKey(task.getAssignee(), status), id);
+            }
+            changes.publish(updated, task.getAssignee(), previous);
+        }
+    }
+
+    @Override
+    public List<Task> getAssignedTasks(String assignee) throws RemoteObjectException {
+        ConcurrentSkipListSet<Integer> ids = assigneeIndex.get(new IndexKey(assignee, null));
+        if (ids == null) {
+            return List.of();
+        }
+        List<Task> assigned = new ArrayList<>(ids.size());
+        for (int id : ids) {
+            Task task = tasks.get(id);
+            // The task may have been reassigned after the index was read.
+            if (task != null && assignee.equals(task.getAssignee())) {
+                assigned.add(copyOf(task));
+            }
+        }
+        return assigned;
+    }
+
+    @Override
+    public TaskPage queryTasks(String assignee, TaskStatus status, int cursor, int limit) throws RemoteObjectException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The page limit must be positive");
+        }
+        ConcurrentSkipListSet<Integer> ids = assigneeIndex.get(new IndexKey(assignee, status));
+        if (ids == null || cursor == TaskPage.END) {
+            return new TaskPage(List.of(), TaskPage.END);
+        }
+        List<Task> page = new ArrayList<>(Math.min(limit, ids.size()));
+        for (int id : ids.tailSet(cursor, false)) {
+            Task task = tasks.get(id);
+            // The task may have been reassigned or updated after the index was read.
+            if (task == null || !assignee.equals(task.getAssignee())
+                    || (status != null && status != task.getStatus())) {
+                continue;
+            }
+            if (page.size() == limit) {
+                // Another matching task follows, so the page is not the last one.
+                return new TaskPage(page, page.get(limit - 1).getId());
+            }
+            page.add(copyOf(task));
+        }
+        return new TaskPage(page, TaskPage.END);
+    }
+
+    @Override
+    public int[] createTasks(List<String> titles, List<String> descriptions) throws RemoteObjectException {
+        BulkResult.requireSameSize(titles.size(), descriptions.size());
+        int[] ids = new int[titles.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = createTask(titles.get(i), descriptions.get(i));
+        }
+        return ids;
+    }
+
+    @Override
+    public BulkResult assignTasks(int[] ids, List<String> assignees) throws RemoteObjectException {
+        BulkResult.requireSameSize(ids.length, assignees.size());
+        String[] errors = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            try {
+                assignTask(ids[i], assignees.get(i));
+            } catch (TaskNotFoundException e) {
+                errors[i] = e.getMessage();
+            }
+        }
+        return new BulkResult(errors);
+    }
+
+    @Override
+    public BulkResult updateStatuses(int[] ids, List<TaskStatus> statuses) throws RemoteObjectException {
+        BulkResult.requireSameSize(ids.length, statuses.size());
+        String[] errors = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            try {
+                updateStatus(ids[i], statuses.get(i));
+            } catch (TaskNotFoundException e) {
+                errors[i] = e.getMessage();
+            }
+        }
+        return new BulkResult(errors);
+    }
+
+    @Override
+    public List<Task> getTasks(int[] ids) throws RemoteObjectException {
+        List<Task> found = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Task task = tasks.get(id);
+            found.add(task == null ? null : copyOf(task));
+        }
+        return found;
+    }
+
+    @Override
+    public TaskChangeBatch pollChanges(String assignee, TaskStatus status, long afterSequence, long maxWaitMillis)
+            throws RemoteObjectException {
+        try {
+            return changes.poll(assignee, status, afterSequence, maxWaitMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteObjectException("Interrupted while waiting for task changes.", e);
+        }
+    }
+
+    @Override
+    public List<Task> searchTasks(String query, int limit) throws RemoteObjectException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The search limit must be positive");
+        }
+        int[] ids = searchIndex.search(query, limit);
+        List<Task> found = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Task task = tasks.get(id);
+            if (task != null) {
+                found.add(copyOf(task));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Recreates a task with a known id, such as one read back from a log or snapshot, replacing
+     * any task with the same id, and makes sure that ids generated afterwards do not collide with it.
+     *
+     * @param id          The id of the task.
+     * @param title       The title of the task.
+     * @param description The description of the task.
+     * @param status      The status of the task.
+     * @param assignee    The assignee of the task, or null.
+     */
+    void restoreTask(int id, String title, String description, TaskStatus status, String assignee) {
+        Task task = new Task(id, title, description, status, assignee);
+        synchronized (lockOf(id)) {
+            Task previous = tasks.put(id, task);
+            String previousAssignee = null;
+            TaskStatus previousStatus = null;
+            if (previous != null) {
+                previousAssignee = previous.getAssignee();
+                previousStatus = previous.getStatus();
+                unindex(previousAssignee, previousStatus, id);
+            }
+            index(assignee, status, id);
+            changes.publish(task, previousAssignee, previousStatus);
+            if (previous != null) {
+                searchIndex.remove(id, previous.getTitle(), previous.getDescription());
+            }
+            searchIndex.add(id, title, description);
+        }
+        taskIdIncrementer.accumulateAndGet(id, Math::max);
+    }
+
+    /**
+     * Makes sure that ids generated afterwards are larger than the given id.
+     *
+     * @param id The largest id known to be in use.
+     */
+    void reserveIds(int id) {
+        taskIdIncrementer.accumulateAndGet(id, Math::max);
+    }
+
+    /**
+     * Gets the largest id generated so far.
+     *
+     * @return The largest id generated so far.
+     */
+    int maxId() {
+        return taskIdIncrementer.get();
+    }
+
+    /**
+     * Passes a copy of every task to the given consumer. The scan runs concurrently with
+     * mutations, so each copy is consistent on its own but the copies need not reflect a
+     * single point in time.
+     *
+     * @param consumer Receives the copies.
+     */
+    void forEachTask(Consumer<Task> consumer) {
+        tasks.forEach(task -> consumer.accept(copyOf(task)));
+    }
+
+    /**
+     * Adds a task id to the index entries of an assignee. The caller must hold the lock of the id.
+     *
+     * @param assignee The assignee, or null for unassigned tasks.
+     * @param status   The status of the task.
+     * @param id       The id of the task.
+     */
+    private void index(String assignee, TaskStatus status, int id) {
+        if (assignee != null) {
+            addToIndex(new IndexKey(assignee, null), id);
+            addToIndex(new IndexKey(assignee, status), id);
+        }
+    }
+
+    /**
+     * Removes a task id from the index entries of an assignee. The caller must hold the lock of the id.
+     *
+     * @param assignee The assignee, or null for unassigned tasks.
+     * @param status   The status of the task.
+     * @param id       The id of the task.
+     */
+    private void unindex(String assignee, TaskStatus status, int id) {
+        if (assignee != null) {
+            removeFromIndex(new IndexKey(assignee, null), id);
+            removeFromIndex(new IndexKey(assignee, status), id);
+        }
+    }
+
+    /**
+     * Adds a task id to an index entry.
+     *
+     * @param key The key of the entry.
+     * @param id  The id of the task.
+     */
+    private void addToIndex(IndexKey key, int id) {
+        assigneeIndex.compute(key, (k, ids) -> {
+            ConcurrentSkipListSet<Integer> indexed = ids == null ? new ConcurrentSkipListSet<>() : ids;
+            indexed.add(id);
+            return indexed;
+        });
+    }
+
+    /**
+     * Removes a task id from an index entry, dropping the entry once it is empty.
+     *
+     * @param key The key of the entry.
+     * @param id  The id of the task.
+     */
+    private void removeFromIndex(IndexKey key, int id) {
+        assigneeIndex.computeIfPresent(key, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    /**
+     * Gets the task with the given id.
+     *
+     * @param id The id of the task.
+     * @return The task with the given id.
+     * @throws TaskNotFoundException If no task has the given id.
+     */
+    private Task getTask(int id) throws TaskNotFoundException {
         Task task = tasks.get(id);
         if (task == null) {
             throw new TaskNotFoundException("Task not found");
         }
-        task.setStatus(status);
+        return task;
     }
 
-    @Override
-    public List<Task> getAssignedTasks(String assignee) throws RemoteObjectException {
-        return tasks.values().stream().filter(task -> assignee.equals(task.getAssignee())).toList();
+    /**
+     * Gets the lock serializing the writes to an id.
+     *
+     * @param id The task id.
+     * @return The lock.
+     */
+    private Object lockOf(int id) {
+        return locks[id & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Copies a stored task, so that callers in this virtual machine cannot change the store through
+     * the tasks returned to them.
+     *
+     * @param task The task to copy.
+     * @return A copy of the task.
+     */
+    private static Task copyOf(Task task) {
+        return new Task(task.getId(), task.getTitle(), task.getDescription(), task.getStatus(), task.getAssignee());
+    }
+
+    /**
+     * Key of an index entry: an assignee, and a status or null for tasks of any status.
+     */
+    private static final class IndexKey {
+
+        private final String assignee;
+
+        private final TaskStatus status;
+
+        IndexKey(String assignee, TaskStatus status) {
+            this.assignee = assignee;
+            this.status = status;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof IndexKey)) {
+                return false;
+            }
+            IndexKey key = (IndexKey) other;
+            return assignee.equals(key.assignee) && status == key.status;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * assignee.hashCode() + Objects.hashCode(status);
+        }
     }
-}
\ No newline at end of file
+}
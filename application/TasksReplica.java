@@ -0,0 +1,60 @@
+package application;
+
+import remote.RemoteInterface;
+import remote.RemoteObjectException;
+
+import java.util.List;
+
+/**
+ * Remote interface through which a primary task server replicates its mutations to backups.
+ * <p>
+ * Each mutation carries a sequence number assigned by the primary, and each primary has an epoch
+ * that grows whenever a primary starts or a backup is promoted. Backups reject calls from
+ * primaries with an older epoch, so a deposed primary cannot overwrite the state of the new one.
+ */
+@RemoteInterface
+public interface TasksReplica {
+
+    /**
+     * Applies a batch of mutations with consecutive sequence numbers. Mutations the backup has
+     * already applied are skipped, so a batch may be resent safely after a failure.
+     *
+     * @param epoch         The epoch of the sending primary.
+     * @param firstSequence The sequence number of the first mutation of the batch.
+     * @param mutations     The mutations, in sequence order.
+     * @return The sequence number of the last mutation the backup has applied. A value below
+     *         <code>firstSequence - 1</code> means the backup is missing earlier mutations and
+     *         needs a full state transfer through <code>install</code>.
+     * @throws RemoteObjectException If the call fails, or the primary is stale.
+     */
+    long replicate(long epoch, long firstSequence, List<TaskMutation> mutations) throws RemoteObjectException;
+
+    /**
+     * Replaces the whole state of the backup with the given tasks.
+     *
+     * @param epoch    The epoch of the sending primary.
+     * @param sequence The sequence number of the last mutation reflected by the tasks.
+     * @param maxId    The largest task id generated by the primary.
+     * @param tasks    All tasks of the primary.
+     * @throws RemoteObjectException If the call fails, or the primary is stale.
+     */
+    void install(long epoch, long sequence, int maxId, List<Task> tasks) throws RemoteObjectException;
+
+    /**
+     * Promotes the backup to primary. It starts accepting writes under a new epoch and
+     * replicates to its peers.
+     *
+     * @return The epoch of the new primary.
+     * @throws RemoteObjectException If the call fails.
+     */
+    long promote() throws RemoteObjectException;
+
+    /**
+     * Gets the role, epoch and sequence number of the replica, through which a starting primary
+     * learns whether another primary runs and which epochs its peers have seen.
+     *
+     * @return The status of the replica.
+     * @throws RemoteObjectException If the call fails.
+     */
+    ReplicaStatus status() throws RemoteObjectException;
+}
@@ -0,0 +1,118 @@
+package benchmark;
+
+import application.OffHeapTasksManager;
+import application.TasksManager;
+import application.TasksManagerExecutor;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Compares the heap, direct memory and garbage collection time of the on-heap
+ * <code>TasksManagerExecutor</code> and the <code>OffHeapTasksManager</code> while they are filled
+ * with assigned tasks that have distinct titles and descriptions.
+ * <p>
+ * Usage: OffHeapStoreBenchmark [tasks...], for example 1000000 4000000. Large counts need a
+ * large heap for the on-heap store and enough direct memory for the off-heap one.
+ */
+public class OffHeapStoreBenchmark {
+
+    /**
+     * Number of distinct assignees.
+     */
+    private static final int ASSIGNEES = 1000;
+
+    /**
+     * Runs the benchmark for each task count.
+     *
+     * @param args The task counts.
+     * @throws Exception If the stores fail.
+     */
+    public static void main(String[] args) throws Exception {
+        int[] counts = args.length == 0 ? new int[]{1_000_000, 4_000_000} : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            counts[i] = Integer.parseInt(args[i]);
+        }
+        System.out.println(String.format("%-10s %-10s %12s %12s %10s %10s %10s", "tasks", "store", "heap MB",
+                "direct MB", "fill ms", "gc ms", "query ms"));
+        for (int count : counts) {
+            measure(count, "on-heap", new TasksManagerExecutor());
+            measure(count, "off-heap", new OffHeapTasksManager());
+        }
+    }
+
+    /**
+     * Fills a store and prints the resources it used.
+     *
+     * @param count The number of tasks.
+     * @param name  The name of the store.
+     * @param store The store.
+     * @throws Exception If the store fails.
+     */
+    private static void measure(int count, String name, TasksManager store) throws Exception {
+        long heapBefore = usedHeap();
+        long directBefore = usedDirect();
+        long gcBefore = gcMillis();
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            int id = store.createTask("Task " + i, "Description of task " + i);
+            store.assignTask(id, "assignee-" + (i % ASSIGNEES));
+        }
+        long fillMillis = (System.nanoTime() - start) / 1_000_000;
+        long gc = gcMillis() - gcBefore;
+        start = System.nanoTime();
+        int found = store.queryTasks("assignee-7", null, 0, 50).getTasks().size();
+        long queryMillis = (System.nanoTime() - start) / 1_000_000;
+        long heap = usedHeap() - heapBefore;
+        long direct = usedDirect() - directBefore;
+        // Using the store again keeps it reachable until its memory has been measured.
+        if (found != 50 || store.getTasks(new int[]{count}).get(0) == null) {
+            throw new IllegalStateException("The store lost tasks");
+        }
+        System.out.println(String.format("%-10d %-10s %12d %12d %10d %10d %10d", count, name,
+                heap >> 20, direct >> 20, fillMillis, gc, queryMillis));
+    }
+
+    /**
+     * Gets the heap in use after collecting garbage. It also gives the cleaner time to free the
+     * direct memory of unreachable buffers.
+     *
+     * @return The used heap, in bytes.
+     * @throws InterruptedException If interrupted while waiting for the cleaner.
+     */
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Thread.sleep(200);
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Gets the direct memory in use.
+     *
+     * @return The used direct memory, in bytes.
+     */
+    private static long usedDirect() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the total time spent collecting garbage so far.
+     *
+     * @return The collection time, in milliseconds.
+     */
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,89 @@
+package benchmark;
+
+import application.Task;
+import application.TasksManagerExecutor;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures full-text search over the tasks of a <code>TasksManagerExecutor</code>. Titles and
+ * descriptions are drawn from a vocabulary with a skewed word frequency, so queries cover both
+ * rare and very common words.
+ * <p>
+ * Usage: TaskSearchBenchmark [tasks]
+ */
+public class TaskSearchBenchmark {
+
+    /**
+     * Number of distinct words.
+     */
+    private static final int VOCABULARY = 20000;
+
+    /**
+     * Number of results asked for.
+     */
+    private static final int LIMIT = 20;
+
+    /**
+     * Times each query is run.
+     */
+    private static final int REPEATS = 20;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The number of tasks.
+     * @throws Exception If the executor fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        Random random = new Random(42);
+        TasksManagerExecutor executor = new TasksManagerExecutor();
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            executor.createTask(text(random, 4), text(random, 16));
+        }
+        System.out.println(count + " tasks indexed in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        String[] queries = {word(0), word(5), word(500), word(15000), word(0) + " " + word(1),
+                word(3) + " " + word(900), word(10) + " " + word(20) + " " + word(30)};
+        System.out.println(String.format("%-36s %8s %10s", "query", "results", "avg ms"));
+        for (String query : queries) {
+            List<Task> results = executor.searchTasks(query, LIMIT);
+            start = System.nanoTime();
+            for (int i = 0; i < REPEATS; i++) {
+                results = executor.searchTasks(query, LIMIT);
+            }
+            double millis = (System.nanoTime() - start) / 1e6 / REPEATS;
+            System.out.println(String.format("%-36s %8d %10.2f", query, results.size(), millis));
+        }
+    }
+
+    /**
+     * Makes a text of random words.
+     *
+     * @param random The source of randomness.
+     * @param words  The number of words.
+     * @return The text.
+     */
+    private static String text(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            // Cubing a uniform value makes low word numbers much more frequent.
+            double uniform = random.nextDouble();
+            text.append(word((int) (uniform * uniform * uniform * VOCABULARY))).append(' ');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Gets a word of the vocabulary.
+     *
+     * @param number The number of the word, lower numbers being more frequent.
+     * @return The word.
+     */
+    private static String word(int number) {
+        return "w" + Integer.toString(number, 36);
+    }
+}
@@ -0,0 +1,139 @@
+package benchmark;
+
+import application.Task;
+import application.TaskStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the size and speed of the compact wire form of <code>Task</code> with default Java
+ * serialization of the same fields, for a list of tasks as returned by a query.
+ * <p>
+ * Usage: TaskSerializationBenchmark [tasks] [assignees]
+ */
+public class TaskSerializationBenchmark {
+
+    /**
+     * Rounds run before measuring, so that the code is compiled.
+     */
+    private static final int WARMUP_ROUNDS = 30;
+
+    /**
+     * Rounds measured.
+     */
+    private static final int MEASURED_ROUNDS = 50;
+
+    /**
+     * A task with default serialization, as <code>Task</code> was sent before it became externalizable.
+     */
+    static class DefaultTask implements Serializable {
+
+        @Serial
+        private static final long serialVersionUID = 1L; // UID for serialization
+
+        private final int id;
+        private final String title;
+        private final String description;
+        private final TaskStatus status;
+        private final String assignee;
+
+        DefaultTask(int id, String title, String description, TaskStatus status, String assignee) {
+            this.id = id;
+            this.title = title;
+            this.description = description;
+            this.status = status;
+            this.assignee = assignee;
+        }
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The number of tasks and the number of distinct assignees.
+     * @throws Exception If serialization fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int assignees = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        List<Task> compact = new ArrayList<>(count);
+        List<DefaultTask> standard = new ArrayList<>(count);
+        TaskStatus[] statuses = TaskStatus.values();
+        for (int i = 0; i < count; i++) {
+            // A new string per task, as the assignees arrive in separate calls.
+            String assignee = new String("assignee-" + (i % assignees));
+            String title = "Task " + i;
+            String description = "Description of task " + i;
+            TaskStatus status = statuses[i % statuses.length];
+            compact.add(new Task(i, title, description, status, assignee));
+            standard.add(new DefaultTask(i, title, description, status, assignee));
+        }
+
+        System.out.println(count + " tasks, " + assignees + " assignees");
+        System.out.println(String.format("%-10s %12s %14s %14s", "form", "bytes", "write us/list", "read us/list"));
+        report("default", standard);
+        report("compact", compact);
+    }
+
+    /**
+     * Measures and prints the size and speed of writing and reading a list.
+     *
+     * @param name  The name of the form.
+     * @param tasks The list to serialize.
+     * @throws Exception If serialization fails.
+     */
+    private static void report(String name, List<?> tasks) throws Exception {
+        byte[] bytes = write(tasks);
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            read(write(tasks));
+        }
+        long writeNanos = 0;
+        long readNanos = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            bytes = write(tasks);
+            long written = System.nanoTime();
+            read(bytes);
+            readNanos += System.nanoTime() - written;
+            writeNanos += written - start;
+        }
+        System.out.println(String.format("%-10s %12d %14d %14d", name, bytes.length,
+                writeNanos / MEASURED_ROUNDS / 1000, readNanos / MEASURED_ROUNDS / 1000));
+    }
+
+    /**
+     * Serializes a list on a new stream, as a reply is.
+     *
+     * @param tasks The list.
+     * @return The serialized bytes.
+     * @throws IOException If serialization fails.
+     */
+    private static byte[] write(List<?> tasks) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(tasks);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserializes a list.
+     *
+     * @param bytes The serialized bytes.
+     * @return The list.
+     * @throws Exception If deserialization fails.
+     */
+    private static Object read(byte[] bytes) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package benchmark;
+
+import application.IntTaskMap;
+import application.Task;
+import application.TaskStatus;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compares the heap used by the task store of <code>TasksManagerExecutor</code>, an
+ * <code>IntTaskMap</code>, with a boxed <code>ConcurrentHashMap</code> holding the same tasks.
+ * Both maps hold the same task objects, so the difference is the overhead of the maps themselves.
+ * <p>
+ * Usage: TaskStoreMemoryBenchmark [tasks...], for example 1000000 10000000. Large counts need
+ * a large heap, such as -Xmx3g.
+ */
+public class TaskStoreMemoryBenchmark {
+
+    /**
+     * Runs the benchmark for each task count.
+     *
+     * @param args The task counts.
+     */
+    public static void main(String[] args) {
+        int[] counts = args.length == 0 ? new int[]{1_000_000, 10_000_000} : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            counts[i] = Integer.parseInt(args[i]);
+        }
+        System.out.println(String.format("%-12s %-18s %14s %12s %12s", "tasks", "store", "map bytes", "bytes/task", "fill ms"));
+        for (int count : counts) {
+            Task[] tasks = new Task[count];
+            for (int i = 0; i < count; i++) {
+                // The strings are shared, so the tasks themselves stay small.
+                tasks[i] = new Task(i + 1, "title", "description", TaskStatus.OPEN, null);
+            }
+            measureBoxed(tasks);
+            measurePrimitive(tasks);
+        }
+    }
+
+    /**
+     * Measures a boxed concurrent map.
+     *
+     * @param tasks The tasks to store.
+     */
+    private static void measureBoxed(Task[] tasks) {
+        long before = usedHeap();
+        long start = System.nanoTime();
+        ConcurrentHashMap<Integer, Task> map = new ConcurrentHashMap<>();
+        for (Task task : tasks) {
+            map.put(task.getId(), task);
+        }
+        long fillNanos = System.nanoTime() - start;
+        report(tasks.length, "ConcurrentHashMap", usedHeap() - before, fillNanos);
+        if (map.get(tasks.length) == null) {
+            throw new IllegalStateException("Task missing from the map");
+        }
+    }
+
+    /**
+     * Measures the primitive map.
+     *
+     * @param tasks The tasks to store.
+     */
+    private static void measurePrimitive(Task[] tasks) {
+        long before = usedHeap();
+        long start = System.nanoTime();
+        IntTaskMap map = new IntTaskMap();
+        for (Task task : tasks) {
+            map.put(task.getId(), task);
+        }
+        long fillNanos = System.nanoTime() - start;
+        report(tasks.length, "IntTaskMap", usedHeap() - before, fillNanos);
+        if (map.get(tasks.length) == null) {
+            throw new IllegalStateException("Task missing from the map");
+        }
+    }
+
+    /**
+     * Prints one line of results.
+     *
+     * @param count     The number of tasks.
+     * @param store     The name of the store.
+     * @param bytes     The heap used by the store.
+     * @param fillNanos The time taken to fill the store.
+     */
+    private static void report(int count, String store, long bytes, long fillNanos) {
+        System.out.println(String.format("%-12d %-18s %14d %12.1f %12d", count, store, bytes,
+                (double) bytes / count, fillNanos / 1_000_000));
+    }
+
+    /**
+     * Gets the heap in use after collecting garbage.
+     *
+     * @return The used heap, in bytes.
+     */
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,255 @@
+package benchmark;
+
+import application.Task;
+import application.TasksManager;
+import application.TasksManagerExecutor;
+import remote.Service;
+import remote.StubFactory;
+import remote.TransportConfig;
+
+import com.sun.management.OperatingSystemMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the transport presets on loopback, with a <code>TasksManager</code> service and stubs using
+ * the same preset. For each preset it measures the latency of small calls, the time of calls returning
+ * many tasks, the throughput of small calls from many threads, and the time for a burst of clients to
+ * connect and make their first call. The <code>deflate</code> row adds compression to the
+ * high-throughput preset, the <code>unix</code> row runs the low-latency preset over a Unix domain
+ * socket instead of TCP, the <code>shm-spin</code> and <code>shm-park</code> rows carry the calls
+ * through shared-memory rings with the low-latency and default presets, which spin and park
+ * respectively, and the <code>local</code> row lets the stubs call the service object directly, as
+ * stubs in the same virtual machine as their service do; the other rows turn that off.
+ * CPU time per small call counts both ends, which share the process.
+ * <p>
+ * Usage: TransportBenchmark [tasks] [port] [preset...]
+ */
+public class TransportBenchmark {
+
+    /**
+     * Small calls run before measuring, so that the code is compiled.
+     */
+    private static final int WARMUP_CALLS = 5000;
+
+    /**
+     * Small calls measured for latency.
+     */
+    private static final int SMALL_CALLS = 20000;
+
+    /**
+     * Calls measured returning many tasks.
+     */
+    private static final int LARGE_CALLS = 200;
+
+    /**
+     * Threads calling concurrently.
+     */
+    private static final int THREADS = 16;
+
+    /**
+     * Small calls made by each of the concurrent threads.
+     */
+    private static final int CALLS_PER_THREAD = 2000;
+
+    /**
+     * Clients connecting at once.
+     */
+    private static final int CLIENTS = 128;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The number of tasks returned by large calls, the first port to use and the presets to
+     *             compare, by default all of them, <code>deflate</code>, <code>unix</code>,
+     *             <code>shm-spin</code>, <code>shm-park</code> and <code>local</code>.
+     * @throws Exception If a service cannot start or a call fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 9300;
+
+        System.out.println(count + " tasks per large call, " + THREADS + " threads, " + CLIENTS + " connecting clients");
+        System.out.println(String.format("%-16s %9s %9s %9s %12s %12s %12s", "preset", "p50 us", "p99 us",
+                "cpu us", "large ms", "calls/s", "connect ms"));
+        String[] presets = args.length > 2 ? Arrays.copyOfRange(args, 2, args.length)
+                : new String[] {"default", "low-latency", "high-throughput", "deflate", "unix", "shm-spin", "shm-park",
+                        "local"};
+        for (int i = 0; i < presets.length; i++) {
+            TasksManagerExecutor executor = new TasksManagerExecutor();
+            int[] ids = new int[count];
+            for (int j = 0; j < count; j++) {
+                ids[j] = executor.createTask("Task " + j, "Description of task " + j + " with some more words");
+                executor.assignTask(ids[j], "assignee-" + (j % 100));
+            }
+            Service<TasksManager> service;
+            String address;
+            Path socket = null;
+            if (presets[i].equals("unix") || presets[i].startsWith("shm")) {
+                socket = Files.createTempDirectory("transport").resolve("service.sock");
+                service = new Service<>(TasksManager.class, executor, socket, configOf(presets[i]));
+                address = (presets[i].equals("unix") ? "unix:" : "shm:") + socket;
+            } else {
+                service = new Service<>(TasksManager.class, executor, port + i, configOf(presets[i]));
+                address = "127.0.0.1:" + (port + i);
+            }
+            service.setLocalCalls(presets[i].equals("local"));
+            service.setSerializeCalls(false);
+            service.start();
+            try {
+                run(presets[i], configOf(presets[i]), address, ids);
+            } finally {
+                service.stop();
+                if (socket != null) {
+                    Files.deleteIfExists(socket.getParent());
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the configuration of the stubs of a row.
+     *
+     * @param name The name of the row: a preset, <code>deflate</code>, <code>unix</code>, <code>shm-spin</code>,
+     *             <code>shm-park</code> or <code>local</code>.
+     * @return The configuration.
+     */
+    private static TransportConfig configOf(String name) {
+        switch (name) {
+            case "deflate":
+                return TransportConfig.HIGH_THROUGHPUT.withCompression(true);
+            case "unix":
+            case "shm-spin":
+                return TransportConfig.LOW_LATENCY;
+            case "shm-park":
+            case "local":
+                return TransportConfig.DEFAULT;
+            default:
+                return TransportConfig.preset(name);
+        }
+    }
+
+    /**
+     * Measures and prints one preset.
+     *
+     * @param name    The name of the preset.
+     * @param config  The preset of the stubs.
+     * @param address The address of the service.
+     * @param ids     The ids of the tasks returned by large calls.
+     * @throws Exception If a call fails.
+     */
+    private static void run(String name, TransportConfig config, String address, int[] ids) throws Exception {
+        TasksManager stub = StubFactory.create(TasksManager.class, address, config);
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            stub.getAssignedTasks("nobody");
+        }
+
+        OperatingSystemMXBean os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long[] latencies = new long[SMALL_CALLS];
+        long cpuStart = os.getProcessCpuTime();
+        for (int i = 0; i < SMALL_CALLS; i++) {
+            long start = System.nanoTime();
+            stub.getAssignedTasks("nobody");
+            latencies[i] = System.nanoTime() - start;
+        }
+        long cpuNanos = os.getProcessCpuTime() - cpuStart;
+        Arrays.sort(latencies);
+
+        stub.getTasks(ids);
+        long start = System.nanoTime();
+        for (int i = 0; i < LARGE_CALLS; i++) {
+            List<Task> tasks = stub.getTasks(ids);
+            if (tasks.size() != ids.length) {
+                throw new IllegalStateException("Expected " + ids.length + " tasks, got " + tasks.size());
+            }
+        }
+        double largeMillis = (System.nanoTime() - start) / 1e6 / LARGE_CALLS;
+
+        System.out.println(String.format("%-16s %9.1f %9.1f %9.1f %12.2f %12d %12.1f", name,
+                latencies[SMALL_CALLS / 2] / 1000.0, latencies[SMALL_CALLS * 99 / 100] / 1000.0,
+                cpuNanos / 1000.0 / SMALL_CALLS, largeMillis, concurrentCallsPerSecond(stub),
+                connectMillis(address, config)));
+    }
+
+    /**
+     * Measures small calls from many threads sharing one stub, and so its pool of connections.
+     *
+     * @param stub The stub.
+     * @return The calls completed per second.
+     * @throws Exception If a call fails.
+     */
+    private static long concurrentCallsPerSecond(TasksManager stub) throws Exception {
+        AtomicLong failures = new AtomicLong();
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    ready.await();
+                    for (int i = 0; i < CALLS_PER_THREAD; i++) {
+                        stub.getAssignedTasks("nobody");
+                    }
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        long start = System.nanoTime();
+        ready.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long nanos = System.nanoTime() - start;
+        if (failures.get() > 0) {
+            throw new IllegalStateException(failures.get() + " threads failed");
+        }
+        return (long) THREADS * CALLS_PER_THREAD * 1_000_000_000L / nanos;
+    }
+
+    /**
+     * Measures how long a burst of new clients takes to connect and make their first call, which
+     * depends on the accept backlog once the listening thread falls behind.
+     *
+     * @param address The address of the service.
+     * @param config  The preset of the clients.
+     * @return The time until every client has its answer, in milliseconds.
+     * @throws Exception If a call fails.
+     */
+    private static double connectMillis(String address, TransportConfig config) throws Exception {
+        AtomicLong failures = new AtomicLong();
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < CLIENTS; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    TasksManager client = StubFactory.create(TasksManager.class, address, config);
+                    ready.await();
+                    client.getAssignedTasks("nobody");
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        long start = System.nanoTime();
+        ready.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double millis = (System.nanoTime() - start) / 1e6;
+        if (failures.get() > 0) {
+            throw new IllegalStateException(failures.get() + " clients failed");
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,217 @@
+package remote;
+
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Appender that hands messages to a background thread through a ring buffer, so that logging threads
+ * never format messages, take the lock of the output stream or wait for it to be written.
+ * <p>
+ * The ring buffer is an array of preallocated slots. A logging thread claims the next sequence number
+ * with a compare-and-set, fills the slot of that number and publishes it by writing the number into
+ * the slot; the background thread consumes slots in sequence order, formats and prints them, and
+ * clears them for reuse. Appending allocates nothing. When the buffer is full, messages are dropped
+ * rather than blocking the caller; the number dropped is printed with the next message that fits.
+ * <p>
+ * The background thread is a daemon, and a shutdown hook prints the messages still in the buffer
+ * when the virtual machine exits.
+ */
+public class AsyncLogAppender implements LogAppender {
+
+    /** Capacity used by the default appender of <code>Log</code>. */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /** Longest time the background thread sleeps before checking the buffer again, in nanoseconds. */
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /** The stream messages are printed to. */
+    private final PrintStream out;
+
+    /** The slots, indexed by sequence number modulo their count. */
+    private final Slot[] slots;
+
+    /** Mask selecting the slot of a sequence number; the slot count is a power of two. */
+    private final int mask;
+
+    /** Next sequence number to claim. */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** Next sequence number to print; written only by the background thread. */
+    private volatile long head;
+
+    /** Number of messages dropped since the last report. */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** Flag set while the background thread is parked, so that loggers know to wake it. */
+    private volatile boolean parked;
+
+    /** Flag cleared by <code>close</code>. */
+    private volatile boolean running = true;
+
+    /** The background thread. */
+    private final Thread writer;
+
+    /** Format of the time printed with each message; used only by the background thread. */
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS");
+
+    /**
+     * Creates an appender and starts its background thread.
+     *
+     * @param out      The stream messages are printed to.
+     * @param capacity The number of messages the buffer holds, rounded up to a power of two.
+     * @throws IllegalArgumentException If <code>capacity</code> is not positive.
+     */
+    public AsyncLogAppender(PrintStream out, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.out = out;
+        this.slots = new Slot[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+            slots[i].sequence = i - size;
+        }
+
+        writer = new Thread(this::drainLoop, "remote-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "remote-log-flush"));
+    }
+
+    @Override
+    public void append(Log.Level level, String logger, String format, Object arg1, Object arg2, Throwable thrown) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= slots.length) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+
+        Slot slot = slots[(int) sequence & mask];
+        slot.time = System.currentTimeMillis();
+        slot.level = level;
+        slot.logger = logger;
+        slot.thread = Thread.currentThread().getName();
+        slot.format = format;
+        slot.arg1 = arg1;
+        slot.arg2 = arg2;
+        slot.thrown = thrown;
+        slot.sequence = sequence;
+
+        if (parked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Gets the number of messages dropped because the buffer was full and not yet reported.
+     *
+     * @return The number of messages.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Waits until the messages appended so far are printed, for at most one second.
+     */
+    public void flush() {
+        long target = tail.get();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (head < target && System.nanoTime() < deadline && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        out.flush();
+    }
+
+    /**
+     * Prints the messages appended so far and stops the background thread. Messages appended later are
+     * dropped once the buffer fills up.
+     */
+    public void close() {
+        flush();
+        running = false;
+        LockSupport.unpark(writer);
+    }
+
+    /**
+     * Body of the background thread: prints messages in sequence order, parking while there are none.
+     */
+    private void drainLoop() {
+        while (running) {
+            long sequence = head;
+            Slot slot = slots[(int) sequence & mask];
+            if (slot.sequence != sequence) {
+                parked = true;
+                if (slot.sequence != sequence && running) {
+                    LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                }
+                parked = false;
+                continue;
+            }
+
+            print(slot);
+            slot.clear();
+            head = sequence + 1;
+        }
+    }
+
+    /**
+     * Formats and prints the message of a slot.
+     *
+     * @param slot The slot.
+     */
+    private void print(Slot slot) {
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            out.println(timeFormat.format(new Date(slot.time)) + " WARN  AsyncLogAppender - " + lost
+                    + " messages dropped: log buffer full");
+        }
+        out.println(timeFormat.format(new Date(slot.time)) + " " + String.format("%-5s", slot.level) + " ["
+                + slot.thread + "] " + slot.logger + " - " + Log.format(slot.format, slot.arg1, slot.arg2));
+        if (slot.thrown != null) {
+            slot.thrown.printStackTrace(out);
+        }
+    }
+
+    /**
+     * One message in the ring buffer.
+     */
+    private static final class Slot {
+        /** Sequence number of the message in the slot; written last by the logging thread, to publish it. */
+        volatile long sequence;
+        long time;
+        Log.Level level;
+        String logger;
+        String thread;
+        String format;
+        Object arg1;
+        Object arg2;
+        Throwable thrown;
+
+        /**
+         * Releases the references held by the slot once its message is printed.
+         */
+        void clear() {
+            level = null;
+            logger = null;
+            thread = null;
+            format = null;
+            arg1 = null;
+            arg2 = null;
+            thrown = null;
+        }
+    }
+}
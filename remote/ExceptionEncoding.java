@@ -0,0 +1,126 @@
+package remote;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * How a <code>Service</code> encodes the stack traces of exceptions thrown by remote methods.
+ * <p>
+ * An exception thrown by the service object is serialized with its stack trace, and the frames below
+ * the remote method are always the same: the skeleton or reflective call, and the service thread.
+ * Trimming them, or omitting the stack trace altogether, makes failed calls cheaper to encode and to
+ * send. Trimming works up from the bottom of the stack, so frames of the remote method and of
+ * whatever it called, including through reflection, are always kept.
+ * <p>
+ * Encoding replaces the stack traces of the exception and its causes while the response is sent,
+ * and the service puts the original ones back afterwards, so that a service object may keep an
+ * exception and throw it again. While a call is being answered, other threads see the encoded stack
+ * traces; an exception instance thrown by concurrent calls at once should have no writable stack
+ * trace, or the service should use <code>FULL</code>.
+ * <p>
+ * Independently of the encoding, <code>Service.setStacklessDeclaredExceptions</code> sends declared
+ * checked exceptions as only their class and message, which is cheaper still.
+ */
+public enum ExceptionEncoding {
+
+    /** Stack traces are sent as they are. */
+    FULL,
+
+    /** Frames below the remote method, which belong to the service, are removed. */
+    TRIMMED,
+
+    /** Stack traces are removed. */
+    OMITTED;
+
+    /** Empty stack trace. */
+    private static final StackTraceElement[] NO_FRAMES = new StackTraceElement[0];
+
+    /** Class whose <code>invoke</code> method calls remote methods. */
+    private static final String SERVICE_CLASS = Service.class.getName();
+
+    /**
+     * Encodes the stack traces of an exception, its causes and its suppressed exceptions.
+     *
+     * @param thrown The exception thrown by the remote method.
+     * @return The original stack traces of the exceptions changed, to pass to <code>restore</code>
+     *         once the exception is sent, or null if none changed.
+     */
+    Map<Throwable, StackTraceElement[]> encode(Throwable thrown) {
+        if (this == FULL) {
+            return null;
+        }
+        Map<Throwable, StackTraceElement[]> originals = new IdentityHashMap<>();
+        encode(thrown, originals);
+        return originals;
+    }
+
+    /**
+     * Encodes the stack traces of an exception and those it refers to, each once.
+     *
+     * @param thrown    The exception.
+     * @param originals The original stack traces of the exceptions already encoded, since causes may
+     *                  form cycles.
+     */
+    private void encode(Throwable thrown, Map<Throwable, StackTraceElement[]> originals) {
+        if (thrown == null || originals.containsKey(thrown)) {
+            return;
+        }
+        StackTraceElement[] frames = thrown.getStackTrace();
+        originals.put(thrown, frames);
+        thrown.setStackTrace(this == OMITTED ? NO_FRAMES : trim(frames));
+        encode(thrown.getCause(), originals);
+        for (Throwable suppressed : thrown.getSuppressed()) {
+            encode(suppressed, originals);
+        }
+    }
+
+    /**
+     * Puts back the stack traces replaced by <code>encode</code>.
+     *
+     * @param originals The original stack traces, or null.
+     */
+    static void restore(Map<Throwable, StackTraceElement[]> originals) {
+        if (originals != null) {
+            for (Map.Entry<Throwable, StackTraceElement[]> entry : originals.entrySet()) {
+                entry.getKey().setStackTrace(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes the frames from the call of the remote method by the service down. The outermost call
+     * of <code>Service.invoke</code> is found from the bottom of the stack, and the skeleton or
+     * reflection frames directly above it are removed with it.
+     *
+     * @param frames The frames, innermost first.
+     * @return The frames above the service, or all frames if the service is not on the stack.
+     */
+    private static StackTraceElement[] trim(StackTraceElement[] frames) {
+        for (int i = frames.length - 1; i >= 0; i--) {
+            if (frames[i].getClassName().equals(SERVICE_CLASS) && frames[i].getMethodName().equals("invoke")) {
+                int cut = i;
+                while (cut > 0 && isInvocationFrame(frames[cut - 1])) {
+                    cut--;
+                }
+                StackTraceElement[] trimmed = new StackTraceElement[cut];
+                System.arraycopy(frames, 0, trimmed, 0, cut);
+                return trimmed;
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * Checks whether a frame is part of how the service calls a remote method: the
+     * <code>invoke</code> method of a generated skeleton, or a reflective call.
+     *
+     * @param frame The frame.
+     * @return True if it is.
+     */
+    private static boolean isInvocationFrame(StackTraceElement frame) {
+        String className = frame.getClassName();
+        return (className.endsWith("_Skeleton") && frame.getMethodName().equals("invoke"))
+                || className.startsWith("jdk.internal.reflect.")
+                || className.equals("java.lang.reflect.Method");
+    }
+}
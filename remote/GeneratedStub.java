@@ -0,0 +1,35 @@
+package remote;
+
+/**
+ * Base class of the stubs generated for interfaces marked with <code>RemoteInterface</code>.
+ * <p>
+ * A generated stub implements each method of its interface by filling the <code>TypedCall</code>
+ * generated for the method and passing it to <code>invokeRemote</code>, so calls go through neither a
+ * proxy nor a reflective method lookup, and arguments and results keep their own types. The
+ * connection handling, retries and exception translation are those of
+ * <code>StubInvocationHandler</code>.
+ */
+public abstract class GeneratedStub {
+
+    /** The handler making the remote calls. */
+    private final StubInvocationHandler handler;
+
+    /**
+     * Constructs a stub.
+     *
+     * @param handler The handler making the remote calls.
+     */
+    protected GeneratedStub(StubInvocationHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Calls a method on the remote service, leaving the result in the call.
+     *
+     * @param call The call, holding the method and its arguments.
+     * @throws Throwable The exception the remote method threw, or the connection failure.
+     */
+    protected final void invokeRemote(TypedCall<?> call) throws Throwable {
+        handler.invoke(call);
+    }
+}
@@ -0,0 +1,110 @@
+package remote;
+
+import java.io.Serializable;
+
+/**
+ * Represents the first message a stub sends on a new connection.
+ * It describes the remote interface as the stub knows it, by its fingerprint and its method
+ * signatures in id order, and lists the codecs and compressions the stub supports in order of
+ * preference. A stub on the same host may also offer a file of shared-memory rings to carry the
+ * calls. The service answers with a {@link HandshakeResponse}.
+ */
+public class HandshakeRequest implements Serializable {
+    private static final long serialVersionUID = 1L; // UID for serialization
+
+    /** Codec encoding messages with Java serialization. */
+    public static final String CODEC_JAVA = "java";
+
+    /**
+     * Codec writing the arguments and results of calls field by field, with the code generated for
+     * the interface, and other messages with Java serialization.
+     */
+    public static final String CODEC_TYPED = "typed";
+
+    /** No compression. */
+    public static final String COMPRESSION_NONE = "none";
+
+    /** Compression of the whole stream with deflate, flushed after each message. */
+    public static final String COMPRESSION_DEFLATE = "deflate";
+
+    private long fingerprint; // The fingerprint of the stub's interface
+    private String[] signatures; // The method signatures of the stub's interface, in id order
+    private String[] codecs; // The codecs the stub supports, preferred first
+    private String[] compressions; // The compressions the stub supports, preferred first
+    private String sharedMemory; // The path of the stub's shared-memory ring file, if it offers one
+
+    /**
+     * Constructs a new handshake request.
+     *
+     * @param fingerprint The fingerprint of the remote interface.
+     * @param signatures The method signatures of the remote interface, in id order.
+     * @param codecs The codecs the stub supports, preferred first.
+     * @param compressions The compressions the stub supports, preferred first.
+     */
+    public HandshakeRequest(long fingerprint, String[] signatures, String[] codecs, String[] compressions) {
+        this.fingerprint = fingerprint;
+        this.signatures = signatures;
+        this.codecs = codecs;
+        this.compressions = compressions;
+    }
+
+    /**
+     * Constructs a new handshake request offering shared-memory rings.
+     *
+     * @param fingerprint The fingerprint of the remote interface.
+     * @param signatures The method signatures of the remote interface, in id order.
+     * @param codecs The codecs the stub supports, preferred first.
+     * @param compressions The compressions the stub supports, preferred first.
+     * @param sharedMemory The path of the ring file created by the stub, or null to offer none.
+     */
+    public HandshakeRequest(long fingerprint, String[] signatures, String[] codecs, String[] compressions,
+                            String sharedMemory) {
+        this(fingerprint, signatures, codecs, compressions);
+        this.sharedMemory = sharedMemory;
+    }
+
+    /**
+     * Gets the fingerprint of the stub's interface.
+     *
+     * @return The fingerprint.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Gets the method signatures of the stub's interface.
+     *
+     * @return The signatures, in id order.
+     */
+    public String[] getSignatures() {
+        return signatures;
+    }
+
+    /**
+     * Gets the codecs the stub supports.
+     *
+     * @return The codec names, preferred first.
+     */
+    public String[] getCodecs() {
+        return codecs;
+    }
+
+    /**
+     * Gets the compressions the stub supports.
+     *
+     * @return The compression names, preferred first.
+     */
+    public String[] getCompressions() {
+        return compressions;
+    }
+
+    /**
+     * Gets the shared-memory ring file offered by the stub.
+     *
+     * @return The path of the file, or null if the stub offers none.
+     */
+    public String getSharedMemory() {
+        return sharedMemory;
+    }
+}
@@ -0,0 +1,103 @@
+package remote;
+
+import java.io.Serializable;
+
+/**
+ * Represents the answer of a service to a {@link HandshakeRequest}.
+ * An accepted handshake carries the codec and compression used for the rest of the connection,
+ * whether the calls move to the shared-memory rings the stub offered, and, unless the interfaces
+ * of both ends have the same fingerprint, the table translating the stub's method ids into the
+ * service's. A rejected handshake carries the reason, and the service closes the connection after
+ * sending it.
+ */
+public class HandshakeResponse implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private int[] methodIds; // The service's id for each of the stub's methods, -1 if it has no such method
+    private String codec; // The codec chosen by the service
+    private String compression; // The compression chosen by the service
+    private boolean sharedMemory; // Whether the service mapped the stub's shared-memory rings
+    private RemoteObjectException rejection; // The reason the connection was refused, if it was
+
+    /**
+     * Constructs a response accepting the connection.
+     *
+     * @param methodIds The service's id for each of the stub's method ids, -1 for methods the service
+     *                  does not have, or null if both ends use the same ids.
+     * @param codec The codec used for the rest of the connection.
+     * @param compression The compression used for the rest of the connection.
+     */
+    public HandshakeResponse(int[] methodIds, String codec, String compression) {
+        this.methodIds = methodIds;
+        this.codec = codec;
+        this.compression = compression;
+    }
+
+    /**
+     * Constructs a response accepting the connection, and possibly the shared-memory rings offered.
+     *
+     * @param methodIds The service's id for each of the stub's method ids, -1 for methods the service
+     *                  does not have, or null if both ends use the same ids.
+     * @param codec The codec used for the rest of the connection.
+     * @param compression The compression used for the rest of the connection.
+     * @param sharedMemory True if the rest of the connection uses the stub's shared-memory rings.
+     */
+    public HandshakeResponse(int[] methodIds, String codec, String compression, boolean sharedMemory) {
+        this(methodIds, codec, compression);
+        this.sharedMemory = sharedMemory;
+    }
+
+    /**
+     * Constructs a response refusing the connection.
+     *
+     * @param rejection The reason the connection was refused.
+     */
+    public HandshakeResponse(RemoteObjectException rejection) {
+        this.rejection = rejection;
+    }
+
+    /**
+     * Retrieves the table translating the stub's method ids into the service's.
+     *
+     * @return The service's id for each of the stub's method ids, -1 for methods the service does not
+     *         have, or null if both ends use the same ids.
+     */
+    public int[] getMethodIds() {
+        return methodIds;
+    }
+
+    /**
+     * Retrieves the codec chosen by the service.
+     *
+     * @return The codec name, or null if the connection was refused.
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * Retrieves the compression chosen by the service.
+     *
+     * @return The compression name, or null if the connection was refused.
+     */
+    public String getCompression() {
+        return compression;
+    }
+
+    /**
+     * Retrieves whether the rest of the connection uses the shared-memory rings offered by the stub.
+     *
+     * @return True if the service mapped them.
+     */
+    public boolean isSharedMemory() {
+        return sharedMemory;
+    }
+
+    /**
+     * Retrieves the reason the connection was refused, if it was.
+     *
+     * @return The reason, or null if the connection was accepted.
+     */
+    public RemoteObjectException getRejection() {
+        return rejection;
+    }
+}
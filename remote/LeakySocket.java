@@ -1,15 +1,32 @@
 package remote;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.ObjectInput;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.NullPointerException;
 import java.lang.Thread;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /** LeakySocket is a wrapper for a standard Java Socket that allows for 
     simulated message loss and packet delays. The constructor allows you
@@ -19,9 +36,26 @@ import java.util.Random;
     reader and writer instances, as the loss/delay is wrapped around
     the sending functionality.  There is no loss/delay incurred at
     the receiver, which mimics real-world scenarios (i.e., a receiver
-    should be unaware that something was sent if it was lost). */
+    should be unaware that something was sent if it was lost).
+    <p>
+    A socket may carry many objects. Each object is written after resetting
+    the object writer, so that it is sent in full rather than as a reference
+    to an earlier copy, and so that the writer does not retain every object
+    ever sent.
+    <p>
+    Addresses of the form <code>unix:/path</code> connect to a Unix domain
+    socket instead of TCP, for clients on the same host as the service.
+    Addresses of the form <code>shm:/path</code> connect to the same socket,
+    over which the stub then offers shared-memory rings for the calls. */
 public class LeakySocket {
-    private Socket s;
+    private static final Log LOG = Log.get(LeakySocket.class);
+    /** Address prefix selecting a Unix domain socket. */
+    public static final String UNIX_PREFIX = "unix:";
+    /** Address prefix selecting shared-memory rings set up over a Unix domain socket. */
+    public static final String SHM_PREFIX = "shm:";
+    private Closeable s; // the Socket, or the SocketChannel of a Unix domain socket
+    private OutputStream out;
+    private InputStream in;
     private volatile ObjectOutputStream writer;
     private volatile ObjectInputStream reader;
     private boolean isLossy;
@@ -30,43 +64,122 @@ public class LeakySocket {
     private boolean isDelayed;
     private int msDelay, usDelay;
     private Random rng;
+    private Deflater deflater;
+    private Inflater inflater;
+    private SharedMemoryRings rings;
     
     /** Creates a <code>LeakySocket</code> wrapper around a new socket for a
         given address. Constructor opens object writer and reader and configures
         parameters for simulated loss and delay according to boolean params. */
     public LeakySocket(String addr, boolean lossy, boolean delayed) {
-        String[] splitAddr = addr.split(":", 2); // address has form a.b.c.d:p
+        this(addr, lossy, delayed, TransportConfig.DEFAULT);
+    }
+
+    /** Creates a <code>LeakySocket</code> wrapper around a new socket for a
+        given address, with the socket and stream options of a transport
+        configuration. The options are set before connecting, so that buffer
+        sizes apply to the TCP window negotiated with the other end. */
+    public LeakySocket(String addr, boolean lossy, boolean delayed, TransportConfig config) {
         try {
-            s = new Socket(splitAddr[0], Integer.parseInt(splitAddr[1]));
-            writer = new ObjectOutputStream(s.getOutputStream());
-            writer.flush();
-            reader = new ObjectInputStream(s.getInputStream());
+            if(addr.startsWith(UNIX_PREFIX) || addr.startsWith(SHM_PREFIX)) {
+                String path = addr.substring(addr.indexOf(':') + 1);
+                SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+                try {
+                    configure(channel, config);
+                    channel.connect(UnixDomainSocketAddress.of(path));
+                } catch (IOException e) {
+                    channel.close();
+                    throw e;
+                }
+                s = channel;
+                openStreams(new ChannelInputStream(channel), new ChannelOutputStream(channel), config);
+            } else {
+                String[] splitAddr = addr.split(":", 2); // address has form a.b.c.d:p
+                Socket socket = new Socket();
+                configure(socket, config);
+                socket.connect(new InetSocketAddress(splitAddr[0], Integer.parseInt(splitAddr[1])));
+                s = socket;
+                openStreams(socket.getInputStream(), socket.getOutputStream(), config);
+            }
         } catch (UnknownHostException e) {
-            System.out.println("Invalid socket address");
-            e.printStackTrace();
+            LOG.error("Invalid socket address", e);
         } catch (IOException e) { }
         
-        this.isLossy = lossy;
-        this.isDelayed = delayed;
-        msDelay = 2;
-        usDelay = 0;
-        msTimeout = 500;
-        usTimeout = 0;
-        lossRate = 0.05;
-        rng = new Random();
+        setDefaults(lossy, delayed);
     }
     
     /** Creates a <code>LeakySocket</code> wrapper around a new socket for a
         given address. Constructor opens object writer and reader and configures
         parameters for simulated loss and delay according to boolean params. */
     public LeakySocket(Socket s, boolean lossy, boolean delayed) {
+        this(s, lossy, delayed, TransportConfig.DEFAULT);
+    }
+
+    /** Creates a <code>LeakySocket</code> wrapper around a connected socket,
+        such as one accepted by a service, with the socket and stream options
+        of a transport configuration. */
+    public LeakySocket(Socket s, boolean lossy, boolean delayed, TransportConfig config) {
+        this.s = s;
         try {
-            writer = new ObjectOutputStream(s.getOutputStream());
-            writer.flush();
-            reader = new ObjectInputStream(s.getInputStream());
+            configure(s, config);
+            openStreams(s.getInputStream(), s.getOutputStream(), config);
         } catch (IOException e) { }
-                
-        this.s = s;
+
+        setDefaults(lossy, delayed);
+    }
+
+    /** Creates a <code>LeakySocket</code> wrapper around a connected Unix
+        domain socket channel, such as one accepted by a service, with the
+        buffer and stream options of a transport configuration. The channel
+        must be in blocking mode. */
+    public LeakySocket(SocketChannel channel, boolean lossy, boolean delayed, TransportConfig config) {
+        this.s = channel;
+        try {
+            configure(channel, config);
+            openStreams(new ChannelInputStream(channel), new ChannelOutputStream(channel), config);
+        } catch (IOException e) { }
+
+        setDefaults(lossy, delayed);
+    }
+
+    /** Applies the socket options of a configuration to a socket; buffer
+        sizes of 0 keep the operating system's defaults. */
+    private static void configure(Socket socket, TransportConfig config) throws SocketException {
+        socket.setTcpNoDelay(config.isTcpNoDelay());
+        socket.setKeepAlive(config.isKeepAlive());
+        if(config.getSendBufferSize() > 0)
+            socket.setSendBufferSize(config.getSendBufferSize());
+        if(config.getReceiveBufferSize() > 0)
+            socket.setReceiveBufferSize(config.getReceiveBufferSize());
+    }
+
+    /** Applies the buffer sizes of a configuration to a Unix domain socket
+        channel; the TCP options do not apply to it. */
+    private static void configure(SocketChannel channel, TransportConfig config) throws IOException {
+        if(config.getSendBufferSize() > 0)
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, config.getSendBufferSize());
+        if(config.getReceiveBufferSize() > 0)
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, config.getReceiveBufferSize());
+    }
+
+    /** Opens the object writer and reader, over buffered streams if the
+        configuration asks for them. The streams under the object streams are
+        kept, so that <code>compress()</code> stacks on the same buffers
+        rather than losing bytes already read into them. */
+    private void openStreams(InputStream in, OutputStream out, TransportConfig config) throws IOException {
+        this.out = out;
+        this.in = in;
+        if(config.getStreamBufferSize() > 0) {
+            this.out = new BufferedOutputStream(out, config.getStreamBufferSize());
+            this.in = new BufferedInputStream(in, config.getStreamBufferSize());
+        }
+        writer = new ObjectOutputStream(this.out);
+        writer.flush();
+        reader = new ObjectInputStream(this.in);
+    }
+
+    /** Sets the parameters for simulated loss and delay. */
+    private void setDefaults(boolean lossy, boolean delayed) {
         this.isLossy = lossy;
         this.isDelayed = delayed;
         msDelay = 2;
@@ -92,17 +205,24 @@ public class LeakySocket {
         will induce an additional delay, emulating a link propagation delay.
         If the object is sent, the method will return <code>true</code>.     */
     public boolean sendObject(Object obj) throws IOException {
+        return sendMessage(out -> out.writeObject(obj));
+    }
+
+    /** The <code>sendMessage()</code> method sends a message that a codec
+        writes onto the object writer, such as the fields of a call one by
+        one, with the same simulated loss and delay as
+        <code>sendObject(Object)</code>. The other end reads it back from
+        <code>input()</code> in the same order. */
+    boolean sendMessage(MessageWriter message) throws IOException {
         if(s != null) {
             if(isLossy && rng.nextDouble() < lossRate) {
                 // send failure occurred
                 try {
                     Thread.sleep(msTimeout, 1000 * usTimeout);
                 } catch (InterruptedException e) {
-                    System.out.println("Timeout interrupted");
-                    e.printStackTrace();
+                    LOG.warn("Timeout interrupted", e);
                 } catch (IllegalArgumentException e) {
-                    System.out.println("Bad timeout arg");
-                    e.printStackTrace();
+                    LOG.error("Bad timeout arg", e);
                 }
                 return false;
             } else {
@@ -110,16 +230,15 @@ public class LeakySocket {
                     try {
                         Thread.sleep(msDelay, 1000 * usDelay);
                     } catch (InterruptedException e) {
-                        System.out.println("Link delay interrupted");
-                        e.printStackTrace();
+                        LOG.warn("Link delay interrupted", e);
                     } catch (IllegalArgumentException e) {
-                        System.out.println("Bad link delay arg");
-                        e.printStackTrace();
+                        LOG.error("Bad link delay arg", e);
                     }
                 }
                 
                 try {
-                    writer.writeObject(obj);
+                    writer.reset();
+                    message.write(writer);
                     writer.flush();
                 } catch (IOException e) {
                     throw new IOException("Unable to output object: " + e);
@@ -142,14 +261,58 @@ public class LeakySocket {
             } catch (IOException e) {
                 throw new IOException("Unable to receive object: " + e);
             } catch (ClassNotFoundException e) {
-                System.out.println("Class Not Found:" + e);
-                e.printStackTrace();
+                LOG.error("Class Not Found", e);
             } catch (NullPointerException e) { }
             return obj;
         }
         return null;
     }
 
+    /** The <code>input()</code> method gets the object reader, from which a
+        codec reads the messages written by <code>sendMessage()</code>. It
+        changes when the connection switches to compression or shared memory,
+        so it must be got again for each message. */
+    ObjectInput input() {
+        return reader;
+    }
+
+    /** The <code>compress()</code> method switches both directions of the
+        socket to deflate compression, flushing the compressed stream after
+        each object. Both ends must switch at the same point of the
+        conversation, when no object is in transit, as after a handshake: the
+        objects sent until then are read uncompressed, and all later ones
+        compressed. The method blocks until the other end has switched too. */
+    public void compress() throws IOException {
+        if(s != null) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+            inflater = new Inflater();
+            writer = new ObjectOutputStream(new DeflaterOutputStream(out, deflater, 512, true));
+            writer.flush();
+            reader = new ObjectInputStream(new InflaterInputStream(in, inflater, 512));
+        }
+    }
+
+    /** The <code>isUnixDomain()</code> method tells whether the socket is a
+        Unix domain socket, whose other end is on the same host. */
+    public boolean isUnixDomain() {
+        return s instanceof SocketChannel;
+    }
+
+    /** The <code>useSharedMemory()</code> method switches both directions of
+        the connection to shared-memory rings mapped by both ends, with the
+        same rules as <code>compress()</code>. The socket itself stays open,
+        to wake up an end sleeping on the rings. It must be a Unix domain
+        socket; closing this <code>LeakySocket</code> closes the rings too. */
+    void useSharedMemory(SharedMemoryRings rings, boolean service, WaitStrategy wait) throws IOException {
+        if(s != null) {
+            this.rings = rings;
+            rings.attach((SocketChannel) s);
+            writer = new ObjectOutputStream(rings.output(service, wait));
+            writer.flush();
+            reader = new ObjectInputStream(rings.input(service, wait));
+        }
+    }
+
     /** The <code>setDelay()</code> method allows for changing the boolean 
         <code>delayed</code> parameter and the corresponding sleep duration
         (which includes both a component in milliseconds and in microseconds
@@ -178,16 +341,77 @@ public class LeakySocket {
     }
     
     /** The <code>close()</code> method wraps the corresponding functionality
-        of the underlying Java Socket.   */
+        of the underlying Java Socket or channel.   */
     public void close() {
+        // Stop the threads polling the rings, at both ends.
+        if(rings != null)
+            rings.close();
         if(s != null) {
             try {
                 s.close();
             } catch (IOException e) {
-                System.out.println("Socket close error");
-                e.printStackTrace();
+                LOG.error("Socket close error", e);
             }
         }
+        // Release the native memory of the compressor, if any; a thread still
+        // reading or writing the closed socket fails with an exception anyway.
+        if(deflater != null)
+            deflater.end();
+        if(inflater != null)
+            inflater.end();
     }
-}
 
+    /** Writes a message onto the object writer of a socket. */
+    interface MessageWriter {
+        /** Writes the message.
+            @param out The object writer.
+            @throws IOException If the message cannot be written. */
+        void write(ObjectOutput out) throws IOException;
+    }
+
+    /** Input stream reading a blocking channel. Unlike the streams of
+        <code>Channels</code>, it takes no lock shared with writes, so that a
+        thread blocked reading does not hold up one sending. */
+    private static final class ChannelInputStream extends InputStream {
+        private final SocketChannel channel;
+
+        ChannelInputStream(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len == 0)
+                return 0;
+            return channel.read(ByteBuffer.wrap(b, off, len));
+        }
+    }
+
+    /** Output stream writing a blocking channel, without the lock of the
+        streams of <code>Channels</code>. */
+    private static final class ChannelOutputStream extends OutputStream {
+        private final SocketChannel channel;
+
+        ChannelOutputStream(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while(buffer.hasRemaining())
+                channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package remote;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Set;
+
+/**
+ * Copies the arguments and results of calls made within one virtual machine, so that they keep the
+ * pass-by-value semantics of remote calls: neither side sees later changes the other makes to them.
+ * <p>
+ * Immutable values, which are strings, boxed primitives, big numbers and enum constants, are passed as
+ * they are, so calls that take and return only such values copy nothing. Other values are deep copied
+ * by serializing them into a per-thread buffer and reading them back, which preserves references shared
+ * between arguments and fails on values that are not serializable, as a remote call does.
+ */
+final class LocalCopy {
+
+    /** Classes whose instances cannot change; subclasses are not included. */
+    private static final Set<Class<?>> IMMUTABLE = Set.of(String.class, Boolean.class, Character.class,
+            Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class,
+            BigInteger.class, BigDecimal.class);
+
+    /** Buffer of each thread, reused across copies. */
+    private static final ThreadLocal<Buffer> BUFFERS = ThreadLocal.withInitial(Buffer::new);
+
+    private LocalCopy() {
+    }
+
+    /**
+     * Copies the arguments of a call.
+     *
+     * @param args The arguments, or null for a method without parameters.
+     * @return The arguments themselves if all are immutable, or a deep copy.
+     * @throws IOException If an argument cannot be serialized.
+     */
+    static Object[] copyArgs(Object[] args) throws IOException {
+        if (args == null) {
+            return null;
+        }
+        for (Object arg : args) {
+            if (!isImmutable(arg)) {
+                return (Object[]) roundTrip(args);
+            }
+        }
+        return args;
+    }
+
+    /**
+     * Copies a result or an exception.
+     *
+     * @param value The value.
+     * @return The value itself if it is immutable, or a deep copy.
+     * @throws IOException If the value cannot be serialized.
+     */
+    static Object copy(Object value) throws IOException {
+        return isImmutable(value) ? value : roundTrip(value);
+    }
+
+    /**
+     * Checks whether a value is passed without copying.
+     *
+     * @param value The value.
+     * @return True if it is null or of an immutable type.
+     */
+    private static boolean isImmutable(Object value) {
+        return value == null || IMMUTABLE.contains(value.getClass()) || value instanceof Enum;
+    }
+
+    /**
+     * Serializes a value and reads it back.
+     *
+     * @param value The value.
+     * @return The copy.
+     * @throws IOException If the value cannot be serialized.
+     */
+    private static Object roundTrip(Object value) throws IOException {
+        Buffer buffer = BUFFERS.get();
+        buffer.reset();
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            out.writeObject(value);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(buffer.toInputStream())) {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unable to copy " + value.getClass().getName(), e);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Byte array stream that can be read without copying its contents, and that shrinks back after
+     * holding a large value, so that each thread keeps at most a small buffer.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        /** Capacity kept between copies. */
+        private static final int RETAINED = 8192;
+
+        Buffer() {
+            super(RETAINED);
+        }
+
+        /**
+         * Opens a stream over the bytes written so far.
+         *
+         * @return The stream.
+         */
+        ByteArrayInputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+
+        /**
+         * Drops a buffer grown beyond the retained capacity.
+         */
+        void release() {
+            if (buf.length > RETAINED) {
+                buf = new byte[RETAINED];
+            }
+            count = 0;
+        }
+    }
+}
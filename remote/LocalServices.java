@@ -0,0 +1,128 @@
+package remote;
+
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the services running in this virtual machine, by the addresses they listen on.
+ * <p>
+ * A service registers its TCP port and Unix domain socket path when it starts and removes them when it
+ * stops. A stub whose address names one of them calls the service object directly instead of going
+ * through a socket. TCP addresses are keyed by port alone when their host is an address of this
+ * machine, since services listen on every local address; Unix domain socket paths are keyed by their
+ * absolute, normalized form. The key of each address is computed once, since doing so may resolve a
+ * host name and enumerate the network interfaces, and stubs are created for the same addresses over
+ * and over.
+ */
+final class LocalServices {
+
+    /** The running services, by key. */
+    private static final ConcurrentHashMap<String, Service<?>> SERVICES = new ConcurrentHashMap<>();
+
+    /** Prefix of the keys of TCP ports. */
+    private static final String TCP_PREFIX = "tcp:";
+
+    /** Keys of the addresses given to stubs so far, or <code>NO_KEY</code> for remote addresses. */
+    private static final ConcurrentHashMap<String, String> KEYS = new ConcurrentHashMap<>();
+
+    /** Cached for addresses that are not on this machine, since the map cannot hold null. */
+    private static final String NO_KEY = "";
+
+    /** Largest number of cached keys; the cache is emptied when it would grow beyond. */
+    private static final int MAX_KEYS = 1024;
+
+    private LocalServices() {
+    }
+
+    /**
+     * Finds the key under which a service listening on an address would be registered.
+     *
+     * @param address The address given to a stub, <code>host:port</code>, <code>unix:/path</code> or
+     *                <code>shm:/path</code>.
+     * @return The key, or null if the address is not on this machine or cannot be parsed.
+     */
+    static String keyOf(String address) {
+        String key = KEYS.get(address);
+        if (key == null) {
+            if (KEYS.size() >= MAX_KEYS) {
+                KEYS.clear();
+            }
+            key = KEYS.computeIfAbsent(address, LocalServices::resolve);
+        }
+        return key == NO_KEY ? null : key;
+    }
+
+    /**
+     * Computes the key of an address, without the cache.
+     *
+     * @param address The address given to a stub.
+     * @return The key, or <code>NO_KEY</code> if the address is not on this machine or cannot be parsed.
+     */
+    private static String resolve(String address) {
+        try {
+            if (address.startsWith(LeakySocket.UNIX_PREFIX) || address.startsWith(LeakySocket.SHM_PREFIX)) {
+                return unixKey(Path.of(address.substring(address.indexOf(':') + 1)));
+            }
+            String[] splitAddr = address.split(":", 2); // address has form a.b.c.d:p, as in LeakySocket
+            InetAddress host = InetAddress.getByName(splitAddr[0]);
+            if (host.isLoopbackAddress() || host.isAnyLocalAddress() || NetworkInterface.getByInetAddress(host) != null) {
+                return tcpKey(Integer.parseInt(splitAddr[1]));
+            }
+        } catch (Exception e) {
+            // Unresolvable or malformed: the stub reports it when it connects.
+        }
+        return NO_KEY;
+    }
+
+    /**
+     * Gets the key of a TCP port.
+     *
+     * @param port The port.
+     * @return The key.
+     */
+    static String tcpKey(int port) {
+        return TCP_PREFIX + port;
+    }
+
+    /**
+     * Gets the key of a Unix domain socket.
+     *
+     * @param path The path of the socket file.
+     * @return The key.
+     */
+    static String unixKey(Path path) {
+        return LeakySocket.UNIX_PREFIX + path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Registers a running service.
+     *
+     * @param key     The key of an address it listens on.
+     * @param service The service.
+     */
+    static void register(String key, Service<?> service) {
+        SERVICES.put(key, service);
+    }
+
+    /**
+     * Removes a service, unless another one has taken its key since.
+     *
+     * @param key     The key of an address it listened on.
+     * @param service The service.
+     */
+    static void unregister(String key, Service<?> service) {
+        SERVICES.remove(key, service);
+    }
+
+    /**
+     * Finds the running service registered under a key.
+     *
+     * @param key The key.
+     * @return The service, or null if none is running in this virtual machine.
+     */
+    static Service<?> find(String key) {
+        return SERVICES.get(key);
+    }
+}
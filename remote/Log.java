@@ -0,0 +1,322 @@
+package remote;
+
+import java.util.Locale;
+
+/**
+ * Leveled logging facade of the <code>remote</code> package.
+ * <p>
+ * Classes of the package hold one <code>Log</code> each, named after the class. Messages go to a
+ * single, replaceable <code>LogAppender</code>, and only if their level is enabled. The level is
+ * read from the <code>remote.log.level</code> system property, one of <code>OFF</code>,
+ * <code>ERROR</code>, <code>WARN</code>, <code>INFO</code>, <code>DEBUG</code> or
+ * <code>TRACE</code>, and defaults to <code>OFF</code>, so that the library is silent unless asked
+ * otherwise. It can be changed at run time with <code>setLevel</code>.
+ * <p>
+ * Logging a message whose level is disabled costs one volatile read and allocates nothing: the
+ * methods take up to two arguments without varargs, and messages are only formatted by the appender,
+ * replacing each <code>{}</code> of the format with the next argument. Primitive arguments are boxed
+ * before the call, which allocates unless the value is cached, as small integers are; callers passing
+ * other primitives on a hot path check <code>isEnabled</code> first. The default appender is an
+ * <code>AsyncLogAppender</code> writing to the standard output, created when a level is first enabled.
+ */
+public final class Log {
+
+    /** Levels of messages, from the most to the least severe. */
+    public enum Level {
+        ERROR, WARN, INFO, DEBUG, TRACE
+    }
+
+    /** Number of levels enabled: 0 when logging is off, 5 when every level is. */
+    private static volatile int enabled = parseLevel(System.getProperty("remote.log.level"));
+
+    /** The appender messages go to, or null until one is needed. */
+    private static volatile LogAppender appender;
+
+    /** The name of the log, which appenders print with each message. */
+    private final String name;
+
+    /**
+     * Creates a log.
+     *
+     * @param name The name of the log.
+     */
+    private Log(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the log of a class.
+     *
+     * @param c The class.
+     * @return A log named after the simple name of the class.
+     */
+    public static Log get(Class<?> c) {
+        return new Log(c.getSimpleName());
+    }
+
+    /**
+     * Sets the most verbose level logged.
+     *
+     * @param level The level, or null to turn logging off.
+     */
+    public static void setLevel(Level level) {
+        enabled = level == null ? 0 : level.ordinal() + 1;
+    }
+
+    /**
+     * Gets the most verbose level logged.
+     *
+     * @return The level, or null if logging is off.
+     */
+    public static Level getLevel() {
+        int levels = enabled;
+        return levels == 0 ? null : Level.values()[levels - 1];
+    }
+
+    /**
+     * Replaces the appender messages go to. The previous appender is not closed.
+     *
+     * @param newAppender The appender.
+     * @throws NullPointerException If <code>newAppender</code> is <code>null</code>.
+     */
+    public static void setAppender(LogAppender newAppender) {
+        if (newAppender == null) {
+            throw new NullPointerException("Appender cannot be null.");
+        }
+        appender = newAppender;
+    }
+
+    /**
+     * Checks whether messages of a level are logged.
+     *
+     * @param level The level.
+     * @return True if they are.
+     */
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() < enabled;
+    }
+
+    /**
+     * Formats a message, replacing each <code>{}</code> of the format with the next argument. Placeholders
+     * beyond the arguments are left as they are.
+     *
+     * @param format The format.
+     * @param arg1   The first argument.
+     * @param arg2   The second argument.
+     * @return The message.
+     */
+    public static String format(String format, Object arg1, Object arg2) {
+        int first = format.indexOf("{}");
+        if (first < 0) {
+            return format;
+        }
+        StringBuilder message = new StringBuilder(format.length() + 32);
+        message.append(format, 0, first).append(arg1);
+        int rest = first + 2;
+        int second = format.indexOf("{}", rest);
+        if (second >= 0) {
+            message.append(format, rest, second).append(arg2);
+            rest = second + 2;
+        }
+        return message.append(format, rest, format.length()).toString();
+    }
+
+    /**
+     * Logs a message at level <code>ERROR</code>.
+     *
+     * @param message The message.
+     */
+    public void error(String message) {
+        log(Level.ERROR, message, null, null, null);
+    }
+
+    /**
+     * Logs a message at level <code>ERROR</code>.
+     *
+     * @param message The message.
+     * @param thrown  The exception to print with the message.
+     */
+    public void error(String message, Throwable thrown) {
+        log(Level.ERROR, message, null, null, thrown);
+    }
+
+    /**
+     * Logs a message at level <code>ERROR</code>.
+     *
+     * @param format The format of the message.
+     * @param arg    The argument.
+     */
+    public void error(String format, Object arg) {
+        log(Level.ERROR, format, arg, null, null);
+    }
+
+    /**
+     * Logs a message at level <code>WARN</code>.
+     *
+     * @param message The message.
+     */
+    public void warn(String message) {
+        log(Level.WARN, message, null, null, null);
+    }
+
+    /**
+     * Logs a message at level <code>WARN</code>.
+     *
+     * @param message The message.
+     * @param thrown  The exception to print with the message.
+     */
+    public void warn(String message, Throwable thrown) {
+        log(Level.WARN, message, null, null, thrown);
+    }
+
+    /**
+     * Logs a message at level <code>WARN</code>.
+     *
+     * @param format The format of the message.
+     * @param arg    The argument.
+     */
+    public void warn(String format, Object arg) {
+        log(Level.WARN, format, arg, null, null);
+    }
+
+    /**
+     * Logs a message at level <code>WARN</code>.
+     *
+     * @param format The format of the message.
+     * @param arg1   The first argument.
+     * @param arg2   The second argument.
+     */
+    public void warn(String format, Object arg1, Object arg2) {
+        log(Level.WARN, format, arg1, arg2, null);
+    }
+
+    /**
+     * Logs a message at level <code>INFO</code>.
+     *
+     * @param message The message.
+     */
+    public void info(String message) {
+        log(Level.INFO, message, null, null, null);
+    }
+
+    /**
+     * Logs a message at level <code>INFO</code>.
+     *
+     * @param format The format of the message.
+     * @param arg    The argument.
+     */
+    public void info(String format, Object arg) {
+        log(Level.INFO, format, arg, null, null);
+    }
+
+    /**
+     * Logs a message at level <code>INFO</code>.
+     *
+     * @param format The format of the message.
+     * @param arg1   The first argument.
+     * @param arg2   The second argument.
+     */
+    public void info(String format, Object arg1, Object arg2) {
+        log(Level.INFO, format, arg1, arg2, null);
+    }
+
+    /**
+     * Logs a message at level <code>DEBUG</code>.
+     *
+     * @param message The message.
+     */
+    public void debug(String message) {
+        log(Level.DEBUG, message, null, null, null);
+    }
+
+    /**
+     * Logs a message at level <code>DEBUG</code>.
+     *
+     * @param format The format of the message.
+     * @param arg    The argument.
+     */
+    public void debug(String format, Object arg) {
+        log(Level.DEBUG, format, arg, null, null);
+    }
+
+    /**
+     * Logs a message at level <code>DEBUG</code>.
+     *
+     * @param format The format of the message.
+     * @param arg1   The first argument.
+     * @param arg2   The second argument.
+     */
+    public void debug(String format, Object arg1, Object arg2) {
+        log(Level.DEBUG, format, arg1, arg2, null);
+    }
+
+    /**
+     * Logs a message at level <code>TRACE</code>.
+     *
+     * @param format The format of the message.
+     * @param arg    The argument.
+     */
+    public void trace(String format, Object arg) {
+        log(Level.TRACE, format, arg, null, null);
+    }
+
+    /**
+     * Logs a message at level <code>TRACE</code>.
+     *
+     * @param format The format of the message.
+     * @param arg1   The first argument.
+     * @param arg2   The second argument.
+     */
+    public void trace(String format, Object arg1, Object arg2) {
+        log(Level.TRACE, format, arg1, arg2, null);
+    }
+
+    /**
+     * Passes a message to the appender if its level is enabled.
+     *
+     * @param level  The level.
+     * @param format The format of the message.
+     * @param arg1   The first argument, or null.
+     * @param arg2   The second argument, or null.
+     * @param thrown The exception to print with the message, or null.
+     */
+    private void log(Level level, String format, Object arg1, Object arg2, Throwable thrown) {
+        if (level.ordinal() >= enabled) {
+            return;
+        }
+        LogAppender target = appender;
+        if (target == null) {
+            target = defaultAppender();
+        }
+        target.append(level, name, format, arg1, arg2, thrown);
+    }
+
+    /**
+     * Creates the default appender the first time a message is logged.
+     *
+     * @return The appender.
+     */
+    private static synchronized LogAppender defaultAppender() {
+        if (appender == null) {
+            appender = new AsyncLogAppender(System.out, AsyncLogAppender.DEFAULT_CAPACITY);
+        }
+        return appender;
+    }
+
+    /**
+     * Parses the level named by the system property.
+     *
+     * @param level The name, or null.
+     * @return The number of levels enabled.
+     */
+    private static int parseLevel(String level) {
+        if (level == null || level.equalsIgnoreCase("OFF")) {
+            return 0;
+        }
+        try {
+            return Level.valueOf(level.toUpperCase(Locale.ROOT)).ordinal() + 1;
+        } catch (IllegalArgumentException e) {
+            return 0;
+        }
+    }
+}
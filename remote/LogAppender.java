@@ -0,0 +1,23 @@
+package remote;
+
+/**
+ * Destination of the messages logged through <code>Log</code>.
+ * <p>
+ * An appender receives the unformatted message, and formats it with <code>Log.format</code> if it
+ * prints it. It is called by the thread logging the message, possibly by many threads at once, so it
+ * should be thread-safe and return quickly.
+ */
+public interface LogAppender {
+
+    /**
+     * Appends a message.
+     *
+     * @param level  The level of the message.
+     * @param logger The name of the log.
+     * @param format The format of the message.
+     * @param arg1   The first argument of the format, or null.
+     * @param arg2   The second argument of the format, or null.
+     * @param thrown The exception to print with the message, or null.
+     */
+    void append(Log.Level level, String logger, String format, Object arg1, Object arg2, Throwable thrown);
+}
@@ -5,45 +5,34 @@ import java.io.Serializable;
 /**
  * Represents a request for invoking a method on a remote object.
  * This class is used to serialize method invocation details over the network
- * from a client stub to the remote service. It includes the name of the method
- * to be called, the parameter types, and the arguments to pass to the method.
+ * from a client stub to the remote service. It includes the id of the method
+ * to be called, as agreed during the connection handshake, and the arguments
+ * to pass to the method.
  */
 public class MethodInvocationRequest implements Serializable {
-    private static final long serialVersionUID = 1L; // UID for serialization
+    private static final long serialVersionUID = 2L; // UID for serialization
 
-    private String methodName; // The name of the method to be invoked
-    private Class<?>[] paramTypes; // The types of the parameters for the method
+    private int methodId; // The service's id of the method to be invoked
     private Object[] args; // The arguments to be passed to the method
 
     /**
      * Constructs a new method invocation request.
      *
-     * @param methodName The name of the method to invoke.
-     * @param paramTypes The types of the parameters that the method accepts.
+     * @param methodId The service's id of the method to invoke.
      * @param args The arguments to pass to the method.
      */
-    public MethodInvocationRequest(String methodName, Class<?>[] paramTypes, Object[] args) {
-        this.methodName = methodName;
-        this.paramTypes = paramTypes;
+    public MethodInvocationRequest(int methodId, Object[] args) {
+        this.methodId = methodId;
         this.args = args;
     }
 
     /**
-     * Gets the name of the method to be invoked.
+     * Gets the id of the method to be invoked.
      *
-     * @return The method name.
+     * @return The id of the method in the service's interface.
      */
-    public String getMethodName() {
-        return methodName;
-    }
-
-    /**
-     * Gets the types of the parameters for the method.
-     *
-     * @return An array of {@link Class} objects representing the parameter types.
-     */
-    public Class<?>[] getParamTypes() {
-        return paramTypes;
+    public int getMethodId() {
+        return methodId;
     }
 
     /**
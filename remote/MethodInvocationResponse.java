@@ -1,6 +1,7 @@
 package remote;
 
 import java.io.Serializable;
+import java.util.Map;
 
 /**
  * Represents the response of a method invocation.
@@ -8,9 +9,12 @@ import java.io.Serializable;
  * or exception that occurred during the method's execution.
  */
 public class MethodInvocationResponse implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
     private Object result; // The result of the method call, if successful
     private Throwable exception; // The exception thrown by the method call, if any
+    private String exceptionClass; // The class of a declared exception sent without its state, if any
+    private String exceptionMessage; // The message of that exception
+    private transient Map<Throwable, StackTraceElement[]> originalStackTraces; // Put back once sent
 
     /**
      * Constructs a new response object for a method invocation.
@@ -23,6 +27,44 @@ public class MethodInvocationResponse implements Serializable {
         this.exception = exception;
     }
 
+    /**
+     * Constructs a response for a declared checked exception sent as only its class and message,
+     * which the stub recreates. This avoids serializing the exception object and its stack trace.
+     *
+     * @param exceptionClass The class name of the exception.
+     * @param exceptionMessage The message of the exception.
+     * @return The response.
+     */
+    public static MethodInvocationResponse stackless(String exceptionClass, String exceptionMessage) {
+        MethodInvocationResponse response = new MethodInvocationResponse(null, null);
+        response.exceptionClass = exceptionClass;
+        response.exceptionMessage = exceptionMessage;
+        return response;
+    }
+
+    /**
+     * Constructs a response for an exception thrown by the remote method, with its stack traces
+     * encoded for sending. The service calls <code>restoreStackTraces</code> once the response is sent.
+     *
+     * @param exception The exception.
+     * @param encoding How to encode its stack traces.
+     * @return The response.
+     */
+    static MethodInvocationResponse encoded(Throwable exception, ExceptionEncoding encoding) {
+        Map<Throwable, StackTraceElement[]> originals = encoding.encode(exception);
+        MethodInvocationResponse response = new MethodInvocationResponse(null, exception);
+        response.originalStackTraces = originals;
+        return response;
+    }
+
+    /**
+     * Puts back the stack traces that <code>encoded</code> replaced, after the response is sent.
+     */
+    void restoreStackTraces() {
+        ExceptionEncoding.restore(originalStackTraces);
+        originalStackTraces = null;
+    }
+
     /**
      * Retrieves the result of the method invocation.
      *
@@ -40,4 +82,22 @@ public class MethodInvocationResponse implements Serializable {
     public Throwable getException() {
         return exception;
     }
+
+    /**
+     * Retrieves the class of a declared exception sent as only its class and message.
+     *
+     * @return The class name, or null if the response does not carry such an exception.
+     */
+    public String getExceptionClass() {
+        return exceptionClass;
+    }
+
+    /**
+     * Retrieves the message of a declared exception sent as only its class and message.
+     *
+     * @return The message, which may be null.
+     */
+    public String getExceptionMessage() {
+        return exceptionMessage;
+    }
 }
@@ -0,0 +1,23 @@
+package remote;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a remote interface for which a stub and a skeleton are generated at compile time.
+ * <p>
+ * When the sources are compiled with <code>remote.processor.RemoteInterfaceProcessor</code>, each
+ * marked interface <code>I</code> gets a class <code>I_Stub</code>, which <code>StubFactory</code>
+ * creates instead of a reflective proxy, and a class <code>I_Skeleton</code>, which
+ * <code>Service</code> uses instead of reflective method calls. Nested interfaces are named after
+ * their binary name with <code>$</code> replaced by <code>_</code>. Interfaces compiled without the
+ * processor, and generic interfaces or interfaces with generic methods, keep using reflection.
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface RemoteInterface {
+}
@@ -0,0 +1,497 @@
+package remote;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable description of a remote interface, computed once per class and shared by stubs and services.
+ * <p>
+ * Checking that an interface is remote walks all of its methods and their exception types, and each
+ * call needs the name and parameter types of the method invoked. Doing this reflection on every stub
+ * creation, service construction and call is wasted work, since the answers never change for a class.
+ * A descriptor holds them instead, and <code>of</code> caches one descriptor per class in a
+ * <code>ClassValue</code>, so that it is computed on first use and can be unloaded with the class.
+ * <p>
+ * Methods are numbered by their signature in sorted order, so that both ends of a connection that
+ * load the same interface agree on the number of each method without exchanging anything. The
+ * fingerprint of the interface, a hash of the signatures and return types of all its methods, lets
+ * the connection handshake confirm that both ends do load the same interface.
+ * <p>
+ * The descriptor also finds the stub and skeleton classes generated for interfaces marked with
+ * <code>RemoteInterface</code>, once per interface, so that stubs and services use them when present.
+ */
+public final class RemoteInterfaceDescriptor {
+
+    /** Descriptors by interface class. */
+    private static final ClassValue<RemoteInterfaceDescriptor> DESCRIPTORS = new ClassValue<>() {
+        @Override
+        protected RemoteInterfaceDescriptor computeValue(Class<?> type) {
+            return new RemoteInterfaceDescriptor(type);
+        }
+    };
+
+    /** The described interface. */
+    private final Class<?> remoteInterface;
+
+    /** Whether every method of the interface declares <code>RemoteObjectException</code>. */
+    private final boolean remote;
+
+    /** The methods, indexed by id. */
+    private final List<RemoteMethod> methods;
+
+    /** The methods by their reflective object, for stubs. */
+    private final Map<Method, RemoteMethod> byMethod;
+
+    /** The methods by name, for services; overloads share a name. */
+    private final Map<String, RemoteMethod[]> byName;
+
+    /** The methods by signature including the return type, for the connection handshake. */
+    private final Map<String, RemoteMethod> bySignature;
+
+    /** Hash of the signatures of all methods, in id order. */
+    private final long fingerprint;
+
+    /** Constructor of the stub proxy class, looked up when the first stub is created. */
+    private volatile Constructor<?> proxyConstructor;
+
+    /** Constructor of the generated stub class; looked up on first use, then <code>NO_CONSTRUCTOR</code> if absent. */
+    private volatile Constructor<?> stubConstructor;
+
+    /** The generated skeleton; looked up on first use, then <code>NO_SKELETON</code> if absent. */
+    private volatile Skeleton<Object> skeleton;
+
+    /** Marks that the interface has no generated stub. */
+    private static final Constructor<?> NO_CONSTRUCTOR = RemoteInterfaceDescriptor.class.getDeclaredConstructors()[0];
+
+    /** Marks that the interface has no generated skeleton. */
+    private static final Skeleton<Object> NO_SKELETON = new Skeleton<Object>() {
+        @Override
+        public Object invoke(Object target, RemoteMethod method, Object[] args) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public TypedCall<Object> newCall(RemoteMethod method) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    /**
+     * Describes an interface.
+     *
+     * @param c The interface class.
+     */
+    private RemoteInterfaceDescriptor(Class<?> c) {
+        this.remoteInterface = c;
+        Method[] reflected = c.getMethods();
+        Arrays.sort(reflected, Comparator.comparing(RemoteInterfaceDescriptor::signature));
+
+        List<RemoteMethod> described = new ArrayList<>(reflected.length);
+        Map<Method, RemoteMethod> methodMap = new HashMap<>();
+        Map<String, RemoteMethod[]> nameMap = new HashMap<>();
+        Map<String, RemoteMethod> signatureMap = new HashMap<>();
+        MessageDigest digest = sha256();
+        boolean allRemote = true;
+        for (Method method : reflected) {
+            RemoteMethod remoteMethod = new RemoteMethod(described.size(), method);
+            described.add(remoteMethod);
+            methodMap.put(method, remoteMethod);
+            signatureMap.put(remoteMethod.signature, remoteMethod);
+            digest.update((remoteMethod.signature + '\n').getBytes(StandardCharsets.UTF_8));
+            nameMap.merge(method.getName(), new RemoteMethod[] { remoteMethod }, (a, b) -> {
+                RemoteMethod[] merged = Arrays.copyOf(a, a.length + 1);
+                merged[a.length] = b[0];
+                return merged;
+            });
+            allRemote &= remoteMethod.declaresRemoteObjectException;
+        }
+        this.remote = allRemote;
+        this.methods = Collections.unmodifiableList(described);
+        this.byMethod = methodMap;
+        this.byName = nameMap;
+        this.bySignature = signatureMap;
+
+        long hash = 0;
+        for (byte b : Arrays.copyOf(digest.digest(), Long.BYTES)) {
+            hash = (hash << 8) | (b & 0xff);
+        }
+        this.fingerprint = hash;
+    }
+
+    /**
+     * Gets the descriptor of an interface, computing it on first use.
+     *
+     * @param c The interface class.
+     * @return The shared descriptor of the class.
+     * @throws NullPointerException If <code>c</code> is <code>null</code>.
+     */
+    public static RemoteInterfaceDescriptor of(Class<?> c) {
+        return DESCRIPTORS.get(c);
+    }
+
+    /**
+     * Gets the described interface.
+     *
+     * @return The interface class.
+     */
+    public Class<?> getRemoteInterface() {
+        return remoteInterface;
+    }
+
+    /**
+     * Checks whether the interface is remote, i.e. every method declares <code>RemoteObjectException</code>.
+     *
+     * @return True if the interface is remote, false otherwise.
+     */
+    public boolean isRemote() {
+        return remote;
+    }
+
+    /**
+     * Gets the fingerprint of the interface. Two interfaces with the same fingerprint have methods with
+     * the same signatures and return types, and so the same method ids.
+     *
+     * @return The fingerprint.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Gets the methods of the interface.
+     *
+     * @return The methods, in order of their ids.
+     */
+    public List<RemoteMethod> getMethods() {
+        return methods;
+    }
+
+    /**
+     * Finds the description of a method invoked through a stub.
+     *
+     * @param method The reflective method passed to the invocation handler.
+     * @return The description, or null if the method is not one of the interface, such as
+     *         <code>Object.toString</code>.
+     */
+    public RemoteMethod find(Method method) {
+        return byMethod.get(method);
+    }
+
+    /**
+     * Finds the method a request asks for.
+     *
+     * @param name           The method name.
+     * @param parameterTypes The parameter types.
+     * @return The description, or null if the interface has no such method.
+     */
+    public RemoteMethod find(String name, Class<?>[] parameterTypes) {
+        RemoteMethod[] overloads = byName.get(name);
+        if (overloads == null) {
+            return null;
+        }
+        for (RemoteMethod overload : overloads) {
+            if (Arrays.equals(overload.parameterTypes, parameterTypes)) {
+                return overload;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds a method by its full signature, as given by <code>RemoteMethod.getSignature</code>.
+     *
+     * @param signature The signature, including the return type.
+     * @return The description, or null if the interface has no such method.
+     */
+    public RemoteMethod findBySignature(String signature) {
+        return bySignature.get(signature);
+    }
+
+    /**
+     * Creates a stub proxy for the interface. The proxy class constructor is looked up once.
+     *
+     * @param handler The invocation handler of the stub.
+     * @return The stub.
+     */
+    Object newProxy(InvocationHandler handler) {
+        Constructor<?> constructor = proxyConstructor;
+        try {
+            if (constructor == null) {
+                Object proxy = Proxy.newProxyInstance(remoteInterface.getClassLoader(),
+                        new Class<?>[] { remoteInterface }, handler);
+                proxyConstructor = proxy.getClass().getConstructor(InvocationHandler.class);
+                return proxy;
+            }
+            return constructor.newInstance(handler);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create a stub for " + remoteInterface.getName(), e);
+        }
+    }
+
+    /**
+     * Creates a stub of the class generated for the interface, if there is one.
+     *
+     * @param handler The handler making the remote calls.
+     * @return The stub, or null if no stub was generated for the interface.
+     */
+    Object newGeneratedStub(StubInvocationHandler handler) {
+        Constructor<?> constructor = stubConstructor;
+        if (constructor == null) {
+            Class<?> stubClass = generatedClass("_Stub");
+            constructor = NO_CONSTRUCTOR;
+            if (stubClass != null && remoteInterface.isAssignableFrom(stubClass)
+                    && GeneratedStub.class.isAssignableFrom(stubClass)) {
+                try {
+                    constructor = stubClass.getConstructor(StubInvocationHandler.class);
+                } catch (NoSuchMethodException e) {
+                    // Not a stub of this library; use a proxy.
+                }
+            }
+            stubConstructor = constructor;
+        }
+        if (constructor == NO_CONSTRUCTOR) {
+            return null;
+        }
+        try {
+            return constructor.newInstance(handler);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create a stub for " + remoteInterface.getName(), e);
+        }
+    }
+
+    /**
+     * Gets the skeleton generated for the interface, if there is one.
+     *
+     * @return The skeleton, or null if no skeleton was generated for the interface.
+     */
+    @SuppressWarnings("unchecked")
+    Skeleton<Object> getSkeleton() {
+        Skeleton<Object> found = skeleton;
+        if (found == null) {
+            Class<?> skeletonClass = generatedClass("_Skeleton");
+            found = NO_SKELETON;
+            if (skeletonClass != null && Skeleton.class.isAssignableFrom(skeletonClass)) {
+                try {
+                    found = (Skeleton<Object>) skeletonClass.getConstructor().newInstance();
+                } catch (ReflectiveOperationException e) {
+                    // Not a usable skeleton; use reflection.
+                }
+            }
+            skeleton = found;
+        }
+        return found == NO_SKELETON ? null : found;
+    }
+
+    /**
+     * Loads a class generated for the interface by <code>remote.processor.RemoteInterfaceProcessor</code>.
+     *
+     * @param suffix The suffix of the generated class name.
+     * @return The class, or null if it was not generated.
+     */
+    private Class<?> generatedClass(String suffix) {
+        String name = remoteInterface.getName();
+        int packageEnd = name.lastIndexOf('.') + 1;
+        String generatedName = name.substring(0, packageEnd) + name.substring(packageEnd).replace('$', '_') + suffix;
+        try {
+            return Class.forName(generatedName, true, remoteInterface.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the signature methods are ordered by: the name followed by the parameter type names.
+     *
+     * @param method The method.
+     * @return The signature.
+     */
+    private static String signature(Method method) {
+        StringBuilder signature = new StringBuilder(method.getName()).append('(');
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            signature.append(parameterType.getName()).append(';');
+        }
+        return signature.append(')').toString();
+    }
+
+    /**
+     * Creates the digest computing fingerprints.
+     *
+     * @return The digest.
+     */
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Immutable description of one method of a remote interface.
+     */
+    public static final class RemoteMethod {
+
+        /** The id of the method: its index in the sorted methods of the interface. */
+        private final int id;
+
+        /** The reflective method of the interface. */
+        private final Method method;
+
+        /** The method name. */
+        final String name;
+
+        /** The parameter types, shared by every request for the method and never modified. */
+        final Class<?>[] parameterTypes;
+
+        /** The signature followed by the return type, which both ends of a connection compare. */
+        final String signature;
+
+        /** Whether the method declares <code>RemoteObjectException</code>. */
+        private final boolean declaresRemoteObjectException;
+
+        /** Whether the method returns nothing. */
+        private final boolean returnsVoid;
+
+        /** Constructors taking a message, by class name, of the declared checked exceptions that have one. */
+        private final Map<String, Constructor<? extends Throwable>> declaredExceptions;
+
+        /**
+         * Describes a method.
+         *
+         * @param id     The id of the method.
+         * @param method The reflective method.
+         */
+        private RemoteMethod(int id, Method method) {
+            this.id = id;
+            this.method = method;
+            this.name = method.getName();
+            this.parameterTypes = method.getParameterTypes();
+            this.signature = signature(method) + method.getReturnType().getName();
+            this.declaresRemoteObjectException = Arrays.stream(method.getExceptionTypes())
+                    .anyMatch(RemoteObjectException.class::isAssignableFrom);
+            this.returnsVoid = method.getReturnType() == void.class;
+
+            Map<String, Constructor<? extends Throwable>> constructors = new HashMap<>();
+            for (Class<?> type : method.getExceptionTypes()) {
+                if (!Exception.class.isAssignableFrom(type) || RuntimeException.class.isAssignableFrom(type)) {
+                    continue;
+                }
+                try {
+                    constructors.put(type.getName(), type.asSubclass(Throwable.class).getConstructor(String.class));
+                } catch (NoSuchMethodException e) {
+                    // Sent with the rest of its state instead.
+                }
+            }
+            this.declaredExceptions = constructors;
+        }
+
+        /**
+         * Checks whether an exception thrown by the method can be sent as its class and message only:
+         * its class is a declared checked exception with a constructor taking a message, and it has no
+         * cause or suppressed exceptions that would be lost.
+         *
+         * @param thrown The exception.
+         * @return True if the class and message are enough to recreate it.
+         */
+        boolean isStackless(Throwable thrown) {
+            Constructor<? extends Throwable> constructor = declaredExceptions.get(thrown.getClass().getName());
+            return constructor != null && constructor.getDeclaringClass() == thrown.getClass()
+                    && thrown.getCause() == null && thrown.getSuppressed().length == 0;
+        }
+
+        /**
+         * Recreates a declared exception sent as its class and message.
+         *
+         * @param className The class of the exception.
+         * @param message   The message of the exception.
+         * @return The exception, or a <code>RemoteObjectException</code> describing it if this end of
+         *         the connection does not declare it.
+         */
+        Throwable newDeclaredException(String className, String message) {
+            Constructor<? extends Throwable> constructor = declaredExceptions.get(className);
+            if (constructor != null) {
+                try {
+                    return constructor.newInstance(message);
+                } catch (ReflectiveOperationException e) {
+                    // Described below instead.
+                }
+            }
+            return new RemoteObjectException("Remote method " + name + " threw " + className + ": " + message);
+        }
+
+        /**
+         * Gets the id of the method, which is the same in every process loading the same interface.
+         *
+         * @return The id.
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Gets the reflective method of the interface.
+         *
+         * @return The method.
+         */
+        public Method getMethod() {
+            return method;
+        }
+
+        /**
+         * Gets the method name.
+         *
+         * @return The name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the parameter types.
+         *
+         * @return A copy of the parameter types.
+         */
+        public Class<?>[] getParameterTypes() {
+            return parameterTypes.clone();
+        }
+
+        /**
+         * Gets the signature of the method: its name, parameter types and return type.
+         *
+         * @return The signature, such as <code>method(boolean;)java.lang.Object</code>.
+         */
+        public String getSignature() {
+            return signature;
+        }
+
+        /**
+         * Checks whether the method declares <code>RemoteObjectException</code>.
+         *
+         * @return True if it does, false otherwise.
+         */
+        public boolean declaresRemoteObjectException() {
+            return declaresRemoteObjectException;
+        }
+
+        /**
+         * Checks whether the method returns nothing.
+         *
+         * @return True if the return type is <code>void</code>.
+         */
+        public boolean returnsVoid() {
+            return returnsVoid;
+        }
+    }
+}
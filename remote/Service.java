@@ -1,9 +1,24 @@
 package remote;
 
 import java.io.IOException;
-import java.lang.reflect.Method;
+import java.io.ObjectInput;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.lang.reflect.InvocationTargetException;
 
@@ -26,16 +41,37 @@ import java.lang.reflect.InvocationTargetException;
     The <code>Service</code>'s response to these exceptions can be customized by deriving
     a class from <code>Service</code> and overriding <code>listen_error</code>
     or <code>service_error</code>.
+    <p>
+    Each client connection starts with a handshake, in which the stub and the
+    <code>Service</code> agree on method ids, codec and compression, and then
+    carries calls until either end closes it. When both ends have the classes
+    generated for the interface, the calls are written field by field with
+    the typed codec rather than as serialized request objects. A stub connecting over a Unix
+    domain socket may offer shared-memory rings in the handshake, which then
+    carry the calls instead of the socket.
+    <p>
+    A running <code>Service</code> can be shut down immediately with <code>stop</code>,
+    or gracefully with <code>drain</code>, which stops accepting connections but lets
+    calls that are already in flight complete before a deadline.
 */
 public class Service<T> {
 
+    /** Log of the service and its threads. */
+    private static final Log LOG = Log.get(Service.class);
+
     /** The class of the interface that defines the methods available for remote invocation. */
     private final Class<T> interfaceClass;
 
+    /** The cached descriptor of the interface, used to find the method each request asks for. */
+    private final RemoteInterfaceDescriptor descriptor;
+
     /** The instantiated service object on which the remote methods will be invoked. */
     private final T serviceObject;
 
-    /** The port number on which the server will listen for incoming connection requests. */
+    /** Port number given to listen only on a Unix domain socket. */
+    public static final int NO_PORT = -1;
+
+    /** The port number on which the server will listen for incoming connection requests, or <code>NO_PORT</code>. */
     private final int port;
 
     /** Flag indicating whether simulated network loss should occur. */
@@ -44,15 +80,51 @@ public class Service<T> {
     /** Flag indicating whether simulated network delay should occur. */
     private final boolean delayed;
 
+    /** Socket and stream options of the listening socket and the connections. */
+    private final TransportConfig config;
+
     /** AtomicBoolean flag to safely check and manage the service's running state across threads. */
     private AtomicBoolean isServiceRunning = new AtomicBoolean(false);;
 
+    /** Flag indicating whether calls are executed one at a time while holding the service object's lock. */
+    private volatile boolean serializeCalls = true;
+
+    /** How the stack traces of exceptions thrown by remote methods are sent. */
+    private volatile ExceptionEncoding exceptionEncoding = ExceptionEncoding.TRIMMED;
+
+    /** Flag indicating whether declared checked exceptions are sent as only their class and message. */
+    private volatile boolean stacklessDeclaredExceptions = false;
+
+    /** Flag indicating whether stubs in this virtual machine call the service object directly. */
+    private volatile boolean localCalls = true;
+
+    /** Lock guarding <code>localCallsInFlight</code>, notified when a local call ends. */
+    private final Object localCallLock = new Object();
+
+    /** Number of calls from stubs in this virtual machine currently running, guarded by <code>localCallLock</code>. */
+    private int localCallsInFlight;
+
+    /** Keys under which the running service is registered in <code>LocalServices</code>. */
+    private final List<String> localKeys = new ArrayList<>();
+
+    /** Service threads that are currently handling a client connection. */
+    private final Set<ServiceThread> activeThreads = ConcurrentHashMap.newKeySet();
+
     /** The server socket that listens for incoming connections. */
     private ServerSocket serverSocket;
 
     /** The thread that listens for incoming connection requests. */
     private Thread listenThread;
 
+    /** Path of the Unix domain socket the service also listens on, or null. */
+    private volatile Path unixSocketPath;
+
+    /** The channel that listens for connections on the Unix domain socket. */
+    private ServerSocketChannel unixChannel;
+
+    /** The thread that listens for connection requests on the Unix domain socket. */
+    private Thread unixListenThread;
+
     /** The first constructor creates a <code>Service</code> that is bound to
         a given remote interface, instantiated object, and server port number.
         This constructor is used when no loss or delay is desired for the
@@ -91,52 +163,85 @@ public class Service<T> {
                                      <code>svc</code> is <code>null</code>.
      */
     public Service(Class<T> c, T svc, int port, boolean lossy, boolean delayed) {
-        if (c == null || svc == null) {
+        this(c, svc, port, lossy, delayed, TransportConfig.DEFAULT);
+    }
+
+    /** Creates a <code>Service</code> similar to the first constructor, whose
+        listening socket and connections use the options of a transport
+        configuration.
+        @param c      A representation of the class of the interface that the
+                      Service must handle method call requests for.
+        @param svc    An instantiated object that implements the interface
+                      indicated by <code>c</code>.
+        @param config The socket and stream options, such as
+                      <code>TransportConfig.LOW_LATENCY</code>.
+        @throws Error If <code>c</code> does not represent a remote interface.
+        @throws NullPointerException If any of <code>c</code>, <code>svc</code>
+                                     or <code>config</code> is <code>null</code>.
+     */
+    public Service(Class<T> c, T svc, int port, TransportConfig config) {
+        this(c, svc, port, false, false, config);
+    }
+
+    /** Creates a <code>Service</code> that listens only on a Unix domain
+        socket, for clients on the same host, which connect to it with the
+        address <code>unix:</code> followed by the path.
+        @param c      A representation of the class of the interface that the
+                      Service must handle method call requests for.
+        @param svc    An instantiated object that implements the interface
+                      indicated by <code>c</code>.
+        @param socketPath The path of the socket file.
+        @param config The buffer and stream options; the TCP options do not
+                      apply to Unix domain sockets.
+        @throws Error If <code>c</code> does not represent a remote interface.
+        @throws NullPointerException If any argument is <code>null</code>.
+     */
+    public Service(Class<T> c, T svc, Path socketPath, TransportConfig config) {
+        this(c, svc, NO_PORT, false, false, config);
+        if (socketPath == null) {
             throw new NullPointerException("Arguments cannot be null.");
         }
+        this.unixSocketPath = socketPath;
+    }
 
-        if (!isRemoteInterface(c)) {
+    /** Creates a <code>Service</code> with simulated loss and delay, like the
+        second constructor, whose listening socket and connections use the
+        options of a transport configuration.
+        @param c      A representation of the class of the interface that the
+                      Service must handle method call requests for.
+        @param svc    An instantiated object that implements the interface
+                      indicated by <code>c</code>.
+        @param port   The TCP port to listen on, or <code>NO_PORT</code> to
+                      listen only on the Unix domain socket set with
+                      <code>setUnixSocketPath</code>.
+        @param lossy  A flag that indicates whether or not Objects can be lost
+                      between sender and receiver, resulting in timeout.
+        @param delayed A flag that indicates whether propagation delay is incurred
+                      when sending an Object from sender to receiver.
+        @param config The socket and stream options.
+        @throws Error If <code>c</code> does not represent a remote interface.
+        @throws NullPointerException If any of <code>c</code>, <code>svc</code>
+                                     or <code>config</code> is <code>null</code>.
+     */
+    public Service(Class<T> c, T svc, int port, boolean lossy, boolean delayed, TransportConfig config) {
+        if (c == null || svc == null || config == null) {
+            throw new NullPointerException("Arguments cannot be null.");
+        }
+
+        RemoteInterfaceDescriptor descriptor = RemoteInterfaceDescriptor.of(c);
+        if (!descriptor.isRemote()) {
             throw new Error("Class does not represent a remote interface.");
         }
 
         this.interfaceClass = c;
+        this.descriptor = descriptor;
         this.serviceObject = svc;
         this.port = port;
         this.lossy = lossy;
         this.delayed = delayed;
+        this.config = config;
     }
 
-    /**
-     * Check if the provided interface is a remote interface.
-     *
-     * @param c The interface class to check.
-     * @return True if the interface is considered remote, false otherwise.
-     */
-    private boolean isRemoteInterface(Class<T> c) {
-        // Check if all methods declare RemoteObjectException
-        for (Method method : c.getMethods()) {
-            if (!declaresRemoteObjectException(method)) {
-                return false;
-            }
-        }
-        return true;
-    }
-
-    /**
-     * Check if a method declares RemoteObjectException.
-     *
-     * @param method The method to check.
-     * @return True if the method declares RemoteObjectException, false otherwise.
-     */
-    private boolean declaresRemoteObjectException(Method method) {
-        for (Class<?> exceptionType : method.getExceptionTypes()) {
-            if (RemoteObjectException.class.isAssignableFrom(exceptionType)) {
-                return true;
-            }
-        }
-        return false;
-    }
-    
     /** When the listening thread exits, it should call <code>stopped</code>.
         <p>
         The parameter passed from the listening thread allows the <code>Service</code>
@@ -155,6 +260,23 @@ public class Service<T> {
     protected void stopped(Throwable cause) {
     }
 
+    /** When a call to <code>drain</code> finishes, it calls <code>drained</code>
+        after <code>stopped</code>.
+        <p>
+        The counts cover the calls that were in flight when the drain started.
+        Abandoned calls had their connections closed at the deadline, so their
+        clients observe a connection failure and may retry against another
+        <code>Service</code>.
+        <p>
+        The default implementation does nothing.
+        @param completed The number of in-flight calls that completed before
+                         the deadline.
+        @param abandoned The number of in-flight calls that were still running
+                         at the deadline.
+     */
+    protected void drained(int completed, int abandoned) {
+    }
+
     /** When an exception occurs in the listening thread, it also calls
         <code>listen_error</code>.
         <p>
@@ -181,12 +303,84 @@ public class Service<T> {
     protected void service_error(RemoteObjectException exception) {
     }
 
+    /** Sets whether calls are serialized on the service object.
+        <p>
+        By default every call runs while holding the lock of the service object,
+        so service objects need not be thread-safe. Service objects that are safe
+        for concurrent use can disable this to let calls from different
+        connections run in parallel.
+        @param serializeCalls <code>true</code> to run one call at a time,
+                              <code>false</code> to run calls concurrently.
+     */
+    public void setSerializeCalls(boolean serializeCalls) {
+        this.serializeCalls = serializeCalls;
+    }
+
+    /** Sets how the stack traces of exceptions thrown by remote methods are sent.
+        <p>
+        By default the frames below the remote method, which only show how the
+        <code>Service</code> called it, are trimmed. The original stack traces
+        are put back once the response is sent; see <code>ExceptionEncoding</code>.
+        @param encoding The encoding.
+        @throws NullPointerException If <code>encoding</code> is <code>null</code>.
+     */
+    public void setExceptionEncoding(ExceptionEncoding encoding) {
+        if (encoding == null) {
+            throw new NullPointerException("Encoding cannot be null.");
+        }
+        this.exceptionEncoding = encoding;
+    }
+
+    /** Sets whether declared checked exceptions are sent as only their class
+        and message.
+        <p>
+        Expected errors, such as a missing record, are often declared checked
+        exceptions thrown at a high rate. When this is enabled, an exception
+        whose class is declared by the remote method, has a public constructor
+        taking a message, and has no cause or suppressed exceptions is sent
+        without being serialized. The stub recreates it with that constructor,
+        so it carries the stack trace of the caller rather than the service, and
+        any other state of the exception is lost. It is disabled by default.
+        @param stackless <code>true</code> to send such exceptions as their class
+                         and message, <code>false</code> to send them whole.
+     */
+    public void setStacklessDeclaredExceptions(boolean stackless) {
+        this.stacklessDeclaredExceptions = stackless;
+    }
+
+    /** Makes the service also listen on a Unix domain socket, from the next
+        <code>start</code>. Clients on the same host connect to it with the
+        address <code>unix:</code> followed by the path, and skip the TCP stack.
+        A socket file left at the path by a service that did not stop is
+        replaced, but <code>start</code> fails if another service listens on the
+        path or the path is not a socket file. The file is deleted when the
+        service stops.
+        @param path The path of the socket file, or <code>null</code> to listen
+                    only on the TCP port.
+     */
+    public void setUnixSocketPath(Path path) {
+        this.unixSocketPath = path;
+    }
+
+    /** Sets whether stubs in the same virtual machine call the service object
+        directly instead of connecting to the service. Such calls skip sockets
+        and serialization, except for deep copies of the arguments and results
+        that are not immutable, which keep the pass-by-value semantics of
+        remote calls. Stubs with simulated loss or delay always connect.
+        @param local True (the default) to allow direct calls, false to make
+                     every stub connect, for instance to measure the transport.
+     */
+    public void setLocalCalls(boolean local) {
+        this.localCalls = local;
+    }
+
     /** The Service is started using <code>start</code>.
         <p>
         A thread is created to listen for connection requests on the port
         specified when the Service was constructed.  The network address
         can be learned using suitable Socket APIs.  After creating the listening
-        thread, this method should return immediately.
+        thread, this method should return immediately.  If a Unix domain socket
+        path is set, a second thread listens on it.
         <p>
         The <code>synchronized</code> keyword may need to be added, depending
         on the implementation.
@@ -195,15 +389,39 @@ public class Service<T> {
                 has already been started and has not since stopped.
      */
     public void start() throws RemoteObjectException {
-        if (listenThread != null && listenThread.isAlive()) {
+        if ((listenThread != null && listenThread.isAlive())
+                || (unixListenThread != null && unixListenThread.isAlive())) {
             throw new RemoteObjectException("Service is already running.");
         }
+        Path path = unixSocketPath;
+        if (port == NO_PORT && path == null) {
+            throw new RemoteObjectException("Service has neither a port nor a Unix domain socket path.");
+        }
 
         try {
-            serverSocket = new ServerSocket(port);
+            if (port != NO_PORT) {
+                serverSocket = openServerSocket();
+            }
+            if (path != null) {
+                try {
+                    unixChannel = openUnixChannel(path);
+                } catch (IOException e) {
+                    if (serverSocket != null) {
+                        serverSocket.close();
+                    }
+                    throw e;
+                }
+            }
             isServiceRunning.set(true);
-            listenThread = new Thread(this::listenForConnections);
-            listenThread.start();
+            if (serverSocket != null) {
+                listenThread = new Thread(this::listenForConnections);
+                listenThread.start();
+            }
+            if (unixChannel != null) {
+                unixListenThread = new Thread(this::listenForUnixConnections);
+                unixListenThread.start();
+            }
+            registerLocal(path);
         } catch (IOException e) {
             if (!listen_error(e)) {
                 throw new RemoteObjectException("Error starting the service.", e);
@@ -211,6 +429,102 @@ public class Service<T> {
         }
     }
 
+    /**
+     * Registers the addresses of the service, so that stubs in this virtual machine find it.
+     *
+     * @param path The path of the Unix domain socket, or null.
+     */
+    private synchronized void registerLocal(Path path) {
+        if (serverSocket != null) {
+            localKeys.add(LocalServices.tcpKey(serverSocket.getLocalPort()));
+        }
+        if (path != null) {
+            localKeys.add(LocalServices.unixKey(path));
+        }
+        for (String key : localKeys) {
+            LocalServices.register(key, this);
+        }
+    }
+
+    /**
+     * Removes the addresses of the service from the registry of local services.
+     */
+    private synchronized void unregisterLocal() {
+        for (String key : localKeys) {
+            LocalServices.unregister(key, this);
+        }
+        localKeys.clear();
+    }
+
+    /**
+     * Opens and binds the TCP listening socket with the options of the transport configuration.
+     *
+     * @return The bound socket.
+     * @throws IOException If the socket cannot be bound.
+     */
+    private ServerSocket openServerSocket() throws IOException {
+        ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(config.isReuseAddress());
+        if (config.getReceiveBufferSize() > 0) {
+            // Accepted sockets inherit it, before the TCP window is negotiated.
+            socket.setReceiveBufferSize(config.getReceiveBufferSize());
+        }
+        try {
+            socket.bind(new InetSocketAddress(port), config.getBacklog());
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    /**
+     * Opens and binds the Unix domain listening channel, replacing a stale socket file left at the path.
+     *
+     * @param path The path of the socket file.
+     * @return The bound channel, in blocking mode.
+     * @throws IOException If the channel cannot be bound, or the path is in use.
+     */
+    private ServerSocketChannel openUnixChannel(Path path) throws IOException {
+        removeStaleSocket(path);
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.bind(UnixDomainSocketAddress.of(path), config.getBacklog());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    /**
+     * Deletes a socket file that no service listens on any more. A socket file that accepts
+     * connections, or any other kind of file, is left alone.
+     *
+     * @param path The path of the socket file.
+     * @throws IOException If the path is in use by a live service or holds another kind of file.
+     */
+    private static void removeStaleSocket(Path path) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            return; // Nothing at the path.
+        }
+        if (!attributes.isOther()) {
+            throw new IOException(path + " exists and is not a socket file.");
+        }
+        SocketChannel probe;
+        try {
+            probe = SocketChannel.open(UnixDomainSocketAddress.of(path));
+        } catch (ConnectException e) {
+            Files.deleteIfExists(path);
+            return;
+        }
+        probe.close();
+        throw new IOException("Another service listens on " + path + ".");
+    }
+
     /**
      * Listens for connection requests and handles them by creating new service threads.
      * <p>
@@ -228,10 +542,11 @@ public class Service<T> {
                 Socket clientSocket = serverSocket.accept();
 
                 // Use LeakySocket for communication
-                LeakySocket leakySocket = new LeakySocket(clientSocket, lossy, delayed);
+                LeakySocket leakySocket = new LeakySocket(clientSocket, lossy, delayed, config);
 
                 // Handle the incoming connection and create service threads
                 ServiceThread serviceThread = new ServiceThread(interfaceClass, serviceObject, leakySocket);
+                activeThreads.add(serviceThread);
                 serviceThread.start();
             } catch (IOException e) {
                 if (!serverSocket.isClosed()) {
@@ -242,14 +557,48 @@ public class Service<T> {
         }
     }
 
+    /**
+     * Listens for connection requests on the Unix domain socket, like
+     * <code>listenForConnections</code> does on the TCP port.
+     */
+    private void listenForUnixConnections() {
+        while (isServiceRunning.get() && unixChannel.isOpen()) {
+            try {
+                SocketChannel clientChannel = unixChannel.accept();
+                LeakySocket leakySocket = new LeakySocket(clientChannel, lossy, delayed, config);
+                ServiceThread serviceThread = new ServiceThread(interfaceClass, serviceObject, leakySocket);
+                activeThreads.add(serviceThread);
+                serviceThread.start();
+            } catch (IOException e) {
+                if (unixChannel.isOpen()) {
+                    listen_error(e);
+                }
+                break;
+            }
+        }
+    }
+
     /**
      * Constructs a new service thread to handle individual client connections.
+     * <p>
+     * A connection starts with a handshake and then carries any number of calls, one at a time.
+     * Between calls the thread is idle, and <code>stop</code> or <code>drain</code> may close its
+     * connection; once a call has started, it runs to completion or is abandoned.
      */
     private class ServiceThread extends Thread {
         private final Class<T> interfaceClass;
         private final T serviceObject;
         private final LeakySocket leakySocket;
 
+        /** Flag set while the thread executes a call, guarded by the thread's lock. */
+        private boolean inCall;
+
+        /** Flag set once the connection has been closed by the service, guarded by the thread's lock. */
+        private boolean closed;
+
+        /** Whether the handshake chose the typed codec for the connection. */
+        private boolean typed;
+
         /**
          * Constructs a new service thread.
          *
@@ -265,106 +614,596 @@ public class Service<T> {
 
         /**
          * The main execution method for the service thread.
-         * Waits for method invocation requests from the client, invokes the requested method on the service object,
-         * and sends back the result or any exceptions that occurred.
+         * Performs the handshake, then waits for method invocation requests from the client, invokes
+         * each requested method on the service object, and sends back the result or any exceptions that
+         * occurred, until the client closes the connection or the service stops. A response that
+         * cannot be sent closes the connection, so that the client retries instead of waiting.
          */
         @Override
         public void run() {
             try {
-                if (!isServiceRunning.get()) {
-                    System.out.println("Service has stopped. No longer accepting requests.");
+                if (!handshake()) {
                     return;
                 }
 
-                Object requestObject = leakySocket.recvObject();
-                if (!(requestObject instanceof MethodInvocationRequest)) {
-                    // Handle invalid request
-                    return;
-                }
-
-                MethodInvocationRequest request = (MethodInvocationRequest) requestObject;
-                Method method;
+                while (true) {
+                    TypedCall<Object> typedCall = null;
+                    MethodInvocationRequest request = null;
+                    if (typed) {
+                        typedCall = receiveCall();
+                        if (typedCall == null) {
+                            return;
+                        }
+                    } else {
+                        Object requestObject = leakySocket.recvObject();
+                        if (!(requestObject instanceof MethodInvocationRequest)) {
+                            // Handle invalid request
+                            return;
+                        }
+                        request = (MethodInvocationRequest) requestObject;
+                    }
+                    if (!beginCall()) {
+                        LOG.debug("Service has stopped. No longer accepting requests.");
+                        return;
+                    }
 
-                try {
-                    method = serviceObject.getClass().getMethod(request.getMethodName(), request.getParamTypes());
-                } catch (NoSuchMethodException nsme) {
-                    System.out.println("[ServiceThread] Method " + request.getMethodName() + " not found, sending exception back to client.");
-                    MethodInvocationResponse response = new MethodInvocationResponse(null, new RemoteObjectException("Method " + request.getMethodName() + " not found."));
-                    leakySocket.sendObject(response);
-                    return;
+                    boolean sent;
+                    try {
+                        sent = typedCall != null ? respond(typedCall) : respond(request);
+                    } finally {
+                        endCall();
+                    }
+                    if (!sent || !isOpen()) {
+                        return;
+                    }
                 }
+            } catch (IOException e) {
+                // The client closed the connection, or the service closed it while stopping.
+            } catch (Exception e) {
+                LOG.error("Error on connection", e);
+            } finally {
+                leakySocket.close();
+                activeThreads.remove(this);
+            }
+        }
 
-                if (!isServiceRunning.get()) {
-                    throw new IllegalStateException("Service has been stopped.");
+        /**
+         * Answers the handshake that opens the connection.
+         *
+         * @return True if the connection was accepted, false if it was refused or the answer was lost.
+         * @throws IOException If the connection fails.
+         */
+        private boolean handshake() throws IOException {
+            Object requestObject = leakySocket.recvObject();
+            if (!(requestObject instanceof HandshakeRequest)) {
+                return false;
+            }
+            HandshakeRequest request = (HandshakeRequest) requestObject;
+            SharedMemoryRings rings = openRings(request);
+            boolean accepted = false;
+            try {
+                HandshakeResponse response = negotiate(request, rings != null);
+                if (!leakySocket.sendObject(response) || response.getRejection() != null) {
+                    return false;
                 }
-
-                Object result = null;
-                Throwable exception = null;
-                synchronized (serviceObject) {
-                    try {
-                        result = method.invoke(serviceObject, request.getArgs());
-                    } catch (InvocationTargetException e) {
-                        exception = e.getTargetException();
-                    } catch (Exception e) {
-                        exception = e;
-                    }
+                typed = HandshakeRequest.CODEC_TYPED.equals(response.getCodec());
+                if (rings != null) {
+                    leakySocket.useSharedMemory(rings, true, config.getWaitStrategy());
+                } else if (HandshakeRequest.COMPRESSION_DEFLATE.equals(response.getCompression())) {
+                    leakySocket.compress();
+                }
+                accepted = true;
+                return true;
+            } finally {
+                if (rings != null && !accepted) {
+                    rings.close();
                 }
+            }
+        }
 
-                MethodInvocationResponse response = new MethodInvocationResponse(result, exception);
-                leakySocket.sendObject(response);
+        /**
+         * Maps the shared-memory rings offered in a handshake, if the stub is on this host.
+         *
+         * @param request The handshake request.
+         * @return The rings, or null if none were offered or they cannot be mapped.
+         */
+        private SharedMemoryRings openRings(HandshakeRequest request) {
+            if (request.getSharedMemory() == null || !leakySocket.isUnixDomain()) {
+                return null;
+            }
+            try {
+                return SharedMemoryRings.open(Path.of(request.getSharedMemory()));
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Unable to map shared memory, using the socket instead: {}", e.toString());
+                return null;
+            }
+        }
 
-            } catch (Exception e) {
-                try {
-                    System.out.println("[ServiceThread] Error during method invocation: " + e.getMessage());
-                    Throwable actualException = e instanceof InvocationTargetException ? e.getCause() : e;
-                    MethodInvocationResponse response = new MethodInvocationResponse(null, actualException);
-                    leakySocket.sendObject(response);
-                } catch (IOException ioException) {
-                    ioException.printStackTrace();
-                }
+        /**
+         * Receives a request written with the typed codec: the method id, followed by the arguments
+         * of the method, which the skeleton reads.
+         *
+         * @return The call, or null if the method id is unknown, so that the arguments cannot be read.
+         * @throws IOException If the connection fails.
+         */
+        private TypedCall<Object> receiveCall() throws IOException {
+            ObjectInput in = leakySocket.input();
+            int methodId = in.readInt();
+            TypedCall<Object> call = methodId < 0 || methodId >= descriptor.getMethods().size()
+                    ? null : descriptor.getSkeleton().newCall(descriptor.getMethods().get(methodId));
+            if (call == null) {
+                LOG.warn("Method {} not found, closing the connection.", methodId);
+                return null;
+            }
+            try {
+                call.readArguments(in);
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unable to receive arguments: " + e);
+            }
+            return call;
+        }
+
+        /**
+         * Executes a call received with the typed codec and sends its outcome: a flag telling whether
+         * the method returned, followed by the result written by the call, or by a
+         * <code>MethodInvocationResponse</code> carrying the exception.
+         *
+         * @param call The call.
+         * @return True if the response was sent, false if it was lost.
+         * @throws IOException If the connection fails.
+         */
+        private boolean respond(TypedCall<Object> call) throws IOException {
+            MethodInvocationResponse failure = dispatch(call);
+            if (failure == null) {
+                return leakySocket.sendMessage(out -> {
+                    out.writeBoolean(true);
+                    call.writeResult(out);
+                });
+            }
+            try {
+                return leakySocket.sendMessage(out -> {
+                    out.writeBoolean(false);
+                    out.writeObject(failure);
+                });
             } finally {
-                leakySocket.close();
+                failure.restoreStackTraces();
+            }
+        }
+
+        /**
+         * Executes a call received with the Java codec and sends the response.
+         *
+         * @param request The request.
+         * @return True if the response was sent, false if it was lost.
+         * @throws IOException If the connection fails.
+         */
+        private boolean respond(MethodInvocationRequest request) throws IOException {
+            MethodInvocationResponse response = call(request);
+            try {
+                return leakySocket.sendObject(response);
+            } finally {
+                response.restoreStackTraces();
+            }
+        }
+
+        /**
+         * Executes a call received on the connection.
+         *
+         * @param request The request.
+         * @return The response to send.
+         */
+        private MethodInvocationResponse call(MethodInvocationRequest request) {
+            int methodId = request.getMethodId();
+            if (methodId < 0 || methodId >= descriptor.getMethods().size()) {
+                LOG.warn("Method {} not found, sending exception back to client.", methodId);
+                return MethodInvocationResponse.encoded(
+                        new RemoteObjectException("Method " + methodId + " not found."), exceptionEncoding);
             }
+            return dispatch(descriptor.getMethods().get(methodId), request.getArgs());
+        }
+
+        /**
+         * Marks the start of a call, unless the service stopped or closed the connection.
+         *
+         * @return True if the call may run, false if the connection must be closed instead.
+         */
+        private synchronized boolean beginCall() {
+            if (closed || !isServiceRunning.get()) {
+                return false;
+            }
+            inCall = true;
+            return true;
+        }
+
+        /**
+         * Marks the end of a call, once its response has been sent.
+         */
+        private synchronized void endCall() {
+            inCall = false;
+        }
+
+        /**
+         * Checks whether the connection may carry further calls.
+         *
+         * @return True if the service is running and has not closed the connection.
+         */
+        private synchronized boolean isOpen() {
+            return !closed && isServiceRunning.get();
+        }
+
+        /**
+         * Closes the connection if no call is running on it.
+         *
+         * @return True if the connection was idle and is now closed, false if a call is running.
+         */
+        synchronized boolean closeIfIdle() {
+            if (inCall) {
+                return false;
+            }
+            closed = true;
+            leakySocket.close();
+            return true;
+        }
+
+        /**
+         * Abandons the call handled by this thread by closing its connection.
+         * The client sees a connection failure instead of waiting for a response.
+         */
+        void abandon() {
+            leakySocket.close();
         }
     }
 
+    /**
+     * Executes a call, holding the lock of the service object if calls are serialized.
+     *
+     * @param method The method to invoke.
+     * @param args The arguments to pass to the method.
+     * @return A response carrying either the result or the exception thrown by the method.
+     */
+    private MethodInvocationResponse dispatch(RemoteInterfaceDescriptor.RemoteMethod method, Object[] args) {
+        if (serializeCalls) {
+            synchronized (serviceObject) {
+                return invoke(method, args);
+            }
+        }
+        return invoke(method, args);
+    }
+
+    /**
+     * Invokes a method on the service object and wraps the outcome in a response.
+     * The skeleton generated for the interface calls the method directly when there is one;
+     * otherwise the method is invoked through reflection. An exception is encoded as configured
+     * with <code>setExceptionEncoding</code> and <code>setStacklessDeclaredExceptions</code>.
+     *
+     * @param method The method to invoke.
+     * @param args The arguments to pass to the method.
+     * @return A response carrying either the result or the exception thrown by the method.
+     */
+    private MethodInvocationResponse invoke(RemoteInterfaceDescriptor.RemoteMethod method, Object[] args) {
+        Object result = null;
+        Throwable exception = null;
+        Skeleton<Object> skeleton = descriptor.getSkeleton();
+        try {
+            if (skeleton != null) {
+                result = skeleton.invoke(serviceObject, method, args);
+            } else {
+                result = method.getMethod().invoke(serviceObject, args);
+            }
+        } catch (InvocationTargetException e) {
+            exception = e.getTargetException();
+        } catch (Throwable e) {
+            exception = e;
+        }
+        if (exception == null) {
+            return new MethodInvocationResponse(result, null);
+        }
+        return failure(method, exception);
+    }
+
+    /**
+     * Executes a typed call, holding the lock of the service object if calls are serialized.
+     *
+     * @param call The call, which keeps the result.
+     * @return Null if the method returned, or a response carrying the exception it threw.
+     */
+    private MethodInvocationResponse dispatch(TypedCall<Object> call) {
+        if (serializeCalls) {
+            synchronized (serviceObject) {
+                return invoke(call);
+            }
+        }
+        return invoke(call);
+    }
+
+    /**
+     * Calls the method of a typed call on the service object through the generated skeleton.
+     *
+     * @param call The call, which keeps the result.
+     * @return Null if the method returned, or a response carrying the exception it threw.
+     */
+    private MethodInvocationResponse invoke(TypedCall<Object> call) {
+        try {
+            call.call(serviceObject);
+            return null;
+        } catch (Throwable e) {
+            return failure(call.getMethod(), e);
+        }
+    }
+
+    /**
+     * Wraps an exception thrown by a method in a response, encoded as configured with
+     * <code>setExceptionEncoding</code> and <code>setStacklessDeclaredExceptions</code>.
+     *
+     * @param method The method.
+     * @param exception The exception.
+     * @return The response.
+     */
+    private MethodInvocationResponse failure(RemoteInterfaceDescriptor.RemoteMethod method, Throwable exception) {
+        if (stacklessDeclaredExceptions && method.isStackless(exception)) {
+            return MethodInvocationResponse.stackless(exception.getClass().getName(), exception.getMessage());
+        }
+        return MethodInvocationResponse.encoded(exception, exceptionEncoding);
+    }
+
+    /**
+     * Executes a call from a stub in this virtual machine, without a connection. The arguments are
+     * copied before the call and the result or exception after it, as they would be serialized on a
+     * connection, and calls are serialized as configured. A call running when the service is drained
+     * is waited for like one on a connection, but cannot be abandoned.
+     *
+     * @param stubDescriptor The descriptor of the stub's interface.
+     * @param method The method to invoke.
+     * @param args The arguments of the call.
+     * @return The response, or null if the stub must connect instead: the service is not running, does
+     *         not accept local calls or exports another interface.
+     */
+    MethodInvocationResponse callLocal(RemoteInterfaceDescriptor stubDescriptor,
+                                       RemoteInterfaceDescriptor.RemoteMethod method, Object[] args) {
+        if (stubDescriptor != descriptor || !localCalls) {
+            return null;
+        }
+        synchronized (localCallLock) {
+            if (!isServiceRunning.get()) {
+                return null;
+            }
+            localCallsInFlight++;
+        }
+        try {
+            MethodInvocationResponse response;
+            try {
+                response = dispatch(method, LocalCopy.copyArgs(args));
+            } catch (IOException e) {
+                return new MethodInvocationResponse(null,
+                        new RemoteObjectException("Unable to pass the arguments of " + method.name + ".", e));
+            }
+            if (response.getExceptionClass() != null) {
+                return response;
+            }
+            try {
+                return new MethodInvocationResponse(LocalCopy.copy(response.getResult()),
+                        (Throwable) LocalCopy.copy(response.getException()));
+            } catch (IOException e) {
+                return new MethodInvocationResponse(null,
+                        new RemoteObjectException("Unable to return the outcome of " + method.name + ".", e));
+            } finally {
+                response.restoreStackTraces();
+            }
+        } finally {
+            synchronized (localCallLock) {
+                localCallsInFlight--;
+                localCallLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Answers a handshake: chooses the codec and compression, and matches the methods of the stub's
+     * interface with the service's by signature. The typed codec is chosen when the stub offers it and
+     * the service has a generated skeleton. Shared-memory connections are not compressed. The
+     * interfaces are compatible if their fingerprints are equal, in which case the method ids are the
+     * same, or if the service has at least one of the stub's methods; calls to the others fail at the
+     * stub.
+     *
+     * @param request The handshake request.
+     * @param sharedMemory True if the service mapped the shared-memory rings the stub offered.
+     * @return The response, which refuses the connection if no codec is shared or the interface is incompatible.
+     */
+    private HandshakeResponse negotiate(HandshakeRequest request, boolean sharedMemory) {
+        String codec = descriptor.getSkeleton() != null
+                ? choose(request.getCodecs(), HandshakeRequest.CODEC_TYPED, HandshakeRequest.CODEC_JAVA)
+                : choose(request.getCodecs(), HandshakeRequest.CODEC_JAVA);
+        String compression = sharedMemory
+                ? choose(request.getCompressions(), HandshakeRequest.COMPRESSION_NONE)
+                : choose(request.getCompressions(), HandshakeRequest.COMPRESSION_DEFLATE, HandshakeRequest.COMPRESSION_NONE);
+        if (codec == null || compression == null) {
+            return new HandshakeResponse(new RemoteObjectException("No supported codec and compression."));
+        }
+        if (request.getFingerprint() == descriptor.getFingerprint()) {
+            return new HandshakeResponse(null, codec, compression, sharedMemory);
+        }
+
+        String[] signatures = request.getSignatures();
+        int[] methodIds = new int[signatures.length];
+        boolean compatible = false;
+        for (int i = 0; i < signatures.length; i++) {
+            RemoteInterfaceDescriptor.RemoteMethod method = descriptor.findBySignature(signatures[i]);
+            methodIds[i] = method == null ? -1 : method.getId();
+            compatible |= method != null;
+        }
+        if (!compatible) {
+            LOG.warn("Refusing connection from a stub of an interface incompatible with {}.", interfaceClass.getName());
+            return new HandshakeResponse(new RemoteObjectException(
+                    "Interface is incompatible with " + interfaceClass.getName() + "."));
+        }
+        return new HandshakeResponse(methodIds, codec, compression, sharedMemory);
+    }
+
+    /**
+     * Chooses the first option offered by the stub that the service supports.
+     *
+     * @param offered The options offered, preferred first.
+     * @param supported The options the service supports.
+     * @return The chosen option, or null if none is supported.
+     */
+    private static String choose(String[] offered, String... supported) {
+        for (String option : offered) {
+            for (String candidate : supported) {
+                if (candidate.equals(option)) {
+                    return option;
+                }
+            }
+        }
+        return null;
+    }
+
 
 
     /** The Service is stopped using <code>stop</code>, if it is running.
         <p>
         This terminates the listening thread and calls other methods as
-        needed.
+        needed. Idle client connections are closed; a call that is running
+        completes, and its connection is closed once the response is sent.
         <p>
         The <code>synchronized</code> keyword may be needed, depending
         on the implementation.
      */
     public void stop() {
         isServiceRunning.set(false);
+        closeListener();
+        for (ServiceThread serviceThread : activeThreads) {
+            serviceThread.closeIfIdle();
+        }
+        stopped(null);
+    }
+
+    /** The Service is drained using <code>drain</code>, if it is running.
+        <p>
+        Draining stops accepting new connections right away, like <code>stop</code>,
+        but lets the calls that are already in flight run to completion until the
+        deadline passes. Idle client connections are closed right away, and
+        connections of calls still running at the deadline are
+        closed, so their clients fail over instead of hanging. Clients that try to
+        connect during the drain are refused and retry elsewhere, which keeps
+        rolling restarts from surfacing as dropped requests.
+        <p>
+        This method blocks until every in-flight call has completed or the
+        deadline has passed. It then calls <code>stopped</code> followed by
+        <code>drained</code> with the number of completed and abandoned calls.
+        @param timeout The maximum time to wait for in-flight calls.
+        @param unit    The unit of <code>timeout</code>.
+     */
+    public void drain(long timeout, TimeUnit unit) {
+        isServiceRunning.set(false);
+        closeListener();
 
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<ServiceThread> inFlight = new ArrayList<>();
+        for (ServiceThread serviceThread : activeThreads) {
+            if (!serviceThread.closeIfIdle()) {
+                inFlight.add(serviceThread);
+            }
+        }
+        int localInFlight;
+        synchronized (localCallLock) {
+            localInFlight = localCallsInFlight;
+        }
+        int completed = 0;
+        int abandoned = 0;
+        for (ServiceThread serviceThread : inFlight) {
+            long remaining = deadline - System.nanoTime();
+            try {
+                if (remaining > 0) {
+                    TimeUnit.NANOSECONDS.timedJoin(serviceThread, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (serviceThread.isAlive()) {
+                serviceThread.abandon();
+                abandoned++;
+            } else {
+                completed++;
+            }
+        }
+        if (localInFlight > 0) {
+            int remaining = awaitLocalCalls(deadline);
+            completed += localInFlight - remaining;
+            abandoned += remaining;
+        }
+
+        stopped(null);
+        drained(completed, abandoned);
+    }
+
+    /**
+     * Waits for the local calls running when the service stopped to complete. Since the service stopped,
+     * no new local call starts.
+     *
+     * @param deadline The value of <code>System.nanoTime</code> after which to stop waiting.
+     * @return The number of local calls still running.
+     */
+    private int awaitLocalCalls(long deadline) {
+        synchronized (localCallLock) {
+            long remaining;
+            while (localCallsInFlight > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(localCallLock, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return localCallsInFlight;
+        }
+    }
+
+    /**
+     * Closes the listening sockets and waits briefly for the listening threads to exit,
+     * so that no further connections are accepted. The Unix domain socket file is deleted.
+     */
+    private void closeListener() {
+        unregisterLocal();
         try {
             // close server socket
             if (serverSocket != null && !serverSocket.isClosed()) {
                 serverSocket.close();
             }
         } catch (IOException e) {
-            System.out.println("Error closing server socket: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error closing server socket", e);
+        }
+
+        if (unixChannel != null && unixChannel.isOpen()) {
+            try {
+                Path path = ((UnixDomainSocketAddress) unixChannel.getLocalAddress()).getPath();
+                unixChannel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                LOG.error("Error closing Unix domain socket", e);
+            }
         }
 
-        // stop listening thread
-        if (listenThread != null && listenThread.isAlive()) {
-            listenThread.interrupt();
+        // stop listening threads
+        joinListener(listenThread);
+        joinListener(unixListenThread);
+    }
+
+    /**
+     * Waits briefly for a listening thread to exit.
+     *
+     * @param thread The thread, or null if it was never started.
+     */
+    private static void joinListener(Thread thread) {
+        if (thread != null && thread.isAlive()) {
+            thread.interrupt();
             try {
-                listenThread.join(1000); // wait for at most 1s
+                thread.join(1000); // wait for at most 1s
             } catch (InterruptedException e) {
-                System.out.println("Interrupted while waiting for listen thread to finish: " + e.getMessage());
+                LOG.warn("Interrupted while waiting for listen thread to finish");
                 Thread.currentThread().interrupt();
             }
         }
-
-        stopped(null);
     }
 
 
 }
-
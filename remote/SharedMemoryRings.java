@@ -0,0 +1,411 @@
+package remote;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pair of single-producer, single-consumer ring buffers in a memory-mapped file, which carry the
+ * messages of one connection between a stub and a service on the same host without system calls.
+ * <p>
+ * The stub creates the file and offers it in the handshake, which travels over a Unix domain socket;
+ * the service maps it, and both ends then switch their object streams to the rings, one for each
+ * direction. The file is deleted once both ends have mapped it.
+ * <p>
+ * The Unix domain socket stays open to wake up a thread that stopped waiting actively: a waiting end
+ * first polls the rings as its <code>WaitStrategy</code> says, then sets its sleeping flag to the
+ * offset of the position it waits for and blocks reading one byte from the socket. An end that moves
+ * a position checks the other end's flag and, if it names that position, clears it and sends the
+ * byte. Busy connections thus make no system calls, and idle ones use no CPU; a closed socket also
+ * tells each end that the other process exited.
+ * <p>
+ * The file starts with a header holding a magic number and the capacity of each ring, followed by
+ * the positions of the rings and the sleeping flags of the ends, each on its own cache line, and by
+ * the data of the two rings. Positions
+ * count the bytes written to or read from a ring since the start. The producer copies bytes into the
+ * ring and then publishes its new position with a release store; the consumer reads that position
+ * with an acquire load before copying the bytes out, and publishes its own position the same way so
+ * that the producer may reuse the space. Positions and flags are written with volatile stores, so that
+ * a producer cannot miss a flag raised just before it published.
+ */
+final class SharedMemoryRings {
+
+    /** Marks a file as rings of this format. */
+    private static final long MAGIC = 0x72656d6f74657231L; // "remoter1"
+
+    /** Smallest capacity of a ring. */
+    static final int MIN_CAPACITY = 4096;
+
+    /** Offsets of the header fields and positions, each on its own cache line. */
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int CLOSED_OFFSET = 64;
+    private static final int STUB_TAIL_OFFSET = 128;
+    private static final int STUB_HEAD_OFFSET = 192;
+    private static final int SERVICE_TAIL_OFFSET = 256;
+    private static final int SERVICE_HEAD_OFFSET = 320;
+    private static final int STUB_SLEEPING_OFFSET = 384;
+    private static final int SERVICE_SLEEPING_OFFSET = 448;
+    private static final int DATA_OFFSET = 512;
+
+    /** Number of spins between checks of the clock while spinning. */
+    private static final int SPINS_PER_CHECK = 256;
+
+    /** Number of spins before sleeping with the <code>PARK</code> strategy. */
+    private static final int PARK_SPINS = 100;
+
+    /** Longest time a <code>SPIN</code> wait spins before sleeping, in nanoseconds. */
+    private static final long SPIN_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /** Atomic access to the longs of the header, in the byte order of this machine. */
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /** The mapped file. */
+    private final ByteBuffer buffer;
+
+    /** The path of the file, until it is deleted. */
+    private final Path path;
+
+    /** The capacity of each ring in bytes, a power of two. */
+    private final int capacity;
+
+    /** The Unix domain socket of the connection, which carries wake-up bytes. */
+    private SocketChannel peer;
+
+    /** Buffer of the wake-up byte read or sent; one thread at a time uses an end of the connection. */
+    private final ByteBuffer wakeUp = ByteBuffer.allocate(1);
+
+    /**
+     * Wraps a mapped file.
+     *
+     * @param buffer   The mapping.
+     * @param path     The path of the file.
+     * @param capacity The capacity of each ring.
+     */
+    private SharedMemoryRings(ByteBuffer buffer, Path path, int capacity) {
+        this.buffer = buffer;
+        this.path = path;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Creates and maps a new file for the stub's end of a connection.
+     *
+     * @param directory The directory of the file, which the service must be able to read and write.
+     * @param capacity  The capacity of each ring in bytes, rounded up to a power of two.
+     * @return The rings.
+     * @throws IOException If the file cannot be created or mapped.
+     */
+    static SharedMemoryRings create(Path directory, int capacity) throws IOException {
+        int size = Integer.highestOneBit(Math.max(capacity, MIN_CAPACITY));
+        if (size < capacity) {
+            size <<= 1;
+        }
+        Path file = Files.createTempFile(directory, "remote-", ".ring");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, DATA_OFFSET + 2L * size);
+            LONGS.set(buffer, CAPACITY_OFFSET, (long) size);
+            LONGS.setRelease(buffer, MAGIC_OFFSET, MAGIC);
+            return new SharedMemoryRings(buffer, file, size);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Maps a file created by a stub, for the service's end of the connection.
+     *
+     * @param file The path offered by the stub.
+     * @return The rings.
+     * @throws IOException If the file cannot be mapped or is not a ring file.
+     */
+    static SharedMemoryRings open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long fileSize = channel.size();
+            if (fileSize < DATA_OFFSET) {
+                throw new IOException("Not a shared-memory ring file: " + file);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            long magic = (long) LONGS.getAcquire(buffer, MAGIC_OFFSET);
+            long capacity = (long) LONGS.get(buffer, CAPACITY_OFFSET);
+            if (magic != MAGIC || capacity < MIN_CAPACITY
+                    || Long.bitCount(capacity) != 1 || fileSize != DATA_OFFSET + 2 * capacity) {
+                throw new IOException("Not a shared-memory ring file: " + file);
+            }
+            return new SharedMemoryRings(buffer, file, (int) capacity);
+        }
+    }
+
+    /**
+     * Gets the path of the file.
+     *
+     * @return The path.
+     */
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * Deletes the file, once both ends have mapped it; the mappings stay valid.
+     */
+    void deleteFile() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // A file left behind only holds the rings of a connection, which no one else maps.
+        }
+    }
+
+    /**
+     * Sets the socket that wakes up the ends of the connection, before opening the streams.
+     *
+     * @param channel The Unix domain socket of the connection, in blocking mode. Nothing else may be
+     *                read from or written to it any more.
+     */
+    void attach(SocketChannel channel) {
+        this.peer = channel;
+    }
+
+    /**
+     * Opens the stream writing this end's ring.
+     *
+     * @param service True for the service's end, false for the stub's.
+     * @param wait    How to wait while the ring is full.
+     * @return The stream.
+     */
+    OutputStream output(boolean service, WaitStrategy wait) {
+        return new RingOutputStream(service ? SERVICE_TAIL_OFFSET : STUB_TAIL_OFFSET,
+                service ? SERVICE_HEAD_OFFSET : STUB_HEAD_OFFSET, service ? DATA_OFFSET + capacity : DATA_OFFSET,
+                service, wait);
+    }
+
+    /**
+     * Opens the stream reading the other end's ring.
+     *
+     * @param service True for the service's end, false for the stub's.
+     * @param wait    How to wait while the ring is empty.
+     * @return The stream.
+     */
+    InputStream input(boolean service, WaitStrategy wait) {
+        return new RingInputStream(service ? STUB_TAIL_OFFSET : SERVICE_TAIL_OFFSET,
+                service ? STUB_HEAD_OFFSET : SERVICE_HEAD_OFFSET, service ? DATA_OFFSET : DATA_OFFSET + capacity,
+                service, wait);
+    }
+
+    /**
+     * Closes the connection for both ends. Threads of either process polling the rings fail with an
+     * exception, and those sleeping do once the socket is closed; the mapping is released once the
+     * streams are no longer referenced.
+     */
+    void close() {
+        LONGS.setVolatile(buffer, CLOSED_OFFSET, 1L);
+    }
+
+    /**
+     * Gets the offset of the sleeping flag of an end.
+     *
+     * @param service True for the service's end, false for the stub's.
+     * @return The offset.
+     */
+    private static int sleepingOffset(boolean service) {
+        return service ? SERVICE_SLEEPING_OFFSET : STUB_SLEEPING_OFFSET;
+    }
+
+    /**
+     * Publishes a new position, and wakes up the other end if it sleeps waiting for it.
+     *
+     * @param offset   The offset of the position.
+     * @param position The position.
+     * @param service  True if this is the service's end, false for the stub's.
+     * @throws IOException If the other end cannot be woken up.
+     */
+    private void publish(int offset, long position, boolean service) throws IOException {
+        LONGS.setVolatile(buffer, offset, position);
+        int sleeping = sleepingOffset(!service);
+        if ((long) LONGS.getVolatile(buffer, sleeping) == offset && LONGS.compareAndSet(buffer, sleeping, (long) offset, 0L)) {
+            wakeUp.clear();
+            peer.write(wakeUp);
+        }
+    }
+
+    /**
+     * Waits until a position written by the other end exceeds a value.
+     *
+     * @param offset  The offset of the position.
+     * @param value   The value to exceed.
+     * @param service True if this is the service's end, false for the stub's.
+     * @param wait    How to wait before sleeping.
+     * @return The position.
+     * @throws IOException If the connection is closed meanwhile.
+     */
+    private long await(int offset, long value, boolean service, WaitStrategy wait) throws IOException {
+        long spinUntil = wait == WaitStrategy.SPIN ? System.nanoTime() + SPIN_NANOS : 0;
+        for (int spins = 1; wait == WaitStrategy.SPIN ? spinUntil != 0 : spins < PARK_SPINS; spins++) {
+            long position = (long) LONGS.getAcquire(buffer, offset);
+            if (position > value) {
+                return position;
+            }
+            if (spins % SPINS_PER_CHECK != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            if ((long) LONGS.getAcquire(buffer, CLOSED_OFFSET) != 0) {
+                throw new EOFException("Shared-memory connection closed.");
+            }
+            if (System.nanoTime() - spinUntil >= 0) {
+                spinUntil = 0;
+            }
+            // Let the other end run if it shares this core.
+            Thread.yield();
+        }
+
+        int sleeping = sleepingOffset(service);
+        while (true) {
+            LONGS.setVolatile(buffer, sleeping, (long) offset);
+            long position = (long) LONGS.getVolatile(buffer, offset);
+            if (position > value) {
+                // If the other end cleared the flag meanwhile, its byte wakes up the next sleep early.
+                LONGS.compareAndSet(buffer, sleeping, (long) offset, 0L);
+                return position;
+            }
+            if ((long) LONGS.getAcquire(buffer, CLOSED_OFFSET) != 0) {
+                throw new EOFException("Shared-memory connection closed.");
+            }
+            wakeUp.clear();
+            if (peer.read(wakeUp) < 0) {
+                close();
+                throw new EOFException("Shared-memory connection closed.");
+            }
+        }
+    }
+
+    /**
+     * Writes one ring. Bytes are published when the stream is flushed, as the object writer does after
+     * each message, so that the other end wakes up once per message rather than for each field; a
+     * message larger than the ring is published whenever the ring fills up, and flows through it while
+     * the other end reads.
+     */
+    private final class RingOutputStream extends OutputStream {
+        private final int tailOffset;
+        private final int headOffset;
+        private final int dataOffset;
+        private final boolean service;
+        private final WaitStrategy wait;
+        private final ByteBuffer data = buffer.duplicate();
+        private long tail;
+        private long published;
+        private long head;
+
+        RingOutputStream(int tailOffset, int headOffset, int dataOffset, boolean service, WaitStrategy wait) {
+            this.tailOffset = tailOffset;
+            this.headOffset = headOffset;
+            this.dataOffset = dataOffset;
+            this.service = service;
+            this.wait = wait;
+            this.tail = (long) LONGS.getAcquire(buffer, tailOffset);
+            this.published = tail;
+            this.head = (long) LONGS.getAcquire(buffer, headOffset);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if ((long) LONGS.getAcquire(buffer, CLOSED_OFFSET) != 0) {
+                throw new EOFException("Shared-memory connection closed.");
+            }
+            while (len > 0) {
+                if (tail - head == capacity) {
+                    head = (long) LONGS.getAcquire(buffer, headOffset);
+                    if (tail - head == capacity) {
+                        flush();
+                        head = await(headOffset, tail - capacity, service, wait);
+                    }
+                }
+                int index = (int) tail & (capacity - 1);
+                int n = Math.min(len, Math.min(capacity - (int) (tail - head), capacity - index));
+                data.put(dataOffset + index, b, off, n);
+                tail += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (published != tail) {
+                published = tail;
+                publish(tailOffset, tail, service);
+            }
+        }
+    }
+
+    /**
+     * Reads one ring.
+     */
+    private final class RingInputStream extends InputStream {
+        private final int tailOffset;
+        private final int headOffset;
+        private final int dataOffset;
+        private final boolean service;
+        private final WaitStrategy wait;
+        private final ByteBuffer data = buffer.duplicate();
+        private long head;
+        private long tail;
+
+        RingInputStream(int tailOffset, int headOffset, int dataOffset, boolean service, WaitStrategy wait) {
+            this.tailOffset = tailOffset;
+            this.headOffset = headOffset;
+            this.dataOffset = dataOffset;
+            this.service = service;
+            this.wait = wait;
+            this.head = (long) LONGS.getAcquire(buffer, headOffset);
+            this.tail = head;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (tail == head) {
+                tail = (long) LONGS.getAcquire(buffer, tailOffset);
+                if (tail == head) {
+                    tail = await(tailOffset, head, service, wait);
+                }
+            }
+            int index = (int) head & (capacity - 1);
+            int n = Math.min(len, Math.min((int) (tail - head), capacity - index));
+            data.get(dataOffset + index, b, off, n);
+            head += n;
+            publish(headOffset, head, service);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) ((long) LONGS.getAcquire(buffer, tailOffset) - head);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package remote;
+
+/**
+ * Server side of a generated remote interface: calls the method a request asks for on the service
+ * object directly, instead of through reflection.
+ * <p>
+ * Implementations are generated for interfaces marked with <code>RemoteInterface</code>, and are
+ * found by <code>RemoteInterfaceDescriptor</code>. On connections using the typed codec, the service
+ * reads each request into a <code>TypedCall</code> from <code>newCall</code>; arguments passed as
+ * objects, by the Java codec and by calls within the virtual machine, go through <code>invoke</code>.
+ *
+ * @param <T> The remote interface.
+ */
+public interface Skeleton<T> {
+
+    /**
+     * Calls a method on the service object.
+     *
+     * @param target The service object.
+     * @param method The method of the remote interface to call.
+     * @param args   The arguments of the call.
+     * @return The result of the method, or null if it returns nothing.
+     * @throws Throwable Whatever the method throws, unwrapped.
+     */
+    Object invoke(T target, RemoteInterfaceDescriptor.RemoteMethod method, Object[] args) throws Throwable;
+
+    /**
+     * Creates an empty call of a method, into which the arguments of a request are read.
+     *
+     * @param method The method of the remote interface.
+     * @return The call, or null if the method was unknown when the skeleton was generated.
+     */
+    TypedCall<T> newCall(RemoteInterfaceDescriptor.RemoteMethod method);
+}
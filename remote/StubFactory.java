@@ -1,9 +1,6 @@
 package remote;
 
-import java.lang.reflect.Proxy;
-
 import static remote.ValidationUtil.isEmpty;
-import static remote.ValidationUtil.isRemoteInterface;
 
 /** Remote Object stub factory.
     <p>
@@ -12,7 +9,15 @@ import static remote.ValidationUtil.isRemoteInterface;
     methods for creating stub objects dynamically, when given pre-defined interfaces.
     <p>
     The network address of the remote Service is set when a stub is created, and
-    may not be modified afterwards.
+    may not be modified afterwards. It is either "ip:port", or "unix:" followed
+    by the path of the Unix domain socket of a Service on the same host.
+    <p>
+    The validation of the interface and the lookup of the proxy class are done
+    once per interface and cached in its <code>RemoteInterfaceDescriptor</code>,
+    so creating many stubs is cheap.
+    <p>
+    For interfaces marked with <code>RemoteInterface</code> and compiled with the
+    annotation processor, the generated stub class is used instead of a proxy.
  */
 public abstract class StubFactory {
 
@@ -54,17 +59,53 @@ public abstract class StubFactory {
         @throws NullPointerException If <code>c</code> is <code>null</code>.
      */    
     public static <T> T create(Class<T> c, String addr, boolean sockLoses, boolean sockDelays) {
+        return create(c, addr, sockLoses, sockDelays, TransportConfig.DEFAULT);
+    }
+
+    /** Creates a stub whose connections use the socket and stream options of
+        a transport configuration, normally the same as the Service's.
+        @param c      A representation of the class of the interface that the
+                      Service must handle method call requests for.
+        @param addr   The network address of the Service as "ip:port"
+        @param config The socket and stream options, such as
+                      <code>TransportConfig.HIGH_THROUGHPUT</code>.
+        @return The stub created.
+        @throws Error If <code>c</code> does not represent a remote interface.
+        @throws NullPointerException If any argument is <code>null</code>.
+     */
+    public static <T> T create(Class<T> c, String addr, TransportConfig config) {
+        return create(c, addr, false, false, config);
+    }
+
+    /** Creates a stub with simulated loss and delay whose connections use the
+        socket and stream options of a transport configuration.
+        @param c      A representation of the class of the interface that the
+                      Service must handle method call requests for.
+        @param addr   The network address of the Service as "ip:port"
+        @param sockLoses  A flag that indicates whether or not Objects can be lost
+                      between sender and receiver, resulting in timeout.
+        @param sockDelays A flag that indicates whether propagation delay is incurred
+                      when sending an Object from sender to receiver.
+        @param config The socket and stream options.
+        @return The stub created.
+        @throws Error If <code>c</code> does not represent a remote interface.
+        @throws NullPointerException If any argument is <code>null</code>.
+     */
+    public static <T> T create(Class<T> c, String addr, boolean sockLoses, boolean sockDelays,
+                               TransportConfig config) {
         if(isEmpty(c))
             throw new NullPointerException("Class is null");
         if(isEmpty(addr))
             throw new NullPointerException("Address is null/blank");
-        if(!isRemoteInterface(c))
+        if(config == null)
+            throw new NullPointerException("Transport configuration is null");
+        RemoteInterfaceDescriptor descriptor = RemoteInterfaceDescriptor.of(c);
+        if(!descriptor.isRemote())
             throw new Error("Class does not represent a remote interface");
-        T stub = (T) Proxy
-                .newProxyInstance(
-                        c.getClassLoader(),
-                        new Class<?>[] { c },
-                        new StubInvocationHandler(c, addr, sockLoses, sockDelays));
-        return stub;
+        StubInvocationHandler handler = new StubInvocationHandler(descriptor, addr, sockLoses, sockDelays, config);
+        Object stub = descriptor.newGeneratedStub(handler);
+        if(stub == null)
+            stub = descriptor.newProxy(handler);
+        return c.cast(stub);
     }
 }
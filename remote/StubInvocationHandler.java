@@ -1,8 +1,12 @@
 package remote;
 
 import java.io.IOException;
+import java.io.ObjectInput;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A proxy invocation handler that facilitates remote method invocation.
@@ -10,12 +14,56 @@ import java.lang.reflect.Method;
  * receiving the response, and appropriately handling exceptions or errors during the process.
  * This class is designed to work with a custom implementation of sockets that may simulate
  * network characteristics like delays or losses.
+ * <p>
+ * Connections are kept open and reused by later calls. A call failing on a reused connection closes
+ * every idle connection, since a service that restarted has closed them all, and retries on a new
+ * connection without counting the failure as an attempt. A new connection starts with a handshake
+ * that sends the fingerprint and method signatures of the interface and the supported codecs and
+ * compressions. The service answers with the options it chose and, if its interface differs, with
+ * the ids of the methods it has, so that requests only carry a method id. An interface the service
+ * has none of the methods of is refused once, during the handshake, and calls to single methods the
+ * service lacks fail without being sent. For an interface with generated classes, the stub offers the
+ * typed codec, with which requests carry the arguments of a <code>TypedCall</code> field by field
+ * rather than a serialized <code>MethodInvocationRequest</code>, and results come back the same way.
+ * Connections use the socket and stream options of a
+ * <code>TransportConfig</code>, which also decides whether deflate compression is offered.
+ * <p>
+ * For an address starting with <code>shm:</code>, each new connection creates a file of
+ * shared-memory rings next to the service's Unix domain socket and offers it in the handshake. If the
+ * service maps it, calls travel through the rings, waiting as the configuration's
+ * <code>WaitStrategy</code> says; otherwise they use the socket.
+ * <p>
+ * When the service at the stub's address runs in the same virtual machine and exports the same
+ * interface, calls skip the connection and go to <code>Service.callLocal</code>, which copies arguments
+ * and results instead of serializing them onto a socket. The service is looked up on each call, so a
+ * stub switches to its connections when the service stops and back when it starts again.
  */
 public class StubInvocationHandler implements InvocationHandler {
-    private final Class<?> remoteInterface;
+    private static final Log LOG = Log.get(StubInvocationHandler.class);
+
+    private final RemoteInterfaceDescriptor descriptor;
     private final String address;
     private final boolean sockLoses;
     private final boolean sockDelays;
+    private final TransportConfig config;
+
+    /** Key of the stub's address in <code>LocalServices</code>, or null if calls always connect. */
+    private final String localKey;
+
+    /** Maximum number of idle connections kept open for later calls. */
+    private static final int MAX_IDLE_CONNECTIONS = 16;
+
+    /** The codecs offered in handshakes, preferred first. */
+    private final String[] codecs;
+
+    /** The compressions offered in handshakes, preferred first. */
+    private final String[] compressions;
+
+    /** Open connections not used by any call, most recently used first. */
+    private final ConcurrentLinkedDeque<Connection> idle = new ConcurrentLinkedDeque<>();
+
+    /** Number of connections in <code>idle</code>. */
+    private final AtomicInteger idleCount = new AtomicInteger();
 
     /**
      * Constructs an instance of StubInvocationHandler.
@@ -26,10 +74,32 @@ public class StubInvocationHandler implements InvocationHandler {
      * @param sockDelays A flag indicating whether the socket simulates network delays.
      */
     public StubInvocationHandler(Class<?> c, String addr, boolean sockLoses, boolean sockDelays) {
-        this.remoteInterface = c;
+        this(RemoteInterfaceDescriptor.of(c), addr, sockLoses, sockDelays, TransportConfig.DEFAULT);
+    }
+
+    /**
+     * Constructs an instance of StubInvocationHandler from the cached descriptor of its interface.
+     *
+     * @param descriptor The descriptor of the remote interface that the proxy implements.
+     * @param addr The address of the remote server to connect to.
+     * @param sockLoses A flag indicating whether the socket simulates packet loss.
+     * @param sockDelays A flag indicating whether the socket simulates network delays.
+     * @param config The socket and stream options of the connections.
+     */
+    StubInvocationHandler(RemoteInterfaceDescriptor descriptor, String addr, boolean sockLoses, boolean sockDelays,
+                          TransportConfig config) {
+        this.descriptor = descriptor;
         this.address = addr;
         this.sockLoses = sockLoses;
         this.sockDelays = sockDelays;
+        this.config = config;
+        this.localKey = sockLoses || sockDelays ? null : LocalServices.keyOf(addr);
+        this.codecs = descriptor.getSkeleton() != null
+                ? new String[] { HandshakeRequest.CODEC_TYPED, HandshakeRequest.CODEC_JAVA }
+                : new String[] { HandshakeRequest.CODEC_JAVA };
+        this.compressions = config.isCompression()
+                ? new String[] { HandshakeRequest.COMPRESSION_DEFLATE, HandshakeRequest.COMPRESSION_NONE }
+                : new String[] { HandshakeRequest.COMPRESSION_NONE };
     }
 
     /**
@@ -43,49 +113,360 @@ public class StubInvocationHandler implements InvocationHandler {
      */
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        RemoteInterfaceDescriptor.RemoteMethod remoteMethod = descriptor.find(method);
+        if (remoteMethod == null) {
+            throw new RemoteObjectException("Method " + method.getName() + " not found.");
+        }
+        return invoke(remoteMethod, args);
+    }
+
+    /**
+     * Handles a call from the proxy, which names the method by its descriptor.
+     *
+     * @param method The method of the remote interface.
+     * @param args The arguments of the call.
+     * @return The result of the method invocation.
+     * @throws Throwable If any exception occurs during the method invocation process.
+     */
+    Object invoke(RemoteInterfaceDescriptor.RemoteMethod method, Object[] args) throws Throwable {
+        return call(method, args, null);
+    }
+
+    /**
+     * Handles a call from a generated stub, leaving the result in the call.
+     *
+     * @param call The call, holding the method and its arguments.
+     * @throws Throwable If any exception occurs during the method invocation process.
+     */
+    void invoke(TypedCall<?> call) throws Throwable {
+        call(call.getMethod(), null, call);
+    }
+
+    /**
+     * Sends a call over a pooled connection, retrying on connection failures, and returns the result.
+     * A connection using the typed codec writes the arguments of a typed call field by field, and
+     * reads its result the same way; a call from the proxy is first copied into a typed call. The
+     * Java codec and calls within the virtual machine pass the arguments as objects.
+     *
+     * @param method The method of the remote interface.
+     * @param args The arguments of the call, or null if it is typed.
+     * @param typed The call of a generated stub, which receives the result, or null.
+     * @return The result of the method invocation, or null for a typed call.
+     * @throws Throwable If any exception occurs during the method invocation process.
+     */
+    private Object call(RemoteInterfaceDescriptor.RemoteMethod method, Object[] args, TypedCall<?> typed)
+            throws Throwable {
+        if (localKey != null) {
+            Service<?> service = LocalServices.find(localKey);
+            if (service != null) {
+                MethodInvocationResponse localResponse = service.callLocal(descriptor, method,
+                        typed == null ? args : typed.getArguments());
+                if (localResponse != null) {
+                    return result(typed, outcome(method, localResponse));
+                }
+            }
+        }
+
         final int MAX_ATTEMPTS = 5; // Maximum number of attempts
-        LeakySocket socket = null;
         for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            Connection connection = null;
+            MethodInvocationResponse methodResponse;
             try {
-                socket = new LeakySocket(address, sockLoses, sockDelays);
-                System.out.println("Attempt " + attempt + ": Invoking method " + method.getName());
-                MethodInvocationRequest request = new MethodInvocationRequest(method.getName(), method.getParameterTypes(), args);
+                connection = acquire();
+                if (connection == null) {
+                    LOG.info("Connection to {} failed, attempting retry...", address);
+                    Thread.sleep(1000); //Wait for some time before trying
+                    continue;
+                }
+
+                int methodId = connection.methodId(method.getId());
+                if (methodId < 0) {
+                    release(connection);
+                    throw new RemoteObjectException("Method " + method.name + " not found.");
+                }
 
-                boolean success = socket.sendObject(request);
+                LOG.debug("Attempt {}: Invoking method {}", attempt, method.name);
+                boolean success;
+                TypedCall<?> sent = null;
+                if (connection.typed) {
+                    sent = typed != null ? typed : copy(method, args);
+                    TypedCall<?> request = sent;
+                    success = connection.socket.sendMessage(out -> {
+                        out.writeInt(methodId);
+                        request.writeArguments(out);
+                    });
+                } else {
+                    success = connection.socket.sendObject(new MethodInvocationRequest(methodId,
+                            typed == null ? args : typed.getArguments()));
+                }
                 if (!success) {
-                    System.out.println("Send failed, attempting retry...");
+                    // Nothing was written, so the connection can carry the retry.
+                    release(connection);
+                    LOG.info("Send failed, attempting retry...");
                     Thread.sleep(1000); //Wait for some time before trying
                     continue; // If send fails, attempt retry
                 }
 
-                Object response = socket.recvObject();
+                if (sent != null && receiveResult(connection, sent)) {
+                    release(connection);
+                    return typed != null ? null : sent.getResult();
+                }
+                Object response = connection.socket.recvObject();
                 if (!(response instanceof MethodInvocationResponse)) {
                     throw new IOException("Invalid response type received.");
                 }
-                MethodInvocationResponse methodResponse = (MethodInvocationResponse) response;
-                if (methodResponse.getException() != null) {
-                    Throwable exception = methodResponse.getException();
-                    System.out.println("[StubInvocationHandler] Received exception: " + exception.getClass().getName() + " - " + exception.getMessage());
-                    if (exception instanceof NoSuchMethodException) {
-                        throw new RemoteObjectException("Method not found: " + method.getName(), exception);
-                    } else {
-                        throw exception;
+                methodResponse = (MethodInvocationResponse) response;
+                release(connection);
+            } catch (IOException e) {
+                // The service closed the connection, or lost the response and then closed it.
+                if (connection != null) {
+                    connection.socket.close();
+                    if (connection.reused) {
+                        // A service that restarted closed every connection it had, so the other idle
+                        // ones are stale too; the retry opens a new connection and counts as usual.
+                        LOG.info("Idle connection to {} failed: {}", address, e.getMessage());
+                        discardIdle();
+                        attempt--;
+                        continue;
                     }
-                } else {
-                    return methodResponse.getResult();
                 }
-            } catch (IOException e) {
-                System.out.println("Attempt " + attempt + " failed: " + e.getMessage());
+                LOG.info("Attempt {} failed: {}", attempt, e.getMessage());
                 if (attempt == MAX_ATTEMPTS) {
-                    System.out.println("Final attempt failed due to IOException, indicating possible connection issues.");
-                    throw e;
-                }
-            } finally {
-                if (socket != null) {
-                    socket.close(); 
+                    LOG.warn("Final attempt failed due to IOException, indicating possible connection issues.");
+                    throw new RemoteObjectException("Unable to complete call to " + method.name + ".", e);
                 }
+                continue;
             }
+
+            return result(typed, outcome(method, methodResponse));
         }
         throw new RemoteObjectException("Unable to establish connection after " + MAX_ATTEMPTS + " attempts.");
     }
+
+    /**
+     * Copies the arguments of a call from the proxy into a typed call, for a connection using the
+     * typed codec.
+     *
+     * @param method The method called.
+     * @param args The arguments.
+     * @return The typed call.
+     */
+    private TypedCall<?> copy(RemoteInterfaceDescriptor.RemoteMethod method, Object[] args) {
+        TypedCall<?> call = descriptor.getSkeleton().newCall(method);
+        call.setArguments(args);
+        return call;
+    }
+
+    /**
+     * Reads the start of the response to a typed call: a flag telling whether the method returned,
+     * followed by its result, or by a <code>MethodInvocationResponse</code> carrying its exception.
+     *
+     * @param connection The connection the call was sent on.
+     * @param call The call, which receives the result.
+     * @return True if the method returned, false if the exception follows.
+     * @throws IOException If the connection fails.
+     */
+    private static boolean receiveResult(Connection connection, TypedCall<?> call) throws IOException {
+        try {
+            ObjectInput in = connection.socket.input();
+            if (!in.readBoolean()) {
+                return false;
+            }
+            call.readResult(in);
+            return true;
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unable to receive result: " + e);
+        }
+    }
+
+    /**
+     * Gives the result of a call passed as an object to the typed call of a generated stub.
+     *
+     * @param typed The typed call, or null for a call from the proxy.
+     * @param result The result.
+     * @return The result for a call from the proxy, or null.
+     */
+    private static Object result(TypedCall<?> typed, Object result) {
+        if (typed == null) {
+            return result;
+        }
+        typed.setResult(result);
+        return null;
+    }
+
+    /**
+     * Returns the result carried by a response, or throws its exception.
+     *
+     * @param method The method called.
+     * @param methodResponse The response of the service.
+     * @return The result of the call.
+     * @throws Throwable The exception thrown by the remote method.
+     */
+    private static Object outcome(RemoteInterfaceDescriptor.RemoteMethod method, MethodInvocationResponse methodResponse)
+            throws Throwable {
+        if (methodResponse.getExceptionClass() != null) {
+            throw method.newDeclaredException(methodResponse.getExceptionClass(), methodResponse.getExceptionMessage());
+        }
+        if (methodResponse.getException() != null) {
+            Throwable exception = methodResponse.getException();
+            LOG.debug("Received exception from {}: {}", method.name, exception);
+            if (exception instanceof NoSuchMethodException) {
+                throw new RemoteObjectException("Method not found: " + method.name, exception);
+            }
+            throw exception;
+        }
+        return methodResponse.getResult();
+    }
+
+    /**
+     * Takes an idle connection, or opens a new one and performs its handshake.
+     *
+     * @return The connection, or null if no connection could be opened or the handshake was lost.
+     * @throws IOException If the service closed the connection during the handshake.
+     * @throws RemoteObjectException If the service refused the interface.
+     */
+    private Connection acquire() throws IOException, RemoteObjectException {
+        Connection connection = idle.pollFirst();
+        if (connection != null) {
+            idleCount.decrementAndGet();
+            connection.reused = true;
+            return connection;
+        }
+
+        LeakySocket socket = new LeakySocket(address, sockLoses, sockDelays, config);
+        SharedMemoryRings rings = createRings();
+        boolean accepted = false;
+        boolean mapped = false;
+        try {
+            HandshakeRequest request = new HandshakeRequest(descriptor.getFingerprint(), signatures(),
+                    codecs, compressions,
+                    rings == null ? null : rings.getPath().toString());
+            if (!socket.sendObject(request)) {
+                return null;
+            }
+            Object response = socket.recvObject();
+            if (!(response instanceof HandshakeResponse)) {
+                throw new IOException("Invalid handshake response received.");
+            }
+            HandshakeResponse handshake = (HandshakeResponse) response;
+            if (handshake.getRejection() != null) {
+                throw handshake.getRejection();
+            }
+            if (rings != null && handshake.isSharedMemory()) {
+                socket.useSharedMemory(rings, false, config.getWaitStrategy());
+                mapped = true;
+            } else if (HandshakeRequest.COMPRESSION_DEFLATE.equals(handshake.getCompression())) {
+                socket.compress();
+            }
+            accepted = true;
+            return new Connection(socket, handshake.getMethodIds(),
+                    HandshakeRequest.CODEC_TYPED.equals(handshake.getCodec()));
+        } finally {
+            if (rings != null) {
+                rings.deleteFile();
+                if (!mapped) {
+                    rings.close();
+                }
+            }
+            if (!accepted) {
+                socket.close();
+            }
+        }
+    }
+
+    /**
+     * Creates the shared-memory rings to offer in the handshake of a new connection, in the
+     * directory of the service's Unix domain socket. The file is deleted as soon as the handshake
+     * ends, since the service has mapped it by then or will not.
+     *
+     * @return The rings, or null if the address does not ask for them or they cannot be created.
+     */
+    private SharedMemoryRings createRings() {
+        if (!address.startsWith(LeakySocket.SHM_PREFIX)) {
+            return null;
+        }
+        try {
+            Path directory = Path.of(address.substring(LeakySocket.SHM_PREFIX.length())).toAbsolutePath().getParent();
+            return SharedMemoryRings.create(directory, config.getRingCapacity());
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Unable to create shared memory, using the socket instead: {}", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Returns a connection whose call completed to the idle connections, or closes it if there are
+     * enough idle connections already.
+     *
+     * @param connection The connection.
+     */
+    private void release(Connection connection) {
+        if (idleCount.incrementAndGet() <= MAX_IDLE_CONNECTIONS) {
+            idle.offerFirst(connection);
+        } else {
+            idleCount.decrementAndGet();
+            connection.socket.close();
+        }
+    }
+
+    /**
+     * Closes every idle connection, after one of them turned out to be closed by the service.
+     */
+    private void discardIdle() {
+        Connection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            idleCount.decrementAndGet();
+            connection.socket.close();
+        }
+    }
+
+    /**
+     * Gets the method signatures of the interface, in id order, for the handshake.
+     *
+     * @return The signatures.
+     */
+    private String[] signatures() {
+        String[] signatures = new String[descriptor.getMethods().size()];
+        for (RemoteInterfaceDescriptor.RemoteMethod method : descriptor.getMethods()) {
+            signatures[method.getId()] = method.signature;
+        }
+        return signatures;
+    }
+
+    /**
+     * An open connection to the service and the method ids agreed during its handshake.
+     */
+    private static final class Connection {
+        private final LeakySocket socket;
+        private final int[] methodIds;
+
+        /** Whether the connection uses the typed codec. */
+        private final boolean typed;
+
+        /** Whether the connection was taken from the idle connections, rather than just opened. */
+        private boolean reused;
+
+        /**
+         * Constructs a connection.
+         *
+         * @param socket The socket, after the handshake.
+         * @param methodIds The service's id for each method id of the stub, or null if they are the same.
+         * @param typed Whether the connection uses the typed codec.
+         */
+        Connection(LeakySocket socket, int[] methodIds, boolean typed) {
+            this.socket = socket;
+            this.methodIds = methodIds;
+            this.typed = typed;
+        }
+
+        /**
+         * Translates a method id of the stub into the service's.
+         *
+         * @param id The stub's method id.
+         * @return The service's method id, or -1 if the service has no such method.
+         */
+        int methodId(int id) {
+            return methodIds == null ? id : methodIds[id];
+        }
+    }
 }
@@ -0,0 +1,338 @@
+package remote;
+
+/**
+ * Immutable socket and stream options of the connections between stubs and a <code>Service</code>.
+ * <p>
+ * A configuration is passed to the <code>Service</code> constructor, which applies the accept backlog
+ * and <code>SO_REUSEADDR</code> to its listening socket and the other options to every connection it
+ * accepts, and to <code>StubFactory.create</code>, which applies them to the connections of the stub.
+ * Options left at 0 keep the operating system's default. Each <code>with</code> method returns a copy
+ * with one option changed, so configurations are built from a preset:
+ * <pre>
+ *     TransportConfig config = TransportConfig.HIGH_THROUGHPUT.withSendBufferSize(4 &lt;&lt; 20);
+ * </pre>
+ * <p>
+ * The presets are:
+ * <ul>
+ * <li><code>DEFAULT</code>: <code>TCP_NODELAY</code> and otherwise the defaults of Java sockets, with
+ *     object streams directly on the socket streams. Deflate compression is offered when the
+ *     <code>remote.compression</code> system property is <code>deflate</code>.</li>
+ * <li><code>LOW_LATENCY</code>: <code>TCP_NODELAY</code>, keepalive, and small stream buffers so that
+ *     each message leaves in a single write without copying much. Shared-memory connections spin.</li>
+ * <li><code>HIGH_THROUGHPUT</code>: large socket buffers, stream buffers and shared-memory rings, and a
+ *     long accept backlog, for large results such as task queries and many concurrent clients.</li>
+ * </ul>
+ * Stream buffers make the largest difference: without them, the object streams write each message to
+ * the socket in several small pieces. No preset compresses: compression sends about seven times fewer
+ * bytes for lists of tasks but deflates at roughly 100 MB/s per connection, which is slower than
+ * loopback or a fast local network. Over links slower than that,
+ * <code>HIGH_THROUGHPUT.withCompression(true)</code> moves large results faster.
+ * <p>
+ * <code>TCP_NODELAY</code> stays enabled in every preset: calls wait for their response, so Nagle's
+ * algorithm would hold the last segment of each message until the delayed acknowledgement of the
+ * previous one.
+ * <p>
+ * The ring capacity and wait strategy apply to shared-memory connections, which stubs open for
+ * addresses starting with <code>shm:</code>; other connections ignore them.
+ */
+public final class TransportConfig {
+
+    /** Defaults of Java sockets, with <code>TCP_NODELAY</code>. */
+    public static final TransportConfig DEFAULT = new TransportConfig(true, 0, 0, false, 0, true, 0,
+            HandshakeRequest.COMPRESSION_DEFLATE.equals(System.getProperty("remote.compression")),
+            256 * 1024, WaitStrategy.PARK);
+
+    /** Options for small calls whose latency matters most. */
+    public static final TransportConfig LOW_LATENCY =
+            new TransportConfig(true, 0, 0, true, 128, true, 8 * 1024, false, 256 * 1024, WaitStrategy.SPIN);
+
+    /** Options for large messages and many concurrent connections. */
+    public static final TransportConfig HIGH_THROUGHPUT = new TransportConfig(true, 1024 * 1024, 1024 * 1024, true,
+            1024, true, 64 * 1024, false, 4 * 1024 * 1024, WaitStrategy.PARK);
+
+    /** Largest capacity of a shared-memory ring buffer, so that both rings of a connection fit in one mapping. */
+    public static final int MAX_RING_CAPACITY = 1 << 29;
+
+    private final boolean tcpNoDelay;
+    private final int sendBufferSize;
+    private final int receiveBufferSize;
+    private final boolean keepAlive;
+    private final int backlog;
+    private final boolean reuseAddress;
+    private final int streamBufferSize;
+    private final boolean compression;
+    private final int ringCapacity;
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * Creates a configuration.
+     *
+     * @param tcpNoDelay        Whether <code>TCP_NODELAY</code> is set.
+     * @param sendBufferSize    <code>SO_SNDBUF</code> in bytes, or 0 for the default.
+     * @param receiveBufferSize <code>SO_RCVBUF</code> in bytes, or 0 for the default.
+     * @param keepAlive         Whether <code>SO_KEEPALIVE</code> is set.
+     * @param backlog           The accept backlog of the service, or 0 for the default.
+     * @param reuseAddress      Whether <code>SO_REUSEADDR</code> is set on the listening socket.
+     * @param streamBufferSize  The size of the buffers between object streams and socket streams, or 0
+     *                          for none.
+     * @param compression       Whether stubs offer deflate compression in the handshake.
+     * @param ringCapacity      The capacity of each shared-memory ring buffer in bytes.
+     * @param waitStrategy      How threads wait on shared-memory ring buffers.
+     */
+    private TransportConfig(boolean tcpNoDelay, int sendBufferSize, int receiveBufferSize, boolean keepAlive,
+                            int backlog, boolean reuseAddress, int streamBufferSize, boolean compression,
+                            int ringCapacity, WaitStrategy waitStrategy) {
+        if (sendBufferSize < 0 || receiveBufferSize < 0 || backlog < 0 || streamBufferSize < 0) {
+            throw new IllegalArgumentException("Sizes cannot be negative.");
+        }
+        if (ringCapacity < SharedMemoryRings.MIN_CAPACITY || ringCapacity > MAX_RING_CAPACITY) {
+            throw new IllegalArgumentException("Ring capacity must be between " + SharedMemoryRings.MIN_CAPACITY
+                    + " and " + MAX_RING_CAPACITY + " bytes.");
+        }
+        if (waitStrategy == null) {
+            throw new NullPointerException("Wait strategy cannot be null.");
+        }
+        this.tcpNoDelay = tcpNoDelay;
+        this.sendBufferSize = sendBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
+        this.keepAlive = keepAlive;
+        this.backlog = backlog;
+        this.reuseAddress = reuseAddress;
+        this.streamBufferSize = streamBufferSize;
+        this.compression = compression;
+        this.ringCapacity = ringCapacity;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Finds a preset by name, for command lines.
+     *
+     * @param name <code>default</code>, <code>low-latency</code> or <code>high-throughput</code>.
+     * @return The preset.
+     * @throws IllegalArgumentException If there is no preset of that name.
+     */
+    public static TransportConfig preset(String name) {
+        switch (name) {
+            case "default":
+                return DEFAULT;
+            case "low-latency":
+                return LOW_LATENCY;
+            case "high-throughput":
+                return HIGH_THROUGHPUT;
+            default:
+                throw new IllegalArgumentException("Unknown transport preset " + name
+                        + "; expected default, low-latency or high-throughput");
+        }
+    }
+
+    /**
+     * Gets whether <code>TCP_NODELAY</code> is set.
+     *
+     * @return The option.
+     */
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * Gets <code>SO_SNDBUF</code> in bytes, 0 for the default.
+     *
+     * @return The option.
+     */
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * Gets <code>SO_RCVBUF</code> in bytes, 0 for the default.
+     *
+     * @return The option.
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * Gets whether <code>SO_KEEPALIVE</code> is set.
+     *
+     * @return The option.
+     */
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Gets the accept backlog of the service, 0 for the default.
+     *
+     * @return The option.
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Gets whether <code>SO_REUSEADDR</code> is set on the listening socket.
+     *
+     * @return The option.
+     */
+    public boolean isReuseAddress() {
+        return reuseAddress;
+    }
+
+    /**
+     * Gets the size of the stream buffers, 0 for none.
+     *
+     * @return The option.
+     */
+    public int getStreamBufferSize() {
+        return streamBufferSize;
+    }
+
+    /**
+     * Gets whether stubs offer deflate compression.
+     *
+     * @return The option.
+     */
+    public boolean isCompression() {
+        return compression;
+    }
+
+    /**
+     * Gets the capacity of each shared-memory ring buffer in bytes.
+     *
+     * @return The option.
+     */
+    public int getRingCapacity() {
+        return ringCapacity;
+    }
+
+    /**
+     * Gets how threads wait on shared-memory ring buffers.
+     *
+     * @return The option.
+     */
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * Returns a copy of this configuration with another value of one option.
+     *
+     * @param tcpNoDelay Whether <code>TCP_NODELAY</code> is set.
+     * @return The copy.
+     */
+    public TransportConfig withTcpNoDelay(boolean tcpNoDelay) {
+        return new TransportConfig(tcpNoDelay, sendBufferSize, receiveBufferSize, keepAlive, backlog,
+                reuseAddress, streamBufferSize, compression, ringCapacity, waitStrategy);
+    }
+
+    /**
+     * Returns a copy of this configuration with another value of one option.
+     *
+     * @param sendBufferSize <code>SO_SNDBUF</code> in bytes, or 0 for the default.
+     * @return The copy.
+     */
+    public TransportConfig withSendBufferSize(int sendBufferSize) {
+        return new TransportConfig(tcpNoDelay, sendBufferSize, receiveBufferSize, keepAlive, backlog,
+                reuseAddress, streamBufferSize, compression, ringCapacity, waitStrategy);
+    }
+
+    /**
+     * Returns a copy of this configuration with another value of one option.
+     *
+     * @param receiveBufferSize <code>SO_RCVBUF</code> in bytes, or 0 for the default.
+     * @return The copy.
+     */
+    public TransportConfig withReceiveBufferSize(int receiveBufferSize) {
+        return new TransportConfig(tcpNoDelay, sendBufferSize, receiveBufferSize, keepAlive, backlog,
+                reuseAddress, streamBufferSize, compression, ringCapacity, waitStrategy);
+    }
+
+    /**
+     * Returns a copy of this configuration with another value of one option.
+     *
+     * @param keepAlive Whether <code>SO_KEEPALIVE</code> is set.
+     * @return The copy.
+     */
+    public TransportConfig withKeepAlive(boolean keepAlive) {
+        return new TransportConfig(tcpNoDelay, sendBufferSize, receiveBufferSize, keepAlive, backlog,
+                reuseAddress, streamBufferSize, compression, ringCapacity, waitStrategy);
+    }
+
+    /**
+     * Returns a copy of this configuration with another value of one option.
+     *
+     * @param backlog The accept backlog, or 0 for the default.
+     * @return The copy.
+     */
+    public TransportConfig withBacklog(int backlog) {
+        return new TransportConfig(tcpNoDelay, sendBufferSize, receiveBufferSize, keepAlive, backlog,
+                reuseAddress, streamBufferSize, compression, ringCapacity, waitStrategy);
+    }
+
+    /**
+     * Returns a copy of this configuration with another value of one option.
+     *
+     * @param reuseAddress Whether <code>SO_REUSEADDR</code> is set.
+     * @return The copy.
+     */
+    public TransportConfig withReuseAddress(boolean reuseAddress) {
+        return new TransportConfig(tcpNoDelay, sendBufferSize, receiveBufferSize, keepAlive, backlog,
+                reuseAddress, streamBufferSize, compression, ringCapacity, waitStrategy);
+    }
+
+    /**
+     * Returns a copy of this configuration with another value of one option.
+     *
+     * @param streamBufferSize The size of the stream buffers in bytes, or 0 for none.
+     * @return The copy.
+     */
+    public TransportConfig withStreamBufferSize(int streamBufferSize) {
+        return new TransportConfig(tcpNoDelay, sendBufferSize, receiveBufferSize, keepAlive, backlog,
+                reuseAddress, streamBufferSize, compression, ringCapacity, waitStrategy);
+    }
+
+    /**
+     * Returns a copy of this configuration with another value of one option.
+     *
+     * @param compression Whether stubs offer deflate compression.
+     * @return The copy.
+     */
+    public TransportConfig withCompression(boolean compression) {
+        return new TransportConfig(tcpNoDelay, sendBufferSize, receiveBufferSize, keepAlive, backlog,
+                reuseAddress, streamBufferSize, compression, ringCapacity, waitStrategy);
+    }
+
+    /**
+     * Returns a copy of this configuration with another value of one option.
+     *
+     * @param ringCapacity The capacity of each shared-memory ring buffer in bytes, rounded up to a power
+     *                     of two; the stub's configuration decides it for the connection.
+     * @return The copy.
+     * @throws IllegalArgumentException If the capacity is below 4 KiB or above <code>MAX_RING_CAPACITY</code>.
+     */
+    public TransportConfig withRingCapacity(int ringCapacity) {
+        return new TransportConfig(tcpNoDelay, sendBufferSize, receiveBufferSize, keepAlive, backlog,
+                reuseAddress, streamBufferSize, compression, ringCapacity, waitStrategy);
+    }
+
+    /**
+     * Returns a copy of this configuration with another value of one option.
+     *
+     * @param waitStrategy How threads wait on shared-memory ring buffers.
+     * @return The copy.
+     */
+    public TransportConfig withWaitStrategy(WaitStrategy waitStrategy) {
+        return new TransportConfig(tcpNoDelay, sendBufferSize, receiveBufferSize, keepAlive, backlog,
+                reuseAddress, streamBufferSize, compression, ringCapacity, waitStrategy);
+    }
+
+    @Override
+    public String toString() {
+        return "TransportConfig[tcpNoDelay=" + tcpNoDelay + ", sendBufferSize=" + sendBufferSize
+                + ", receiveBufferSize=" + receiveBufferSize + ", keepAlive=" + keepAlive + ", backlog=" + backlog
+                + ", reuseAddress=" + reuseAddress + ", streamBufferSize=" + streamBufferSize
+                + ", compression=" + compression + ", ringCapacity=" + ringCapacity
+                + ", waitStrategy=" + waitStrategy + "]";
+    }
+}
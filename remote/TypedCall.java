@@ -0,0 +1,116 @@
+package remote;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * One call of a method of a generated remote interface, holding its arguments and result in fields
+ * of their own types.
+ * <p>
+ * The annotation processor generates a subclass for each method, nested in the skeleton of the
+ * interface. A generated stub fills one with the arguments of a call, and a connection using the
+ * typed codec writes them with the <code>DataOutput</code> method of each parameter type, so that
+ * primitive arguments and results are neither boxed nor sent as objects. The service reads the
+ * arguments into a call of its own, calls the method and writes the result the same way. On
+ * connections using the Java codec, and for calls within the virtual machine, the arguments and
+ * result are passed as objects instead.
+ * <p>
+ * The layout of a call depends only on the erased parameter and return types, which are part of the
+ * signature both ends of a connection match methods by.
+ *
+ * @param <T> The remote interface.
+ */
+public abstract class TypedCall<T> {
+
+    /** The method called. */
+    private final RemoteInterfaceDescriptor.RemoteMethod method;
+
+    /**
+     * Constructs a call.
+     *
+     * @param method The method called.
+     */
+    protected TypedCall(RemoteInterfaceDescriptor.RemoteMethod method) {
+        this.method = method;
+    }
+
+    /**
+     * Gets the method called.
+     *
+     * @return The method.
+     */
+    public final RemoteInterfaceDescriptor.RemoteMethod getMethod() {
+        return method;
+    }
+
+    /**
+     * Writes the arguments of the call.
+     *
+     * @param out The message being sent.
+     * @throws IOException If an argument cannot be written.
+     */
+    protected abstract void writeArguments(ObjectOutput out) throws IOException;
+
+    /**
+     * Reads the arguments written by <code>writeArguments</code>.
+     *
+     * @param in The message received.
+     * @throws IOException If an argument cannot be read.
+     * @throws ClassNotFoundException If the class of an argument is not found.
+     */
+    protected abstract void readArguments(ObjectInput in) throws IOException, ClassNotFoundException;
+
+    /**
+     * Gets the arguments of the call as objects.
+     *
+     * @return The arguments, primitive ones boxed.
+     */
+    protected abstract Object[] getArguments();
+
+    /**
+     * Calls the method on the service object and keeps its result.
+     *
+     * @param target The service object.
+     * @throws Throwable Whatever the method throws.
+     */
+    protected abstract void call(T target) throws Throwable;
+
+    /**
+     * Writes the result of the call.
+     *
+     * @param out The message being sent.
+     * @throws IOException If the result cannot be written.
+     */
+    protected abstract void writeResult(ObjectOutput out) throws IOException;
+
+    /**
+     * Reads the result written by <code>writeResult</code>.
+     *
+     * @param in The message received.
+     * @throws IOException If the result cannot be read.
+     * @throws ClassNotFoundException If the class of the result is not found.
+     */
+    protected abstract void readResult(ObjectInput in) throws IOException, ClassNotFoundException;
+
+    /**
+     * Sets the arguments of the call from objects, for a call made through a proxy.
+     *
+     * @param args The arguments, primitive ones boxed.
+     */
+    protected abstract void setArguments(Object[] args);
+
+    /**
+     * Gets the result of the call as an object, for a call made through a proxy.
+     *
+     * @return The result, boxed if it is primitive, or null if the method returns nothing.
+     */
+    protected abstract Object getResult();
+
+    /**
+     * Sets the result of the call from an object, as received on a connection using the Java codec.
+     *
+     * @param result The result, boxed if it is primitive.
+     */
+    protected abstract void setResult(Object result);
+}
@@ -0,0 +1,26 @@
+package remote;
+
+/**
+ * How a thread waits for the other end of a shared-memory connection to write a message or to make
+ * room for one.
+ * <p>
+ * Both strategies first poll the ring buffer, and then sleep until the other end wakes the thread up
+ * with a byte on the connection's Unix domain socket. They differ in how long they poll, and so in how
+ * soon a waiting thread notices a change and in how much CPU it uses meanwhile.
+ */
+public enum WaitStrategy {
+
+    /**
+     * Busy-spin for up to a millisecond, noticing a message within nanoseconds at the cost of a core
+     * per waiting thread, then sleep so that idle connections do not keep a core busy. Spinning only
+     * pays off when both ends have a core of their own.
+     */
+    SPIN,
+
+    /**
+     * Spin for about a hundred iterations, then sleep. This uses little CPU, but a message that arrives
+     * while the thread sleeps costs a system call at each end and a wake-up, which takes microseconds
+     * to tens of microseconds.
+     */
+    PARK
+}
@@ -0,0 +1,569 @@
+package remote.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * Annotation processor generating a stub and a skeleton for each interface marked with
+ * <code>remote.RemoteInterface</code>.
+ * <p>
+ * For an interface <code>I</code>, the processor writes <code>I_Stub</code>, which implements each
+ * method with a direct call to <code>GeneratedStub.invokeRemote</code>, and <code>I_Skeleton</code>,
+ * which calls the method a request asks for on the service object through a switch on the method id.
+ * For each method, the skeleton nests a <code>remote.TypedCall</code> subclass holding the arguments
+ * and result in typed fields, with the code writing and reading them field by field; the stub fills
+ * one per call, so that arguments are not boxed into an <code>Object[]</code>. The classes are written
+ * to the package of the interface, where <code>RemoteInterfaceDescriptor</code> looks for them.
+ * Methods are identified by the <code>RemoteMethod</code> objects of the descriptor, looked up once when
+ * the skeleton is initialized, so the generated code relies on nothing the descriptor does not also
+ * compute at run time.
+ * <p>
+ * A marked interface that is not an interface, or with a method that does not declare
+ * <code>RemoteObjectException</code>, is a compile error. Generic interfaces and interfaces with
+ * generic methods are skipped with a warning, and keep using reflection.
+ * <p>
+ * Usage: <code>javac -processorpath &lt;dir&gt; -processor remote.processor.RemoteInterfaceProcessor ...</code>
+ */
+@SupportedAnnotationTypes("remote.RemoteInterface")
+public class RemoteInterfaceProcessor extends AbstractProcessor {
+
+    /** Name of the annotation marking the interfaces to generate classes for. */
+    private static final String ANNOTATION = "remote.RemoteInterface";
+
+    /** Name of the exception every remote method must declare. */
+    private static final String REMOTE_OBJECT_EXCEPTION = "remote.RemoteObjectException";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement annotation = processingEnv.getElementUtils().getTypeElement(ANNOTATION);
+        if (annotation == null) {
+            return false;
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() != ElementKind.INTERFACE) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "@RemoteInterface can only mark an interface", element);
+                continue;
+            }
+            generate((TypeElement) element);
+        }
+        return true;
+    }
+
+    /**
+     * Checks an interface and writes its stub and skeleton.
+     *
+     * @param type The interface.
+     */
+    private void generate(TypeElement type) {
+        Messager messager = processingEnv.getMessager();
+        if (!type.getTypeParameters().isEmpty()) {
+            messager.printMessage(Diagnostic.Kind.WARNING,
+                    "generic remote interface " + type + " uses reflection", type);
+            return;
+        }
+
+        List<ExecutableElement> methods = methods(type);
+        TypeMirror remoteObjectException = processingEnv.getElementUtils()
+                .getTypeElement(REMOTE_OBJECT_EXCEPTION).asType();
+        boolean valid = true;
+        for (ExecutableElement method : methods) {
+            if (!method.getTypeParameters().isEmpty()) {
+                messager.printMessage(Diagnostic.Kind.WARNING, "remote interface " + type
+                        + " has generic method " + method.getSimpleName() + " and uses reflection", method);
+                return;
+            }
+            boolean declared = false;
+            for (TypeMirror thrown : method.getThrownTypes()) {
+                declared |= processingEnv.getTypeUtils().isAssignable(thrown, remoteObjectException);
+            }
+            if (!declared) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "method " + method.getSimpleName()
+                        + " of remote interface " + type + " does not declare RemoteObjectException", method);
+                valid = false;
+            }
+        }
+        if (!valid) {
+            return;
+        }
+
+        Elements elements = processingEnv.getElementUtils();
+        PackageElement pkg = elements.getPackageOf(type);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(type).toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+                .replace('$', '_');
+
+        try {
+            write(type, packageName, simpleName + "_Stub",
+                    stub(type, packageName, simpleName + "_Stub", simpleName + "_Skeleton", methods));
+            write(type, packageName, simpleName + "_Skeleton",
+                    skeleton(type, packageName, simpleName + "_Skeleton", methods));
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "cannot write generated classes: " + e, type);
+        }
+    }
+
+    /**
+     * Collects the methods a stub must implement: the abstract and default methods of the interface
+     * and its superinterfaces, once per erased signature.
+     *
+     * @param type The interface.
+     * @return The methods.
+     */
+    private List<ExecutableElement> methods(TypeElement type) {
+        Map<String, ExecutableElement> methods = new LinkedHashMap<>();
+        for (Element member : processingEnv.getElementUtils().getAllMembers(type)) {
+            if (member.getKind() != ElementKind.METHOD
+                    || member.getEnclosingElement().getKind() != ElementKind.INTERFACE
+                    || member.getModifiers().contains(Modifier.STATIC)
+                    || member.getModifiers().contains(Modifier.PRIVATE)) {
+                continue;
+            }
+            ExecutableElement method = (ExecutableElement) member;
+            methods.putIfAbsent(method.getSimpleName() + "(" + erasedParameters(method) + ")", method);
+        }
+        return new ArrayList<>(methods.values());
+    }
+
+    /**
+     * Writes the stub class.
+     *
+     * @param type         The interface.
+     * @param packageName  The package of the interface.
+     * @param className    The stub class name.
+     * @param skeletonName The skeleton class name, in which the calls of the methods are nested.
+     * @param methods      The methods of the interface.
+     * @return The source.
+     */
+    private String stub(TypeElement type, String packageName, String className, String skeletonName,
+                        List<ExecutableElement> methods) {
+        String interfaceName = type.getQualifiedName().toString();
+        StringBuilder source = header(packageName);
+        source.append("/** Stub generated for <code>").append(interfaceName).append("</code>. */\n");
+        source.append("public final class ").append(className).append(" extends remote.GeneratedStub implements ")
+                .append(interfaceName).append(" {\n\n");
+        source.append("    public ").append(className).append("(remote.StubInvocationHandler handler) {\n");
+        source.append("        super(handler);\n    }\n");
+
+        for (int i = 0; i < methods.size(); i++) {
+            ExecutableElement method = methods.get(i);
+            TypeMirror returnType = method.getReturnType();
+            List<? extends VariableElement> parameters = method.getParameters();
+
+            source.append("\n    @Override\n    public ").append(returnType).append(' ')
+                    .append(method.getSimpleName()).append('(');
+            StringBuilder arguments = new StringBuilder();
+            for (int p = 0; p < parameters.size(); p++) {
+                if (p > 0) {
+                    source.append(", ");
+                    arguments.append(", ");
+                }
+                TypeMirror parameterType = parameters.get(p).asType();
+                if (method.isVarArgs() && p == parameters.size() - 1) {
+                    source.append(componentType(parameterType)).append("...");
+                } else {
+                    source.append(parameterType);
+                }
+                source.append(" a").append(p);
+                arguments.append('a').append(p);
+            }
+            source.append(')');
+            List<? extends TypeMirror> thrown = method.getThrownTypes();
+            for (int t = 0; t < thrown.size(); t++) {
+                source.append(t == 0 ? " throws " : ", ").append(thrown.get(t));
+            }
+            source.append(" {\n");
+
+            String callClass = skeletonName + ".Call" + i;
+            source.append("        ").append(callClass).append(" call = new ").append(callClass).append('(')
+                    .append(arguments).append(");\n");
+            List<TypeMirror> rethrown = rethrown(thrown);
+            if (rethrown == null) {
+                source.append("        invokeRemote(call);\n");
+            } else {
+                source.append("        try {\n            invokeRemote(call);\n");
+                source.append("        } catch (");
+                for (int t = 0; t < rethrown.size(); t++) {
+                    source.append(t == 0 ? "" : " | ").append(processingEnv.getTypeUtils().erasure(rethrown.get(t)));
+                }
+                source.append(" e) {\n            throw e;\n");
+                source.append("        } catch (Throwable e) {\n");
+                source.append("            throw new java.lang.reflect.UndeclaredThrowableException(e);\n");
+                source.append("        }\n");
+            }
+            if (returnType.getKind() != TypeKind.VOID) {
+                source.append("        return call.result;\n");
+            }
+            source.append("    }\n");
+        }
+        return source.append("}\n").toString();
+    }
+
+    /**
+     * Writes the skeleton class, with the call class of each method nested in it.
+     *
+     * @param type        The interface.
+     * @param packageName The package of the interface.
+     * @param className   The skeleton class name.
+     * @param methods     The methods of the interface.
+     * @return The source.
+     */
+    private String skeleton(TypeElement type, String packageName, String className, List<ExecutableElement> methods) {
+        String interfaceName = type.getQualifiedName().toString();
+        StringBuilder source = header(packageName);
+        source.append("/** Skeleton generated for <code>").append(interfaceName).append("</code>. */\n");
+        source.append("@SuppressWarnings(\"unchecked\")\n");
+        source.append("public final class ").append(className).append(" implements remote.Skeleton<")
+                .append(interfaceName).append("> {\n\n");
+        source.append("    private static final remote.RemoteInterfaceDescriptor DESCRIPTOR =\n");
+        source.append("            remote.RemoteInterfaceDescriptor.of(").append(interfaceName).append(".class);\n");
+        for (int i = 0; i < methods.size(); i++) {
+            ExecutableElement method = methods.get(i);
+            source.append("    private static final remote.RemoteInterfaceDescriptor.RemoteMethod M").append(i)
+                    .append(" =\n            DESCRIPTOR.find(\"").append(method.getSimpleName())
+                    .append("\", new Class<?>[] {").append(parameterClasses(method)).append("});\n");
+        }
+        source.append("    /** Case of the switch by method id; -1 for methods unknown when this class was generated. */\n");
+        source.append("    private static final int[] INDEX = new int[DESCRIPTOR.getMethods().size()];\n\n");
+        source.append("    static {\n        java.util.Arrays.fill(INDEX, -1);\n");
+        for (int i = 0; i < methods.size(); i++) {
+            source.append("        INDEX[M").append(i).append(".getId()] = ").append(i).append(";\n");
+        }
+        source.append("    }\n\n");
+
+        source.append("    @Override\n    public Object invoke(").append(interfaceName)
+                .append(" target, remote.RemoteInterfaceDescriptor.RemoteMethod method, Object[] args)\n");
+        source.append("            throws Throwable {\n");
+        source.append("        switch (INDEX[method.getId()]) {\n");
+        for (int i = 0; i < methods.size(); i++) {
+            ExecutableElement method = methods.get(i);
+            List<? extends VariableElement> parameters = method.getParameters();
+            StringBuilder call = new StringBuilder("target.").append(method.getSimpleName()).append('(');
+            for (int p = 0; p < parameters.size(); p++) {
+                if (p > 0) {
+                    call.append(", ");
+                }
+                call.append(cast(parameters.get(p).asType())).append("args[").append(p).append(']');
+            }
+            call.append(')');
+            source.append("        case ").append(i).append(":\n");
+            if (method.getReturnType().getKind() == TypeKind.VOID) {
+                source.append("            ").append(call).append(";\n            return null;\n");
+            } else {
+                source.append("            return ").append(call).append(";\n");
+            }
+        }
+        source.append("        default:\n");
+        source.append("            return method.getMethod().invoke(target, args);\n");
+        source.append("        }\n    }\n\n");
+
+        source.append("    @Override\n    public remote.TypedCall<").append(interfaceName)
+                .append("> newCall(remote.RemoteInterfaceDescriptor.RemoteMethod method) {\n");
+        source.append("        switch (INDEX[method.getId()]) {\n");
+        for (int i = 0; i < methods.size(); i++) {
+            source.append("        case ").append(i).append(":\n            return new Call").append(i).append("();\n");
+        }
+        source.append("        default:\n            return null;\n        }\n    }\n");
+
+        for (int i = 0; i < methods.size(); i++) {
+            call(source, interfaceName, i, methods.get(i));
+        }
+        return source.append("}\n").toString();
+    }
+
+    /**
+     * Writes the call class of a method, nested in the skeleton. It keeps the arguments in fields
+     * <code>a0</code>, <code>a1</code>... and the result in <code>result</code>, and writes and reads each
+     * with the <code>ObjectOutput</code> and <code>ObjectInput</code> methods of its type.
+     *
+     * @param source        The source of the skeleton so far.
+     * @param interfaceName The qualified name of the interface.
+     * @param index         The index of the method in the skeleton.
+     * @param method        The method.
+     */
+    private void call(StringBuilder source, String interfaceName, int index, ExecutableElement method) {
+        List<? extends VariableElement> parameters = method.getParameters();
+        TypeMirror returnType = method.getReturnType();
+        boolean returns = returnType.getKind() != TypeKind.VOID;
+        String className = "Call" + index;
+
+        source.append("\n    /** Call of <code>").append(method.getSimpleName()).append("</code>. */\n");
+        source.append("    static final class ").append(className).append(" extends remote.TypedCall<")
+                .append(interfaceName).append("> {\n");
+        StringBuilder formals = new StringBuilder();
+        StringBuilder arguments = new StringBuilder();
+        for (int p = 0; p < parameters.size(); p++) {
+            TypeMirror parameterType = parameters.get(p).asType();
+            source.append("        ").append(parameterType).append(" a").append(p).append(";\n");
+            formals.append(p > 0 ? ", " : "").append(parameterType).append(" a").append(p);
+            arguments.append(p > 0 ? ", " : "").append('a').append(p);
+        }
+        if (returns) {
+            source.append("        ").append(returnType).append(" result;\n");
+        }
+
+        source.append("\n        ").append(className).append("() {\n            super(M").append(index)
+                .append(");\n        }\n");
+        if (!parameters.isEmpty()) {
+            source.append("\n        ").append(className).append('(').append(formals).append(") {\n");
+            source.append("            super(M").append(index).append(");\n");
+            for (int p = 0; p < parameters.size(); p++) {
+                source.append("            this.a").append(p).append(" = a").append(p).append(";\n");
+            }
+            source.append("        }\n");
+        }
+
+        source.append("\n        @Override\n");
+        source.append("        protected void writeArguments(java.io.ObjectOutput out) throws java.io.IOException {\n");
+        for (int p = 0; p < parameters.size(); p++) {
+            source.append("            ").append(write(parameters.get(p).asType(), "a" + p)).append(";\n");
+        }
+        source.append("        }\n");
+
+        source.append("\n        @Override\n");
+        source.append("        protected void readArguments(java.io.ObjectInput in)\n");
+        source.append("                throws java.io.IOException, ClassNotFoundException {\n");
+        for (int p = 0; p < parameters.size(); p++) {
+            source.append("            a").append(p).append(" = ").append(read(parameters.get(p).asType()))
+                    .append(";\n");
+        }
+        source.append("        }\n");
+
+        source.append("\n        @Override\n        protected Object[] getArguments() {\n");
+        source.append("            return new Object[] {").append(arguments).append("};\n        }\n");
+
+        source.append("\n        @Override\n        protected void call(").append(interfaceName)
+                .append(" target) throws Throwable {\n            ");
+        source.append(returns ? "result = " : "").append("target.").append(method.getSimpleName()).append('(')
+                .append(arguments).append(");\n        }\n");
+
+        source.append("\n        @Override\n");
+        source.append("        protected void writeResult(java.io.ObjectOutput out) throws java.io.IOException {\n");
+        if (returns) {
+            source.append("            ").append(write(returnType, "result")).append(";\n");
+        }
+        source.append("        }\n");
+
+        source.append("\n        @Override\n");
+        source.append("        protected void readResult(java.io.ObjectInput in)\n");
+        source.append("                throws java.io.IOException, ClassNotFoundException {\n");
+        if (returns) {
+            source.append("            result = ").append(read(returnType)).append(";\n");
+        }
+        source.append("        }\n");
+
+        source.append("\n        @Override\n        protected void setArguments(Object[] args) {\n");
+        for (int p = 0; p < parameters.size(); p++) {
+            source.append("            a").append(p).append(" = ").append(cast(parameters.get(p).asType()))
+                    .append("args[").append(p).append("];\n");
+        }
+        source.append("        }\n");
+
+        source.append("\n        @Override\n        protected Object getResult() {\n");
+        source.append("            return ").append(returns ? "result" : "null").append(";\n        }\n");
+
+        source.append("\n        @Override\n        protected void setResult(Object value) {\n");
+        if (returns) {
+            source.append("            result = ").append(cast(returnType)).append("value;\n");
+        }
+        source.append("        }\n    }\n");
+    }
+
+    /**
+     * Gets the exception types a stub method rethrows unchanged: the declared checked exceptions, plus
+     * <code>RuntimeException</code> and <code>Error</code>, without types covered by another in the list.
+     *
+     * @param thrown The declared exceptions.
+     * @return The types, or null if the method declares <code>Throwable</code> and needs no wrapping.
+     */
+    private List<TypeMirror> rethrown(List<? extends TypeMirror> thrown) {
+        Types types = processingEnv.getTypeUtils();
+        Elements elements = processingEnv.getElementUtils();
+        TypeMirror throwable = elements.getTypeElement("java.lang.Throwable").asType();
+
+        List<TypeMirror> candidates = new ArrayList<>();
+        candidates.add(elements.getTypeElement("java.lang.RuntimeException").asType());
+        candidates.add(elements.getTypeElement("java.lang.Error").asType());
+        for (TypeMirror type : thrown) {
+            if (types.isSameType(types.erasure(type), throwable)) {
+                return null;
+            }
+            candidates.add(type);
+        }
+
+        List<TypeMirror> minimal = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            boolean covered = false;
+            for (int j = 0; j < candidates.size() && !covered; j++) {
+                if (i == j) {
+                    continue;
+                }
+                TypeMirror a = types.erasure(candidates.get(i));
+                TypeMirror b = types.erasure(candidates.get(j));
+                covered = types.isSubtype(a, b) && (!types.isSameType(a, b) || j < i);
+            }
+            if (!covered) {
+                minimal.add(candidates.get(i));
+            }
+        }
+        return minimal;
+    }
+
+    /**
+     * Gets the class literals of the erased parameter types of a method.
+     *
+     * @param method The method.
+     * @return The literals, separated by commas.
+     */
+    private String parameterClasses(ExecutableElement method) {
+        StringBuilder classes = new StringBuilder();
+        for (VariableElement parameter : method.getParameters()) {
+            if (classes.length() > 0) {
+                classes.append(", ");
+            }
+            classes.append(processingEnv.getTypeUtils().erasure(parameter.asType())).append(".class");
+        }
+        return classes.toString();
+    }
+
+    /**
+     * Gets the erased parameter types of a method, to tell overloads apart.
+     *
+     * @param method The method.
+     * @return The types, separated by commas.
+     */
+    private String erasedParameters(ExecutableElement method) {
+        StringBuilder erased = new StringBuilder();
+        for (VariableElement parameter : method.getParameters()) {
+            erased.append(processingEnv.getTypeUtils().erasure(parameter.asType())).append(',');
+        }
+        return erased.toString();
+    }
+
+    /**
+     * Gets the component type of the array type of a variable-arity parameter.
+     *
+     * @param type The array type.
+     * @return The component type.
+     */
+    private static TypeMirror componentType(TypeMirror type) {
+        return ((ArrayType) type).getComponentType();
+    }
+
+    /**
+     * Gets the cast of a value coming out of an <code>Object</code> to a type: to the wrapper class of a
+     * primitive type, which is then unboxed, and to any other type but <code>Object</code> itself, which
+     * needs no cast; generic types are narrowed by an unchecked cast.
+     *
+     * @param type The type.
+     * @return The cast, followed by a space, or an empty string.
+     */
+    private String cast(TypeMirror type) {
+        Types types = processingEnv.getTypeUtils();
+        if (type.getKind().isPrimitive()) {
+            return "(" + types.boxedClass(types.getPrimitiveType(type.getKind())).getQualifiedName() + ") ";
+        }
+        TypeElement object = processingEnv.getElementUtils().getTypeElement("java.lang.Object");
+        return types.isSameType(type, object.asType()) ? "" : "(" + type + ") ";
+    }
+
+    /**
+     * Gets the statement writing a value with the <code>ObjectOutput</code> method of its type.
+     *
+     * @param type  The type of the value.
+     * @param value The expression of the value.
+     * @return The statement, without its semicolon.
+     */
+    private static String write(TypeMirror type, String value) {
+        String primitive = primitiveName(type);
+        return primitive == null ? "out.writeObject(" + value + ")" : "out.write" + primitive + "(" + value + ")";
+    }
+
+    /**
+     * Gets the expression reading a value written by <code>write</code>.
+     *
+     * @param type The type of the value.
+     * @return The expression.
+     */
+    private String read(TypeMirror type) {
+        String primitive = primitiveName(type);
+        return primitive == null ? cast(type) + "in.readObject()" : "in.read" + primitive + "()";
+    }
+
+    /**
+     * Gets the name a primitive type has in the methods of <code>DataOutput</code> and
+     * <code>DataInput</code>.
+     *
+     * @param type The type.
+     * @return The name, such as <code>Int</code>, or null if the type is not primitive.
+     */
+    private static String primitiveName(TypeMirror type) {
+        if (!type.getKind().isPrimitive()) {
+            return null;
+        }
+        String name = type.getKind().name();
+        return name.charAt(0) + name.substring(1).toLowerCase();
+    }
+
+    /**
+     * Starts a generated source file.
+     *
+     * @param packageName The package, empty for the unnamed package.
+     * @return The source so far.
+     */
+    private static StringBuilder header(String packageName) {
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        return source;
+    }
+
+    /**
+     * Writes a generated source file.
+     *
+     * @param type        The interface the class is generated for.
+     * @param packageName The package.
+     * @param className   The simple class name.
+     * @param source      The source.
+     * @throws IOException If the file cannot be written.
+     */
+    private void write(TypeElement type, String packageName, String className, String source) throws IOException {
+        Filer filer = processingEnv.getFiler();
+        String name = packageName.isEmpty() ? className : packageName + "." + className;
+        try (Writer writer = filer.createSourceFile(name, type).openWriter()) {
+            writer.write(source);
+        }
+    }
+}
@@ -21,7 +21,8 @@ public class Lab1CheckpointTests {
 
     /** Runs the tests.
 
-        @param arguments Ignored.
+        @param arguments <code>--parallel [n]</code> to run up to
+                         <code>n</code> tests at the same time.
      */
     public static void main(String[] arguments) {
 
@@ -38,7 +39,8 @@ public class Lab1CheckpointTests {
         points.put("test.remote.TestCheckpoint_ServiceRuns", 20);
         
         Series series = new Series(tests, runsOfEachTest);
-        SeriesReport report = series.run(3, System.out);
+        SeriesReport report = series.run(3, System.out,
+                                         TestUtil.parallelism(arguments));
 
         // Print the report and exit with an appropriate exit status.
         report.print(System.out, points, runsOfEachTest);
@@ -0,0 +1,46 @@
+package test;
+
+import test.util.*;
+
+/** Runs the performance regression tests on lab 1 remote library.
+
+    <p>
+    Tests performed are:
+    <ul>
+    <li>{@link test.remote.TestPerf_Latency}</li>
+    <li>{@link test.remote.TestPerf_Throughput}</li>
+    <li>{@link test.remote.TestPerf_LossyCompletion}</li>
+    </ul>
+
+    <p>
+    Each test compares its measurements with the baselines in
+    <code>test/perf-baselines.properties</code> and appends them to
+    <code>perf-results.jsonl</code>; see {@link test.util.PerfBaselines} for
+    the system properties that change the files, the tolerance, or record new
+    baselines. The tests are always run one at a time, so that they do not
+    disturb each other's measurements.
+ */
+public class Lab1PerfTests {
+
+    /** Runs the tests.
+
+        @param arguments Ignored.
+     */
+    public static void main(String[] arguments) {
+
+        // Create the test list, the series object, and run the test series.
+        @SuppressWarnings("unchecked")
+        Class<? extends Test>[] tests = new Class[] {
+            test.remote.TestPerf_Latency.class,
+            test.remote.TestPerf_Throughput.class,
+            test.remote.TestPerf_LossyCompletion.class
+        };
+
+        Series series = new Series(tests, 1);
+        SeriesReport report = series.run(60, System.out);
+
+        // Print the report and exit with an appropriate exit status.
+        report.print(System.out);
+        System.exit(report.successful() ? 0 : 2);
+    }
+}
@@ -19,6 +19,29 @@ import java.util.Map;
     <li>{@link test.remote.TestFinal_Reconnection}</li>
     <li>{@link test.remote.TestFinal_Multithread}</li>
     <li>{@link test.remote.TestFinal_Mismatch}</li>
+    <li>{@link test.remote.TestFinal_Drain}</li>
+    <li>{@link test.remote.TestFinal_StaleConnections}</li>
+    <li>{@link test.remote.TestFinal_LocalCalls}</li>
+    <li>{@link test.remote.TestFinal_ExceptionEncoding}</li>
+    <li>{@link test.remote.TestFinal_UnixSocket}</li>
+    <li>{@link test.remote.TestFinal_SharedMemory}</li>
+    <li>{@link test.remote.TestFinal_GeneratedStubs}</li>
+    <li>{@link test.application.TestFinal_LogRecovery}</li>
+    <li>{@link test.application.TestFinal_Failover}</li>
+    <li>{@link test.application.TestFinal_ReplicationBacklog}</li>
+    <li>{@link test.application.TestFinal_ConcurrentAssign}</li>
+    <li>{@link test.application.TestFinal_Sharding}</li>
+    <li>{@link test.application.TestFinal_Pagination}</li>
+    <li>{@link test.application.TestFinal_BulkOperations}</li>
+    <li>{@link test.application.TestFinal_ChangeFeed}</li>
+    <li>{@link test.application.TestFinal_TaskSerialization}</li>
+    <li>{@link test.application.TestFinal_IntTaskMap}</li>
+    <li>{@link test.application.TestFinal_OffHeapTasks}</li>
+    <li>{@link test.application.TestFinal_TaskSearch}</li>
+    <li>{@link test.application.TestFinal_BatchRunner}</li>
+    <li>{@link test.util.TestFinal_Series}</li>
+    <li>{@link test.remote.TestFinal_AsyncLog}</li>
+    <li>{@link test.remote.TestFinal_TransportPresets}</li>
     </ul>
  */
 public class Lab1Tests {
@@ -28,7 +51,8 @@ public class Lab1Tests {
 
     /** Runs the tests.
 
-        @param arguments Ignored.
+        @param arguments <code>--parallel [n]</code> to run up to
+                         <code>n</code> tests at the same time.
      */
     public static void main(String[] arguments) {
 
@@ -43,7 +67,30 @@ public class Lab1Tests {
             test.remote.TestFinal_LossyConnection.class,
             test.remote.TestFinal_Reconnection.class,
             test.remote.TestFinal_Multithread.class,
-            test.remote.TestFinal_Mismatch.class
+            test.remote.TestFinal_Mismatch.class,
+            test.remote.TestFinal_Drain.class,
+            test.remote.TestFinal_StaleConnections.class,
+            test.remote.TestFinal_LocalCalls.class,
+            test.remote.TestFinal_ExceptionEncoding.class,
+            test.remote.TestFinal_UnixSocket.class,
+            test.remote.TestFinal_SharedMemory.class,
+            test.remote.TestFinal_GeneratedStubs.class,
+            test.application.TestFinal_LogRecovery.class,
+            test.application.TestFinal_Failover.class,
+            test.application.TestFinal_ReplicationBacklog.class,
+            test.application.TestFinal_ConcurrentAssign.class,
+            test.application.TestFinal_Sharding.class,
+            test.application.TestFinal_Pagination.class,
+            test.application.TestFinal_BulkOperations.class,
+            test.application.TestFinal_ChangeFeed.class,
+            test.application.TestFinal_TaskSerialization.class,
+            test.application.TestFinal_IntTaskMap.class,
+            test.application.TestFinal_OffHeapTasks.class,
+            test.application.TestFinal_TaskSearch.class,
+            test.application.TestFinal_BatchRunner.class,
+            test.util.TestFinal_Series.class,
+            test.remote.TestFinal_AsyncLog.class,
+            test.remote.TestFinal_TransportPresets.class
         };
 
         Map<String, Integer> points = new HashMap<>();
@@ -57,9 +104,33 @@ public class Lab1Tests {
         points.put("test.remote.TestFinal_Reconnection", 15);
         points.put("test.remote.TestFinal_Multithread", 20);
         points.put("test.remote.TestFinal_Mismatch", 20);
+        points.put("test.remote.TestFinal_Drain", 10);
+        points.put("test.remote.TestFinal_StaleConnections", 10);
+        points.put("test.remote.TestFinal_LocalCalls", 10);
+        points.put("test.remote.TestFinal_ExceptionEncoding", 10);
+        points.put("test.remote.TestFinal_UnixSocket", 10);
+        points.put("test.remote.TestFinal_SharedMemory", 10);
+        points.put("test.remote.TestFinal_GeneratedStubs", 10);
+        points.put("test.application.TestFinal_LogRecovery", 10);
+        points.put("test.application.TestFinal_Failover", 10);
+        points.put("test.application.TestFinal_ReplicationBacklog", 10);
+        points.put("test.application.TestFinal_ConcurrentAssign", 10);
+        points.put("test.application.TestFinal_Sharding", 10);
+        points.put("test.application.TestFinal_Pagination", 10);
+        points.put("test.application.TestFinal_BulkOperations", 10);
+        points.put("test.application.TestFinal_ChangeFeed", 10);
+        points.put("test.application.TestFinal_TaskSerialization", 10);
+        points.put("test.application.TestFinal_IntTaskMap", 10);
+        points.put("test.application.TestFinal_OffHeapTasks", 10);
+        points.put("test.application.TestFinal_TaskSearch", 10);
+        points.put("test.application.TestFinal_BatchRunner", 10);
+        points.put("test.util.TestFinal_Series", 10);
+        points.put("test.remote.TestFinal_AsyncLog", 10);
+        points.put("test.remote.TestFinal_TransportPresets", 10);
         
         Series series = new Series(tests, runsOfEachTest);
-        SeriesReport report = series.run(30, System.out);
+        SeriesReport report = series.run(30, System.out,
+                                         TestUtil.parallelism(arguments));
 
         // Print the report and exit with an appropriate exit status.
         report.print(System.out, points, runsOfEachTest);
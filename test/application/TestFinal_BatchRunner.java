@@ -0,0 +1,205 @@
+package test.application;
+
+import test.util.*;
+import application.*;
+import remote.RemoteObjectException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Checks that batch scripts run commands in parallel lanes without breaking
+    the order the script implies.
+
+    <p>
+    The test runs a script of assignments and reads on a task manager that
+    records when each call starts and ends, and makes each call take a few
+    milliseconds. It checks that:
+    <ul>
+    <li>Every read starts after the writes before it in the script have ended,
+        and every write after the reads before it.</li>
+    <li>Writes to the same task run in script order, so each task ends up
+        with the last assignee of the script.</li>
+    <li>Some calls still run at the same time.</li>
+    <li>Commands that fail are counted, and blank lines and comments are
+        skipped.</li>
+    </ul>
+ */
+public class TestFinal_BatchRunner extends Test {
+    /** Test notice. */
+    public static final String notice = "checking batch script ordering";
+
+    /** Number of tasks written to. */
+    private static final int TASKS = 6;
+    /** Number of lanes. */
+    private static final int LANES = 4;
+
+    /** The script, deleted when the test ends. */
+    private Path script;
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws Throwable {
+        RecordingManager manager = new RecordingManager();
+        int[] ids = new int[TASKS];
+        for(int i = 0; i < TASKS; i++)
+            ids[i] = manager.createTask("task " + i, "scripted");
+
+        // Bursts of writes to every task, each followed by a burst of reads.
+        List<String> lines = new ArrayList<>();
+        String[] last = new String[TASKS];
+        lines.add("# assignments and reads");
+        for(int round = 0; round < 6; round++) {
+            for(int repeat = 0; repeat < 2; repeat++) {
+                for(int i = 0; i < TASKS; i++) {
+                    last[i] = "u" + lines.size();
+                    lines.add("ASSIGN " + ids[i] + " " + last[i]);
+                }
+            }
+            lines.add("");
+            for(int read = 0; read < LANES; read++) {
+                lines.add((read % 2 == 0 ? "GET_ASSIGNED_TASKS r" : "QUERY r") + lines.size() +
+                          (read % 2 == 0 ? "" : " ANY"));
+            }
+        }
+        lines.add("ASSIGN 999999 nobody");
+        lines.add("UNKNOWN_COMMAND");
+        script = Files.createTempFile("batch", ".txt");
+        Files.write(script, lines, StandardCharsets.UTF_8);
+
+        task("running the script");
+        int failures = new BatchRunner(manager, LANES, false).run(script);
+        if(failures != 2)
+            throw new TestFailed("batch runner counted " + failures + " failures instead of 2");
+        task();
+
+        task("checking the order of the calls");
+        List<String> calls = new ArrayList<>();
+        for(String line : lines) {
+            String[] words = line.split(" ");
+            if(words[0].equals("ASSIGN") && !words[1].equals("999999"))
+                calls.add(line);
+            else if(words[0].equals("GET_ASSIGNED_TASKS") || words[0].equals("QUERY"))
+                calls.add(words[0] + " " + words[1]);
+        }
+        for(int later = 0; later < calls.size(); later++) {
+            long[] run = manager.interval(calls.get(later));
+            for(int earlier = 0; earlier < later; earlier++) {
+                boolean earlierWrites = calls.get(earlier).startsWith("ASSIGN");
+                boolean laterWrites = calls.get(later).startsWith("ASSIGN");
+                boolean sameTask = earlierWrites && laterWrites &&
+                    calls.get(earlier).split(" ")[1].equals(calls.get(later).split(" ")[1]);
+                if((earlierWrites != laterWrites || sameTask) &&
+                   manager.interval(calls.get(earlier))[1] > run[0])
+                    throw new TestFailed(calls.get(later) + " started before " + calls.get(earlier) +
+                                         " ended");
+            }
+        }
+        List<Task> tasks = manager.getTasks(ids);
+        for(int i = 0; i < TASKS; i++) {
+            if(!last[i].equals(tasks.get(i).getAssignee()))
+                throw new TestFailed("task " + ids[i] + " assigned to " + tasks.get(i).getAssignee() +
+                                     " instead of " + last[i]);
+        }
+        if(manager.maxInFlight.get() < 2)
+            throw new TestFailed("batch runner ran one command at a time");
+        task();
+    }
+
+    /** Deletes the script. */
+    @Override
+    protected void clean() {
+        try {
+            if(script != null)
+                Files.deleteIfExists(script);
+        } catch(Exception e) {
+        }
+    }
+
+    /** Task manager recording the start and end of assignments and reads,
+        each of which takes a few milliseconds. */
+    private static class RecordingManager extends TasksManagerExecutor {
+        /** Counter ordering the starts and ends of calls. */
+        final AtomicLong clock = new AtomicLong();
+        /** Start and end of each call, by the words of its command. */
+        final Map<String, long[]> calls = new ConcurrentHashMap<>();
+        /** Number of calls running. */
+        final AtomicInteger inFlight = new AtomicInteger();
+        /** Largest number of calls seen running at the same time. */
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        @Override
+        public void assignTask(int id, String assignee) throws RemoteObjectException, TaskNotFoundException {
+            long start = begin();
+            try {
+                super.assignTask(id, assignee);
+            } finally {
+                end("ASSIGN " + id + " " + assignee, start);
+            }
+        }
+
+        @Override
+        public List<Task> getAssignedTasks(String assignee) throws RemoteObjectException {
+            long start = begin();
+            try {
+                return super.getAssignedTasks(assignee);
+            } finally {
+                end("GET_ASSIGNED_TASKS " + assignee, start);
+            }
+        }
+
+        @Override
+        public TaskPage queryTasks(String assignee, TaskStatus status, int cursor, int limit)
+            throws RemoteObjectException {
+            long start = begin();
+            try {
+                return super.queryTasks(assignee, status, cursor, limit);
+            } finally {
+                end("QUERY " + assignee, start);
+            }
+        }
+
+        /** Records the start of a call and lets it take some time.
+
+            @return The time of the start.
+         */
+        private long begin() {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            long start = clock.incrementAndGet();
+            try {
+                Thread.sleep(3);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return start;
+        }
+
+        /** Records the end of a call.
+
+            @param call The words of the command.
+            @param start The time of the start.
+         */
+        private void end(String call, long start) {
+            calls.put(call, new long[] { start, clock.incrementAndGet() });
+            inFlight.decrementAndGet();
+        }
+
+        /** Gets the start and end of a call.
+
+            @param call The words of the command.
+            @return The start and end.
+            @throws TestFailed If the call was not made.
+         */
+        long[] interval(String call) throws TestFailed {
+            long[] interval = calls.get(call);
+            if(interval == null)
+                throw new TestFailed(call + " never ran");
+            return interval;
+        }
+    }
+}
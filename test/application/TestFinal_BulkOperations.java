@@ -0,0 +1,228 @@
+package test.application;
+
+import test.util.*;
+import application.*;
+import remote.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Checks that bulk operations report the outcome of each item.
+
+    <p>
+    The test runs on a local <code>TasksManagerExecutor</code>, on a stub of a
+    remote one, and on a <code>ShardedTasksManager</code> over two shards,
+    which splits each request between them. With requests that mix existing
+    and missing ids, it checks that:
+    <ul>
+    <li>Tasks created in bulk get distinct ids, in the order of their
+        titles.</li>
+    <li>Bulk assignments and status updates fail for the missing ids only,
+        with the message the single-task operation would throw, and still
+        apply to the existing ids.</li>
+    <li>Tasks fetched in bulk come back in the order of the ids, with null for
+        missing ids.</li>
+    <li>Requests giving a number of values other than the number of ids are
+        rejected.</li>
+    </ul>
+ */
+public class TestFinal_BulkOperations extends Test {
+    /** Test notice. */
+    public static final String notice = "checking bulk task operations";
+
+    /** Number of tasks created in bulk. */
+    private static final int TASKS = 10;
+
+    /** Services of the remote task managers. */
+    private final List<Service<TasksManager>> services = new ArrayList<>();
+    /** Address of the remote task manager. */
+    private String address;
+    /** Sharding stub. */
+    private ShardedTasksManager sharded;
+
+    /** Initializes the test. */
+    @Override
+    protected void initialize() throws TestFailed {
+        address = start(new TasksManagerExecutor());
+        List<String> addresses = new ArrayList<>();
+        int[] ports = new int[2];
+        for(int shard = 0; shard < ports.length; shard++) {
+            ports[shard] = TestUtil.allocatePort();
+            addresses.add("127.0.0.1:" + ports[shard]);
+        }
+        ShardRing ring = new ShardRing(addresses);
+        for(int shard = 0; shard < ports.length; shard++)
+            start(new TasksManagerExecutor(ring.ownership(shard)), ports[shard]);
+        sharded = new ShardedTasksManager(addresses);
+    }
+
+    /** Starts a service for a task manager on a new port.
+
+        @param manager The task manager.
+        @return The address of the service.
+        @throws TestFailed If the service cannot be started.
+     */
+    private String start(TasksManager manager) throws TestFailed {
+        int port = TestUtil.allocatePort();
+        start(manager, port);
+        return "127.0.0.1:" + port;
+    }
+
+    /** Starts a service for a task manager.
+
+        @param manager The task manager.
+        @param port The port of the service.
+        @throws TestFailed If the service cannot be started.
+     */
+    private void start(TasksManager manager, int port) throws TestFailed {
+        Service<TasksManager> service = new Service<>(TasksManager.class, manager, port);
+        // Test the connection, not direct calls within the test's virtual machine.
+        service.setLocalCalls(false);
+        service.setSerializeCalls(false);
+        services.add(service);
+        try {
+            service.start();
+        } catch(Throwable t) {
+            throw new TestFailed("unable to start service", t);
+        }
+    }
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws Throwable {
+        TasksManagerExecutor local = new TasksManagerExecutor();
+        check("a local task manager", local);
+        check("a remote task manager", StubFactory.create(TasksManager.class, address));
+        check("a sharded task manager", sharded);
+
+        task("rejecting requests of mismatched sizes");
+        int[] ids = local.createTasks(List.of("a", "b"), List.of("a", "b"));
+        try {
+            local.createTasks(List.of("a", "b"), List.of("a"));
+            throw new TestFailed("titles without descriptions accepted");
+        } catch(IllegalArgumentException e) {
+        }
+        try {
+            local.assignTasks(ids, List.of("ann"));
+            throw new TestFailed("ids without assignees accepted");
+        } catch(IllegalArgumentException e) {
+        }
+        try {
+            local.updateStatuses(ids, List.of(TaskStatus.OPEN, TaskStatus.OPEN, TaskStatus.OPEN));
+            throw new TestFailed("more statuses than ids accepted");
+        } catch(IllegalArgumentException e) {
+        }
+        task();
+    }
+
+    /** Checks the bulk operations of one task manager.
+
+        @param name The name of the task manager, for messages.
+        @param manager The task manager, without tasks.
+        @throws Throwable If a check fails.
+     */
+    private void check(String name, TasksManager manager) throws Throwable {
+        task("creating tasks in bulk through " + name);
+        List<String> titles = new ArrayList<>();
+        for(int i = 0; i < TASKS; i++)
+            titles.add("task " + i);
+        int[] created = manager.createTasks(titles, Collections.nCopies(TASKS, "bulk"));
+        Set<Integer> distinct = new HashSet<>();
+        for(int id : created) {
+            if(!distinct.add(id))
+                throw new TestFailed(name + " gave id " + id + " to two tasks");
+        }
+        List<Task> tasks = manager.getTasks(created);
+        for(int i = 0; i < TASKS; i++) {
+            if(!titles.get(i).equals(tasks.get(i).getTitle()))
+                throw new TestFailed(name + " created " + tasks.get(i) + " for " + titles.get(i));
+        }
+        task();
+
+        task("applying bulk updates with missing ids through " + name);
+        int missing = 0;
+        while(distinct.contains(missing))
+            missing++;
+        String notFound;
+        try {
+            manager.assignTask(missing, "ann");
+            throw new TestFailed(name + " assigned missing task " + missing);
+        } catch(TaskNotFoundException e) {
+            notFound = e.getMessage();
+        }
+        // Every third item names the missing task.
+        int[] ids = new int[TASKS];
+        List<String> assignees = new ArrayList<>();
+        List<TaskStatus> statuses = new ArrayList<>();
+        for(int i = 0; i < TASKS; i++) {
+            ids[i] = i % 3 == 1 ? missing : created[i];
+            assignees.add("user " + i);
+            statuses.add(TaskStatus.IN_PROGRESS);
+        }
+        expectFailures(name, "assignment", manager.assignTasks(ids, assignees), ids, missing, notFound);
+        expectFailures(name, "status update", manager.updateStatuses(ids, statuses), ids, missing,
+                       notFound);
+        task();
+
+        task("fetching tasks in bulk with missing ids through " + name);
+        List<Task> fetched = manager.getTasks(ids);
+        if(fetched.size() != TASKS)
+            throw new TestFailed(name + " fetched " + fetched.size() + " tasks for " + TASKS + " ids");
+        for(int i = 0; i < TASKS; i++) {
+            Task task = fetched.get(i);
+            if(ids[i] == missing) {
+                if(task != null)
+                    throw new TestFailed(name + " fetched " + task + " for missing id " + missing);
+                continue;
+            }
+            if(task == null || task.getId() != ids[i])
+                throw new TestFailed(name + " did not fetch task " + ids[i] + " in place");
+            if(!assignees.get(i).equals(task.getAssignee()) || task.getStatus() != TaskStatus.IN_PROGRESS)
+                throw new TestFailed(name + " did not apply the bulk updates to " + task);
+        }
+        task();
+    }
+
+    /** Checks the per-item results of a bulk update.
+
+        @param name The name of the task manager, for messages.
+        @param operation The name of the operation, for messages.
+        @param result The result.
+        @param ids The ids of the request.
+        @param missing The missing id.
+        @param notFound The message expected for the missing id.
+        @throws TestFailed If the result is incorrect.
+     */
+    private static void expectFailures(String name, String operation, BulkResult result, int[] ids,
+                                       int missing, String notFound) throws TestFailed {
+        if(result.size() != ids.length)
+            throw new TestFailed(name + " gave " + result.size() + " results of bulk " + operation +
+                                 " for " + ids.length + " ids");
+        int failures = 0;
+        for(int i = 0; i < ids.length; i++) {
+            if(ids[i] == missing) {
+                failures++;
+                if(result.isSuccess(i) || !notFound.equals(result.getError(i)))
+                    throw new TestFailed(name + " reported " + result.getError(i) + " for item " + i +
+                                         " of bulk " + operation + " instead of " + notFound);
+            } else if(!result.isSuccess(i) || result.getError(i) != null) {
+                throw new TestFailed(name + " failed item " + i + " of bulk " + operation + ": " +
+                                     result.getError(i));
+            }
+        }
+        if(result.getFailureCount() != failures)
+            throw new TestFailed(name + " counted " + result.getFailureCount() + " failures of bulk " +
+                                 operation + " instead of " + failures);
+    }
+
+    /** Stops the sharding stub and the services. */
+    @Override
+    protected void clean() {
+        if(sharded != null)
+            sharded.close();
+        for(Service<TasksManager> service : services)
+            service.stop();
+    }
+}
@@ -0,0 +1,359 @@
+package test.application;
+
+import test.util.*;
+import application.*;
+import remote.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/** Checks that subscribers polling for task changes receive every change
+    once, are woken by the changes they watch, and see a gap when changes are
+    lost.
+
+    <p>
+    The test checks that:
+    <ul>
+    <li>A poll from <code>NOW</code> returns the current sequence number, and a
+        poll after it returns the changes made since.</li>
+    <li>A long-polling subscriber reading alongside concurrent publishers
+        receives every change once, in sequence order, and ends with the
+        final state of each task.</li>
+    <li>A subscriber watching an assignee is woken by a change of a task
+        assigned to or taken from the assignee, not by other changes.</li>
+    <li>A subscriber whose changes were overwritten once the feed wrapped past
+        <code>TaskChangeFeed.DEFAULT_CAPACITY</code> changes, or were discarded
+        when a backup received the whole state, sees a gap.</li>
+    <li>A sharded task manager reports a gap for a cursor it does not know, and
+        delivers changes of all shards to a subscriber polling from
+        <code>NOW</code>.</li>
+    </ul>
+ */
+public class TestFinal_ChangeFeed extends Test {
+    /** Test notice. */
+    public static final String notice = "checking task change feeds";
+
+    /** Number of publishing threads. */
+    private static final int PUBLISHERS = 4;
+    /** Number of changes made by each publisher. */
+    private static final int WRITES = 2000;
+    /** How long subscribers wait in one poll, in milliseconds. */
+    private static final long WAIT = 5000;
+
+    /** Services of the shards. */
+    private final List<Service<TasksManager>> services = new ArrayList<>();
+    /** Sharding stub. */
+    private ShardedTasksManager sharded;
+
+    /** Initializes the test. */
+    @Override
+    protected void initialize() throws TestFailed {
+        List<String> addresses = new ArrayList<>();
+        int[] ports = new int[2];
+        for(int shard = 0; shard < ports.length; shard++) {
+            ports[shard] = TestUtil.allocatePort();
+            addresses.add("127.0.0.1:" + ports[shard]);
+        }
+        ShardRing ring = new ShardRing(addresses);
+        for(int shard = 0; shard < ports.length; shard++) {
+            Service<TasksManager> service = new Service<>(
+                TasksManager.class, new TasksManagerExecutor(ring.ownership(shard)), ports[shard]);
+            // Test the connection, not direct calls within the test's virtual machine.
+            service.setLocalCalls(false);
+            service.setSerializeCalls(false);
+            services.add(service);
+            try {
+                service.start();
+            } catch(Throwable t) {
+                throw new TestFailed("unable to start shard service", t);
+            }
+        }
+        sharded = new ShardedTasksManager(addresses);
+    }
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws Throwable {
+        task("polling from now");
+        TasksManagerExecutor manager = new TasksManagerExecutor();
+        TaskChangeBatch now = manager.pollChanges(null, null, TaskChangeBatch.NOW, 0);
+        if(now.isGap() || !now.getChanges().isEmpty())
+            throw new TestFailed("poll from now returned " + now);
+        int id = manager.createTask("first", "polled");
+        TaskChangeBatch created = manager.pollChanges(null, null, now.getLastSequence(), WAIT);
+        if(created.isGap() || created.getChanges().size() != 1 ||
+           created.getChanges().get(0).getTask().getId() != id ||
+           created.getChanges().get(0).getPreviousStatus() != null ||
+           created.getLastSequence() != created.getChanges().get(0).getSequence())
+            throw new TestFailed("poll after creating a task returned " + created);
+        TaskChangeBatch idle = manager.pollChanges(null, null, created.getLastSequence(), 0);
+        if(idle.isGap() || !idle.getChanges().isEmpty() ||
+           idle.getLastSequence() != created.getLastSequence())
+            throw new TestFailed("poll without changes returned " + idle);
+        task();
+
+        task("long polling alongside concurrent publishers");
+        checkConcurrentPublishers(manager, created.getLastSequence());
+        task();
+
+        task("waking subscribers by assignee");
+        checkWakeUps(manager);
+        task();
+
+        task("losing changes when the feed wraps");
+        long before = manager.pollChanges(null, null, TaskChangeBatch.NOW, 0).getLastSequence();
+        for(int i = 0; i <= TaskChangeFeed.DEFAULT_CAPACITY; i++)
+            manager.updateStatus(id, TaskStatus.values()[i % TaskStatus.values().length]);
+        TaskChangeBatch wrapped = manager.pollChanges(null, null, before, WAIT);
+        if(!wrapped.isGap() || !wrapped.getChanges().isEmpty())
+            throw new TestFailed("poll after the feed wrapped returned " + wrapped);
+        TaskChangeBatch resumed = manager.pollChanges(null, null, wrapped.getLastSequence(), 0);
+        if(resumed.isGap())
+            throw new TestFailed("poll after a gap reported another gap");
+        task();
+
+        task("losing changes when a backup receives the whole state");
+        checkDiscardedHistory();
+        task();
+
+        task("polling a sharded task manager");
+        checkSharded();
+        task();
+    }
+
+    /** Checks that a long-polling subscriber receives every change of
+        concurrent publishers once.
+
+        @param manager The task manager.
+        @param after The sequence number of the last change made.
+        @throws Throwable If a check fails.
+     */
+    private static void checkConcurrentPublishers(TasksManagerExecutor manager, long after)
+        throws Throwable {
+        int[][] ids = new int[PUBLISHERS][];
+        for(int p = 0; p < PUBLISHERS; p++) {
+            ids[p] = new int[8];
+            for(int i = 0; i < ids[p].length; i++)
+                ids[p][i] = manager.createTask("task " + p + "." + i, "published");
+        }
+        long start = manager.pollChanges(null, null, TaskChangeBatch.NOW, 0).getLastSequence();
+        int expected = PUBLISHERS * WRITES;
+
+        List<TaskChange> received = new ArrayList<>();
+        Throwable[] failure = new Throwable[1];
+        Thread subscriber = new Thread(() -> {
+            try {
+                long cursor = start;
+                while(received.size() < expected) {
+                    TaskChangeBatch batch = manager.pollChanges(null, null, cursor, WAIT);
+                    if(batch.isGap())
+                        throw new TestFailed("subscriber saw a gap after " + received.size() + " changes");
+                    if(batch.getChanges().isEmpty())
+                        throw new TestFailed("subscriber timed out after " + received.size() + " changes");
+                    received.addAll(batch.getChanges());
+                    cursor = batch.getLastSequence();
+                }
+            } catch(Throwable t) {
+                failure[0] = t;
+            }
+        });
+        subscriber.start();
+
+        List<Thread> publishers = new ArrayList<>();
+        for(int p = 0; p < PUBLISHERS; p++) {
+            int[] own = ids[p];
+            Thread publisher = new Thread(() -> {
+                try {
+                    for(int i = 0; i < WRITES; i++) {
+                        int target = own[i % own.length];
+                        if(i % 2 == 0)
+                            manager.assignTask(target, "user " + i % 5);
+                        else
+                            manager.updateStatus(target, TaskStatus.values()[i % TaskStatus.values().length]);
+                    }
+                } catch(Throwable t) {
+                    synchronized(failure) {
+                        failure[0] = t;
+                    }
+                }
+            });
+            publishers.add(publisher);
+            publisher.start();
+        }
+        for(Thread publisher : publishers)
+            publisher.join();
+        subscriber.join();
+        synchronized(failure) {
+            if(failure[0] != null)
+                throw failure[0];
+        }
+
+        if(received.size() != expected)
+            throw new TestFailed("subscriber received " + received.size() + " changes instead of " +
+                                 expected);
+        Map<Integer, Task> last = new HashMap<>();
+        for(int i = 0; i < received.size(); i++) {
+            TaskChange change = received.get(i);
+            if(change.getSequence() != start + i + 1)
+                throw new TestFailed("change " + change.getSequence() + " received in place of " +
+                                     (start + i + 1));
+            last.put(change.getTask().getId(), change.getTask());
+        }
+        for(int[] own : ids) {
+            for(Task task : manager.getTasks(own)) {
+                Task seen = last.get(task.getId());
+                if(seen == null || !Objects.equals(seen.getAssignee(), task.getAssignee()) ||
+                   seen.getStatus() != task.getStatus())
+                    throw new TestFailed("last change of task " + task.getId() + " is " + seen +
+                                         " but the task is " + task);
+            }
+        }
+    }
+
+    /** Checks that a subscriber watching an assignee is only woken by changes
+        concerning the assignee.
+
+        @param manager The task manager.
+        @throws Throwable If a check fails.
+     */
+    private static void checkWakeUps(TasksManagerExecutor manager) throws Throwable {
+        int watched = manager.createTask("watched", "woken");
+        int other = manager.createTask("other", "ignored");
+        for(String[] step : new String[][] { { "ann", "assigning a task to" },
+                                              { "bob", "taking a task from" } }) {
+            long cursor = manager.pollChanges("ann", null, TaskChangeBatch.NOW, 0).getLastSequence();
+            Object[] result = new Object[1];
+            Thread subscriber = new Thread(() -> {
+                try {
+                    result[0] = manager.pollChanges("ann", null, cursor, WAIT);
+                } catch(Throwable t) {
+                    result[0] = t;
+                }
+            });
+            long started = System.nanoTime();
+            subscriber.start();
+            Thread.sleep(100);
+            manager.assignTask(other, "bob");
+            manager.updateStatus(other, TaskStatus.IN_PROGRESS);
+            Thread.sleep(100);
+            if(!subscriber.isAlive())
+                throw new TestFailed("subscriber of ann woken by " + result[0]);
+            manager.assignTask(watched, step[0]);
+            subscriber.join();
+            if(result[0] instanceof Throwable)
+                throw (Throwable)result[0];
+            TaskChangeBatch batch = (TaskChangeBatch)result[0];
+            if(batch.getChanges().size() != 1 ||
+               batch.getChanges().get(0).getTask().getId() != watched)
+                throw new TestFailed(step[1] + " ann returned " + batch);
+            if(System.nanoTime() - started > WAIT * 1_000_000L / 2)
+                throw new TestFailed("subscriber of ann not woken by " + step[1] + " ann");
+        }
+
+        long cursor = manager.pollChanges(null, TaskStatus.CLOSED, TaskChangeBatch.NOW, 0)
+            .getLastSequence();
+        manager.updateStatus(other, TaskStatus.OPEN);
+        manager.updateStatus(watched, TaskStatus.CLOSED);
+        TaskChangeBatch closed = manager.pollChanges(null, TaskStatus.CLOSED, cursor, WAIT);
+        if(closed.getChanges().size() != 1 || closed.getChanges().get(0).getTask().getId() != watched)
+            throw new TestFailed("subscriber of closed tasks received " + closed);
+    }
+
+    /** Checks that a subscriber of a backup sees a gap when the backup
+        receives the whole state.
+
+        @throws Throwable If a check fails.
+     */
+    private static void checkDiscardedHistory() throws Throwable {
+        ReplicatedTasksManager backup = new ReplicatedTasksManager(
+            ReplicatedTasksManager.Role.BACKUP, List.of(), ReplicatedTasksManager.Mode.ASYNC, 0);
+        try {
+            // The installed task is not assigned, so only the discarded history wakes the subscriber.
+            long cursor = backup.pollChanges("ann", null, TaskChangeBatch.NOW, 0).getLastSequence();
+            Object[] result = new Object[1];
+            Thread subscriber = new Thread(() -> {
+                try {
+                    result[0] = backup.pollChanges("ann", null, cursor, WAIT);
+                } catch(Throwable t) {
+                    result[0] = t;
+                }
+            });
+            long started = System.nanoTime();
+            subscriber.start();
+            Thread.sleep(100);
+            List<Task> tasks = new ArrayList<>();
+            TasksManagerExecutor source = new TasksManagerExecutor();
+            tasks.addAll(source.getTasks(new int[] { source.createTask("installed", "state") }));
+            backup.install(1, 1, tasks.get(0).getId(), tasks);
+            subscriber.join();
+            if(result[0] instanceof Throwable)
+                throw (Throwable)result[0];
+            TaskChangeBatch batch = (TaskChangeBatch)result[0];
+            if(!batch.isGap() || !batch.getChanges().isEmpty())
+                throw new TestFailed("poll across a state transfer returned " + batch);
+            if(System.nanoTime() - started > WAIT * 1_000_000L / 2)
+                throw new TestFailed("subscriber not woken by a state transfer");
+            if(!backup.pollChanges(null, null, cursor, 0).isGap())
+                throw new TestFailed("poll from before a state transfer returned no gap");
+        } finally {
+            backup.close();
+        }
+    }
+
+    /** Checks the cursors of a sharded task manager.
+
+        @throws Throwable If a check fails.
+     */
+    private void checkSharded() throws Throwable {
+        TaskChangeBatch unknown = sharded.pollChanges(null, null, 12345, WAIT);
+        if(!unknown.isGap() || !unknown.getChanges().isEmpty())
+            throw new TestFailed("poll from an unknown sharded cursor returned " + unknown);
+        TaskChangeBatch empty = sharded.pollChanges(null, null, unknown.getLastSequence(), 0);
+        if(empty.isGap() || !empty.getChanges().isEmpty())
+            throw new TestFailed("poll from the cursor given with a gap returned " + empty);
+
+        Object[] result = new Object[1];
+        Thread subscriber = new Thread(() -> {
+            try {
+                result[0] = sharded.pollChanges(null, null, TaskChangeBatch.NOW, WAIT);
+            } catch(Throwable t) {
+                result[0] = t;
+            }
+        });
+        subscriber.start();
+        Thread.sleep(200);
+        int[] ids = new int[] { sharded.createTask("a", "sharded"), sharded.createTask("b", "sharded") };
+        subscriber.join();
+        if(result[0] instanceof Throwable)
+            throw new TestFailed("poll of a sharded task manager from now failed", (Throwable)result[0]);
+
+        // Changes of the shard still waiting come with the next polls.
+        List<Integer> seen = new ArrayList<>();
+        TaskChangeBatch batch = (TaskChangeBatch)result[0];
+        for(int polls = 0; seen.size() < ids.length; polls++) {
+            if(batch.isGap())
+                throw new TestFailed("sharded poll from now reported a gap");
+            if(polls > 0 && batch.getChanges().isEmpty())
+                throw new TestFailed("sharded subscriber received " + seen + " of " + ids.length +
+                                     " changes");
+            for(TaskChange change : batch.getChanges())
+                seen.add(change.getTask().getId());
+            if(seen.size() < ids.length)
+                batch = sharded.pollChanges(null, null, batch.getLastSequence(), WAIT);
+        }
+        seen.sort(null);
+        if(!seen.equals(List.of(Math.min(ids[0], ids[1]), Math.max(ids[0], ids[1]))))
+            throw new TestFailed("sharded subscriber received changes of " + seen);
+    }
+
+    /** Stops the sharding stub and the shard services. */
+    @Override
+    protected void clean() {
+        if(sharded != null)
+            sharded.close();
+        for(Service<TasksManager> service : services)
+            service.stop();
+    }
+}
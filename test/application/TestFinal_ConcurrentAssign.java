@@ -0,0 +1,151 @@
+package test.application;
+
+import test.util.*;
+import application.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/** Checks that a task manager keeps its indexes consistent under concurrent
+    writes.
+
+    <p>
+    Several threads assign a small set of tasks to random assignees and give
+    them random statuses at the same time, while other threads read the tasks
+    of each assignee. The test checks that:
+    <ul>
+    <li>Readers only ever see tasks of the assignee they asked for.</li>
+    <li>Once the writers finish, each task is listed under its final assignee
+        only, and under its final assignee and status only.</li>
+    </ul>
+ */
+public class TestFinal_ConcurrentAssign extends Test {
+    /** Test notice. */
+    public static final String notice = "checking concurrent assignment of tasks";
+
+    /** Number of tasks written to. */
+    private static final int TASKS = 64;
+    /** Assignees the tasks are given to. */
+    private static final String[] ASSIGNEES = { "ann", "bob", "cid", "dee" };
+    /** Number of writing and of reading threads. */
+    private static final int THREADS = 4;
+    /** Number of writes made by each writer. */
+    private static final int WRITES = 20000;
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws Throwable {
+        TasksManagerExecutor manager = new TasksManagerExecutor();
+        int[] ids = new int[TASKS];
+        for(int i = 0; i < TASKS; i++)
+            ids[i] = manager.createTask("task " + i, "contended");
+
+        task("assigning and updating tasks from several threads");
+        List<Thread> threads = new ArrayList<>();
+        Throwable[] failure = new Throwable[1];
+        boolean[] done = new boolean[1];
+        for(int t = 0; t < THREADS; t++) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    for(int i = 0; i < WRITES; i++) {
+                        int id = ids[random.nextInt(TASKS)];
+                        if(random.nextInt(4) == 0)
+                            manager.updateStatus(id, TaskStatus.values()[
+                                random.nextInt(TaskStatus.values().length)]);
+                        else
+                            manager.assignTask(id, ASSIGNEES[random.nextInt(ASSIGNEES.length)]);
+                    }
+                } catch(Throwable e) {
+                    synchronized(failure) {
+                        failure[0] = e;
+                    }
+                }
+            }));
+        }
+        Thread[] readers = new Thread[THREADS];
+        for(int t = 0; t < THREADS; t++) {
+            readers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    while(!isDone(done)) {
+                        String assignee = ASSIGNEES[random.nextInt(ASSIGNEES.length)];
+                        for(Task task : manager.getAssignedTasks(assignee)) {
+                            if(!assignee.equals(task.getAssignee()))
+                                throw new TestFailed("tasks of " + assignee + " include " + task);
+                        }
+                    }
+                } catch(Throwable e) {
+                    synchronized(failure) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            readers[t].start();
+        }
+        for(Thread thread : threads)
+            thread.start();
+        for(Thread thread : threads)
+            thread.join();
+        synchronized(done) {
+            done[0] = true;
+        }
+        for(Thread reader : readers)
+            reader.join();
+        synchronized(failure) {
+            if(failure[0] != null)
+                throw failure[0];
+        }
+        task();
+
+        task("checking the indexes after the writes");
+        List<Task> tasks = manager.getTasks(ids);
+        for(String assignee : ASSIGNEES) {
+            Set<Integer> expected = new HashSet<>();
+            for(Task task : tasks) {
+                if(assignee.equals(task.getAssignee()))
+                    expected.add(task.getId());
+            }
+            if(!expected.equals(idsOf(manager.getAssignedTasks(assignee))))
+                throw new TestFailed("tasks listed for " + assignee + " differ from those assigned");
+
+            for(TaskStatus status : TaskStatus.values()) {
+                Set<Integer> withStatus = new HashSet<>();
+                for(Task task : tasks) {
+                    if(assignee.equals(task.getAssignee()) && task.getStatus() == status)
+                        withStatus.add(task.getId());
+                }
+                TaskPage page = manager.queryTasks(assignee, status, TaskPage.FIRST, TASKS);
+                if(!withStatus.equals(idsOf(page.getTasks())))
+                    throw new TestFailed("tasks listed for " + assignee + " and " + status +
+                                         " differ from those assigned");
+            }
+        }
+        task();
+    }
+
+    /** Reads a flag shared with the writers.
+
+        @param flag The flag.
+        @return Its value.
+     */
+    private static boolean isDone(boolean[] flag) {
+        synchronized(flag) {
+            return flag[0];
+        }
+    }
+
+    /** Collects the ids of tasks.
+
+        @param tasks The tasks.
+        @return Their ids.
+     */
+    private static Set<Integer> idsOf(List<Task> tasks) {
+        Set<Integer> ids = new HashSet<>();
+        for(Task task : tasks)
+            ids.add(task.getId());
+        return ids;
+    }
+}
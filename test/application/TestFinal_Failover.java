@@ -0,0 +1,222 @@
+package test.application;
+
+import test.util.*;
+import application.*;
+import remote.*;
+import java.util.List;
+
+/** Checks failover between replicated task servers.
+
+    <p>
+    The test starts two backups and a primary, each exporting its
+    <code>TasksReplica</code> service. It checks that:
+    <ul>
+    <li>Writes to the primary reach both backups.</li>
+    <li>Once a backup is promoted while the old primary still runs, the old
+        primary learns of the newer epoch, steps down and rejects writes, and
+        then receives the state of the new primary.</li>
+    <li>A backup rejects mutations sent under the old epoch.</li>
+    <li>The old primary, restarted as primary, joins as a backup of the new one
+        and receives its state.</li>
+    </ul>
+ */
+public class TestFinal_Failover extends Test {
+    /** Test notice. */
+    public static final String notice = "checking failover of replicated task servers";
+    /** Prerequisites. */
+    public static final Class[] prerequisites =
+        new Class[] { test.remote.TestFinal_Connection.class };
+
+    /** Assignee of every task written in the test. */
+    private static final String USER = "user";
+
+    /** Replication ports of the old primary and the two backups. */
+    private final int[] ports = new int[3];
+    /** Replicas, the old primary first. */
+    private final ReplicatedTasksManager[] replicas = new ReplicatedTasksManager[3];
+    /** Replication services of the replicas. */
+    @SuppressWarnings("unchecked")
+    private final Service<TasksReplica>[] services = new Service[3];
+
+    /** Initializes the test. */
+    @Override
+    protected void initialize() throws TestFailed {
+        for(int i = 0; i < ports.length; i++)
+            ports[i] = TestUtil.allocatePort();
+
+        // The backups run first, so that the primary finds them when it starts.
+        start(1, ReplicatedTasksManager.Role.BACKUP);
+        start(2, ReplicatedTasksManager.Role.BACKUP);
+        start(0, ReplicatedTasksManager.Role.PRIMARY);
+    }
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws TestFailed {
+        ReplicatedTasksManager primary = replicas[0];
+
+        task("replicating writes to the backups");
+        write(primary, 20);
+        awaitTasks(replicas[1], 20, "first backup");
+        awaitTasks(replicas[2], 20, "second backup");
+        task();
+
+        task("promoting a backup while the old primary runs");
+        long oldEpoch = primary.status().getEpoch();
+        long newEpoch;
+        try {
+            newEpoch = stub(1).promote();
+        } catch(RemoteObjectException e) {
+            throw new TestFailed("unable to promote backup", e);
+        }
+        if(newEpoch <= oldEpoch)
+            throw new TestFailed("promoted backup took epoch " + newEpoch +
+                                 ", not above " + oldEpoch);
+        write(replicas[1], 5);
+        awaitRole(primary, ReplicatedTasksManager.Role.BACKUP);
+        try {
+            primary.createTask("stale", "write");
+            throw new TestFailed("deposed primary accepted a write");
+        } catch(RemoteObjectException e) {
+        }
+        awaitTasks(primary, 25, "deposed primary");
+        awaitTasks(replicas[2], 25, "second backup");
+        task();
+
+        task("sending mutations under the old epoch");
+        try {
+            stub(2).replicate(oldEpoch, replicas[2].status().getSequence() + 1,
+                              List.of(TaskMutation.create(1000, "stale", "write")));
+            throw new TestFailed("backup accepted mutations of a stale epoch");
+        } catch(RemoteObjectException e) {
+        }
+        task();
+
+        task("restarting the old primary as primary");
+        services[0].stop();
+        replicas[0].close();
+        start(0, ReplicatedTasksManager.Role.PRIMARY);
+        if(replicas[0].status().getRole() != ReplicatedTasksManager.Role.BACKUP)
+            throw new TestFailed("restarted primary did not join the new primary as a backup");
+        awaitTasks(replicas[0], 25, "restarted primary");
+        task();
+    }
+
+    /** Starts a replica and its replication service.
+
+        @param index The index of the replica.
+        @param role The role the replica starts in.
+        @throws TestFailed If the service cannot start.
+     */
+    private void start(int index, ReplicatedTasksManager.Role role) throws TestFailed {
+        String[] peers = new String[ports.length - 1];
+        for(int i = 0, j = 0; i < ports.length; i++) {
+            if(i != index)
+                peers[j++] = address(i);
+        }
+        replicas[index] = new ReplicatedTasksManager(role, List.of(peers),
+            ReplicatedTasksManager.Mode.ASYNC, 1000);
+        services[index] = new Service<TasksReplica>(TasksReplica.class, replicas[index],
+                                                    ports[index]);
+        services[index].setSerializeCalls(false);
+        // Test the connection, not direct calls within the test's virtual machine.
+        services[index].setLocalCalls(false);
+        try {
+            services[index].start();
+        } catch(Throwable t) {
+            throw new TestFailed("unable to start replication service", t);
+        }
+    }
+
+    /** Gets the replication address of a replica.
+
+        @param index The index of the replica.
+        @return The address.
+     */
+    private String address(int index) {
+        return "127.0.0.1:" + ports[index];
+    }
+
+    /** Creates a stub of the replication service of a replica.
+
+        @param index The index of the replica.
+        @return The stub.
+     */
+    private TasksReplica stub(int index) {
+        return StubFactory.create(TasksReplica.class, address(index));
+    }
+
+    /** Creates tasks assigned to <code>USER</code>.
+
+        @param replica The primary to write to.
+        @param count The number of tasks.
+        @throws TestFailed If a write fails.
+     */
+    private static void write(ReplicatedTasksManager replica, int count) throws TestFailed {
+        try {
+            for(int i = 0; i < count; i++)
+                replica.assignTask(replica.createTask("task " + i, "replicated"), USER);
+        } catch(Throwable t) {
+            throw new TestFailed("write to primary failed", t);
+        }
+    }
+
+    /** Waits until a replica holds a given number of tasks of <code>USER</code>.
+
+        @param replica The replica.
+        @param count The number of tasks.
+        @param name The name of the replica, for the failure message.
+        @throws TestFailed If the replica does not hold them within five seconds.
+     */
+    private static void awaitTasks(ReplicatedTasksManager replica, int count, String name)
+        throws TestFailed {
+        long deadline = System.currentTimeMillis() + 5000;
+        int held = -1;
+        while(System.currentTimeMillis() < deadline) {
+            try {
+                held = replica.getAssignedTasks(USER).size();
+            } catch(RemoteObjectException e) {
+                throw new TestFailed("read from " + name + " failed", e);
+            }
+            if(held == count)
+                return;
+            sleep();
+        }
+        throw new TestFailed(name + " holds " + held + " tasks instead of " + count);
+    }
+
+    /** Waits until a replica takes a role.
+
+        @param replica The replica.
+        @param role The role.
+        @throws TestFailed If the replica does not take the role within five
+                           seconds.
+     */
+    private static void awaitRole(ReplicatedTasksManager replica,
+                                  ReplicatedTasksManager.Role role) throws TestFailed {
+        long deadline = System.currentTimeMillis() + 5000;
+        while(replica.status().getRole() != role) {
+            if(System.currentTimeMillis() > deadline)
+                throw new TestFailed("replica did not become " + role);
+            sleep();
+        }
+    }
+
+    /** Sleeps between two checks of a condition. */
+    private static void sleep() {
+        try {
+            Thread.sleep(50);
+        } catch(InterruptedException e) { }
+    }
+
+    /** Stops the replicas and their services. */
+    @Override
+    protected void clean() {
+        for(int i = 0; i < replicas.length; i++) {
+            if(services[i] != null)
+                services[i].stop();
+            if(replicas[i] != null)
+                replicas[i].close();
+        }
+    }
+}
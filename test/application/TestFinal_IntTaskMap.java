@@ -0,0 +1,221 @@
+package test.application;
+
+import test.util.*;
+import application.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/** Checks the primitive-keyed task map.
+
+    <p>
+    The test checks that:
+    <ul>
+    <li>Tasks put one after the other, under ids from the whole
+        <code>int</code> range, are found again after the tables grow, and
+        overwriting a task returns the one it replaces.</li>
+    <li>Ids that fall into the same stripe and the same initial slot are all
+        stored and found, and ids probing past them are reported missing.</li>
+    <li>Readers running alongside writers only ever see the task last put for
+        an id or an earlier one, never the task of another id or a task older
+        than one they already saw, and the map ends up equal to a
+        <code>ConcurrentHashMap</code> given the same writes.</li>
+    </ul>
+ */
+public class TestFinal_IntTaskMap extends Test {
+    /** Test notice. */
+    public static final String notice = "checking the primitive-keyed task map";
+
+    /** Number of ids put one after the other. */
+    private static final int IDS = 100000;
+    /** Number of writing and of reading threads. */
+    private static final int THREADS = 4;
+    /** Number of ids written by each writer. */
+    private static final int WRITER_IDS = 5000;
+    /** Number of versions of each id written. */
+    private static final int VERSIONS = 8;
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws Throwable {
+        task("putting, overwriting and getting tasks across growth");
+        IntTaskMap map = new IntTaskMap();
+        Map<Integer, Task> expected = new HashMap<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Integer> ids = new ArrayList<>(List.of(0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE));
+        while(ids.size() < IDS)
+            ids.add(ids.size() % 2 == 0 ? ids.size() : random.nextInt());
+        for(int id : ids) {
+            Task task = new Task(id, "first", null, TaskStatus.OPEN, null);
+            Task replaced = map.put(id, task);
+            if(replaced != expected.put(id, task))
+                throw new TestFailed("putting id " + id + " replaced " + replaced);
+        }
+        for(int i = 0; i < ids.size(); i += 2) {
+            int id = ids.get(i);
+            Task task = new Task(id, "second", null, TaskStatus.CLOSED, null);
+            if(map.put(id, task) != expected.put(id, task))
+                throw new TestFailed("overwriting id " + id + " did not return the task replaced");
+        }
+        expectContents(map, expected);
+        for(int i = 0; i < 1000; i++) {
+            int id = random.nextInt();
+            if(!expected.containsKey(id) && map.get(id) != null)
+                throw new TestFailed("missing id " + id + " found as " + map.get(id));
+        }
+        task();
+
+        task("putting ids that collide in one stripe");
+        IntTaskMap colliding = new IntTaskMap();
+        Map<Integer, Task> collided = new HashMap<>();
+        List<Integer> probes = new ArrayList<>();
+        int target = mix(1);
+        for(int id = 2; collided.size() < 200 || probes.size() < 200; id++) {
+            // Same stripe (high bits) and same slot of the initial table (low bits).
+            int hash = mix(id);
+            if(hash >>> 26 != target >>> 26 || (hash & 15) != (target & 15))
+                continue;
+            if(collided.size() < 200) {
+                Task task = new Task(id, "collided", null, TaskStatus.OPEN, null);
+                colliding.put(id, task);
+                collided.put(id, task);
+            } else {
+                probes.add(id);
+            }
+        }
+        expectContents(colliding, collided);
+        for(int id : probes) {
+            if(colliding.get(id) != null)
+                throw new TestFailed("missing colliding id " + id + " found");
+        }
+        task();
+
+        task("reading optimistically alongside writers");
+        checkConcurrent();
+        task();
+    }
+
+    /** Checks that reads alongside writes see consistent tasks, and that the
+        map ends up equal to a <code>ConcurrentHashMap</code>.
+
+        @throws Throwable If a check fails.
+     */
+    private static void checkConcurrent() throws Throwable {
+        IntTaskMap map = new IntTaskMap();
+        ConcurrentHashMap<Integer, Task> reference = new ConcurrentHashMap<>();
+        Throwable[] failure = new Throwable[1];
+        boolean[] done = new boolean[1];
+
+        List<Thread> writers = new ArrayList<>();
+        for(int w = 0; w < THREADS; w++) {
+            int first = w * WRITER_IDS;
+            writers.add(new Thread(() -> {
+                try {
+                    // Each id only has one writer, which puts its versions in order.
+                    for(int version = 0; version < VERSIONS; version++) {
+                        for(int id = first; id < first + WRITER_IDS; id++) {
+                            Task task = new Task(id, Integer.toString(version), null, TaskStatus.OPEN, null);
+                            map.put(id, task);
+                            reference.put(id, task);
+                        }
+                    }
+                } catch(Throwable t) {
+                    synchronized(failure) {
+                        failure[0] = t;
+                    }
+                }
+            }));
+        }
+        List<Thread> readers = new ArrayList<>();
+        for(int r = 0; r < THREADS; r++) {
+            readers.add(new Thread(() -> {
+                int[] seen = new int[THREADS * WRITER_IDS];
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    while(!isDone(done)) {
+                        int id = random.nextInt(seen.length);
+                        Task task = map.get(id);
+                        if(task == null) {
+                            if(seen[id] > 0)
+                                throw new TestFailed("id " + id + " lost after being read");
+                            continue;
+                        }
+                        if(task.getId() != id)
+                            throw new TestFailed("id " + id + " read as task " + task.getId());
+                        int version = Integer.parseInt(task.getTitle()) + 1;
+                        if(version < seen[id])
+                            throw new TestFailed("id " + id + " went back to version " + (version - 1));
+                        seen[id] = version;
+                    }
+                } catch(Throwable t) {
+                    synchronized(failure) {
+                        failure[0] = t;
+                    }
+                }
+            }));
+        }
+        for(Thread reader : readers)
+            reader.start();
+        for(Thread writer : writers)
+            writer.start();
+        for(Thread writer : writers)
+            writer.join();
+        synchronized(done) {
+            done[0] = true;
+        }
+        for(Thread reader : readers)
+            reader.join();
+        synchronized(failure) {
+            if(failure[0] != null)
+                throw failure[0];
+        }
+        expectContents(map, reference);
+    }
+
+    /** Checks that a map holds the same tasks as a reference map.
+
+        @param map The map.
+        @param expected The reference map.
+        @throws TestFailed If the maps differ.
+     */
+    private static void expectContents(IntTaskMap map, Map<Integer, Task> expected) throws TestFailed {
+        if(map.size() != expected.size())
+            throw new TestFailed("map holds " + map.size() + " tasks instead of " + expected.size());
+        for(Map.Entry<Integer, Task> entry : expected.entrySet()) {
+            Task task = map.get(entry.getKey());
+            if(task != entry.getValue())
+                throw new TestFailed("id " + entry.getKey() + " maps to " + task + " instead of " +
+                                     entry.getValue());
+        }
+        Map<Task, Boolean> visited = new IdentityHashMap<>();
+        map.forEach(task -> visited.put(task, true));
+        if(visited.size() != expected.size())
+            throw new TestFailed("map visits " + visited.size() + " tasks instead of " + expected.size());
+    }
+
+    /** Reads a flag shared with the writers.
+
+        @param flag The flag.
+        @return Its value.
+     */
+    private static boolean isDone(boolean[] flag) {
+        synchronized(flag) {
+            return flag[0];
+        }
+    }
+
+    /** Hashes an id as <code>IntTaskMap</code> does, to find ids that share a
+        stripe and a slot.
+
+        @param id The id.
+        @return The hash of the id.
+     */
+    private static int mix(int id) {
+        int hash = id * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
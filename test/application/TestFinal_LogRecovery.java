@@ -0,0 +1,192 @@
+package test.application;
+
+import test.util.*;
+import application.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/** Checks that a persistent task manager recovers its state on restart.
+
+    <p>
+    The test writes tasks to a <code>PersistentTasksManager</code>, takes a
+    snapshot, writes more, and reopens the data directory. It checks that:
+    <ul>
+    <li>The reopened manager holds the same tasks, from the snapshot and the
+        log written after it, and generates ids after the recovered ones.</li>
+    <li>A record torn at the end of the log, as a crash while writing leaves
+        it, is dropped, and the log keeps working after it.</li>
+    <li>A log generation older than the snapshot, left over from a snapshot
+        whose cleanup did not finish, is ignored and deleted.</li>
+    </ul>
+ */
+public class TestFinal_LogRecovery extends Test {
+    /** Test notice. */
+    public static final String notice = "checking recovery of persisted tasks";
+
+    /** Data directory of the manager. */
+    private Path directory;
+    /** The manager being tested, or null while it is closed. */
+    private PersistentTasksManager manager;
+
+    /** Initializes the test. */
+    @Override
+    protected void initialize() throws TestFailed {
+        try {
+            directory = Files.createTempDirectory("tasks-data");
+        } catch(IOException e) {
+            throw new TestFailed("unable to create data directory", e);
+        }
+        manager = open();
+    }
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws Throwable {
+        task("recovering from a snapshot and the log after it");
+        for(int i = 1; i <= 30; i++) {
+            int id = manager.createTask("task " + i, "before snapshot");
+            if(i % 2 == 0)
+                manager.assignTask(id, "even");
+        }
+        manager.snapshot();
+        for(int i = 31; i <= 40; i++)
+            manager.createTask("task " + i, "after snapshot");
+        manager.assignTask(3, "odd");
+        manager.updateStatus(4, TaskStatus.CLOSED);
+        List<Task> expected = all(40);
+        reopen();
+        same(expected, all(40), "after restart");
+        int next = manager.createTask("task 41", "after restart");
+        if(next != 41)
+            throw new TestFailed("recovered manager generated id " + next + " instead of 41");
+        task();
+
+        task("dropping a record torn by a crash");
+        expected = all(41);
+        manager.close();
+        manager = null;
+        Files.write(latestLog(), new byte[] { 0, 0, 0, 100, 1, 2, 3 },
+                    StandardOpenOption.APPEND);
+        manager = open();
+        same(expected, all(41), "after a torn record");
+        manager.assignTask(41, "after tear");
+        expected = all(41);
+        reopen();
+        same(expected, all(41), "after writing past a torn record");
+        task();
+
+        task("ignoring a log generation older than the snapshot");
+        Path stale = directory.resolve("tasks-0.log");
+        if(Files.exists(stale))
+            throw new TestFailed("snapshot did not delete the generations it covers");
+        manager.snapshot();
+        manager.close();
+        manager = null;
+        Files.write(stale, new byte[0]);
+        manager = open();
+        same(expected, all(41), "with a stale generation");
+        if(Files.exists(stale))
+            throw new TestFailed("stale log generation was not deleted");
+        task();
+    }
+
+    /** Opens the manager on the data directory, without periodic snapshots.
+
+        @return The manager.
+        @throws TestFailed If the state cannot be recovered.
+     */
+    private PersistentTasksManager open() throws TestFailed {
+        try {
+            return new PersistentTasksManager(directory, 0);
+        } catch(IOException e) {
+            throw new TestFailed("unable to open data directory", e);
+        }
+    }
+
+    /** Closes and opens the manager again.
+
+        @throws Throwable If the manager cannot be closed or opened.
+     */
+    private void reopen() throws Throwable {
+        manager.close();
+        manager = null;
+        manager = open();
+    }
+
+    /** Gets the tasks with the ids from 1 to a given id.
+
+        @param last The last id.
+        @return The tasks, null for missing ones.
+        @throws Throwable If the tasks cannot be read.
+     */
+    private List<Task> all(int last) throws Throwable {
+        int[] ids = new int[last];
+        for(int i = 0; i < last; i++)
+            ids[i] = i + 1;
+        return new ArrayList<>(manager.getTasks(ids));
+    }
+
+    /** Checks that two lists hold the same tasks.
+
+        @param expected The tasks written.
+        @param recovered The tasks recovered.
+        @param when When the tasks were recovered, for the failure message.
+        @throws TestFailed If a task differs.
+     */
+    private static void same(List<Task> expected, List<Task> recovered, String when)
+        throws TestFailed {
+        for(int i = 0; i < expected.size(); i++) {
+            Task written = expected.get(i);
+            Task read = recovered.get(i);
+            if(read == null || !written.getTitle().equals(read.getTitle()) ||
+               !written.getDescription().equals(read.getDescription()) ||
+               written.getStatus() != read.getStatus() ||
+               !String.valueOf(written.getAssignee()).equals(String.valueOf(read.getAssignee())))
+                throw new TestFailed("task " + (i + 1) + " recovered " + when + " as " +
+                                     read + " instead of " + written);
+        }
+    }
+
+    /** Finds the newest log generation in the data directory.
+
+        @return The path of its file.
+        @throws IOException If the directory cannot be listed.
+     */
+    private Path latestLog() throws IOException {
+        try(Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".log"))
+                .max((a, b) -> Long.compare(generation(a), generation(b)))
+                .orElseThrow(() -> new IOException("no log file in " + directory));
+        }
+    }
+
+    /** Gets the generation number of a log file named
+        <code>tasks-</code><i>n</i><code>.log</code>.
+
+        @param file The file.
+        @return The generation number.
+     */
+    private static long generation(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring("tasks-".length(), name.length() - ".log".length()));
+    }
+
+    /** Closes the manager and deletes the data directory. */
+    @Override
+    protected void clean() {
+        try {
+            if(manager != null)
+                manager.close();
+        } catch(IOException e) { }
+        try(Stream<Path> files = Files.list(directory)) {
+            for(Path file : (Iterable<Path>)files::iterator)
+                Files.deleteIfExists(file);
+            Files.deleteIfExists(directory);
+        } catch(IOException e) { }
+    }
+}
@@ -0,0 +1,184 @@
+package test.application;
+
+import test.util.*;
+import application.*;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/** Checks that the off-heap task manager behaves like the heap one.
+
+    <p>
+    The test makes the same calls on an <code>OffHeapTasksManager</code> and a
+    <code>TasksManagerExecutor</code> and compares their answers. The calls
+    create more tasks than fit in one chunk of records, with more distinct
+    strings than fit in the initial string table and more string bytes than
+    fit in one chunk of strings, including a description larger than a
+    chunk. It checks that:
+    <ul>
+    <li>Both managers give the same ids and read back the same tasks, large
+        strings included.</li>
+    <li>After random assignments and status updates, the tasks of each
+        assignee, the pages of each assignee and status, and the results of
+        searches are the same.</li>
+    <li>Both reject updates to missing tasks.</li>
+    </ul>
+ */
+public class TestFinal_OffHeapTasks extends Test {
+    /** Test notice. */
+    public static final String notice = "checking the off-heap task manager";
+
+    /** Number of tasks created; more than one chunk of records holds. */
+    private static final int TASKS = 70000;
+    /** Number of tasks with a long description. */
+    private static final int LONG_DESCRIPTIONS = 300;
+    /** Length of a long description; together they fill more than one chunk of strings. */
+    private static final int LONG_LENGTH = 40000;
+    /** Length of the description larger than a chunk of strings. */
+    private static final int HUGE_LENGTH = 9 << 20;
+    /** Assignees the tasks are given to. */
+    private static final String[] ASSIGNEES = { "ann", "bob", "cid", "dee", "\u00e9ve" };
+    /** Words of the titles, searched for. */
+    private static final String[] WORDS = { "alpha", "beta", "gamma", "delta", "omega" };
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws Throwable {
+        OffHeapTasksManager offHeap = new OffHeapTasksManager();
+        TasksManagerExecutor heap = new TasksManagerExecutor();
+        Random random = new Random(37);
+
+        task("creating tasks in both managers");
+        int[] ids = new int[TASKS];
+        for(int i = 0; i < TASKS; i++) {
+            String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] +
+                           " task " + i;
+            String description;
+            if(i == TASKS / 2)
+                description = "huge " + "h".repeat(HUGE_LENGTH);
+            else if(i % (TASKS / LONG_DESCRIPTIONS) == 0)
+                description = i + " " + "l".repeat(LONG_LENGTH);
+            else
+                description = i % 3 == 0 ? null : "description " + i % 7;
+            ids[i] = offHeap.createTask(title, description);
+            int heapId = heap.createTask(title, description);
+            if(ids[i] != heapId)
+                throw new TestFailed("off-heap manager gave id " + ids[i] + " where the heap one gave " +
+                                     heapId);
+        }
+        expectSame("created tasks", offHeap.getTasks(ids), heap.getTasks(ids));
+        task();
+
+        task("assigning and updating tasks in both managers");
+        for(int i = 0; i < TASKS; i++) {
+            int id = ids[random.nextInt(TASKS)];
+            if(random.nextInt(3) == 0) {
+                TaskStatus status = TaskStatus.values()[random.nextInt(TaskStatus.values().length)];
+                offHeap.updateStatus(id, status);
+                heap.updateStatus(id, status);
+            } else {
+                String assignee = ASSIGNEES[random.nextInt(ASSIGNEES.length)];
+                offHeap.assignTask(id, assignee);
+                heap.assignTask(id, assignee);
+            }
+        }
+        expectSame("updated tasks", offHeap.getTasks(ids), heap.getTasks(ids));
+        task();
+
+        task("querying both managers");
+        for(String assignee : ASSIGNEES) {
+            expectSame("tasks of " + assignee, offHeap.getAssignedTasks(assignee),
+                       heap.getAssignedTasks(assignee));
+            for(TaskStatus status : TaskStatus.values()) {
+                int cursor = TaskPage.FIRST;
+                do {
+                    TaskPage page = offHeap.queryTasks(assignee, status, cursor, 500);
+                    TaskPage heapPage = heap.queryTasks(assignee, status, cursor, 500);
+                    expectSame("page of " + assignee + " and " + status, page.getTasks(),
+                               heapPage.getTasks());
+                    if(page.getNextCursor() != heapPage.getNextCursor())
+                        throw new TestFailed("off-heap page of " + assignee + " and " + status +
+                                             " continues at " + page.getNextCursor() + " instead of " +
+                                             heapPage.getNextCursor());
+                    cursor = page.getNextCursor();
+                } while(cursor != TaskPage.END);
+            }
+        }
+        for(String query : new String[] { "alpha", "beta gamma", "omega task", "huge", "description 3",
+                                          "missing" }) {
+            expectSame("search for " + query, offHeap.searchTasks(query, 50), heap.searchTasks(query, 50));
+        }
+        expectSame("unknown assignee", offHeap.getAssignedTasks("nobody"), heap.getAssignedTasks("nobody"));
+        task();
+
+        task("updating missing tasks in both managers");
+        for(int missing : new int[] { 0, -1, TASKS + 1, 1 << 20, Integer.MAX_VALUE }) {
+            for(TasksManager manager : new TasksManager[] { offHeap, heap }) {
+                try {
+                    manager.assignTask(missing, "ann");
+                    throw new TestFailed(manager.getClass().getSimpleName() + " assigned missing task " +
+                                         missing);
+                } catch(TaskNotFoundException e) {
+                }
+                try {
+                    manager.updateStatus(missing, TaskStatus.CLOSED);
+                    throw new TestFailed(manager.getClass().getSimpleName() + " updated missing task " +
+                                         missing);
+                } catch(TaskNotFoundException e) {
+                }
+            }
+        }
+        int[] missing = new int[] { TASKS + 1, ids[0] };
+        expectSame("missing tasks", offHeap.getTasks(missing), heap.getTasks(missing));
+        task();
+    }
+
+    /** Checks that both managers returned the same tasks.
+
+        @param what What the tasks are, for messages.
+        @param offHeap The tasks returned by the off-heap manager.
+        @param heap The tasks returned by the heap manager.
+        @throws TestFailed If the tasks differ.
+     */
+    private static void expectSame(String what, List<Task> offHeap, List<Task> heap) throws TestFailed {
+        if(offHeap.size() != heap.size())
+            throw new TestFailed("off-heap manager returned " + offHeap.size() + " " + what +
+                                 " instead of " + heap.size());
+        for(int i = 0; i < heap.size(); i++) {
+            Task expected = heap.get(i);
+            Task actual = offHeap.get(i);
+            if(expected == null ? actual != null : !same(expected, actual))
+                throw new TestFailed("off-heap manager returned " + shorten(actual) + " among " + what +
+                                     " instead of " + shorten(expected));
+        }
+    }
+
+    /** Compares two tasks field by field.
+
+        @param expected The task of the heap manager.
+        @param actual The task of the off-heap manager.
+        @return True if the tasks have the same fields.
+     */
+    private static boolean same(Task expected, Task actual) {
+        return actual != null && expected.getId() == actual.getId() &&
+               Objects.equals(expected.getTitle(), actual.getTitle()) &&
+               Objects.equals(expected.getDescription(), actual.getDescription()) &&
+               expected.getStatus() == actual.getStatus() &&
+               Objects.equals(expected.getAssignee(), actual.getAssignee());
+    }
+
+    /** Describes a task without its long strings.
+
+        @param task The task, or null.
+        @return The description.
+     */
+    private static String shorten(Task task) {
+        if(task == null)
+            return "null";
+        String description = task.getDescription();
+        if(description != null && description.length() > 40)
+            description = description.substring(0, 40) + "... (" + description.length() + " characters)";
+        return new Task(task.getId(), task.getTitle(), description, task.getStatus(),
+                        task.getAssignee()).toString();
+    }
+}
@@ -0,0 +1,138 @@
+package test.application;
+
+import test.util.*;
+import application.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Checks that task queries are paged by cursor and limit.
+
+    <p>
+    The test runs on <code>TasksManagerExecutor</code> and on
+    <code>OffHeapTasksManager</code>. It checks that:
+    <ul>
+    <li>Pages follow each other by id, hold at most the limit, and only the
+        last one returns <code>TaskPage.END</code>, also when the tasks fill
+        the last page exactly.</li>
+    <li>Filtering by status pages through the matching tasks only.</li>
+    <li>A page is empty and last when the tasks after its cursor stop matching
+        between queries, and tasks created between queries show up on later
+        pages.</li>
+    <li>Queries from <code>END</code> or for an unknown assignee return an empty
+        last page, and queries with a limit that is not positive are
+        rejected.</li>
+    </ul>
+ */
+public class TestFinal_Pagination extends Test {
+    /** Test notice. */
+    public static final String notice = "checking paged task queries";
+
+    /** Number of tasks of the assignee paged through. */
+    private static final int TASKS = 12;
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws Throwable {
+        check("TasksManagerExecutor", new TasksManagerExecutor());
+        check("OffHeapTasksManager", new OffHeapTasksManager());
+    }
+
+    /** Checks the queries of one task manager.
+
+        @param name The name of the task manager, for messages.
+        @param manager The task manager, without tasks.
+        @throws Throwable If a check fails.
+     */
+    private void check(String name, TasksManager manager) throws Throwable {
+        task("paging through the tasks of an assignee in " + name);
+        List<Integer> ids = new ArrayList<>();
+        for(int i = 0; i < TASKS; i++) {
+            int id = manager.createTask("task " + i, "paged");
+            // Tasks of other assignees lie between those paged through.
+            manager.assignTask(manager.createTask("other " + i, "skipped"), "bob");
+            manager.assignTask(id, "ann");
+            if(i % 3 == 0)
+                manager.updateStatus(id, TaskStatus.CLOSED);
+            ids.add(id);
+        }
+        for(int limit : new int[] { 1, 4, 5, TASKS, TASKS + 1 })
+            expectPages(name, manager, null, limit, ids);
+        task();
+
+        task("paging through the tasks with a status in " + name);
+        List<Integer> closed = new ArrayList<>();
+        for(int i = 0; i < TASKS; i += 3)
+            closed.add(ids.get(i));
+        expectPages(name, manager, TaskStatus.CLOSED, 2, closed);
+        task();
+
+        task("changing tasks between queries in " + name);
+        TaskPage first = manager.queryTasks("ann", null, TaskPage.FIRST, TASKS - 1);
+        if(!first.hasMore())
+            throw new TestFailed(name + " ended a page early");
+        manager.assignTask(ids.get(TASKS - 1), "bob");
+        TaskPage empty = manager.queryTasks("ann", null, first.getNextCursor(), TASKS);
+        if(!empty.getTasks().isEmpty() || empty.hasMore())
+            throw new TestFailed(name + " returned " + empty + " once no task followed the cursor");
+
+        int created = manager.createTask("late", "paged");
+        manager.assignTask(created, "ann");
+        TaskPage later = manager.queryTasks("ann", null, first.getNextCursor(), TASKS);
+        if(later.getTasks().size() != 1 || later.getTasks().get(0).getId() != created ||
+           later.hasMore())
+            throw new TestFailed(name + " returned " + later + " instead of the task created");
+        task();
+
+        task("querying past the end in " + name);
+        for(TaskPage page : new TaskPage[] {
+                manager.queryTasks("ann", null, TaskPage.END, TASKS),
+                manager.queryTasks("nobody", null, TaskPage.FIRST, TASKS) }) {
+            if(!page.getTasks().isEmpty() || page.getNextCursor() != TaskPage.END)
+                throw new TestFailed(name + " returned " + page + " past the end");
+        }
+        for(int limit : new int[] { 0, -1 }) {
+            try {
+                manager.queryTasks("ann", null, TaskPage.FIRST, limit);
+                throw new TestFailed(name + " accepted limit " + limit);
+            } catch(IllegalArgumentException e) {
+            }
+        }
+        task();
+    }
+
+    /** Pages through the tasks of <code>ann</code> and checks the pages.
+
+        @param name The name of the task manager, for messages.
+        @param manager The task manager.
+        @param status The status queried, or null for any status.
+        @param limit The page limit.
+        @param expected The ids expected, in order.
+        @throws Throwable If a check fails.
+     */
+    private static void expectPages(String name, TasksManager manager, TaskStatus status, int limit,
+                                    List<Integer> expected) throws Throwable {
+        List<Integer> paged = new ArrayList<>();
+        int pages = 0;
+        int cursor = TaskPage.FIRST;
+        do {
+            TaskPage page = manager.queryTasks("ann", status, cursor, limit);
+            if(page.getTasks().size() > limit)
+                throw new TestFailed(name + " returned " + page.getTasks().size() +
+                                     " tasks with limit " + limit);
+            if(page.hasMore() && page.getTasks().size() < limit)
+                throw new TestFailed(name + " returned a short page before the last one");
+            for(Task task : page.getTasks())
+                paged.add(task.getId());
+            cursor = page.getNextCursor();
+            if(++pages > expected.size() + 1)
+                throw new TestFailed(name + " never returned the last page");
+        } while(cursor != TaskPage.END);
+        if(!expected.equals(paged))
+            throw new TestFailed(name + " paged through " + paged + " with limit " + limit +
+                                 " instead of " + expected);
+        int needed = Math.max(1, (expected.size() + limit - 1) / limit);
+        if(pages != needed)
+            throw new TestFailed(name + " took " + pages + " pages with limit " + limit +
+                                 " instead of " + needed);
+    }
+}
@@ -0,0 +1,190 @@
+package test.application;
+
+import test.util.*;
+import application.*;
+import remote.*;
+import java.util.List;
+
+/** Checks how a primary catches up a backup that was unreachable.
+
+    <p>
+    The test starts a backup and a primary keeping at most
+    <code>MAX_QUEUED</code> mutations for it. It stops the backup's service
+    for a moment twice, and checks that:
+    <ul>
+    <li>After a short outage, the backup receives the queued mutations, so
+        that a subscriber to its change feed sees no gap.</li>
+    <li>After an outage during which more mutations were made than the
+        primary keeps, the backup receives the whole state instead, which its
+        change feed reports as a gap.</li>
+    </ul>
+ */
+public class TestFinal_ReplicationBacklog extends Test {
+    /** Test notice. */
+    public static final String notice = "checking replication to a backup that fell behind";
+    /** Prerequisites. */
+    public static final Class[] prerequisites =
+        new Class[] { test.remote.TestFinal_Connection.class };
+
+    /** Maximum number of mutations the primary keeps for the backup. */
+    private static final int MAX_QUEUED = 40;
+    /** Assignee of every task written in the test. */
+    private static final String USER = "user";
+
+    /** The primary. */
+    private ReplicatedTasksManager primary;
+    /** The backup. */
+    private ReplicatedTasksManager backup;
+    /** Replication service of the primary. */
+    private Service<TasksReplica> primaryService;
+    /** Replication service of the backup. */
+    private Service<TasksReplica> backupService;
+    /** Number of tasks written so far. */
+    private int written;
+
+    /** Initializes the test. */
+    @Override
+    protected void initialize() throws TestFailed {
+        int primaryPort = TestUtil.allocatePort();
+        int backupPort = TestUtil.allocatePort();
+
+        backup = new ReplicatedTasksManager(ReplicatedTasksManager.Role.BACKUP,
+            List.of("127.0.0.1:" + primaryPort), ReplicatedTasksManager.Mode.ASYNC, 1000);
+        backupService = start(backup, backupPort);
+        primary = new ReplicatedTasksManager(ReplicatedTasksManager.Role.PRIMARY,
+            List.of("127.0.0.1:" + backupPort), ReplicatedTasksManager.Mode.ASYNC, 1000,
+            MAX_QUEUED);
+        primaryService = start(primary, primaryPort);
+    }
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws TestFailed {
+        task("replicating writes to the backup");
+        write(10);
+        awaitTasks();
+        task();
+
+        task("catching up after a short outage");
+        if(outage(MAX_QUEUED / 4))
+            throw new TestFailed("backup received the whole state after a short outage");
+        task();
+
+        task("catching up after a long outage");
+        if(!outage(MAX_QUEUED * 3))
+            throw new TestFailed("backup replayed more mutations than the primary keeps");
+        task();
+    }
+
+    /** Stops the backup's service while tasks are written, and waits until
+        the backup holds them after it restarts.
+
+        @param tasks The number of tasks written during the outage; each one
+                     takes two mutations.
+        @return <code>true</code> if the change feed of the backup reports a
+                gap, meaning that it received the whole state.
+        @throws TestFailed If the backup does not catch up.
+     */
+    private boolean outage(int tasks) throws TestFailed {
+        long sequence;
+        try {
+            sequence = backup.pollChanges(null, null, TaskChangeBatch.NOW, 0)
+                .getLastSequence();
+        } catch(RemoteObjectException e) {
+            throw new TestFailed("unable to poll the change feed of the backup", e);
+        }
+
+        backupService.stop();
+        write(tasks);
+        try {
+            backupService.start();
+        } catch(Throwable t) {
+            throw new TestFailed("unable to restart replication service", t);
+        }
+        awaitTasks();
+
+        try {
+            while(true) {
+                TaskChangeBatch batch = backup.pollChanges(null, null, sequence, 0);
+                if(batch.isGap())
+                    return true;
+                if(batch.getChanges().isEmpty())
+                    return false;
+                sequence = batch.getLastSequence();
+            }
+        } catch(RemoteObjectException e) {
+            throw new TestFailed("unable to poll the change feed of the backup", e);
+        }
+    }
+
+    /** Starts the replication service of a replica.
+
+        @param replica The replica.
+        @param port The port of the service.
+        @return The service.
+        @throws TestFailed If the service cannot start.
+     */
+    private static Service<TasksReplica> start(ReplicatedTasksManager replica, int port)
+        throws TestFailed {
+        Service<TasksReplica> service =
+            new Service<TasksReplica>(TasksReplica.class, replica, port);
+        service.setSerializeCalls(false);
+        // Test the connection, not direct calls within the test's virtual machine.
+        service.setLocalCalls(false);
+        try {
+            service.start();
+        } catch(Throwable t) {
+            throw new TestFailed("unable to start replication service", t);
+        }
+        return service;
+    }
+
+    /** Creates tasks assigned to <code>USER</code> on the primary.
+
+        @param count The number of tasks.
+        @throws TestFailed If a write fails.
+     */
+    private void write(int count) throws TestFailed {
+        try {
+            for(int i = 0; i < count; i++) {
+                primary.assignTask(primary.createTask("task " + written, "replicated"), USER);
+                written++;
+            }
+        } catch(Throwable t) {
+            throw new TestFailed("write to primary failed", t);
+        }
+    }
+
+    /** Waits until the backup holds every task written.
+
+        @throws TestFailed If the backup does not hold them within ten seconds.
+     */
+    private void awaitTasks() throws TestFailed {
+        long deadline = System.currentTimeMillis() + 10000;
+        int held = -1;
+        while(System.currentTimeMillis() < deadline) {
+            try {
+                held = backup.getAssignedTasks(USER).size();
+            } catch(RemoteObjectException e) {
+                throw new TestFailed("read from backup failed", e);
+            }
+            if(held == written)
+                return;
+            try {
+                Thread.sleep(50);
+            } catch(InterruptedException e) { }
+        }
+        throw new TestFailed("backup holds " + held + " tasks instead of " + written);
+    }
+
+    /** Stops the replicas and their services. */
+    @Override
+    protected void clean() {
+        if(primaryService != null)
+            primaryService.stop();
+        if(backupService != null)
+            backupService.stop();
+        if(primary != null)
+            primary.close();
+    }
+}
@@ -0,0 +1,183 @@
+package test.application;
+
+import test.util.*;
+import application.*;
+import remote.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Checks that a sharded task manager routes each task to the shard owning
+    its id and merges the results of calls made to all shards.
+
+    <p>
+    The test starts three shard services, each of which only creates the ids
+    it owns, and calls them through a <code>ShardedTasksManager</code>. It
+    checks that:
+    <ul>
+    <li>Tasks created one at a time and in bulk get distinct ids.</li>
+    <li>Each task is held by the shard that the ring gives for its id, and by
+        no other.</li>
+    <li>Tasks of an assignee and pages of a query are gathered from all
+        shards, ordered by id, without duplicates.</li>
+    <li>Tasks fetched by id come back in the order of the ids asked for, with
+        null for missing ids.</li>
+    </ul>
+ */
+public class TestFinal_Sharding extends Test {
+    /** Test notice. */
+    public static final String notice = "checking sharded task managers";
+
+    /** Number of shards. */
+    private static final int SHARDS = 3;
+    /** Number of tasks created one at a time, and again in bulk. */
+    private static final int TASKS = 60;
+    /** Assignees the tasks are given to. */
+    private static final String[] ASSIGNEES = { "ann", "bob", "cid" };
+
+    /** Addresses of the shards. */
+    private final List<String> addresses = new ArrayList<>();
+    /** Task managers of the shards, in the order of <code>addresses</code>. */
+    private final List<TasksManagerExecutor> executors = new ArrayList<>();
+    /** Services of the shards. */
+    private final List<Service<TasksManager>> services = new ArrayList<>();
+    /** Sharding stub. */
+    private ShardedTasksManager sharded;
+
+    /** Initializes the test. */
+    @Override
+    protected void initialize() throws TestFailed {
+        int[] ports = new int[SHARDS];
+        for(int shard = 0; shard < SHARDS; shard++) {
+            ports[shard] = TestUtil.allocatePort();
+            addresses.add("127.0.0.1:" + ports[shard]);
+        }
+        ShardRing ring = new ShardRing(addresses);
+        for(int shard = 0; shard < SHARDS; shard++) {
+            TasksManagerExecutor executor = new TasksManagerExecutor(ring.ownership(shard));
+            Service<TasksManager> service =
+                new Service<>(TasksManager.class, executor, ports[shard]);
+            // Test the connection, not direct calls within the test's virtual machine.
+            service.setLocalCalls(false);
+            service.setSerializeCalls(false);
+            executors.add(executor);
+            services.add(service);
+            try {
+                service.start();
+            } catch(Throwable t) {
+                throw new TestFailed("unable to start shard service", t);
+            }
+        }
+        sharded = new ShardedTasksManager(addresses);
+    }
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws Throwable {
+        ShardRing ring = new ShardRing(addresses);
+
+        task("creating tasks through the sharding stub");
+        int[] ids = new int[2 * TASKS];
+        for(int i = 0; i < TASKS; i++)
+            ids[i] = sharded.createTask("task " + i, "single");
+        List<String> titles = new ArrayList<>();
+        List<String> descriptions = new ArrayList<>();
+        for(int i = TASKS; i < 2 * TASKS; i++) {
+            titles.add("task " + i);
+            descriptions.add("bulk");
+        }
+        System.arraycopy(sharded.createTasks(titles, descriptions), 0, ids, TASKS, TASKS);
+        Set<Integer> distinct = new HashSet<>();
+        for(int id : ids) {
+            if(!distinct.add(id))
+                throw new TestFailed("id " + id + " given to two tasks");
+        }
+        task();
+
+        task("finding each task on the shard owning its id");
+        Set<Integer> used = new HashSet<>();
+        for(int id : ids) {
+            int owner = ring.shardFor(id);
+            used.add(owner);
+            for(int shard = 0; shard < SHARDS; shard++) {
+                Task task = executors.get(shard).getTasks(new int[] { id }).get(0);
+                if(shard == owner && task == null)
+                    throw new TestFailed("task " + id + " missing from its shard " + shard);
+                if(shard != owner && task != null)
+                    throw new TestFailed("task " + id + " held by shard " + shard +
+                                         " instead of " + owner);
+            }
+        }
+        if(used.size() != SHARDS)
+            throw new TestFailed("tasks created on " + used.size() + " of " + SHARDS + " shards");
+        task();
+
+        task("merging tasks gathered from all shards");
+        List<String> assignees = new ArrayList<>();
+        for(int i = 0; i < ids.length; i++)
+            assignees.add(ASSIGNEES[i % ASSIGNEES.length]);
+        BulkResult assigned = sharded.assignTasks(ids, assignees);
+        if(assigned.getFailureCount() != 0)
+            throw new TestFailed("assigning existing tasks failed " + assigned.getFailureCount() +
+                                 " times");
+        for(int a = 0; a < ASSIGNEES.length; a++) {
+            List<Integer> expected = new ArrayList<>();
+            for(int i = a; i < ids.length; i += ASSIGNEES.length)
+                expected.add(ids[i]);
+            Collections.sort(expected);
+            if(!expected.equals(idsOf(sharded.getAssignedTasks(ASSIGNEES[a]))))
+                throw new TestFailed("tasks of " + ASSIGNEES[a] + " not merged by id");
+
+            List<Integer> paged = new ArrayList<>();
+            int cursor = TaskPage.FIRST;
+            do {
+                TaskPage page = sharded.queryTasks(ASSIGNEES[a], null, cursor, 7);
+                paged.addAll(idsOf(page.getTasks()));
+                cursor = page.getNextCursor();
+            } while(cursor != TaskPage.END);
+            if(!expected.equals(paged))
+                throw new TestFailed("pages of the tasks of " + ASSIGNEES[a] + " not merged by id");
+        }
+        task();
+
+        task("fetching tasks by id in the order asked for");
+        int missing = 0;
+        while(distinct.contains(missing))
+            missing++;
+        int[] asked = new int[ids.length + 1];
+        for(int i = 0; i < ids.length; i++)
+            asked[i] = ids[ids.length - 1 - i];
+        asked[ids.length] = missing;
+        List<Task> fetched = sharded.getTasks(asked);
+        for(int i = 0; i < ids.length; i++) {
+            if(fetched.get(i) == null || fetched.get(i).getId() != asked[i])
+                throw new TestFailed("task " + asked[i] + " not fetched in place");
+        }
+        if(fetched.get(ids.length) != null)
+            throw new TestFailed("missing task " + missing + " fetched as " + fetched.get(ids.length));
+        task();
+    }
+
+    /** Stops the sharding stub and the shard services. */
+    @Override
+    protected void clean() {
+        if(sharded != null)
+            sharded.close();
+        for(Service<TasksManager> service : services)
+            service.stop();
+    }
+
+    /** Lists the ids of tasks.
+
+        @param tasks The tasks.
+        @return Their ids, in order.
+     */
+    private static List<Integer> idsOf(List<Task> tasks) {
+        List<Integer> ids = new ArrayList<>();
+        for(Task task : tasks)
+            ids.add(task.getId());
+        return ids;
+    }
+}
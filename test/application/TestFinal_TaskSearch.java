@@ -0,0 +1,163 @@
+package test.application;
+
+import test.util.*;
+import application.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Checks full-text search over tasks.
+
+    <p>
+    The test searches through <code>TasksManagerExecutor</code> and
+    <code>OffHeapTasksManager</code>, and through a
+    <code>TaskSearchIndex</code> directly. It checks that:
+    <ul>
+    <li>A search only returns tasks containing every word of the query,
+        whatever their case and punctuation, and ignores words too short to be
+        indexed.</li>
+    <li>Results are ranked by the occurrences of the query words, an
+        occurrence in the title counting twice, and ties go to the newest
+        task.</li>
+    <li>At most <code>limit</code> results are returned, the best ones, and a
+        limit that is not positive is rejected.</li>
+    <li>A task removed from the index and added again under the same id is
+        found with its new text only, and removing most tasks of a word, which
+        compacts its posting list, leaves the others found.</li>
+    </ul>
+ */
+public class TestFinal_TaskSearch extends Test {
+    /** Test notice. */
+    public static final String notice = "checking task search";
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws Throwable {
+        check("TasksManagerExecutor", new TasksManagerExecutor());
+        check("OffHeapTasksManager", new OffHeapTasksManager());
+
+        task("removing and adding tasks again in a search index");
+        TaskSearchIndex index = new TaskSearchIndex();
+        for(int id = 1; id <= 100; id++)
+            index.add(id, "common", id % 2 == 0 ? "even" : "odd");
+        index.remove(7, "common", "odd");
+        index.add(7, "common", "even even");
+        expectIds("index after re-adding task 7", index.search("odd", 100), odd(1, 100, 7));
+        if(index.search("even", 1)[0] != 7)
+            throw new TestFailed("re-added task 7 not ranked first for \"even\"");
+        if(index.search("even", 100).length != 51)
+            throw new TestFailed("index found " + index.search("even", 100).length +
+                                 " tasks for \"even\" instead of 51");
+
+        // Removing all but a few tasks makes tombstones outnumber live entries.
+        for(int id = 1; id <= 90; id++)
+            index.remove(id, "common", id == 7 ? "even even" : id % 2 == 0 ? "even" : "odd");
+        expectIds("index after compaction", index.search("common", 100),
+                  new int[] { 100, 99, 98, 97, 96, 95, 94, 93, 92, 91 });
+        for(int id = 1; id <= 90; id += 10)
+            index.add(id, "common", "again");
+        expectIds("index after adding tasks again", index.search("common again", 100),
+                  new int[] { 81, 71, 61, 51, 41, 31, 21, 11, 1 });
+        expectIds("index after adding tasks again", index.search("common", 3), new int[] { 100, 99, 98 });
+        for(int id = 91; id <= 100; id++)
+            index.remove(id, "common", id % 2 == 0 ? "even" : "odd");
+        for(int id = 1; id <= 90; id += 10)
+            index.remove(id, "common", "again");
+        if(index.search("common", 100).length != 0 || index.search("again", 100).length != 0)
+            throw new TestFailed("index finds removed tasks");
+        index.add(5, "common", null);
+        expectIds("index after emptying a word", index.search("common", 100), new int[] { 5 });
+        task();
+    }
+
+    /** Checks the searches of one task manager.
+
+        @param name The name of the task manager, for messages.
+        @param manager The task manager, without tasks.
+        @throws Throwable If a check fails.
+     */
+    private void check(String name, TasksManager manager) throws Throwable {
+        task("matching all words of a query in " + name);
+        int both = manager.createTask("Fix the parser", "Crash on EMPTY input.");
+        int parser = manager.createTask("Parser docs", "describe the grammar");
+        int empty = manager.createTask("empty state", "a b c");
+        expectIds(name + " for \"parser empty\"", ids(manager.searchTasks("parser empty", 10)),
+                  new int[] { both });
+        expectIds(name + " for \"PARSER, docs!\"", ids(manager.searchTasks("PARSER, docs!", 10)),
+                  new int[] { parser });
+        expectIds(name + " for \"a parser\"", ids(manager.searchTasks("a parser", 10)),
+                  new int[] { parser, both });
+        expectIds(name + " for \"parser missing\"", ids(manager.searchTasks("parser missing", 10)),
+                  new int[0]);
+        expectIds(name + " for \"a b\"", ids(manager.searchTasks("a b", 10)), new int[0]);
+        expectIds(name + " for \"empty\"", ids(manager.searchTasks("empty", 10)),
+                  new int[] { empty, both });
+        task();
+
+        task("ranking results in " + name);
+        int description = manager.createTask("ranked", "needle");
+        int title = manager.createTask("needle", "ranked");
+        int twice = manager.createTask("ranked", "needle, needle and needle");
+        int older = manager.createTask("haystack", "needle needle");
+        int newer = manager.createTask("haystack", "needle needle");
+        // Title: 2; three in the description: 3; two in the description: 2, newest first.
+        expectIds(name + " for \"needle\"", ids(manager.searchTasks("needle", 10)),
+                  new int[] { twice, newer, older, title, description });
+        task();
+
+        task("limiting results in " + name);
+        expectIds(name + " for \"needle\" with limit 2", ids(manager.searchTasks("needle", 2)),
+                  new int[] { twice, newer });
+        expectIds(name + " for \"needle\" with limit 1", ids(manager.searchTasks("needle", 1)),
+                  new int[] { twice });
+        for(int limit : new int[] { 0, -1 }) {
+            try {
+                manager.searchTasks("needle", limit);
+                throw new TestFailed(name + " accepted search limit " + limit);
+            } catch(IllegalArgumentException e) {
+            }
+        }
+        task();
+    }
+
+    /** Lists the odd numbers of a range, from the largest, without one of them.
+
+        @param from The start of the range.
+        @param to The end of the range, included.
+        @param except The number left out.
+        @return The numbers.
+     */
+    private static int[] odd(int from, int to, int except) {
+        List<Integer> numbers = new ArrayList<>();
+        for(int n = to; n >= from; n--) {
+            if(n % 2 != 0 && n != except)
+                numbers.add(n);
+        }
+        return numbers.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** Gets the ids of tasks.
+
+        @param tasks The tasks.
+        @return Their ids, in order.
+     */
+    private static int[] ids(List<Task> tasks) {
+        int[] ids = new int[tasks.size()];
+        for(int i = 0; i < ids.length; i++)
+            ids[i] = tasks.get(i).getId();
+        return ids;
+    }
+
+    /** Checks the ids found by a search.
+
+        @param what The search, for messages.
+        @param actual The ids found.
+        @param expected The ids expected, in order.
+        @throws TestFailed If the ids differ.
+     */
+    private static void expectIds(String what, int[] actual, int[] expected) throws TestFailed {
+        if(!Arrays.equals(actual, expected))
+            throw new TestFailed("search of " + what + " found " + Arrays.toString(actual) +
+                                 " instead of " + Arrays.toString(expected));
+    }
+}
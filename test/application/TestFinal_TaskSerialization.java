@@ -0,0 +1,147 @@
+package test.application;
+
+import test.util.*;
+import application.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/** Checks the compact serialized form of tasks.
+
+    <p>
+    The test checks that:
+    <ul>
+    <li>Tasks come back unchanged from an object stream, including null
+        assignees, statuses, titles and descriptions, empty and non-ASCII
+        strings, and strings long enough to need several bytes for their
+        size.</li>
+    <li>An assignee shared by many tasks of one stream is written out in full
+        only once.</li>
+    <li>Reading a task with a status outside the known statuses, or with a
+        string size that does not fit in an <code>int</code>, fails with an
+        <code>IOException</code>.</li>
+    </ul>
+ */
+public class TestFinal_TaskSerialization extends Test {
+    /** Test notice. */
+    public static final String notice = "checking the serialized form of tasks";
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws Throwable {
+        task("writing and reading back tasks");
+        String large = "x".repeat(20000);
+        List<Task> tasks = new ArrayList<>();
+        tasks.add(new Task(1, "title", "description", TaskStatus.OPEN, "ann"));
+        tasks.add(new Task(2, "unassigned", "no assignee", TaskStatus.IN_PROGRESS, null));
+        tasks.add(new Task(3, "no status", "restored", null, "bob"));
+        tasks.add(new Task(4, null, null, null, null));
+        tasks.add(new Task(5, "", "", TaskStatus.CLOSED, ""));
+        tasks.add(new Task(-6, "t\u00e2che \u4efb\u52a1 \ud83d\udcdd", "x".repeat(200), TaskStatus.OPEN,
+                           "\u00e9l\u00e8ve"));
+        tasks.add(new Task(Integer.MAX_VALUE, large, large + "y", TaskStatus.CLOSED, large));
+        List<Task> read = roundTrip(tasks);
+        for(int i = 0; i < tasks.size(); i++) {
+            if(!same(tasks.get(i), read.get(i)))
+                throw new TestFailed("task " + tasks.get(i) + " read back as " + read.get(i));
+        }
+        task();
+
+        task("writing a shared assignee once");
+        String assignee = "a".repeat(1000);
+        int once = size(List.of(new Task(1, "a", "b", TaskStatus.OPEN, assignee)));
+        List<Task> sharing = new ArrayList<>();
+        for(int i = 0; i < 100; i++)
+            sharing.add(new Task(i, "a", "b", TaskStatus.OPEN, new String(assignee)));
+        int shared = size(sharing);
+        if(shared > once + 99 * 100)
+            throw new TestFailed("100 tasks sharing an assignee took " + shared +
+                                 " bytes, against " + once + " for one");
+        task();
+
+        task("rejecting invalid serialized tasks");
+        for(int ordinal : new int[] { TaskStatus.values().length, 127, -2, -128 }) {
+            try {
+                readTask(new byte[] { 1, 1 }, ordinal);
+                throw new TestFailed("task with status ordinal " + ordinal + " read back");
+            } catch(IOException e) {
+            }
+        }
+        try {
+            readTask(new byte[] { (byte)0x81, (byte)0x80, (byte)0x80, (byte)0x80, (byte)0x80, 0 },
+                     TaskStatus.OPEN.ordinal());
+            throw new TestFailed("task with an overlong string size read back");
+        } catch(IOException e) {
+        }
+        task();
+    }
+
+    /** Writes tasks to an object stream and reads them back.
+
+        @param tasks The tasks.
+        @return The tasks read back.
+        @throws Exception If the tasks cannot be written or read.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Task> roundTrip(List<Task> tasks) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new ArrayList<>(tasks));
+        }
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (List<Task>)in.readObject();
+        }
+    }
+
+    /** Measures the size of tasks written to an object stream.
+
+        @param tasks The tasks.
+        @return The number of bytes written.
+        @throws IOException If the tasks cannot be written.
+     */
+    private static int size(List<Task> tasks) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new ArrayList<>(tasks));
+        }
+        return bytes.size();
+    }
+
+    /** Reads a task from fields written by hand.
+
+        @param strings The bytes of the title and description.
+        @param ordinal The status ordinal.
+        @throws Exception If the task cannot be read.
+     */
+    private static void readTask(byte[] strings, int ordinal) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeInt(1);
+            out.write(strings);
+            out.writeByte(ordinal);
+            out.writeObject(null);
+        }
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            new Task().readExternal(in);
+        }
+    }
+
+    /** Compares two tasks field by field.
+
+        @param expected The task written.
+        @param actual The task read back.
+        @return True if the tasks have the same fields.
+     */
+    private static boolean same(Task expected, Task actual) {
+        return actual != null && expected.getId() == actual.getId() &&
+               Objects.equals(expected.getTitle(), actual.getTitle()) &&
+               Objects.equals(expected.getDescription(), actual.getDescription()) &&
+               expected.getStatus() == actual.getStatus() &&
+               Objects.equals(expected.getAssignee(), actual.getAssignee());
+    }
+}
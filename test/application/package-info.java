@@ -0,0 +1,2 @@
+/** Tests for the task manager application, its replication and its persistence. */
+package test.application;
@@ -8,6 +8,7 @@ import java.io.FileNotFoundException;
     <p>
     This interface is used in multiple tests.
  */
+@RemoteInterface
 public interface SimpleInterface
 {
     /** Tests transmission of arguments and returning of results.
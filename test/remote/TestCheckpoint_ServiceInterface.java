@@ -3,7 +3,6 @@ package test.remote;
 import test.util.*;
 import remote.*;
 import java.net.*;
-import java.util.Random;
 
 /** Performs basic tests on the public interface of {@link remote.Service}.
 
@@ -26,8 +25,7 @@ public class TestCheckpoint_ServiceInterface extends Test {
 
     /** Creates a <code>TestService</code> object. */
     public TestCheckpoint_ServiceInterface() {
-        Random rng = new Random(System.nanoTime());
-        port = rng.nextInt(10000) + 7000;
+        port = TestUtil.allocatePort();
     }
 
     /** Performs the test. */
@@ -3,7 +3,6 @@ package test.remote;
 import test.util.*;
 import remote.*;
 import java.net.*;
-import java.util.Random;
 
 /** Performs basic tests on the public interface of {@link remote.Service}.
 
@@ -24,8 +23,7 @@ public class TestCheckpoint_ServiceRuns extends Test {
 
     /** Creates a <code>TestCheckpoint_ServiceRuns</code> object. */
     public TestCheckpoint_ServiceRuns() {
-        Random rng = new Random(System.nanoTime());
-        port = rng.nextInt(10000) + 7000;
+        port = TestUtil.allocatePort();
 
         service = new SimpleService();
         stopped = false;
@@ -0,0 +1,213 @@
+package test.remote;
+
+import test.util.*;
+import remote.AsyncLogAppender;
+import remote.Log;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+
+/** Checks the asynchronous log appender and the levels of the log.
+
+    <p>
+    The test logs to appenders printing to memory. It checks that:
+    <ul>
+    <li>When the appender cannot print as fast as messages come, messages
+        that do not fit in its buffer are dropped without blocking the caller,
+        counted, and reported with the next message printed.</li>
+    <li>Only messages at the level set or a less verbose one are passed to
+        the appender, formatted with their arguments and followed by the stack
+        trace of their exception.</li>
+    <li>Closing the appender prints every message appended before, and
+        nothing is printed after.</li>
+    </ul>
+ */
+public class TestFinal_AsyncLog extends Test {
+    /** Test notice. */
+    public static final String notice = "checking the asynchronous log appender";
+
+    /** Capacity of the appender whose buffer is filled. */
+    private static final int CAPACITY = 8;
+    /** Number of messages appended while the appender cannot print. */
+    private static final int APPENDED = 20;
+    /** Number of messages appended before closing an appender. */
+    private static final int CLOSED = 2000;
+
+    /** Level logged before the test. */
+    private Log.Level previousLevel;
+    /** Whether the test replaced the appender of the log. */
+    private boolean replacedAppender;
+    /** Gate holding back the appender whose buffer is filled. */
+    private final CountDownLatch gate = new CountDownLatch(1);
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws Throwable {
+        task("dropping messages when the buffer is full");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream gated = new PrintStream(new GatedStream(bytes, gate), true, StandardCharsets.UTF_8);
+        AsyncLogAppender full = new AsyncLogAppender(gated, CAPACITY);
+        // The first message blocks the background thread, so the buffer is not emptied.
+        long start = System.nanoTime();
+        for(int i = 0; i < APPENDED; i++)
+            full.append(Log.Level.INFO, "Filler", "message {}", i, null, null);
+        if(System.nanoTime() - start > 500_000_000L)
+            throw new TestFailed("appending to a full buffer blocked");
+        if(full.getDropped() != APPENDED - CAPACITY)
+            throw new TestFailed("appender counted " + full.getDropped() + " dropped messages instead of " +
+                                 (APPENDED - CAPACITY));
+        gate.countDown();
+        full.close();
+        String printed = bytes.toString(StandardCharsets.UTF_8);
+        for(int i = 0; i < APPENDED; i++) {
+            boolean found = printed.contains(" Filler - message " + i + System.lineSeparator());
+            if(found != i < CAPACITY)
+                throw new TestFailed("message " + i + (found ? " printed" : " not printed") + ":\n" + printed);
+        }
+        if(count(printed, "WARN  AsyncLogAppender - " + (APPENDED - CAPACITY) +
+                          " messages dropped: log buffer full") != 1)
+            throw new TestFailed("dropped messages not reported once:\n" + printed);
+        if(full.getDropped() != 0)
+            throw new TestFailed("dropped messages still counted after being reported");
+        task();
+
+        task("filtering messages by level");
+        previousLevel = Log.getLevel();
+        ByteArrayOutputStream logged = new ByteArrayOutputStream();
+        AsyncLogAppender appender = new AsyncLogAppender(new PrintStream(logged, true, StandardCharsets.UTF_8),
+                                                         AsyncLogAppender.DEFAULT_CAPACITY);
+        replacedAppender = true;
+        Log.setAppender(appender);
+        Log.setLevel(Log.Level.WARN);
+        if(!Log.isEnabled(Log.Level.ERROR) || !Log.isEnabled(Log.Level.WARN) || Log.isEnabled(Log.Level.INFO))
+            throw new TestFailed("level WARN does not enable exactly ERROR and WARN");
+        Log log = Log.get(TestFinal_AsyncLog.class);
+        log.error("error {}", 1);
+        log.warn("warning", new IOException("broken pipe"));
+        log.info("information");
+        log.debug("debugging {}", "details");
+        log.trace("tracing {}", 1);
+        Log.setLevel(null);
+        if(Log.getLevel() != null || Log.isEnabled(Log.Level.ERROR))
+            throw new TestFailed("logging not turned off");
+        log.error("error while off");
+        appender.flush();
+        // Other tests may log at the same time, so only the lines of this log are considered.
+        String ours = lines(logged.toString(StandardCharsets.UTF_8), " TestFinal_AsyncLog - ");
+        String expected = "ERROR TestFinal_AsyncLog - error 1\n" +
+                          "WARN  TestFinal_AsyncLog - warning\n";
+        if(!ours.equals(expected))
+            throw new TestFailed("log printed:\n" + ours + "instead of:\n" + expected);
+        if(!logged.toString(StandardCharsets.UTF_8).contains("java.io.IOException: broken pipe"))
+            throw new TestFailed("exception of warning not printed");
+        task();
+
+        task("printing every message when closing");
+        ByteArrayOutputStream closing = new ByteArrayOutputStream();
+        AsyncLogAppender closed = new AsyncLogAppender(new PrintStream(closing, true, StandardCharsets.UTF_8),
+                                                       4096);
+        for(int i = 0; i < CLOSED; i++)
+            closed.append(Log.Level.DEBUG, "Closing", "message {}", i, null, null);
+        closed.close();
+        int lines = count(closing.toString(StandardCharsets.UTF_8), " Closing - message ");
+        if(lines != CLOSED)
+            throw new TestFailed("closing printed " + lines + " messages instead of " + CLOSED);
+        closed.append(Log.Level.DEBUG, "Closing", "after closing", null, null, null);
+        try {
+            Thread.sleep(200);
+        } catch(InterruptedException e) {
+            throw new TestFailed("sleep interrupted", e);
+        }
+        if(closing.toString(StandardCharsets.UTF_8).contains("after closing"))
+            throw new TestFailed("message printed after closing");
+        task();
+    }
+
+    /** Restores the level of the log and an appender printing to the
+        standard output, and releases the gated appender. */
+    @Override
+    protected void clean() {
+        gate.countDown();
+        if(replacedAppender) {
+            Log.setLevel(previousLevel);
+            Log.setAppender(new AsyncLogAppender(System.out, AsyncLogAppender.DEFAULT_CAPACITY));
+        }
+    }
+
+    /** Counts the occurrences of a string.
+
+        @param text The text searched.
+        @param part The string counted.
+        @return The number of occurrences.
+     */
+    private static int count(String text, String part) {
+        int count = 0;
+        for(int at = text.indexOf(part); at >= 0; at = text.indexOf(part, at + part.length()))
+            count++;
+        return count;
+    }
+
+    /** Keeps the lines of a log that contain a string, without their time
+        and thread.
+
+        @param text The log.
+        @param part The string.
+        @return The lines kept, each ending with a newline.
+     */
+    private static String lines(String text, String part) {
+        StringBuilder kept = new StringBuilder();
+        for(String line : text.split("\\R")) {
+            if(!line.contains(part))
+                continue;
+            // Time, level padded to five characters, thread in brackets, then the log name.
+            String level = line.substring(line.indexOf(' ') + 1, line.indexOf(" ["));
+            kept.append(level).append(line.substring(line.indexOf("] ") + 1)).append('\n');
+        }
+        return kept.toString();
+    }
+
+    /** Stream that blocks writes until a gate opens. */
+    private static class GatedStream extends OutputStream {
+        /** Stream written to once the gate opens. */
+        private final OutputStream out;
+        /** The gate. */
+        private final CountDownLatch gate;
+
+        /** Creates a gated stream.
+
+            @param out The stream written to once the gate opens.
+            @param gate The gate.
+         */
+        GatedStream(OutputStream out, CountDownLatch gate) {
+            this.out = out;
+            this.gate = gate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            await();
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            await();
+            out.write(b, off, len);
+        }
+
+        /** Waits for the gate to open.
+
+            @throws IOException If interrupted while waiting.
+         */
+        private void await() throws IOException {
+            try {
+                gate.await();
+            } catch(InterruptedException e) {
+                throw new IOException("interrupted", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package test.remote;
+
+import test.util.*;
+import remote.*;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/** Checks that draining a service lets in-flight calls complete, and
+    abandons those still running at the deadline.
+
+    <p>
+    This test starts a service and calls <code>rendezvous</code> on a stub, so
+    that the call blocks inside the service. It then drains the service and
+    wakes the blocked call. The first part succeeds if the call returns
+    normally and the service reports one completed and no abandoned calls.
+
+    <p>
+    The test then starts a second service and blocks a call inside it the same
+    way, but drains it with a short deadline without waking the call. The
+    second part succeeds if new connections are refused during the drain, the
+    service reports no completed and one abandoned call, and the client of the
+    abandoned call sees a connection failure.
+ */
+public class TestFinal_Drain extends Test {
+    /** Test notice. */
+    public static final String notice = "checking service drains in-flight calls";
+    /** Prerequisites. */
+    public static final Class[] prerequisites = new Class[] { TestFinal_Multithread.class };
+
+    /** Test object of the first service. */
+    private SimpleObject object;
+    /** Service whose call completes during the drain. */
+    private DrainingService service;
+    /** Address at which the first service will run. */
+    private String address;
+
+    /** Test object of the second service, whose call is never woken before the drain ends. */
+    private SimpleObject stuckObject;
+    /** Service whose call is abandoned at the drain deadline. */
+    private DrainingService stuckService;
+
+    /** Number of completed calls reported by the last drain, or -1 before it ends. */
+    private volatile int completed = -1;
+    /** Number of abandoned calls reported by the last drain, or -1 before it ends. */
+    private volatile int abandoned = -1;
+
+    /** Initializes the test. */
+    @Override
+    protected void initialize() throws TestFailed {
+        int port = TestUtil.allocatePort();
+
+        address = "127.0.0.1:" + Integer.toString(port);
+        object = new SimpleObject();
+        service = new DrainingService(object, port);
+
+        try {
+            service.start();
+        } catch(Throwable t) {
+            throw new TestFailed("unable to start service", t);
+        }
+    }
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws TestFailed {
+        drainCompleted();
+        drainAbandoned();
+    }
+
+    /** Checks that a call woken during the drain completes.
+
+        @throws TestFailed If the test fails.
+     */
+    private void drainCompleted() throws TestFailed {
+        SimpleInterface stub;
+
+        try {
+            stub = StubFactory.create(SimpleInterface.class, address);
+        } catch(Throwable t) {
+            throw new TestFailed("unable to create stub", t);
+        }
+
+        // Start a call that blocks inside the service until it is woken.
+        Thread caller = new Thread(() -> {
+            try {
+                stub.rendezvous();
+            } catch(Throwable t) {
+                failure(new TestFailed("in-flight call failed during drain", t));
+            }
+        });
+        caller.start();
+
+        try { Thread.sleep(500); } catch (InterruptedException e) {}
+
+        // Wake the blocked call shortly after the drain has started.
+        Thread waker = new Thread(() -> {
+            try { Thread.sleep(500); } catch (InterruptedException e) {}
+            object.wake();
+        });
+        waker.start();
+
+        task("draining service");
+        service.drain(10, TimeUnit.SECONDS);
+        task();
+
+        try {
+            caller.join();
+        } catch(InterruptedException e) {
+            throw new TestFailed("interrupted while waiting for in-flight call");
+        }
+
+        if(completed != 1 || abandoned != 0)
+            throw new TestFailed("expected 1 completed and 0 abandoned calls, got " +
+                                 completed + " completed and " + abandoned + " abandoned");
+    }
+
+    /** Checks that a call still running at the deadline is abandoned, and
+        that new connections are refused during the drain.
+
+        @throws TestFailed If the test fails.
+     */
+    private void drainAbandoned() throws TestFailed {
+        int port = TestUtil.allocatePort();
+
+        stuckObject = new SimpleObject();
+        stuckService = new DrainingService(stuckObject, port);
+        try {
+            stuckService.start();
+        } catch(Throwable t) {
+            throw new TestFailed("unable to start second service", t);
+        }
+
+        SimpleInterface stub;
+        try {
+            stub = StubFactory.create(SimpleInterface.class, "127.0.0.1:" + port);
+        } catch(Throwable t) {
+            throw new TestFailed("unable to create stub", t);
+        }
+
+        // Start a call that stays blocked until after the deadline.
+        Throwable[] outcome = new Throwable[1];
+        Thread caller = new Thread(() -> {
+            try {
+                stub.rendezvous();
+            } catch(Throwable t) {
+                outcome[0] = t;
+            }
+        });
+        caller.start();
+
+        try { Thread.sleep(500); } catch (InterruptedException e) {}
+
+        // Try to connect while the drain waits for the call.
+        boolean[] refused = new boolean[1];
+        Thread connector = new Thread(() -> {
+            try { Thread.sleep(300); } catch (InterruptedException e) {}
+            try {
+                new Socket("127.0.0.1", port).close();
+            } catch(IOException e) {
+                refused[0] = true;
+            }
+        });
+        connector.start();
+
+        completed = -1;
+        abandoned = -1;
+        task("draining service with a call that does not complete");
+        stuckService.drain(1, TimeUnit.SECONDS);
+        task();
+
+        try {
+            connector.join();
+            caller.join();
+        } catch(InterruptedException e) {
+            throw new TestFailed("interrupted while waiting for abandoned call");
+        }
+
+        if(!refused[0])
+            throw new TestFailed("service accepted a connection while draining");
+        if(completed != 0 || abandoned != 1)
+            throw new TestFailed("expected 0 completed and 1 abandoned calls, got " +
+                                 completed + " completed and " + abandoned + " abandoned");
+        if(!(outcome[0] instanceof RemoteObjectException))
+            throw new TestFailed("client of abandoned call did not see a connection failure", outcome[0]);
+    }
+
+    /** Stops the services. */
+    @Override
+    protected void clean() {
+        object.wake();
+        service.stop();
+        service = null;
+        if(stuckService != null) {
+            stuckObject.wake();
+            stuckService.stop();
+            stuckService = null;
+        }
+    }
+
+    /** Test service class that records drain results and fails the test when
+        an exception is received in one of the service's threads. Its stubs
+        connect to it, so that the drain waits for service threads. */
+    private class DrainingService extends Service<SimpleInterface> {
+        /** Creates a <code>DrainingService</code> with a test object. */
+        DrainingService(SimpleObject object, int port) {
+            super(SimpleInterface.class, object, port);
+            setLocalCalls(false);
+        }
+
+        /** Records the drain results. */
+        @Override
+        protected void drained(int completed, int abandoned) {
+            TestFinal_Drain.this.completed = completed;
+            TestFinal_Drain.this.abandoned = abandoned;
+        }
+
+        /** Fails the test upon an error in the listening thread. */
+        @Override
+        protected boolean listen_error(Exception e) {
+            failure(new TestFailed("exception in listening thread", e));
+            return false;
+        }
+
+        /** Fails the test upon an error in a service thread. */
+        @Override
+        protected void service_error(RemoteObjectException e) {
+            failure(new TestFailed("exception in service thread", e));
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package test.remote;
+
+import test.util.*;
+import remote.*;
+import java.io.FileNotFoundException;
+import java.lang.reflect.InvocationTargetException;
+
+/** Checks how a service encodes the exceptions thrown by remote methods.
+
+    <p>
+    The test checks that:
+    <ul>
+    <li>With <code>TRIMMED</code> stack traces, the client sees the frames of
+        the remote method and of the methods it called, including through
+        reflection, but none of the service's own frames.</li>
+    <li>With <code>OMITTED</code> stack traces, the client sees an empty stack
+        trace.</li>
+    <li>A declared exception sent as its class and message only is recreated
+        with the same class and message, while one with a cause is still sent
+        whole.</li>
+    <li>Encoding does not change the stack trace of an exception the service
+        object keeps and throws again.</li>
+    </ul>
+ */
+public class TestFinal_ExceptionEncoding extends Test {
+    /** Test notice. */
+    public static final String notice = "checking encoding of exceptions";
+    /** Prerequisites. */
+    public static final Class[] prerequisites = new Class[] { TestFinal_Connection.class };
+
+    /** Address at which the test service will run. */
+    private String address;
+    /** Service object used in the test. */
+    private FailingObject object;
+    /** Service used in the test. */
+    private Service<FailingInterface> service;
+
+    /** Initializes the test. */
+    @Override
+    protected void initialize() throws TestFailed {
+        int port = TestUtil.allocatePort();
+
+        address = "127.0.0.1:" + Integer.toString(port);
+        object = new FailingObject();
+        service = new Service<FailingInterface>(FailingInterface.class, object, port);
+        // Test the connection, not direct calls within the test's virtual machine.
+        service.setLocalCalls(false);
+
+        try {
+            service.start();
+        } catch(Throwable t) {
+            throw new TestFailed("unable to start service", t);
+        }
+    }
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws TestFailed {
+        FailingInterface stub;
+
+        try {
+            stub = StubFactory.create(FailingInterface.class, address);
+        } catch(Throwable t) {
+            throw new TestFailed("unable to create stub", t);
+        }
+
+        task("checking trimmed stack traces");
+        StackTraceElement[] frames = thrown(stub, false).getStackTrace();
+        if(!hasFrame(frames, "throwNotFound"))
+            throw new TestFailed("trimmed stack trace lost the frame that threw the exception");
+        if(!hasFrame(frames, "failThroughReflection"))
+            throw new TestFailed("trimmed stack trace lost the frame of the remote method");
+        for(StackTraceElement frame : frames) {
+            if(frame.getClassName().startsWith("remote.") ||
+               frame.getClassName().equals(Thread.class.getName()))
+                throw new TestFailed("trimmed stack trace kept service frame " + frame);
+        }
+
+        int kept = object.kept.getStackTrace().length;
+        thrown(stub, true);
+        if(object.kept.getStackTrace().length != kept)
+            throw new TestFailed("encoding changed the stack trace of an exception kept by the service");
+        task();
+
+        task("checking omitted stack traces");
+        service.setExceptionEncoding(ExceptionEncoding.OMITTED);
+        if(thrown(stub, false).getStackTrace().length != 0)
+            throw new TestFailed("omitted stack trace is not empty");
+        if(object.kept.getStackTrace().length != kept)
+            throw new TestFailed("encoding changed the stack trace of an exception kept by the service");
+        task();
+
+        task("checking stackless declared exceptions");
+        service.setExceptionEncoding(ExceptionEncoding.TRIMMED);
+        service.setStacklessDeclaredExceptions(true);
+        FileNotFoundException stackless = thrown(stub, false);
+        if(stackless.getClass() != FileNotFoundException.class ||
+           !FailingObject.MESSAGE.equals(stackless.getMessage()))
+            throw new TestFailed("stackless exception arrived as " + stackless);
+
+        try {
+            stub.failWithCause();
+            throw new TestFailed("exception with a cause was not thrown");
+        } catch(FileNotFoundException e) {
+            if(!(e.getCause() instanceof IllegalStateException))
+                throw new TestFailed("exception with a cause lost its cause", e);
+        } catch(TestFailed e) {
+            throw e;
+        } catch(Throwable t) {
+            throw new TestFailed("exception with a cause arrived as another exception", t);
+        }
+        task();
+    }
+
+    /** Calls a method expected to throw <code>FileNotFoundException</code>.
+
+        @param stub The stub to call.
+        @param kept Whether to call the method throwing the kept exception.
+        @return The exception the client received.
+        @throws TestFailed If the call does not throw that exception.
+     */
+    private FileNotFoundException thrown(FailingInterface stub, boolean kept) throws TestFailed {
+        try {
+            if(kept)
+                stub.failKept();
+            else
+                stub.failThroughReflection();
+        } catch(FileNotFoundException e) {
+            return e;
+        } catch(Throwable t) {
+            throw new TestFailed("remote method threw an unexpected exception", t);
+        }
+        throw new TestFailed("remote method did not throw");
+    }
+
+    /** Checks whether a stack trace has a frame of <code>FailingObject</code>.
+
+        @param frames The stack trace.
+        @param method The method of the frame.
+        @return <code>true</code> if it has the frame.
+     */
+    private static boolean hasFrame(StackTraceElement[] frames, String method) {
+        for(StackTraceElement frame : frames) {
+            if(frame.getClassName().equals(FailingObject.class.getName()) &&
+               frame.getMethodName().equals(method))
+                return true;
+        }
+        return false;
+    }
+
+    /** Stops the service. */
+    @Override
+    protected void clean() {
+        service.stop();
+        service = null;
+    }
+
+    /** Interface whose methods throw a declared exception. */
+    public interface FailingInterface {
+        /** Throws an exception from a method the service object calls through
+            reflection.
+
+            @throws FileNotFoundException Always.
+            @throws RemoteObjectException If the call cannot be complete due
+                                          to a network error.
+         */
+        public void failThroughReflection()
+            throws FileNotFoundException, RemoteObjectException;
+
+        /** Throws the same exception object each time.
+
+            @throws FileNotFoundException Always.
+            @throws RemoteObjectException If the call cannot be complete due
+                                          to a network error.
+         */
+        public void failKept() throws FileNotFoundException, RemoteObjectException;
+
+        /** Throws an exception that has a cause.
+
+            @throws FileNotFoundException Always.
+            @throws RemoteObjectException If the call cannot be complete due
+                                          to a network error.
+         */
+        public void failWithCause() throws FileNotFoundException, RemoteObjectException;
+    }
+
+    /** Implementation of <code>FailingInterface</code>. */
+    public static class FailingObject implements FailingInterface {
+        /** Message of the exceptions thrown. */
+        static final String MESSAGE = "missing";
+
+        /** Exception thrown by every call to <code>failKept</code>. */
+        final FileNotFoundException kept = new FileNotFoundException(MESSAGE);
+
+        @Override
+        public void failThroughReflection() throws FileNotFoundException {
+            try {
+                FailingObject.class.getMethod("throwNotFound").invoke(null);
+            } catch(InvocationTargetException e) {
+                throw (FileNotFoundException)e.getCause();
+            } catch(ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void failKept() throws FileNotFoundException {
+            throw kept;
+        }
+
+        @Override
+        public void failWithCause() throws FileNotFoundException {
+            FileNotFoundException exception = new FileNotFoundException(MESSAGE);
+            exception.initCause(new IllegalStateException("cause"));
+            throw exception;
+        }
+
+        /** Throws <code>FileNotFoundException</code>, called through reflection.
+
+            @throws FileNotFoundException Always.
+         */
+        public static void throwNotFound() throws FileNotFoundException {
+            throw new FileNotFoundException(MESSAGE);
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package test.remote;
+
+import test.util.*;
+import remote.*;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+
+/** Checks that stubs and services use the classes generated for remote
+    interfaces, and fall back to a proxy and reflection without them.
+
+    <p>
+    The test starts services for <code>SimpleInterface</code> and for
+    <code>TypedInterface</code>, which are marked with
+    <code>RemoteInterface</code>, and for <code>PlainInterface</code>, which is
+    not. It checks that:
+    <ul>
+    <li>Stubs of the marked interfaces are of their generated stub classes, and
+        their calls carry primitive, array, null and variable-arity arguments,
+        results and declared exceptions.</li>
+    <li>Services of the marked interfaces choose the typed codec in the
+        handshake, and the service of the unmarked one the Java codec.</li>
+    <li>A proxy stub of a marked interface, whose calls are copied into typed
+        calls, works as well.</li>
+    <li>Stubs of the unmarked interface are proxies, and their calls reach the
+        service through reflection.</li>
+    </ul>
+ */
+public class TestFinal_GeneratedStubs extends Test {
+    /** Test notice. */
+    public static final String notice = "checking generated stubs and skeletons";
+    /** Prerequisites. */
+    public static final Class[] prerequisites = new Class[] { TestFinal_Connection.class };
+
+    /** Addresses of the services of <code>SimpleInterface</code>,
+        <code>TypedInterface</code> and <code>PlainInterface</code>. */
+    private final String[] addresses = new String[3];
+    /** The services, in the order of <code>addresses</code>. */
+    private final Service<?>[] services = new Service<?>[3];
+
+    /** Initializes the test. */
+    @Override
+    protected void initialize() throws TestFailed {
+        services[0] = new Service<SimpleInterface>(SimpleInterface.class, new SimpleObject(), port(0));
+        services[1] = new Service<TypedInterface>(TypedInterface.class, new TypedObject(), port(1));
+        services[2] = new Service<PlainInterface>(PlainInterface.class, new PlainObject(), port(2));
+        for(Service<?> service : services) {
+            // Test the connection, not direct calls within the test's virtual machine.
+            service.setLocalCalls(false);
+            try {
+                service.start();
+            } catch(Throwable t) {
+                throw new TestFailed("unable to start service", t);
+            }
+        }
+    }
+
+    /** Allocates the port of a service and records its address.
+
+        @param index The index of the service.
+        @return The port.
+     */
+    private int port(int index) {
+        int port = TestUtil.allocatePort();
+        addresses[index] = "127.0.0.1:" + port;
+        return port;
+    }
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws TestFailed {
+        task("calling through generated stubs");
+        SimpleInterface simple = StubFactory.create(SimpleInterface.class, addresses[0]);
+        if(!simple.getClass().getName().equals("test.remote.SimpleInterface_Stub"))
+            throw new TestFailed("stub of SimpleInterface is a " + simple.getClass().getName() +
+                                 ", not the generated SimpleInterface_Stub");
+        checkSimple(simple);
+
+        TypedInterface typed = StubFactory.create(TypedInterface.class, addresses[1]);
+        if(!(typed instanceof GeneratedStub))
+            throw new TestFailed("stub of TypedInterface is a " + typed.getClass().getName() +
+                                 ", not a generated stub");
+        checkTyped(typed);
+        task();
+
+        task("choosing codecs in the handshake");
+        checkCodec(SimpleInterface.class, addresses[0], HandshakeRequest.CODEC_TYPED);
+        checkCodec(TypedInterface.class, addresses[1], HandshakeRequest.CODEC_TYPED);
+        checkCodec(PlainInterface.class, addresses[2], HandshakeRequest.CODEC_JAVA);
+        task();
+
+        task("calling through a proxy on a typed connection");
+        checkSimple((SimpleInterface)Proxy.newProxyInstance(
+            SimpleInterface.class.getClassLoader(), new Class<?>[] { SimpleInterface.class },
+            new StubInvocationHandler(SimpleInterface.class, addresses[0], false, false)));
+        checkTyped((TypedInterface)Proxy.newProxyInstance(
+            TypedInterface.class.getClassLoader(), new Class<?>[] { TypedInterface.class },
+            new StubInvocationHandler(TypedInterface.class, addresses[1], false, false)));
+        task();
+
+        task("falling back to a proxy and reflection");
+        PlainInterface plain = StubFactory.create(PlainInterface.class, addresses[2]);
+        if(!Proxy.isProxyClass(plain.getClass()))
+            throw new TestFailed("stub of an unmarked interface is a " +
+                                 plain.getClass().getName() + ", not a proxy");
+        try {
+            if(plain.add(40, 2) != 42)
+                throw new TestFailed("incorrect sum from the proxy stub");
+        } catch(RemoteObjectException e) {
+            throw new TestFailed("call through the proxy stub failed", e);
+        }
+        task();
+    }
+
+    /** Checks the calls of a stub of <code>SimpleInterface</code>.
+
+        @param stub The stub.
+        @throws TestFailed If a call fails.
+     */
+    private static void checkSimple(SimpleInterface stub) throws TestFailed {
+        try {
+            if(stub.method(false) != null)
+                throw new TestFailed("incorrect result from stub of SimpleInterface");
+        } catch(TestFailed e) {
+            throw e;
+        } catch(Throwable t) {
+            throw new TestFailed("unexpected exception from stub of SimpleInterface", t);
+        }
+        try {
+            stub.method(true);
+            throw new TestFailed("exception expected but not received from stub");
+        } catch(FileNotFoundException e) {
+        } catch(TestFailed e) {
+            throw e;
+        } catch(Throwable t) {
+            throw new TestFailed("unexpected exception from stub of SimpleInterface", t);
+        }
+    }
+
+    /** Checks the calls of a stub of <code>TypedInterface</code>.
+
+        @param stub The stub.
+        @throws TestFailed If a call fails.
+     */
+    private static void checkTyped(TypedInterface stub) throws TestFailed {
+        try {
+            if(stub.combine(true, (byte)-2, 'x', (short)300, 70000, 1L << 40, 0.5f, -2.25) !=
+               combined(true, (byte)-2, 'x', (short)300, 70000, 1L << 40, 0.5f, -2.25))
+                throw new TestFailed("primitive arguments changed through the stub");
+            if(!Arrays.equals(stub.reverse(1, 2, 3), new int[] { 3, 2, 1 }))
+                throw new TestFailed("array result changed through the stub");
+            if(stub.reverse().length != 0)
+                throw new TestFailed("empty variable-arity argument changed through the stub");
+            if(!stub.join(List.of("a", "b"), "-").equals("a-b"))
+                throw new TestFailed("object arguments changed through the stub");
+            if(stub.join(List.of(), null) != null)
+                throw new TestFailed("null argument or result changed through the stub");
+            stub.touch();
+        } catch(TestFailed e) {
+            throw e;
+        } catch(Throwable t) {
+            throw new TestFailed("unexpected exception from stub of TypedInterface", t);
+        }
+        try {
+            stub.fail("declared");
+            throw new TestFailed("exception expected but not received from stub");
+        } catch(IOException e) {
+            if(!"declared".equals(e.getMessage()))
+                throw new TestFailed("declared exception lost its message");
+        } catch(TestFailed e) {
+            throw e;
+        } catch(Throwable t) {
+            throw new TestFailed("unexpected exception from stub of TypedInterface", t);
+        }
+    }
+
+    /** Opens a connection to a service and checks the codec its handshake
+        chooses when the stub offers both.
+
+        @param c The interface of the service.
+        @param address The address of the service.
+        @param expected The codec expected.
+        @throws TestFailed If the service chooses another codec.
+     */
+    private static void checkCodec(Class<?> c, String address, String expected)
+        throws TestFailed {
+        RemoteInterfaceDescriptor descriptor = RemoteInterfaceDescriptor.of(c);
+        String[] signatures = new String[descriptor.getMethods().size()];
+        for(RemoteInterfaceDescriptor.RemoteMethod method : descriptor.getMethods())
+            signatures[method.getId()] = method.getSignature();
+        LeakySocket socket = new LeakySocket(address, false, false);
+        try {
+            socket.sendObject(new HandshakeRequest(
+                descriptor.getFingerprint(), signatures,
+                new String[] { HandshakeRequest.CODEC_TYPED, HandshakeRequest.CODEC_JAVA },
+                new String[] { HandshakeRequest.COMPRESSION_NONE }));
+            Object response = socket.recvObject();
+            if(!(response instanceof HandshakeResponse))
+                throw new TestFailed("service of " + c.getSimpleName() + " did not answer the handshake");
+            String codec = ((HandshakeResponse)response).getCodec();
+            if(!expected.equals(codec))
+                throw new TestFailed("service of " + c.getSimpleName() + " chose codec " + codec +
+                                     " instead of " + expected);
+        } catch(IOException e) {
+            throw new TestFailed("handshake with the service of " + c.getSimpleName() + " failed", e);
+        } finally {
+            socket.close();
+        }
+    }
+
+    /** Stops the services. */
+    @Override
+    protected void clean() {
+        for(Service<?> service : services) {
+            if(service != null)
+                service.stop();
+        }
+    }
+
+    /** Combines primitive values into one, so that a change to any of them
+        changes the result.
+
+        @return The combination.
+     */
+    private static double combined(boolean z, byte b, char c, short s, int i, long j,
+                                   float f, double d) {
+        return (z ? 1 : -1) * (b + 3 * c + 7 * s + 11.0 * i + 13.0 * j + 17 * f + 19 * d);
+    }
+
+    /** Interface with generated classes and methods of many types. */
+    @RemoteInterface
+    public interface TypedInterface {
+        /** Combines primitive arguments with <code>combined</code>.
+
+            @return The combination.
+            @throws RemoteObjectException If the call cannot be complete due
+                                          to a network error.
+         */
+        public double combine(boolean z, byte b, char c, short s, int i, long j,
+                              float f, double d) throws RemoteObjectException;
+
+        /** Reverses its arguments.
+
+            @param values The values.
+            @return The values in reverse order.
+            @throws RemoteObjectException If the call cannot be complete due
+                                          to a network error.
+         */
+        public int[] reverse(int... values) throws RemoteObjectException;
+
+        /** Joins strings.
+
+            @param parts The strings.
+            @param separator The separator, or null.
+            @return The joined strings, or null if the separator is null.
+            @throws RemoteObjectException If the call cannot be complete due
+                                          to a network error.
+         */
+        public String join(List<String> parts, String separator) throws RemoteObjectException;
+
+        /** Does nothing.
+
+            @throws RemoteObjectException If the call cannot be complete due
+                                          to a network error.
+         */
+        public void touch() throws RemoteObjectException;
+
+        /** Throws a declared exception.
+
+            @param message The message of the exception.
+            @throws IOException Always.
+            @throws RemoteObjectException If the call cannot be complete due
+                                          to a network error.
+         */
+        public void fail(String message) throws RemoteObjectException, IOException;
+    }
+
+    /** Implementation of <code>TypedInterface</code>. */
+    public static class TypedObject implements TypedInterface {
+        @Override
+        public double combine(boolean z, byte b, char c, short s, int i, long j,
+                              float f, double d) {
+            return combined(z, b, c, s, i, j, f, d);
+        }
+
+        @Override
+        public int[] reverse(int... values) {
+            int[] reversed = new int[values.length];
+            for(int i = 0; i < values.length; i++)
+                reversed[i] = values[values.length - 1 - i];
+            return reversed;
+        }
+
+        @Override
+        public String join(List<String> parts, String separator) {
+            return separator == null ? null : String.join(separator, parts);
+        }
+
+        @Override
+        public void touch() {
+        }
+
+        @Override
+        public void fail(String message) throws IOException {
+            throw new IOException(message);
+        }
+    }
+
+    /** Interface without generated classes. */
+    public interface PlainInterface {
+        /** Adds two numbers.
+
+            @param a The first number.
+            @param b The second number.
+            @return The sum.
+            @throws RemoteObjectException If the call cannot be complete due
+                                          to a network error.
+         */
+        public int add(int a, int b) throws RemoteObjectException;
+    }
+
+    /** Implementation of <code>PlainInterface</code>. */
+    public static class PlainObject implements PlainInterface {
+        @Override
+        public int add(int a, int b) {
+            return a + b;
+        }
+    }
+}
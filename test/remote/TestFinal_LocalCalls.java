@@ -0,0 +1,200 @@
+package test.remote;
+
+import test.util.*;
+import remote.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Checks calls from stubs to a service in the same virtual machine.
+
+    <p>
+    The test checks that:
+    <ul>
+    <li>Such calls run in the caller's thread rather than in a service
+        thread.</li>
+    <li>Arguments and results are passed by value: the service does not see
+        later changes the caller makes to them, nor the caller changes the
+        service makes.</li>
+    <li>When the local service stops and another one, which the stub must
+        connect to, takes its port, the stub's calls go over a connection, and
+        they become direct again when the local service restarts.</li>
+    </ul>
+ */
+public class TestFinal_LocalCalls extends Test {
+    /** Test notice. */
+    public static final String notice =
+        "checking direct calls within the virtual machine";
+    /** Prerequisites. */
+    public static final Class[] prerequisites = new Class[] { TestFinal_Connection.class };
+
+    /** Port of the services. */
+    private int port;
+    /** Address at which the test services run. */
+    private String address;
+    /** Service called directly. */
+    private Service<ListInterface> local;
+    /** Service on the same port reached through connections. */
+    private Service<ListInterface> remote;
+
+    /** Initializes the test. */
+    @Override
+    protected void initialize() throws TestFailed {
+        port = TestUtil.allocatePort();
+
+        address = "127.0.0.1:" + Integer.toString(port);
+        local = new Service<ListInterface>(ListInterface.class, new ListObject(), port);
+
+        try {
+            local.start();
+        } catch(Throwable t) {
+            throw new TestFailed("unable to start service", t);
+        }
+    }
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws TestFailed {
+        ListInterface stub;
+
+        try {
+            stub = StubFactory.create(ListInterface.class, address);
+        } catch(Throwable t) {
+            throw new TestFailed("unable to create stub", t);
+        }
+
+        try {
+            if(!isDirect(stub))
+                throw new TestFailed("call to a service in the same virtual machine used a connection");
+
+            // The service appends to its argument; the caller must not see it.
+            List<String> argument = new ArrayList<>(List.of("a"));
+            List<String> result = stub.append(argument, "b");
+            if(!argument.equals(List.of("a")))
+                throw new TestFailed("caller sees the changes the service made to an argument");
+            if(!result.equals(List.of("a", "b")))
+                throw new TestFailed("incorrect result from direct call: " + result);
+
+            // The service keeps the list; the caller's changes to the result
+            // and to the argument must not reach it.
+            result.add("c");
+            argument.add("d");
+            if(!stub.last().equals(List.of("a", "b")))
+                throw new TestFailed("service sees the changes the caller made to a result or argument");
+        } catch(TestFailed e) {
+            throw e;
+        } catch(Throwable t) {
+            throw new TestFailed("unexpected exception in direct call", t);
+        }
+
+        task("replacing the service with one reached through connections");
+        local.stop();
+        remote = new Service<ListInterface>(ListInterface.class, new ListObject(), port);
+        remote.setLocalCalls(false);
+        try {
+            remote.start();
+        } catch(Throwable t) {
+            throw new TestFailed("unable to start second service", t);
+        }
+        task();
+
+        try {
+            if(isDirect(stub))
+                throw new TestFailed("call after the local service stopped did not use a connection");
+        } catch(TestFailed e) {
+            throw e;
+        } catch(Throwable t) {
+            throw new TestFailed("call did not fail over to a connection", t);
+        }
+
+        task("restarting the local service");
+        remote.stop();
+        try {
+            local.start();
+        } catch(Throwable t) {
+            throw new TestFailed("unable to restart service", t);
+        }
+        task();
+
+        try {
+            if(!isDirect(stub))
+                throw new TestFailed("call after the local service restarted used a connection");
+        } catch(TestFailed e) {
+            throw e;
+        } catch(Throwable t) {
+            throw new TestFailed("call did not switch back to the local service", t);
+        }
+    }
+
+    /** Checks whether a call runs in the calling thread.
+
+        @param stub The stub to call.
+        @return <code>true</code> if the service ran the call in this thread.
+        @throws RemoteObjectException If the call fails.
+     */
+    private boolean isDirect(ListInterface stub) throws RemoteObjectException {
+        return stub.threadId() == Thread.currentThread().getId();
+    }
+
+    /** Stops the services. */
+    @Override
+    protected void clean() {
+        local.stop();
+        local = null;
+        if(remote != null) {
+            remote.stop();
+            remote = null;
+        }
+    }
+
+    /** Interface taking and returning mutable values. */
+    public interface ListInterface {
+        /** Appends an item to a list, and keeps the list.
+
+            @param list The list, which the service changes.
+            @param item The item.
+            @return The list the service kept.
+            @throws RemoteObjectException If the call cannot be complete due
+                                          to a network error.
+         */
+        public List<String> append(List<String> list, String item) throws RemoteObjectException;
+
+        /** Gets a copy of the list kept by the last call to <code>append</code>.
+
+            @return The list.
+            @throws RemoteObjectException If the call cannot be complete due
+                                          to a network error.
+         */
+        public List<String> last() throws RemoteObjectException;
+
+        /** Gets the id of the thread running the call.
+
+            @return The thread id.
+            @throws RemoteObjectException If the call cannot be complete due
+                                          to a network error.
+         */
+        public long threadId() throws RemoteObjectException;
+    }
+
+    /** Implementation of <code>ListInterface</code>. */
+    public static class ListObject implements ListInterface {
+        /** The list kept by the last call to <code>append</code>. */
+        private List<String> last;
+
+        @Override
+        public synchronized List<String> append(List<String> list, String item) {
+            list.add(item);
+            last = list;
+            return list;
+        }
+
+        @Override
+        public synchronized List<String> last() {
+            return new ArrayList<>(last);
+        }
+
+        @Override
+        public long threadId() {
+            return Thread.currentThread().getId();
+        }
+    }
+}
@@ -3,7 +3,6 @@ package test.remote;
 import test.util.*;
 import remote.*;
 import java.net.*;
-import java.util.Random;
 import java.io.FileNotFoundException;
 
 /** Tests lossy version of connection between stub and service.
@@ -29,8 +28,7 @@ public class TestFinal_LossyConnection extends Test {
     /** Initializes the test. */
     @Override
     protected void initialize() throws TestFailed {
-        Random rng = new Random(System.nanoTime());
-        int port = rng.nextInt(10000) + 7000;
+        int port = TestUtil.allocatePort();
 
         address = "127.0.0.1:" + Integer.toString(port);
         service = new LossySimpleService(port);
@@ -3,7 +3,6 @@ package test.remote;
 import test.util.*;
 import remote.*;
 import java.net.*;
-import java.util.Random;
 import java.io.FileNotFoundException;
 
 /** Checks that the service correctly handles incorrect method signatures.
@@ -34,8 +33,7 @@ public class TestFinal_Mismatch extends Test {
     /** Initializes the test. */
     @Override
     protected void initialize() throws TestFailed {
-        Random rng = new Random(System.nanoTime());
-        int port = rng.nextInt(10000) + 7000;
+        int port = TestUtil.allocatePort();
 
         address = "127.0.0.1:" + Integer.toString(port);
 
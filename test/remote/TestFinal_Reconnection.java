@@ -3,7 +3,6 @@ package test.remote;
 import test.util.*;
 import remote.*;
 import java.net.*;
-import java.util.Random;
 import java.io.FileNotFoundException;
 
 /** Tests connection and use, disconnection, reconnection and use, 
@@ -22,11 +21,12 @@ public class TestFinal_Reconnection extends Test {
     /** Initializes the test. */
     @Override
     protected void initialize() throws TestFailed {
-        Random rng = new Random(System.nanoTime());
-        int port = rng.nextInt(10000) + 7000;
+        int port = TestUtil.allocatePort();
 
         address = "127.0.0.1:" + Integer.toString(port);
         service = new SimpleService(port);
+        // Test the connection, not direct calls within the test's virtual machine.
+        service.setLocalCalls(false);
 
         try {
             service.start();
@@ -0,0 +1,277 @@
+package test.remote;
+
+import test.util.*;
+import remote.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Checks connections that carry their messages through shared-memory rings.
+
+    <p>
+    The test uses rings of the smallest capacity, and sleeping rather than
+    spinning ends. It checks that:
+    <ul>
+    <li>Messages many times larger than a ring flow through it in both
+        directions.</li>
+    <li>A stub sleeping while the service runs a slow call, and a service
+        thread sleeping while its connection is idle, are woken up by the next
+        message.</li>
+    <li>A stub sleeping while its call is abandoned by a drain wakes up and
+        retries on the restarted service, and a call running while the service
+        stops still returns.</li>
+    <li>A service that cannot map the file offered in a handshake carries the
+        connection over the socket instead.</li>
+    </ul>
+ */
+public class TestFinal_SharedMemory extends Test {
+    /** Test notice. */
+    public static final String notice = "checking shared-memory connections";
+    /** Prerequisites. */
+    public static final Class[] prerequisites = new Class[] { TestFinal_UnixSocket.class };
+
+    /** Options of the service and stubs: the smallest rings, with sleeping ends. */
+    private static final TransportConfig CONFIG =
+        TransportConfig.DEFAULT.withRingCapacity(4096).withWaitStrategy(WaitStrategy.PARK);
+
+    /** Directory holding the socket and ring files. */
+    private Path directory;
+    /** Path of the service's socket file. */
+    private Path path;
+    /** Service used in the test. */
+    private Service<RingInterface> service;
+
+    /** Initializes the test. */
+    @Override
+    protected void initialize() throws TestFailed {
+        try {
+            directory = Files.createTempDirectory("remote-shm");
+        } catch(IOException e) {
+            throw new TestFailed("unable to create directory for socket files", e);
+        }
+        path = directory.resolve("service.sock");
+
+        service = new Service<RingInterface>(RingInterface.class, new RingObject(), path, CONFIG);
+        // Test the connection, not direct calls within the test's virtual machine.
+        service.setLocalCalls(false);
+
+        try {
+            service.start();
+        } catch(Throwable t) {
+            throw new TestFailed("unable to start service", t);
+        }
+    }
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws TestFailed {
+        RingInterface stub;
+
+        try {
+            stub = StubFactory.create(RingInterface.class, LeakySocket.SHM_PREFIX + path, CONFIG);
+        } catch(Throwable t) {
+            throw new TestFailed("unable to create stub", t);
+        }
+
+        try {
+            task("sending messages larger than the ring");
+            byte[] data = new byte[100 * 1024];
+            for(int i = 0; i < data.length; i++)
+                data[i] = (byte)(i * 31);
+            if(!Arrays.equals(stub.echo(data), data))
+                throw new TestFailed("large message changed through the ring");
+            task();
+
+            task("waking up sleeping ends");
+            stub.pause(300);
+            Thread.sleep(300);
+            if(!Arrays.equals(stub.echo(data), data))
+                throw new TestFailed("message after an idle period changed through the ring");
+            task();
+        } catch(TestFailed e) {
+            throw e;
+        } catch(Throwable t) {
+            throw new TestFailed("call over shared memory failed", t);
+        }
+
+        stopWhileSleeping(stub);
+        abandonWhileSleeping(stub);
+        fallBackToSocket();
+    }
+
+    /** Checks that a call running while the service stops still returns, and
+        that the stub then reconnects to the restarted service.
+
+        @param stub The stub.
+        @throws TestFailed If the test fails.
+     */
+    private void stopWhileSleeping(RingInterface stub) throws TestFailed {
+        task("stopping the service while the stub sleeps");
+        Thread stopper = new Thread(() -> {
+            try { Thread.sleep(200); } catch(InterruptedException e) {}
+            service.stop();
+        });
+        stopper.start();
+        try {
+            stub.pause(600);
+        } catch(Throwable t) {
+            throw new TestFailed("call running while the service stopped failed", t);
+        }
+        try {
+            stopper.join();
+        } catch(InterruptedException e) {
+            throw new TestFailed("interrupted while stopping the service");
+        }
+        restart();
+        try {
+            stub.pause(0);
+        } catch(Throwable t) {
+            throw new TestFailed("call after the service restarted failed", t);
+        }
+        task();
+    }
+
+    /** Checks that a stub sleeping while its call is abandoned wakes up and
+        completes the call on the restarted service.
+
+        @param stub The stub.
+        @throws TestFailed If the test fails.
+     */
+    private void abandonWhileSleeping(RingInterface stub) throws TestFailed {
+        task("abandoning a call while the stub sleeps");
+        Thread drainer = new Thread(() -> {
+            try { Thread.sleep(200); } catch(InterruptedException e) {}
+            service.drain(200, TimeUnit.MILLISECONDS);
+            try {
+                restart();
+            } catch(TestFailed e) {
+                failure(e);
+            }
+        });
+        drainer.start();
+        try {
+            // The first attempt is abandoned; the retry runs on the restarted service.
+            stub.pause(1000);
+        } catch(Throwable t) {
+            throw new TestFailed("call abandoned while the stub slept was not retried", t);
+        }
+        try {
+            drainer.join();
+        } catch(InterruptedException e) {
+            throw new TestFailed("interrupted while draining the service");
+        }
+        task();
+    }
+
+    /** Checks that the service carries a connection over the socket when it
+        cannot map the file offered in the handshake.
+
+        @throws TestFailed If the test fails.
+     */
+    private void fallBackToSocket() throws TestFailed {
+        task("offering a file that is not a ring");
+        Path bogus = directory.resolve("bogus.ring");
+        LeakySocket socket = null;
+        try {
+            Files.write(bogus, new byte[8192]);
+
+            // Perform the handshake a stub would, offering the file.
+            RemoteInterfaceDescriptor descriptor = RemoteInterfaceDescriptor.of(RingInterface.class);
+            List<RemoteInterfaceDescriptor.RemoteMethod> methods = descriptor.getMethods();
+            String[] signatures = new String[methods.size()];
+            int echo = -1;
+            for(int i = 0; i < signatures.length; i++) {
+                signatures[i] = methods.get(i).getSignature();
+                if(methods.get(i).getName().equals("echo"))
+                    echo = methods.get(i).getId();
+            }
+            socket = new LeakySocket(LeakySocket.UNIX_PREFIX + path, false, false, CONFIG);
+            socket.sendObject(new HandshakeRequest(
+                descriptor.getFingerprint(), signatures,
+                new String[] { HandshakeRequest.CODEC_JAVA },
+                new String[] { HandshakeRequest.COMPRESSION_NONE }, bogus.toString()));
+            Object response = socket.recvObject();
+            if(!(response instanceof HandshakeResponse) ||
+               ((HandshakeResponse)response).getRejection() != null)
+                throw new TestFailed("service refused a handshake offering a bad ring file");
+            if(((HandshakeResponse)response).isSharedMemory())
+                throw new TestFailed("service accepted a file that is not a ring");
+
+            // The connection must carry calls over the socket.
+            byte[] data = new byte[] { 1, 2, 3 };
+            socket.sendObject(new MethodInvocationRequest(echo, new Object[] { data }));
+            Object result = socket.recvObject();
+            if(!(result instanceof MethodInvocationResponse) ||
+               !Arrays.equals((byte[])((MethodInvocationResponse)result).getResult(), data))
+                throw new TestFailed("call over the socket after a failed mapping failed");
+        } catch(IOException e) {
+            throw new TestFailed("connection failed after a failed mapping", e);
+        } finally {
+            if(socket != null)
+                socket.close();
+        }
+        task();
+    }
+
+    /** Restarts the service after it stopped.
+
+        @throws TestFailed If the service cannot start.
+     */
+    private void restart() throws TestFailed {
+        try {
+            service.start();
+        } catch(Throwable t) {
+            throw new TestFailed("unable to restart service", t);
+        }
+    }
+
+    /** Stops the service and deletes the files. */
+    @Override
+    protected void clean() {
+        service.stop();
+        service = null;
+        try {
+            Files.deleteIfExists(directory.resolve("bogus.ring"));
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(directory);
+        } catch(IOException e) { }
+    }
+
+    /** Interface sending large messages and holding calls. */
+    public interface RingInterface {
+        /** Returns its argument.
+
+            @param data The bytes to send.
+            @return The same bytes.
+            @throws RemoteObjectException If the call cannot be complete due
+                                          to a network error.
+         */
+        public byte[] echo(byte[] data) throws RemoteObjectException;
+
+        /** Returns after a delay.
+
+            @param millis The delay in milliseconds.
+            @throws RemoteObjectException If the call cannot be complete due
+                                          to a network error.
+         */
+        public void pause(long millis) throws RemoteObjectException;
+    }
+
+    /** Implementation of <code>RingInterface</code>. */
+    public static class RingObject implements RingInterface {
+        @Override
+        public byte[] echo(byte[] data) {
+            return data;
+        }
+
+        @Override
+        public void pause(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch(InterruptedException e) { }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package test.remote;
+
+import test.util.*;
+import remote.*;
+
+/** Checks that a stub recovers when all of its idle connections went stale.
+
+    <p>
+    This test has several threads call a slow method through one stub at the
+    same time, so that the stub keeps several idle connections. It then stops
+    and restarts the service on the same port, which closes all of them. The
+    test succeeds if the next call completes on a new connection instead of
+    spending its attempts on the stale ones.
+ */
+public class TestFinal_StaleConnections extends Test {
+    /** Test notice. */
+    public static final String notice =
+        "checking stub replaces idle connections closed by a restart";
+    /** Prerequisites. */
+    public static final Class[] prerequisites = new Class[] { TestFinal_Reconnection.class };
+
+    /** Number of concurrent calls, and so of idle connections kept by the stub. */
+    private static final int CALLERS = 8;
+
+    /** Address at which the test service will run. */
+    private String address;
+    /** Service object used in the test. */
+    private Service<SlowInterface> service;
+
+    /** Initializes the test. */
+    @Override
+    protected void initialize() throws TestFailed {
+        int port = TestUtil.allocatePort();
+
+        address = "127.0.0.1:" + Integer.toString(port);
+        service = new Service<SlowInterface>(SlowInterface.class, new SlowObject(), port);
+        // The stub must use its connections, not call the service directly.
+        service.setLocalCalls(false);
+
+        try {
+            service.start();
+        } catch(Throwable t) {
+            throw new TestFailed("unable to start service", t);
+        }
+    }
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws TestFailed {
+        SlowInterface stub;
+
+        try {
+            stub = StubFactory.create(SlowInterface.class, address);
+        } catch(Throwable t) {
+            throw new TestFailed("unable to create stub", t);
+        }
+
+        // Open several connections at once; they stay idle in the stub.
+        Thread[] callers = new Thread[CALLERS];
+        for(int i = 0; i < CALLERS; i++) {
+            callers[i] = new Thread(() -> {
+                try {
+                    stub.pause(300);
+                } catch(Throwable t) {
+                    failure(new TestFailed("concurrent call failed", t));
+                }
+            });
+            callers[i].start();
+        }
+
+        try {
+            for(Thread caller : callers)
+                caller.join();
+        } catch(InterruptedException e) {
+            throw new TestFailed("interrupted while waiting for concurrent calls");
+        }
+
+        task("restarting service");
+        service.stop();
+        try {
+            service.start();
+        } catch(Throwable t) {
+            throw new TestFailed("unable to restart service", t);
+        }
+        task();
+
+        try {
+            stub.pause(0);
+        } catch(Throwable t) {
+            throw new TestFailed("call after restart failed on stale connections", t);
+        }
+    }
+
+    /** Stops the service. */
+    @Override
+    protected void clean() {
+        service.stop();
+        service = null;
+    }
+
+    /** Interface whose method holds a connection for a while. */
+    public interface SlowInterface {
+        /** Returns after a delay.
+
+            @param millis The delay in milliseconds.
+            @throws RemoteObjectException If the call cannot be complete due
+                                          to a network error.
+         */
+        public void pause(long millis) throws RemoteObjectException;
+    }
+
+    /** Implementation of <code>SlowInterface</code>. */
+    public static class SlowObject implements SlowInterface {
+        @Override
+        public void pause(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch(InterruptedException e) { }
+        }
+    }
+}
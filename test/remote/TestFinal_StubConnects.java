@@ -3,7 +3,6 @@ package test.remote;
 import test.util.*;
 import remote.*;
 import java.net.*;
-import java.util.Random;
 
 /** Performs basic tests on the public interface of {@link remote.StubFactory}.
 
@@ -28,14 +27,15 @@ public class TestFinal_StubConnects extends Test {
     /** Initializes the test and sets up the test service. */
     @Override
     protected void initialize() throws TestFailed {
-        Random rng = new Random(System.nanoTime());
-        int port = rng.nextInt(10000) + 7000;
+        int port = TestUtil.allocatePort();
 
         address = "127.0.0.1:" + Integer.toString(port);
 
         // Create a test object and service
         try {
             service = new Service<SimpleInterface>(SimpleInterface.class, new SimpleObject(), port);
+            // Test the connection, not direct calls within the test's virtual machine.
+            service.setLocalCalls(false);
             service.start();
         } catch(Throwable t) {
             throw new TestFailed("unable to create test service", t);
@@ -0,0 +1,225 @@
+package test.remote;
+
+import test.util.*;
+import remote.*;
+import java.io.FileNotFoundException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/** Checks that transport configurations are applied to connections.
+
+    <p>
+    The test checks that:
+    <ul>
+    <li>Each preset, and a configuration changing every socket option of a
+        preset, sets <code>TCP_NODELAY</code>, <code>SO_KEEPALIVE</code> and
+        the socket buffer sizes it gives on both ends of a connection, and
+        small and large messages cross the connection whatever its stream
+        buffers.</li>
+    <li>Stubs call services configured with each preset, and with the
+        high-throughput preset with compression.</li>
+    <li>Presets are found by name, <code>with</code> methods leave the
+        configuration they are called on unchanged, and invalid options are
+        rejected.</li>
+    </ul>
+ */
+public class TestFinal_TransportPresets extends Test {
+    /** Test notice. */
+    public static final String notice = "checking transport configuration presets";
+    /** Prerequisites. */
+    public static final Class[] prerequisites = new Class[] { TestFinal_Connection.class };
+
+    /** Length of the large message sent over each connection. */
+    private static final int LARGE = 1 << 20;
+
+    /** Services started by the test. */
+    private final List<Service<SimpleInterface>> services = new ArrayList<>();
+    /** Thread opening the accepted end of each connection. */
+    private final ExecutorService acceptor = Executors.newSingleThreadExecutor();
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws Throwable {
+        TransportConfig custom = TransportConfig.DEFAULT.withTcpNoDelay(false).withKeepAlive(true)
+            .withSendBufferSize(96 * 1024).withReceiveBufferSize(80 * 1024).withStreamBufferSize(512);
+        String[] names = { "DEFAULT", "LOW_LATENCY", "HIGH_THROUGHPUT", "custom" };
+        TransportConfig[] configs = { TransportConfig.DEFAULT, TransportConfig.LOW_LATENCY,
+                                      TransportConfig.HIGH_THROUGHPUT, custom };
+
+        for(int i = 0; i < configs.length; i++) {
+            task("applying " + names[i] + " to both ends of a connection");
+            checkSockets(names[i], configs[i]);
+            task();
+        }
+
+        task("calling services configured with each preset");
+        checkCalls("DEFAULT", TransportConfig.DEFAULT);
+        checkCalls("LOW_LATENCY", TransportConfig.LOW_LATENCY);
+        checkCalls("HIGH_THROUGHPUT", TransportConfig.HIGH_THROUGHPUT);
+        checkCalls("HIGH_THROUGHPUT with compression", TransportConfig.HIGH_THROUGHPUT.withCompression(true));
+        task();
+
+        task("building configurations");
+        if(TransportConfig.preset("default") != TransportConfig.DEFAULT ||
+           TransportConfig.preset("low-latency") != TransportConfig.LOW_LATENCY ||
+           TransportConfig.preset("high-throughput") != TransportConfig.HIGH_THROUGHPUT)
+            throw new TestFailed("preset names do not give their presets");
+        try {
+            TransportConfig.preset("fastest");
+            throw new TestFailed("unknown preset name accepted");
+        } catch(IllegalArgumentException e) {
+        }
+        TransportConfig changed = TransportConfig.HIGH_THROUGHPUT.withSendBufferSize(4 << 20).withCompression(true);
+        if(changed.getSendBufferSize() != 4 << 20 || !changed.isCompression() ||
+           changed.getReceiveBufferSize() != TransportConfig.HIGH_THROUGHPUT.getReceiveBufferSize())
+            throw new TestFailed("copy does not have the options asked for: " + changed);
+        if(TransportConfig.HIGH_THROUGHPUT.getSendBufferSize() != 1 << 20 ||
+           TransportConfig.HIGH_THROUGHPUT.isCompression())
+            throw new TestFailed("with methods changed the preset: " + TransportConfig.HIGH_THROUGHPUT);
+        if(!TransportConfig.DEFAULT.isTcpNoDelay() || !TransportConfig.LOW_LATENCY.isTcpNoDelay() ||
+           !TransportConfig.HIGH_THROUGHPUT.isTcpNoDelay())
+            throw new TestFailed("a preset does not set TCP_NODELAY");
+        rejects("negative send buffer", () -> TransportConfig.DEFAULT.withSendBufferSize(-1));
+        rejects("negative backlog", () -> TransportConfig.DEFAULT.withBacklog(-1));
+        rejects("ring below the minimum", () -> TransportConfig.DEFAULT.withRingCapacity(1024));
+        rejects("ring above the maximum",
+                () -> TransportConfig.DEFAULT.withRingCapacity(TransportConfig.MAX_RING_CAPACITY + 1));
+        try {
+            TransportConfig.DEFAULT.withWaitStrategy(null);
+            throw new TestFailed("null wait strategy accepted");
+        } catch(NullPointerException e) {
+        }
+        task();
+    }
+
+    /** Connects two sockets, wraps both ends with a configuration, and checks
+        the options of the sockets and the messages they carry.
+
+        @param name The name of the configuration, for messages.
+        @param config The configuration.
+        @throws Throwable If a check fails.
+     */
+    private void checkSockets(String name, TransportConfig config) throws Throwable {
+        try(ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            Socket client = new Socket()) {
+            client.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort()));
+            Socket accepted = server.accept();
+            try {
+                // Each end writes its stream header, then waits for the other's.
+                Future<LeakySocket> acceptedEnd =
+                    acceptor.submit(() -> new LeakySocket(accepted, false, false, config));
+                LeakySocket clientEnd = new LeakySocket(client, false, false, config);
+                LeakySocket serverEnd = acceptedEnd.get(10, TimeUnit.SECONDS);
+
+                expectOptions(name + " at the connecting end", client, config);
+                expectOptions(name + " at the accepting end", accepted, config);
+
+                String large = "x".repeat(LARGE);
+                clientEnd.sendObject("small");
+                if(!"small".equals(serverEnd.recvObject()))
+                    throw new TestFailed("small message lost over connection with " + name);
+                // The large message may not fit in the socket buffers, so it is read while being sent.
+                Future<Boolean> sent = acceptor.submit(() -> serverEnd.sendObject(large));
+                if(!large.equals(clientEnd.recvObject()) || !sent.get(10, TimeUnit.SECONDS))
+                    throw new TestFailed("large message lost over connection with " + name);
+                clientEnd.close();
+                serverEnd.close();
+            } finally {
+                accepted.close();
+            }
+        }
+    }
+
+    /** Checks the options of a connected socket.
+
+        @param what The socket, for messages.
+        @param socket The socket.
+        @param config The configuration applied to it.
+        @throws Throwable If an option differs.
+     */
+    private static void expectOptions(String what, Socket socket, TransportConfig config) throws Throwable {
+        if(socket.getTcpNoDelay() != config.isTcpNoDelay())
+            throw new TestFailed("TCP_NODELAY is " + socket.getTcpNoDelay() + " with " + what);
+        if(socket.getKeepAlive() != config.isKeepAlive())
+            throw new TestFailed("SO_KEEPALIVE is " + socket.getKeepAlive() + " with " + what);
+        // The system rounds and caps buffer sizes, so compare with a socket given the same size.
+        try(Socket reference = new Socket()) {
+            if(config.getSendBufferSize() > 0) {
+                reference.setSendBufferSize(config.getSendBufferSize());
+                if(socket.getSendBufferSize() != reference.getSendBufferSize())
+                    throw new TestFailed("SO_SNDBUF is " + socket.getSendBufferSize() + " instead of " +
+                                         reference.getSendBufferSize() + " with " + what);
+            }
+            if(config.getReceiveBufferSize() > 0) {
+                reference.setReceiveBufferSize(config.getReceiveBufferSize());
+                if(socket.getReceiveBufferSize() != reference.getReceiveBufferSize())
+                    throw new TestFailed("SO_RCVBUF is " + socket.getReceiveBufferSize() + " instead of " +
+                                         reference.getReceiveBufferSize() + " with " + what);
+            }
+        }
+    }
+
+    /** Starts a service with a configuration and calls it through a stub with
+        the same configuration.
+
+        @param name The name of the configuration, for messages.
+        @param config The configuration.
+        @throws TestFailed If a call fails.
+     */
+    private void checkCalls(String name, TransportConfig config) throws TestFailed {
+        int port = TestUtil.allocatePort();
+        Service<SimpleInterface> service =
+            new Service<SimpleInterface>(SimpleInterface.class, new SimpleObject(), port, config);
+        // Test the connection, not direct calls within the test's virtual machine.
+        service.setLocalCalls(false);
+        services.add(service);
+        try {
+            service.start();
+        } catch(Throwable t) {
+            throw new TestFailed("unable to start service with " + name, t);
+        }
+
+        SimpleInterface stub = StubFactory.create(SimpleInterface.class, "127.0.0.1:" + port, config);
+        try {
+            if(stub.method(false) != null)
+                throw new TestFailed("incorrect result from service with " + name);
+            stub.method(true);
+            throw new TestFailed("exception not thrown by service with " + name);
+        } catch(FileNotFoundException e) {
+        } catch(TestFailed e) {
+            throw e;
+        } catch(Throwable t) {
+            throw new TestFailed("call to service with " + name + " failed", t);
+        }
+    }
+
+    /** Checks that building a configuration is rejected.
+
+        @param what The invalid option, for messages.
+        @param build Builds the configuration.
+        @throws TestFailed If the configuration is built.
+     */
+    private static void rejects(String what, Runnable build) throws TestFailed {
+        try {
+            build.run();
+            throw new TestFailed(what + " accepted");
+        } catch(IllegalArgumentException e) {
+        }
+    }
+
+    /** Stops the services and the acceptor thread. */
+    @Override
+    protected void clean() {
+        for(Service<SimpleInterface> service : services)
+            service.stop();
+        acceptor.shutdownNow();
+    }
+}
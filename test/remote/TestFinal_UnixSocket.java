@@ -0,0 +1,189 @@
+package test.remote;
+
+import test.util.*;
+import remote.*;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** Checks services that listen only on a Unix domain socket.
+
+    <p>
+    The test checks that:
+    <ul>
+    <li>A service without a TCP port replaces a stale socket file left at its
+        path, and stubs with a <code>unix:</code> address call it.</li>
+    <li>A second service cannot start on the path of a running one, and the
+        running one keeps its socket file.</li>
+    <li>A service does not start on a path holding a regular file, and leaves
+        the file alone.</li>
+    <li>A service with neither a port nor a path does not start.</li>
+    <li>The socket file is deleted when the service stops.</li>
+    </ul>
+ */
+public class TestFinal_UnixSocket extends Test {
+    /** Test notice. */
+    public static final String notice = "checking services on Unix domain sockets";
+    /** Prerequisites. */
+    public static final Class[] prerequisites = new Class[] { TestFinal_Connection.class };
+
+    /** Directory holding the socket files. */
+    private Path directory;
+    /** Path of the service's socket file. */
+    private Path path;
+    /** Service used in the test. */
+    private Service<SimpleInterface> service;
+    /** Service that must not start. */
+    private Service<SimpleInterface> other;
+
+    /** Initializes the test. */
+    @Override
+    protected void initialize() throws TestFailed {
+        try {
+            directory = Files.createTempDirectory("remote-unix");
+        } catch(IOException e) {
+            throw new TestFailed("unable to create directory for socket files", e);
+        }
+        path = directory.resolve("service.sock");
+
+        // Leave a socket file that no service listens on.
+        try {
+            ServerSocketChannel stale = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            stale.bind(UnixDomainSocketAddress.of(path));
+            stale.close();
+        } catch(IOException e) {
+            throw new TestFailed("unable to create stale socket file", e);
+        }
+
+        service = newService(path);
+        try {
+            service.start();
+        } catch(Throwable t) {
+            throw new TestFailed("unable to start service over a stale socket file", t);
+        }
+    }
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws TestFailed {
+        SimpleInterface stub;
+
+        try {
+            stub = StubFactory.create(SimpleInterface.class, LeakySocket.UNIX_PREFIX + path);
+        } catch(Throwable t) {
+            throw new TestFailed("unable to create stub", t);
+        }
+
+        checkCalls(stub);
+
+        task("starting a second service on the same path");
+        other = newService(path);
+        if(starts(other))
+            throw new TestFailed("second service started on the path of a running service");
+        task();
+        checkCalls(stub);
+
+        task("starting a service on a regular file");
+        Path file = directory.resolve("file.sock");
+        try {
+            Files.writeString(file, "data");
+        } catch(IOException e) {
+            throw new TestFailed("unable to create regular file", e);
+        }
+        other = newService(file);
+        if(starts(other))
+            throw new TestFailed("service started on a regular file");
+        try {
+            if(!Files.readString(file).equals("data"))
+                throw new TestFailed("service changed a regular file at its path");
+        } catch(IOException e) {
+            throw new TestFailed("service removed a regular file at its path", e);
+        }
+        task();
+
+        task("starting a service with neither a port nor a path");
+        other = new Service<SimpleInterface>(SimpleInterface.class, new SimpleObject(),
+                                             Service.NO_PORT);
+        if(starts(other))
+            throw new TestFailed("service started without a port or a path");
+        task();
+
+        task("stopping the service");
+        service.stop();
+        if(Files.exists(path))
+            throw new TestFailed("socket file remains after the service stopped");
+        task();
+    }
+
+    /** Creates a service listening only on a Unix domain socket.
+
+        @param socketPath The path of the socket file.
+        @return The service, whose stubs connect to it.
+     */
+    private Service<SimpleInterface> newService(Path socketPath) {
+        Service<SimpleInterface> created = new Service<SimpleInterface>(
+            SimpleInterface.class, new SimpleObject(), socketPath, TransportConfig.DEFAULT);
+        // Test the connection, not direct calls within the test's virtual machine.
+        created.setLocalCalls(false);
+        return created;
+    }
+
+    /** Tries to start a service.
+
+        @param tried The service.
+        @return <code>true</code> if it started, in which case it is stopped.
+     */
+    private boolean starts(Service<SimpleInterface> tried) {
+        try {
+            tried.start();
+        } catch(RemoteObjectException e) {
+            return false;
+        }
+        tried.stop();
+        return true;
+    }
+
+    /** Checks that calls through a stub return results and exceptions.
+
+        @param stub The stub.
+        @throws TestFailed If a call fails.
+     */
+    private void checkCalls(SimpleInterface stub) throws TestFailed {
+        try {
+            if(stub.method(false) != null)
+                throw new TestFailed("incorrect result from call over Unix domain socket");
+        } catch(TestFailed e) {
+            throw e;
+        } catch(Throwable t) {
+            throw new TestFailed("call over Unix domain socket failed", t);
+        }
+
+        try {
+            stub.method(true);
+            throw new TestFailed("exception not thrown over Unix domain socket");
+        } catch(FileNotFoundException e) {
+        } catch(TestFailed e) {
+            throw e;
+        } catch(Throwable t) {
+            throw new TestFailed("call over Unix domain socket threw an unexpected exception", t);
+        }
+    }
+
+    /** Stops the service and deletes the socket files. */
+    @Override
+    protected void clean() {
+        if(service != null) {
+            service.stop();
+            service = null;
+        }
+        try {
+            Files.deleteIfExists(directory.resolve("file.sock"));
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(directory);
+        } catch(IOException e) { }
+    }
+}
@@ -0,0 +1,109 @@
+package test.remote;
+
+import test.util.*;
+import remote.*;
+import java.util.Arrays;
+
+/** Measures the round-trip latency of remote calls over loopback.
+
+    <p>
+    This test starts a service and makes a series of sequential calls to it
+    through a stub, after a warm-up. The median and 99th percentile latencies
+    are checked against the stored baselines; see
+    <code>test.util.PerfBaselines</code>.
+ */
+public class TestPerf_Latency extends Test {
+    /** Test notice. */
+    public static final String notice = "measuring loopback call latency";
+
+    /** Number of calls made before measuring, so that the code is compiled. */
+    private static final int WARMUP_CALLS = 50;
+    /** Number of calls measured. */
+    private static final int MEASURED_CALLS = 200;
+
+    /** Address at which the test service will run. */
+    private String address;
+    /** Service object used in the test. */
+    private SimpleService service;
+
+    /** Initializes the test. */
+    @Override
+    protected void initialize() throws TestFailed {
+        int port = TestUtil.allocatePort();
+
+        address = "127.0.0.1:" + Integer.toString(port);
+        service = new SimpleService(port);
+        // Measure the transport, not direct calls within the test's virtual machine.
+        service.setLocalCalls(false);
+
+        try {
+            service.start();
+        } catch(Throwable t) {
+            throw new TestFailed("unable to start service", t);
+        }
+    }
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws TestFailed {
+        SimpleInterface stub;
+
+        try {
+            stub = StubFactory.create(SimpleInterface.class, address);
+        } catch(Throwable t) {
+            throw new TestFailed("unable to create stub", t);
+        }
+
+        long[] latencies = new long[MEASURED_CALLS];
+
+        try {
+            for(int i = 0; i < WARMUP_CALLS; i++)
+                stub.method(false);
+
+            for(int i = 0; i < MEASURED_CALLS; i++) {
+                long start = System.nanoTime();
+                stub.method(false);
+                latencies[i] = System.nanoTime() - start;
+            }
+        } catch(Throwable t) {
+            throw new TestFailed("unexpected exception when using stub", t);
+        }
+
+        Arrays.sort(latencies);
+        PerfBaselines baselines = PerfBaselines.get();
+        baselines.checkAtMost("TestPerf_Latency.p50_ms",
+                              latencies[MEASURED_CALLS / 2] / 1e6, "ms");
+        baselines.checkAtMost("TestPerf_Latency.p99_ms",
+                              latencies[MEASURED_CALLS * 99 / 100] / 1e6, "ms");
+    }
+
+    /** Stops the service. */
+    @Override
+    protected void clean() {
+        service.stop();
+        service = null;
+    }
+
+    /** Test service class that fails the test when an exception is received in
+        one of the service's threads. */
+    private class SimpleService extends Service<SimpleInterface> {
+        /** Creates a <code>SimpleService</code> at the appropriate port, with
+            a new test object. */
+        SimpleService(int port) {
+            super(SimpleInterface.class, new SimpleObject(), port);
+        }
+
+        /** Fails the test upon an error in the listening thread. */
+        @Override
+        protected boolean listen_error(Exception e) {
+            failure(new TestFailed("exception in listening thread", e));
+            return false;
+        }
+
+        /** Fails the test upon an error in a service thread. */
+        @Override
+        protected void service_error(RemoteObjectException e) {
+            failure(new TestFailed("exception in service thread", e));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package test.remote;
+
+import test.util.*;
+import remote.*;
+
+/** Measures the time to complete a series of calls over a lossy connection.
+
+    <p>
+    This test starts a service and a stub that both simulate message loss and
+    delay, and makes a series of sequential calls. The time to complete all of
+    them is dominated by the recovery from lost messages, and is checked
+    against the stored baseline; see <code>test.util.PerfBaselines</code>.
+    Since the number of lost messages is random, the baseline of this metric
+    has a wider tolerance than the others.
+ */
+public class TestPerf_LossyCompletion extends Test {
+    /** Test notice. */
+    public static final String notice = "measuring lossy connection completion time";
+
+    /** Number of calls made. */
+    private static final int CALLS = 100;
+
+    /** Address at which the test service will run. */
+    private String address;
+    /** Lossy version of the service object used in the test. */
+    private LossySimpleService service;
+
+    /** Initializes the test. */
+    @Override
+    protected void initialize() throws TestFailed {
+        int port = TestUtil.allocatePort();
+
+        address = "127.0.0.1:" + Integer.toString(port);
+        service = new LossySimpleService(port);
+
+        try {
+            service.start();
+        } catch(Throwable t) {
+            throw new TestFailed("unable to start service", t);
+        }
+    }
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws TestFailed {
+        SimpleInterface stub;
+
+        try {
+            stub = StubFactory.create(SimpleInterface.class, address, true, true);
+        } catch(Throwable t) {
+            throw new TestFailed("unable to create stub", t);
+        }
+
+        long start = System.nanoTime();
+
+        for(int i = 0; i < CALLS; i++) {
+            try {
+                if(stub.method(false) != null)
+                    throw new TestFailed("incorrect result from stub");
+            } catch(TestFailed e) {
+                throw e;
+            } catch(Throwable t) {
+                throw new TestFailed("unexpected exception when using stub", t);
+            }
+        }
+
+        PerfBaselines.get().checkAtMost("TestPerf_LossyCompletion.total_s",
+                                        (System.nanoTime() - start) / 1e9, "s");
+    }
+
+    /** Stops the service. */
+    @Override
+    protected void clean() {
+        service.stop();
+        service = null;
+    }
+
+    /** Test service class that fails the test when an exception is received in
+        one of the service's threads. */
+    private class LossySimpleService extends Service<SimpleInterface> {
+        /** Creates a <code>SimpleService</code> at the appropriate port, with
+            a new test object, that simulates loss and delay. */
+        LossySimpleService(int port) {
+            super(SimpleInterface.class, new SimpleObject(), port, true, true);
+        }
+
+        /** Fails the test upon an error in the listening thread. */
+        @Override
+        protected boolean listen_error(Exception e) {
+            failure(new TestFailed("exception in listening thread", e));
+            return false;
+        }
+
+        /** Fails the test upon an error in a service thread. */
+        @Override
+        protected void service_error(RemoteObjectException e) {
+            failure(new TestFailed("exception in service thread", e));
+        }
+    }
+}
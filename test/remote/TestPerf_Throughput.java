@@ -0,0 +1,131 @@
+package test.remote;
+
+import test.util.*;
+import remote.*;
+
+/** Measures the throughput of remote calls made from several threads.
+
+    <p>
+    This test starts a service and has several threads call it through a
+    shared stub at the same time. The number of calls completed per second is
+    checked against the stored baseline; see
+    <code>test.util.PerfBaselines</code>.
+ */
+public class TestPerf_Throughput extends Test {
+    /** Test notice. */
+    public static final String notice = "measuring multithreaded call throughput";
+
+    /** Number of threads making calls. */
+    private static final int THREADS = 8;
+    /** Number of calls made by each thread. */
+    private static final int CALLS_PER_THREAD = 100;
+
+    /** Address at which the test service will run. */
+    private String address;
+    /** Service object used in the test. */
+    private SimpleService service;
+    /** Stub shared by the calling threads. */
+    private SimpleInterface stub;
+
+    /** Initializes the test. */
+    @Override
+    protected void initialize() throws TestFailed {
+        int port = TestUtil.allocatePort();
+
+        address = "127.0.0.1:" + Integer.toString(port);
+        service = new SimpleService(port);
+        // Measure the transport, not direct calls within the test's virtual machine.
+        service.setLocalCalls(false);
+
+        try {
+            service.start();
+        } catch(Throwable t) {
+            throw new TestFailed("unable to start service", t);
+        }
+    }
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws TestFailed {
+        try {
+            stub = StubFactory.create(SimpleInterface.class, address);
+        } catch(Throwable t) {
+            throw new TestFailed("unable to create stub", t);
+        }
+
+        // Warm up with a run that is not measured.
+        runCallers();
+
+        long start = System.nanoTime();
+        runCallers();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        PerfBaselines.get().checkAtLeast("TestPerf_Throughput.calls_per_s",
+                                         THREADS * CALLS_PER_THREAD / seconds,
+                                         "calls/s");
+    }
+
+    /** Runs the calling threads and waits for them to finish.
+
+        @throws TestFailed If the thread running the test is interrupted.
+     */
+    private void runCallers() throws TestFailed {
+        Thread[] callers = new Thread[THREADS];
+
+        for(int i = 0; i < THREADS; i++) {
+            callers[i] = new Thread(new Caller());
+            callers[i].start();
+        }
+
+        try {
+            for(Thread caller : callers)
+                caller.join();
+        } catch(InterruptedException e) {
+            throw new TestFailed("interrupted while waiting for callers", e);
+        }
+    }
+
+    /** Stops the service. */
+    @Override
+    protected void clean() {
+        service.stop();
+        service = null;
+    }
+
+    /** Makes calls through the shared stub. */
+    private class Caller implements Runnable {
+        /** Makes the calls, failing the test on any exception. */
+        @Override
+        public void run() {
+            try {
+                for(int i = 0; i < CALLS_PER_THREAD; i++)
+                    stub.method(false);
+            } catch(Throwable t) {
+                failure(new TestFailed("unexpected exception when using stub", t));
+            }
+        }
+    }
+
+    /** Test service class that fails the test when an exception is received in
+        one of the service's threads. */
+    private class SimpleService extends Service<SimpleInterface> {
+        /** Creates a <code>SimpleService</code> at the appropriate port, with
+            a new test object. */
+        SimpleService(int port) {
+            super(SimpleInterface.class, new SimpleObject(), port);
+        }
+
+        /** Fails the test upon an error in the listening thread. */
+        @Override
+        protected boolean listen_error(Exception e) {
+            failure(new TestFailed("exception in listening thread", e));
+            return false;
+        }
+
+        /** Fails the test upon an error in a service thread. */
+        @Override
+        protected void service_error(RemoteObjectException e) {
+            failure(new TestFailed("exception in service thread", e));
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package test.util;
+
+import java.io.*;
+import java.util.*;
+
+/** Stored performance baselines, and the log of measurements against them.
+
+    <p>
+    Baselines are read from a properties file, by default
+    <code>test/perf-baselines.properties</code>, or the file named by the
+    <code>perf.baselines</code> system property. Each metric is stored under
+    its name, for example <code>TestPerf_Latency.p50_ms</code>. A measurement
+    fails when it is worse than the baseline by more than the tolerance, given
+    as a fraction of the baseline: the <code>tolerance</code> property of the
+    file, which a <code>&lt;metric&gt;.tolerance</code> property overrides for a
+    single noisy metric, and the <code>perf.tolerance</code> system property
+    overrides for all metrics. A metric with no baseline is measured and
+    logged, but never fails.
+
+    <p>
+    Every measurement is appended as one JSON object per line to
+    <code>perf-results.jsonl</code>, or the file named by the
+    <code>perf.results</code> system property, so that results can be tracked
+    across runs. When the <code>perf.update</code> system property is
+    <code>true</code>, measurements never fail and instead replace the stored
+    baselines.
+ */
+public class PerfBaselines
+{
+    /** Tolerance used when the baselines file gives none. */
+    private static final double         DEFAULT_TOLERANCE = 1.0;
+
+    /** Baselines shared by all performance tests of the process. */
+    private static PerfBaselines        instance;
+
+    /** Baselines file. */
+    private final File                  baselines_file;
+    /** Results log. */
+    private final File                  results_file;
+    /** Baselines and tolerances read from the baselines file. */
+    private final Properties            baselines = new Properties();
+    /** Tolerance for all metrics given on the command line, or
+        <code>null</code> if the file decides. */
+    private final Double                tolerance_override;
+    /** Flag set if measurements replace the baselines. */
+    private final boolean               update;
+
+    /** Reads the baselines named by the system properties.
+
+        @throws IOException If the baselines file exists but cannot be read.
+     */
+    private PerfBaselines() throws IOException
+    {
+        baselines_file =
+            new File(System.getProperty("perf.baselines",
+                                        "test/perf-baselines.properties"));
+        results_file =
+            new File(System.getProperty("perf.results", "perf-results.jsonl"));
+
+        String          tolerance = System.getProperty("perf.tolerance");
+        tolerance_override =
+            tolerance == null ? null : Double.valueOf(tolerance);
+        update = Boolean.getBoolean("perf.update");
+
+        if(baselines_file.exists())
+        {
+            try(Reader reader = new FileReader(baselines_file))
+            {
+                baselines.load(reader);
+            }
+        }
+    }
+
+    /** Returns the baselines shared by all performance tests.
+
+        @throws TestFailed If the baselines file cannot be read.
+     */
+    public static synchronized PerfBaselines get() throws TestFailed
+    {
+        if(instance == null)
+        {
+            try
+            {
+                instance = new PerfBaselines();
+            }
+            catch(IOException e)
+            {
+                throw new TestFailed("unable to read performance baselines", e);
+            }
+        }
+
+        return instance;
+    }
+
+    /** Checks a measurement for which lower is better, such as a latency.
+
+        @param metric Name of the metric.
+        @param value Measured value.
+        @param unit Unit of the value, for the log.
+        @throws TestFailed If the value exceeds the baseline by more than the
+                           tolerance.
+     */
+    public void checkAtMost(String metric, double value, String unit)
+        throws TestFailed
+    {
+        check(metric, value, unit, true);
+    }
+
+    /** Checks a measurement for which higher is better, such as a throughput.
+
+        @param metric Name of the metric.
+        @param value Measured value.
+        @param unit Unit of the value, for the log.
+        @throws TestFailed If the value falls short of the baseline by more
+                           than the tolerance.
+     */
+    public void checkAtLeast(String metric, double value, String unit)
+        throws TestFailed
+    {
+        check(metric, value, unit, false);
+    }
+
+    /** Logs a measurement and compares it with its baseline.
+
+        @param metric Name of the metric.
+        @param value Measured value.
+        @param unit Unit of the value.
+        @param lower_is_better <code>true</code> if the value must not exceed
+                               the limit, <code>false</code> if it must not
+                               fall below it.
+        @throws TestFailed If the measurement regressed beyond the limit.
+     */
+    private synchronized void check(String metric, double value, String unit,
+                                    boolean lower_is_better)
+        throws TestFailed
+    {
+        String          stored = baselines.getProperty(metric);
+        Double          baseline = stored == null ? null : Double.valueOf(stored);
+        double          tolerance = tolerance(metric);
+        Double          limit = null;
+
+        if(baseline != null)
+        {
+            limit = lower_is_better ? baseline * (1 + tolerance)
+                                    : baseline / (1 + tolerance);
+        }
+
+        boolean         passed = update || (limit == null) ||
+            (lower_is_better ? value <= limit : value >= limit);
+
+        log(metric, value, unit, baseline, limit, passed);
+
+        if(update)
+        {
+            baselines.setProperty(metric, String.format(Locale.ROOT, "%.4g",
+                                                        value));
+            save();
+        }
+
+        if(!passed)
+        {
+            throw new TestFailed(String.format(Locale.ROOT,
+                "%s regressed: %.4g %s against baseline %.4g %s, limit %.4g %s",
+                metric, value, unit, baseline, unit, limit, unit));
+        }
+    }
+
+    /** Returns the tolerance of a metric, as a fraction of its baseline. */
+    private double tolerance(String metric)
+    {
+        if(tolerance_override != null)
+            return tolerance_override;
+
+        String          tolerance = baselines.getProperty(metric + ".tolerance",
+                                        baselines.getProperty("tolerance"));
+
+        return tolerance == null ? DEFAULT_TOLERANCE
+                                 : Double.parseDouble(tolerance);
+    }
+
+    /** Appends a measurement to the results log.
+
+        <p>
+        Failure to write the log does not fail the test: the measurement itself
+        is still checked, and the error is reported on the standard error
+        stream.
+     */
+    private void log(String metric, double value, String unit, Double baseline,
+                     Double limit, boolean passed)
+    {
+        String          line = String.format(Locale.ROOT,
+            "{\"time\":%d,\"metric\":\"%s\",\"value\":%.4g,\"unit\":\"%s\"," +
+            "\"baseline\":%s,\"limit\":%s,\"passed\":%b}",
+            System.currentTimeMillis(), metric, value, unit, json(baseline),
+            json(limit), passed);
+
+        try(Writer writer = new FileWriter(results_file, true))
+        {
+            writer.write(line + "\n");
+        }
+        catch(IOException e)
+        {
+            System.err.println("unable to write performance results: " + e);
+        }
+    }
+
+    /** Formats an optional number as JSON. */
+    private static String json(Double value)
+    {
+        return value == null ? "null" : String.format(Locale.ROOT, "%.4g",
+                                                      value);
+    }
+
+    /** Writes the baselines file after an update.
+
+        @throws TestFailed If the file cannot be written.
+     */
+    private void save() throws TestFailed
+    {
+        try(Writer writer = new FileWriter(baselines_file))
+        {
+            baselines.store(writer, "Performance baselines; see " +
+                                    "test.util.PerfBaselines");
+        }
+        catch(IOException e)
+        {
+            throw new TestFailed("unable to write performance baselines", e);
+        }
+    }
+}
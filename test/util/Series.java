@@ -2,6 +2,7 @@ package test.util;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.lang.reflect.*;
 
 /** Test series.
@@ -22,6 +23,12 @@ import java.lang.reflect.*;
     included in the the test series is deliberate. The test series object
     notionally captures all the tests that will be run as part of the series.
 
+    <p>
+    By default the tests are run one at a time. The <code>run</code> method
+    taking a parallelism argument instead runs up to that many tests at the same
+    time, starting each test once its prerequisites have completed
+    successfully.
+
     <p>
     Upon completion of a test series, the results are provided in a
     <code>SeriesReport</code> object. The <code>SeriesReport</code> object
@@ -118,6 +125,9 @@ public class Series implements Serializable
      */
     public SeriesReport run(int timeout, PrintStream stream)
     {
+        // Start time of the series, for the report.
+        long                                start = System.nanoTime();
+
         // This method creates a test queue, which is a list of all the tests to
         // be run, in the order that they are provided to the constructor. It
         // then repeatedly goes through the test queue. For each test in the
@@ -138,6 +148,9 @@ public class Series implements Serializable
         // Reports from tests that have failed.
         ArrayList<TestReport>               failure_reports =
             new ArrayList<TestReport>();
+        // Reports from all tests run, in the order in which they completed.
+        ArrayList<TestReport>               test_reports =
+            new ArrayList<TestReport>();
         // A common Timer object for timeouts for all the tests.
         Timer                               timeout_timer = new Timer();
 
@@ -175,6 +188,7 @@ public class Series implements Serializable
                     // Run the test.
                     TestReport              result =
                         run(test_class, timeout_timer, timeout);
+                    test_reports.add(result);
 
                     // If the test is successful, note this fact and continue to
                     // the next test, if there is one.
@@ -222,7 +236,168 @@ public class Series implements Serializable
         }
 
         // Create the series report object and return it.
-        return new SeriesReport(successful_tests, test_queue, failure_reports);
+        return new SeriesReport(successful_tests, test_queue, failure_reports,
+                                test_reports, elapsedMillis(start));
+    }
+
+    /** Runs the test series, running up to the given number of tests at the
+        same time.
+
+        <p>
+        Tests are started in the order they were given to the
+        <code>Series</code> constructor, as soon as their prerequisites have
+        completed successfully and fewer than <code>parallelism</code> tests are
+        running. A test therefore never overlaps with its prerequisites, and two
+        runs of the same test class never overlap with each other. Tests that
+        run in parallel must not share fixed system resources; in particular,
+        they should obtain their ports from <code>TestUtil.allocatePort</code>.
+
+        <p>
+        After a fatal error, no more tests are started, but tests that are
+        already running are allowed to complete. Successful tests are listed in
+        the report in the order they were given to the constructor, as in a
+        sequential run.
+
+        @param timeout Test timeout interval, in seconds, as in the sequential
+                       <code>run</code> method.
+        @param stream Output stream to receive testing progress messages, as in
+                      the sequential <code>run</code> method. Messages of tests
+                      running at the same time are interleaved.
+        @param parallelism Largest number of tests running at the same time. If
+                           this is 1, the tests are run by the sequential
+                           <code>run</code> method.
+        @return A <code>SeriesReport</code> object listing the tests that have
+                succeeded, tests that have failed, and tests that were not run.
+        @throws IllegalArgumentException If <code>parallelism</code> is less
+                                         than 1.
+     */
+    public SeriesReport run(int timeout, PrintStream stream, int parallelism)
+    {
+        if(parallelism < 1)
+        {
+            throw new IllegalArgumentException("parallelism must be at least " +
+                                               "1: " + parallelism);
+        }
+
+        if(parallelism == 1)
+            return run(timeout, stream);
+
+        // Start time of the series, for the report.
+        long                                start = System.nanoTime();
+
+        // Test queue, as in the sequential run method.
+        List<Class<? extends Test>>         test_queue =
+            new LinkedList<Class<? extends Test>>(Arrays.asList(tests));
+        // Classes of the tests currently running.
+        List<Class<? extends Test>>         running_tests =
+            new ArrayList<Class<? extends Test>>();
+        // Reports of tests that have completed but have not yet been noted.
+        BlockingQueue<TestReport>           completed_tests =
+            new LinkedBlockingQueue<TestReport>();
+        // Flag set when a test fails fatally. No more tests are started.
+        boolean                             fatal = false;
+
+        List<Class<? extends Test>>         successful_tests =
+            new ArrayList<Class<? extends Test>>();
+        ArrayList<TestReport>               failure_reports =
+            new ArrayList<TestReport>();
+        ArrayList<TestReport>               test_reports =
+            new ArrayList<TestReport>();
+        Timer                               timeout_timer = new Timer();
+
+        while(true)
+        {
+            // Start every test that is ready, up to the parallelism limit.
+            Iterator<Class<? extends Test>> test_iterator =
+                test_queue.iterator();
+
+            while(!fatal && test_iterator.hasNext() &&
+                  (running_tests.size() < parallelism))
+            {
+                Class<? extends Test>       test_class = test_iterator.next();
+
+                if(running_tests.contains(test_class) ||
+                   !ready(test_class, successful_tests))
+                {
+                    continue;
+                }
+
+                test_iterator.remove();
+                running_tests.add(test_class);
+
+                if(stream != null)
+                {
+                    stream.println(notice(test_class) + "...");
+                    stream.flush();
+                }
+
+                new Thread(new ParallelTestThread(test_class, timeout_timer,
+                                                  timeout, completed_tests))
+                    .start();
+            }
+
+            // If no test is running, no test can become ready any more.
+            if(running_tests.isEmpty())
+                break;
+
+            // Wait for a test to complete and note its result.
+            TestReport                      result = null;
+
+            while(result == null)
+            {
+                try
+                {
+                    result = completed_tests.take();
+                }
+                catch(InterruptedException e) { }
+            }
+
+            running_tests.remove(result.testClass());
+            test_reports.add(result);
+
+            if(result.successful())
+                successful_tests.add(result.testClass());
+            else
+            {
+                failure_reports.add(result);
+
+                if(result.fatal())
+                    fatal = true;
+            }
+
+            if(stream != null)
+            {
+                stream.println(result.testClass().getSimpleName() +
+                               (result.successful() ? " PASSED" : " FAILED"));
+                stream.flush();
+            }
+        }
+
+        timeout_timer.cancel();
+
+        if(stream != null)
+        {
+            if((successful_tests.size() > 0) || (failure_reports.size() > 0))
+                stream.println();
+        }
+
+        // Restore the order of the constructor in the list of successful tests,
+        // which the report relies on to group runs of the same test.
+        final List<Class<? extends Test>>   test_order = Arrays.asList(tests);
+
+        Collections.sort(successful_tests,
+                         new Comparator<Class<? extends Test>>()
+        {
+            @Override
+            public int compare(Class<? extends Test> first,
+                               Class<? extends Test> second)
+            {
+                return test_order.indexOf(first) - test_order.indexOf(second);
+            }
+        });
+
+        return new SeriesReport(successful_tests, test_queue, failure_reports,
+                                test_reports, elapsedMillis(start));
     }
 
     /** Runs a single test.
@@ -247,6 +422,8 @@ public class Series implements Serializable
         // because test-related state exists before the test object itself is
         // even constructed.
         TestState       state = new TestState();
+        // Start time of the test, for the report.
+        long            start = System.nanoTime();
 
         // Create the main testing thread and start it.
         new Thread(new TestThread(test_class, state)).start();
@@ -285,7 +462,8 @@ public class Series implements Serializable
         // state.cause is set by the time state.stopped is set to true, and will
         // not be modified.
         if(state.test == null)
-            return new TestReport(test_class, state.cause, null);
+            return new TestReport(test_class, state.cause, null,
+                                  elapsedMillis(start));
 
         // The test object was constructed. clean should be called. Start a new
         // thread to call the clean method.
@@ -321,7 +499,17 @@ public class Series implements Serializable
         // and so the Java runtime is about to be termiated, stopping all
         // threads.
         return new TestReport(test_class, state.cause,
-                              state.cleanup_stop_cause);
+                              state.cleanup_stop_cause, elapsedMillis(start));
+    }
+
+    /** Returns the milliseconds elapsed since the given time.
+
+        @param start Start time, as returned by <code>System.nanoTime</code>.
+        @return Elapsed time, in milliseconds.
+     */
+    private static long elapsedMillis(long start)
+    {
+        return (System.nanoTime() - start) / 1000000;
     }
 
     /** Individual test state.
@@ -607,6 +795,43 @@ public class Series implements Serializable
         }
     }
 
+    /** Thread running one test of a parallel test series.
+
+        <p>
+        The thread runs the test as the sequential series does, and then passes
+        the report to the thread running the series.
+     */
+    private class ParallelTestThread implements Runnable
+    {
+        /** Test class. */
+        private final Class<? extends Test>     test_class;
+        /** Timer shared by all tests for scheduling timeout tasks. */
+        private final Timer                     timeout_timer;
+        /** Timeout interval, in seconds. */
+        private final int                       timeout;
+        /** Queue receiving the report when the test completes. */
+        private final BlockingQueue<TestReport> completed_tests;
+
+        /** Constructs a parallel test thread. */
+        ParallelTestThread(Class<? extends Test> test_class,
+                           Timer timeout_timer, int timeout,
+                           BlockingQueue<TestReport> completed_tests)
+        {
+            this.test_class = test_class;
+            this.timeout_timer = timeout_timer;
+            this.timeout = timeout;
+            this.completed_tests = completed_tests;
+        }
+
+        /** Runs the test and reports its result. */
+        @Override
+        public void run()
+        {
+            completed_tests.add(Series.this.run(test_class, timeout_timer,
+                                                timeout));
+        }
+    }
+
     /** Timer task to time out the test main thread. */
     private static class TestTimeoutTask extends TimerTask
     {
@@ -9,7 +9,8 @@ import java.util.*;
     This class contains three lists: a list of tests that succeeded, a list of
     tests that were not run, and a list of reports from tests that failed. Tests
     not run are so because prerequisite tests did not complete successfully, or
-    were not run at all.
+    were not run at all. It also records the wall-clock time of every test that
+    was run and of the whole series.
  */
 public class SeriesReport implements Serializable
 {
@@ -19,15 +20,22 @@ public class SeriesReport implements Serializable
     private final List<Class<? extends Test>>   abandoned_tests;
     /** Reports from tests that failed. */
     private final List<TestReport>              failure_reports;
+    /** Reports from all tests that were run, in order of completion. */
+    private final List<TestReport>              test_reports;
+    /** Wall-clock time taken to run the series, in milliseconds. */
+    private final long                          time;
 
     /** Creates a <code>SeriesReport</code>. */
     SeriesReport(List<Class<? extends Test>> successful_tests,
                  List<Class<? extends Test>> abandoned_tests,
-                 List<TestReport> failure_reports)
+                 List<TestReport> failure_reports,
+                 List<TestReport> test_reports, long time)
     {
         this.successful_tests = successful_tests;
         this.abandoned_tests = abandoned_tests;
         this.failure_reports = failure_reports;
+        this.test_reports = test_reports;
+        this.time = time;
     }
 
     /** Returns <code>true</code> if and only if the test series completed
@@ -54,6 +62,38 @@ public class SeriesReport implements Serializable
                        "not run: " + abandoned_tests.size());
     }
 
+    /** Prints the wall-clock time of each test that was run, and of the whole
+        series.
+
+        <p>
+        In a parallel run the series takes less than the sum of its tests; both
+        are printed so that the saving can be seen.
+
+        @param stream Stream to receive formatted output.
+     */
+    public void printTimings(PrintStream stream)
+    {
+        long                total = 0;
+
+        stream.println(String.format("%-40s %-8s %10s", "test", "result",
+                                     "time (s)"));
+
+        for(TestReport report : test_reports)
+        {
+            stream.println(String.format("%-40s %-8s %10.2f",
+                                         report.testClass().getSimpleName(),
+                                         report.successful() ? "passed"
+                                                             : "failed",
+                                         report.time() / 1000.0));
+            total += report.time();
+        }
+
+        stream.println(String.format("series wall-clock time: %.2f s, sum of " +
+                                     "test times: %.2f s", time / 1000.0,
+                                     total / 1000.0));
+        stream.println();
+    }
+
     /** Prints the test series report.
 
         <p>
@@ -88,7 +128,8 @@ public class SeriesReport implements Serializable
             stream.println();
         }
 
-        // Print the test series summary.
+        // Print the test timings and the test series summary.
+        printTimings(stream);
         printSummary(stream);
     }
     
@@ -175,7 +216,8 @@ public class SeriesReport implements Serializable
             stream.println();
         }
 
-        // Print the test series summary.
+        // Print the test timings and the test series summary.
+        printTimings(stream);
         printSummary(stream, points, reps);
     }
 }
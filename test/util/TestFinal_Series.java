@@ -0,0 +1,205 @@
+package test.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Checks that test series run tests in parallel without breaking their
+    prerequisites.
+
+    <p>
+    The test runs small series of tests that sleep and record when they run.
+    It checks that:
+    <ul>
+    <li>Independent tests run at the same time, up to the parallelism limit
+        and no further.</li>
+    <li>A test starts only after its prerequisites have passed, and is not run
+        when a prerequisite fails.</li>
+    <li>The timings list every test run, and give a series wall-clock time
+        below the sum of the test times when tests overlap.</li>
+    <li>A parallelism below 1 is rejected.</li>
+    </ul>
+ */
+public class TestFinal_Series extends Test {
+    /** Test notice. */
+    public static final String notice = "checking parallel test series";
+
+    /** Start and end of each sleeping test of the series being run, by class. */
+    private static final Map<Class<?>, long[]> runs = new ConcurrentHashMap<>();
+    /** Number of sleeping tests running. */
+    private static final AtomicInteger running = new AtomicInteger();
+    /** Largest number of sleeping tests seen running at the same time. */
+    private static final AtomicInteger mostRunning = new AtomicInteger();
+
+    /** Time each sleeping test takes, in milliseconds. */
+    private static final long SLEEP = 300;
+
+    /** Performs the test. */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void perform() throws Throwable {
+        task("running independent tests in parallel");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        SeriesReport report = run(new Class[] { First.class, Second.class, Third.class, Fourth.class }, 2,
+                                  output);
+        if(!report.successful())
+            throw new TestFailed("series of passing tests did not succeed");
+        if(mostRunning.get() != 2)
+            throw new TestFailed(mostRunning.get() + " tests ran at the same time with parallelism 2");
+        if(!overlap(First.class, Second.class))
+            throw new TestFailed("first two independent tests did not overlap");
+        task();
+
+        task("printing the timings of the series");
+        PrintStream stream = new PrintStream(output, true, StandardCharsets.UTF_8);
+        report.printTimings(stream);
+        String timings = output.toString(StandardCharsets.UTF_8);
+        for(String name : new String[] { "First", "Second", "Third", "Fourth" }) {
+            if(!Pattern.compile("(?m)^" + name + " +passed +[0-9.]+$").matcher(timings).find())
+                throw new TestFailed("timings do not list " + name + ":\n" + timings);
+        }
+        Matcher totals = Pattern.compile("series wall-clock time: ([0-9.]+) s, sum of test times: ([0-9.]+) s")
+            .matcher(timings);
+        if(!totals.find())
+            throw new TestFailed("timings do not give the wall-clock time of the series:\n" + timings);
+        double wall = Double.parseDouble(totals.group(1));
+        double sum = Double.parseDouble(totals.group(2));
+        if(wall >= sum || sum < 4 * SLEEP / 1000.0)
+            throw new TestFailed("series of overlapping tests took " + wall + " s for " + sum +
+                                 " s of tests");
+        task();
+
+        task("respecting prerequisites in parallel");
+        report = run(new Class[] { Dependent.class, First.class, Second.class, Failing.class,
+                                   AfterFailing.class }, 4, new ByteArrayOutputStream());
+        if(report.successful())
+            throw new TestFailed("series with a failing test succeeded");
+        if(!runs.containsKey(Dependent.class))
+            throw new TestFailed("test with passed prerequisites did not run");
+        if(runs.get(Dependent.class)[0] < runs.get(First.class)[1])
+            throw new TestFailed("test started before its prerequisite ended");
+        if(!overlap(First.class, Second.class))
+            throw new TestFailed("independent tests did not overlap");
+        if(runs.containsKey(AfterFailing.class))
+            throw new TestFailed("test ran after its prerequisite failed");
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        report.print(new PrintStream(printed, true, StandardCharsets.UTF_8));
+        if(!printed.toString(StandardCharsets.UTF_8).contains("AfterFailing"))
+            throw new TestFailed("report does not list the test not run");
+        task();
+
+        task("rejecting a parallelism below 1");
+        try {
+            new Series(new Class[] { First.class }, 1).run(30, null, 0);
+            throw new TestFailed("parallelism 0 accepted");
+        } catch(IllegalArgumentException e) {
+        }
+        task();
+    }
+
+    /** Runs a series of sleeping tests, forgetting earlier runs.
+
+        @param tests The tests.
+        @param parallelism The largest number of tests running at the same time.
+        @param output Receives the progress messages.
+        @return The report of the series.
+     */
+    private static SeriesReport run(Class<? extends Test>[] tests, int parallelism,
+                                    ByteArrayOutputStream output) {
+        runs.clear();
+        mostRunning.set(0);
+        PrintStream stream = new PrintStream(output, true, StandardCharsets.UTF_8);
+        return new Series(tests, 1).run(30, stream, parallelism);
+    }
+
+    /** Tells whether two sleeping tests ran at the same time.
+
+        @param first The first test.
+        @param second The second test.
+        @return True if the runs overlap.
+        @throws TestFailed If a test did not run.
+     */
+    private static boolean overlap(Class<?> first, Class<?> second) throws TestFailed {
+        long[] a = runs.get(first);
+        long[] b = runs.get(second);
+        if(a == null || b == null)
+            throw new TestFailed("test did not run");
+        return a[0] < b[1] && b[0] < a[1];
+    }
+
+    /** Test that sleeps and records when it runs. */
+    public abstract static class Sleeping extends Test {
+        /** Sleeps, recording the start and end of the sleep. */
+        @Override
+        protected void perform() throws TestFailed {
+            long start = System.nanoTime();
+            mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(SLEEP);
+            } catch(InterruptedException e) {
+                throw new TestFailed("sleep interrupted", e);
+            } finally {
+                running.decrementAndGet();
+            }
+            runs.put(getClass(), new long[] { start, System.nanoTime() });
+        }
+    }
+
+    /** Sleeping test. */
+    public static class First extends Sleeping {
+        /** Test notice. */
+        public static final String notice = "sleeping first";
+    }
+
+    /** Sleeping test. */
+    public static class Second extends Sleeping {
+        /** Test notice. */
+        public static final String notice = "sleeping second";
+    }
+
+    /** Sleeping test. */
+    public static class Third extends Sleeping {
+        /** Test notice. */
+        public static final String notice = "sleeping third";
+    }
+
+    /** Sleeping test. */
+    public static class Fourth extends Sleeping {
+        /** Test notice. */
+        public static final String notice = "sleeping fourth";
+    }
+
+    /** Sleeping test that depends on <code>First</code>, and is listed
+        before it. */
+    public static class Dependent extends Sleeping {
+        /** Test notice. */
+        public static final String notice = "sleeping after first";
+        /** Prerequisites. */
+        public static final Class[] prerequisites = new Class[] { First.class };
+    }
+
+    /** Test that fails. */
+    public static class Failing extends Test {
+        /** Test notice. */
+        public static final String notice = "failing";
+
+        /** Fails. */
+        @Override
+        protected void perform() throws TestFailed {
+            throw new TestFailed("deliberate failure");
+        }
+    }
+
+    /** Sleeping test that depends on <code>Failing</code>. */
+    public static class AfterFailing extends Sleeping {
+        /** Test notice. */
+        public static final String notice = "sleeping after failing";
+        /** Prerequisites. */
+        public static final Class[] prerequisites = new Class[] { Failing.class };
+    }
+}
@@ -23,6 +23,9 @@ class TestReport implements Serializable
     /** Reason for test cleanup failure, or <code>null</code> if the test was
         cleaned up successfully. */
     private final FatalError                cleanup_stop_cause;
+    /** Wall-clock time taken to run and clean up the test, in
+        milliseconds. */
+    private final long                      time;
 
     /** Creates a <code>TestReport</code> object.
 
@@ -32,10 +35,11 @@ class TestReport implements Serializable
         field.
      */
     TestReport(Class<? extends Test> test_class, Throwable stop_cause,
-               FatalError cleanup_stop_cause)
+               FatalError cleanup_stop_cause, long time)
     {
         this.test_class = test_class;
         this.cleanup_stop_cause = cleanup_stop_cause;
+        this.time = time;
 
         // Unwrap the stop_cause object, if necessary.
         if((stop_cause != null) && (stop_cause instanceof FailedDuringTask))
@@ -50,6 +54,19 @@ class TestReport implements Serializable
         }
     }
 
+    /** Returns the test class. */
+    Class<? extends Test> testClass()
+    {
+        return test_class;
+    }
+
+    /** Returns the wall-clock time taken to run and clean up the test, in
+        milliseconds. */
+    long time()
+    {
+        return time;
+    }
+
     /** Returns <code>true</code> if and only if the test was successful: if
         both the test stop cause and the cleanup stop cause are
         <code>null</code>.
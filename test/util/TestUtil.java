@@ -1,10 +1,89 @@
 package test.util;
 
+import java.io.*;
+import java.net.*;
 import java.util.*;
 
 /** Common helper methods for testing. */
 public abstract class TestUtil
 {
+    /** Ports handed out by <code>allocatePort</code> in this process. */
+    private static final Set<Integer>   allocated_ports = new HashSet<Integer>();
+
+    /** Allocates a free local port for a test service.
+
+        <p>
+        The port is chosen by the operating system among the ports nothing is
+        listening on, and is never handed out twice in the same process, so
+        tests running at the same time in a parallel <code>Series</code> do not
+        collide. The port is released before this method returns, so the
+        service can bind it.
+
+        @return A port number.
+        @throws IllegalStateException If no free port can be found.
+     */
+    public static synchronized int allocatePort()
+    {
+        for(int attempt = 0; attempt < 100; ++attempt)
+        {
+            int             port;
+
+            try(ServerSocket socket = new ServerSocket(0))
+            {
+                port = socket.getLocalPort();
+            }
+            catch(IOException e)
+            {
+                throw new IllegalStateException("unable to find a free port", e);
+            }
+
+            if(allocated_ports.add(port))
+                return port;
+        }
+
+        throw new IllegalStateException("unable to find an unused free port");
+    }
+
+    /** Reads the number of tests to run at the same time from the command line
+        of a test runner.
+
+        <p>
+        The command line may contain <code>--parallel</code>, optionally
+        followed by the number of tests. Without a number, as many tests as
+        there are processors are run at the same time, but at least two.
+
+        @param arguments Command line arguments of the test runner.
+        @return The parallelism to pass to <code>Series.run</code>; 1 if the
+                tests are to be run one at a time.
+        @throws IllegalArgumentException If the number is not a positive
+                                         integer.
+     */
+    public static int parallelism(String[] arguments)
+    {
+        for(int index = 0; index < arguments.length; ++index)
+        {
+            if(!arguments[index].equals("--parallel"))
+                continue;
+
+            if(index + 1 < arguments.length)
+            {
+                int         parallelism = Integer.parseInt(arguments[index + 1]);
+
+                if(parallelism < 1)
+                {
+                    throw new IllegalArgumentException("parallelism must be " +
+                                                       "positive");
+                }
+
+                return parallelism;
+            }
+
+            return Math.max(2, Runtime.getRuntime().availableProcessors());
+        }
+
+        return 1;
+    }
+
     /** Checks if two arrays contain the same elements.
 
         @param array1 The first array.